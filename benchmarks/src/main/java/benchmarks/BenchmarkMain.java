@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, writing the results as JSON so they can be compared
+ * between releases. Takes the usual JMH command line options; unless they say
+ * otherwise the results go to target/jmh-result.json.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class BenchmarkMain {
+	
+	// the default file the results are written to
+	private static final String RESULT_FILE = "target/jmh-result.json";
+	
+	public static void main(String[] args) throws RunnerException,
+								CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		if (!commandLine.getResultFormat().hasValue())
+			builder.resultFormat(ResultFormatType.JSON);
+		if (!commandLine.getResult().hasValue())
+			builder.result(RESULT_FILE);
+		Options options = builder.parent(commandLine).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import engine.ChordifyBlock;
+import engine.PitchShiftBlock;
+import engine.ScaleModel;
+
+/**
+ * Benchmarks the processing blocks applied to each note played. The engine
+ * blocks are used directly, so no JavaFX control is created.
+ * @author Kaamraan Kamaal
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BlockBenchmark {
+	
+	private int note = 48;
+	private PitchShiftBlock pitchShift;
+	private ChordifyBlock chordify;
+	private final int[] chord = new int[3];
+	
+	@Setup
+	public void setUp() {
+		ScaleModel scaleModel = Fixtures.cMajorModel();
+		pitchShift = new PitchShiftBlock(scaleModel);
+		pitchShift.setShift(3);
+		chordify = new ChordifyBlock(scaleModel);
+	}
+	
+	@Benchmark
+	public int pitchShift() {
+		note = note == 72 ? 48 : note + 1;
+		return pitchShift.getPitchShiftedNote(note);
+	}
+	
+	@Benchmark
+	public int makeChord() {
+		note = note == 72 ? 48 : note + 1;
+		chordify.makeChord(note, chord);
+		return chord[1] + chord[2];
+	}
+}
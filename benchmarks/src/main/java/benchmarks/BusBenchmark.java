@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import engine.NoteBus;
+
+/**
+ * Benchmarks publishing notes on the note bus to a number of subscribers,
+ * each counting the notes on its own thread. A note the bus is too full to
+ * take is published again, so the time includes waiting for the slowest
+ * subscriber.
+ * @author Kaamraan Kamaal
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BusBenchmark {
+	
+	@Param({"1", "3"})
+	private int subscribers;
+	
+	private NoteBus bus;
+	private long[] counts;
+	private int note = 48;
+	
+	@Setup
+	public void setUp() {
+		bus = new NoteBus();
+		counts = new long[subscribers];
+		for (int i = 0; i < subscribers; i++) {
+			int subscriber = i;
+			bus.subscribe((event, time) -> counts[subscriber]++, "bench-" + i);
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		bus.close();
+	}
+	
+	@Benchmark
+	public void publish() {
+		note = note == 72 ? 48 : note + 1;
+		long event = NoteBus.pack(NoteBus.NOTE_ON, 0, note, 100, 0);
+		while (!bus.publish(event))
+			Thread.yield();
+	}
+}
@@ -0,0 +1,115 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import engine.ScaleModel;
+import keyboard.util.AllScales;
+import keyboard.util.Scale;
+
+/**
+ * Builds the scales used by the benchmarks, without reading a file or
+ * starting JavaFX.
+ * @author Kaamraan Kamaal
+ *
+ */
+final class Fixtures {
+	
+	// the names of the twelve notes
+	static final String[] NOTE_NAMES = {
+		"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"
+	};
+	// the modes built for each root, with their intervals
+	static final String[] MODES = {
+		"major", "natural minor", "dorian", "phrygian", "lydian",
+		"mixolydian", "locrian", "harmonic minor"
+	};
+	private static final int[][] INTERVALS = {
+		{2, 2, 1, 2, 2, 2, 1}, {2, 1, 2, 2, 1, 2, 2}, {2, 1, 2, 2, 2, 1, 2},
+		{1, 2, 2, 2, 1, 2, 2}, {2, 2, 2, 1, 2, 2, 1}, {2, 2, 1, 2, 2, 1, 2},
+		{1, 2, 2, 1, 2, 2, 2}, {2, 1, 2, 2, 1, 3, 1}
+	};
+	
+	private Fixtures() {
+	}
+	
+	/**
+	 * Returns the notes of a scale, with the root repeated at the end as in
+	 * scales.csv.
+	 * @param mode
+	 * 			The index of the mode.
+	 * @param root
+	 * 			The index of the root note.
+	 * @return
+	 * 			The names of the notes.
+	 */
+	static List<String> scaleNotes(int mode, int root) {
+		List<String> notes = new ArrayList<>();
+		int pitch = root;
+		notes.add(NOTE_NAMES[pitch]);
+		for (int interval : INTERVALS[mode]) {
+			pitch = (pitch + interval) % 12;
+			notes.add(NOTE_NAMES[pitch]);
+		}
+		return notes;
+	}
+	
+	/**
+	 * Builds a catalogue with every mode on every root.
+	 * @return
+	 * 		The catalogue of scales.
+	 */
+	static AllScales catalogue() {
+		AllScales scales = new AllScales();
+		for (int mode = 0; mode < MODES.length; mode++) {
+			for (int root = 0; root < NOTE_NAMES.length; root++) {
+				Scale scale = new Scale();
+				scale.setMode(MODES[mode]);
+				scale.setRoot(NOTE_NAMES[root]);
+				scale.setNotesString(scaleNotes(mode, root));
+				scales.addScale(scale);
+			}
+		}
+		return scales;
+	}
+	
+	/**
+	 * Builds a large catalogue, with the modes copied under new names until
+	 * it holds at least the given number of scales.
+	 * @param size
+	 * 			The number of scales wanted.
+	 * @return
+	 * 		The catalogue of scales.
+	 */
+	static AllScales largeCatalogue(int size) {
+		AllScales scales = new AllScales();
+		for (int copy = 0; scales.size() < size; copy++) {
+			for (int mode = 0; mode < MODES.length; mode++) {
+				for (int root = 0; root < NOTE_NAMES.length; root++) {
+					Scale scale = new Scale();
+					scale.setMode(MODES[mode] + " " + copy);
+					scale.setRoot(NOTE_NAMES[root]);
+					scale.setNotesString(scaleNotes(mode, root));
+					scales.addScale(scale);
+				}
+			}
+		}
+		return scales;
+	}
+	
+	/**
+	 * Builds a scale model with C major chosen, as the blocks read the
+	 * current scale from the model.
+	 * @return
+	 * 		The scale model.
+	 */
+	static ScaleModel cMajorModel() {
+		Scale scale = new Scale();
+		scale.setMode(MODES[0]);
+		scale.setRoot("C");
+		scale.setNotesString(scaleNotes(0, 0));
+		ScaleModel model = new ScaleModel();
+		model.setScale(scale);
+		return model;
+	}
+}
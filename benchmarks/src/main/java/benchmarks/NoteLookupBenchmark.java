@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import midi.MidiValues;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the note name to MIDI value lookups done on every key press.
+ * Run with "-prof gc" to see the allocation rate.
+ * @author Kaamraan Kamaal
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NoteLookupBenchmark {
+	
+	// key labels as they appear on the virtual keyboard
+	private final String[] labels = {
+		"C4\n\n\n(Z)", "D#4\n\n\n(X)", "F#5*\n\n\n(Q)", "B2\n\n\n(I)"
+	};
+	private int next = 0;
+	private int midiValue = 60;
+	
+	@Benchmark
+	public int getMidiValue() {
+		next = (next + 1) & 3;
+		return MidiValues.getMidiValue(labels[next]);
+	}
+	
+	@Benchmark
+	public String getStringForMidi() {
+		midiValue = midiValue == 95 ? 12 : midiValue + 1;
+		return MidiValues.getStringForMidi(midiValue);
+	}
+}
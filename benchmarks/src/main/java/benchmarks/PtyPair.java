@@ -0,0 +1,114 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A Linux pseudo-terminal pair standing in for the synthesizer on the
+ * serial port, as socat would make, but with only python3 needed. The
+ * slave side is opened as a serial port; everything written to it comes
+ * out of getInput(). The device can be made to read slowly, so the writer
+ * sees a full port buffer and short writes as it would on a slow link.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class PtyPair implements AutoCloseable {
+
+	// makes the pair in raw mode, prints the slave's path and copies what
+	// is written to it to the standard output, at most RATE bytes a second
+	private static final String SCRIPT =
+			"import os, pty, sys, time, tty\n"
+			+ "rate = int(sys.argv[1])\n"
+			+ "master, slave = pty.openpty()\n"
+			+ "tty.setraw(slave)\n"
+			+ "out = sys.stdout.buffer\n"
+			+ "out.write((os.ttyname(slave) + '\\n').encode())\n"
+			+ "out.flush()\n"
+			+ "chunk = 4096 if rate == 0 else max(1, rate // 100)\n"
+			+ "while True:\n"
+			+ "    try:\n"
+			+ "        data = os.read(master, chunk)\n"
+			+ "    except OSError:\n"
+			+ "        break\n"
+			+ "    if not data:\n"
+			+ "        break\n"
+			+ "    out.write(data)\n"
+			+ "    out.flush()\n"
+			+ "    if rate:\n"
+			+ "        time.sleep(len(data) / rate)\n";
+
+	// the process holding the pair
+	private final Process process;
+	// the path of the slave side
+	private final String slavePath;
+
+	/**
+	 * Makes a pair whose device reads as fast as it can.
+	 * @throws IOException
+	 * 			If python3 could not be run.
+	 */
+	public PtyPair() throws IOException {
+		this(0);
+	}
+
+	/**
+	 * Makes a pair whose device reads at most the given number of bytes a
+	 * second.
+	 * @param bytesPerSecond
+	 * 			The rate the device reads at, 0 for as fast as it can.
+	 * @throws IOException
+	 * 			If python3 could not be run or made no pair.
+	 */
+	public PtyPair(int bytesPerSecond) throws IOException {
+		process = new ProcessBuilder("python3", "-c", SCRIPT,
+						Integer.toString(bytesPerSecond))
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+		slavePath = readLine(process.getInputStream());
+		if (slavePath.isEmpty()) {
+			process.destroy();
+			throw new IOException("python3 made no pseudo-terminal");
+		}
+	}
+
+	/**
+	 * Returns the path of the slave side, to open as a serial port.
+	 * @return
+	 * 		The path, like /dev/pts/3.
+	 */
+	public String getSlavePath() {
+		return slavePath;
+	}
+
+	/**
+	 * Returns the bytes written to the slave side, as the device reads them.
+	 * @return
+	 * 		The stream of bytes.
+	 */
+	public InputStream getInput() {
+		return process.getInputStream();
+	}
+
+	@Override
+	public void close() {
+		process.destroy();
+	}
+
+	/**
+	 * Reads a line of ASCII, one byte at a time so nothing after it is
+	 * buffered away from getInput().
+	 * @param in
+	 * 			The stream.
+	 * @return
+	 * 			The line, empty if the stream ended first.
+	 * @throws IOException
+	 * 			If the stream could not be read.
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b;
+		while ((b = in.read()) != -1 && b != '\n')
+			line.append((char) b);
+		return line.toString();
+	}
+}
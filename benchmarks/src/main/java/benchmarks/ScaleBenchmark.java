@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import keyboard.util.AllScales;
+import keyboard.util.Note;
+import keyboard.util.Scale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import utilities.ScaleCatalogue;
+
+/**
+ * Benchmarks building a scale's MIDI values, looking scales up in the
+ * catalogue and loading a binary catalogue of 100k scales.
+ * @author Kaamraan Kamaal
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScaleBenchmark {
+	
+	private List<String> dorianNotes;
+	private AllScales catalogue;
+	private int next = 0;
+	private File catalogueFile;
+	
+	@Setup
+	public void setUp() throws IOException {
+		dorianNotes = Fixtures.scaleNotes(2, 5);
+		catalogue = Fixtures.catalogue();
+		catalogueFile = File.createTempFile("scales", ScaleCatalogue.EXTENSION);
+		ScaleCatalogue.write(Fixtures.largeCatalogue(100_000), catalogueFile,
+								0, 0);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		catalogueFile.delete();
+	}
+	
+	/**
+	 * Scale.setMidiValues() runs when the notes of a scale are set.
+	 */
+	@Benchmark
+	public Scale setMidiValues() {
+		Scale scale = new Scale();
+		scale.setNotesString(dorianNotes);
+		return scale;
+	}
+	
+	@Benchmark
+	public List<Note> getNotes() {
+		next = (next + 7) % (Fixtures.MODES.length * 12);
+		return catalogue.getNotes(Fixtures.MODES[next / 12],
+						Fixtures.NOTE_NAMES[next % 12]);
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AllScales loadCatalogue() throws IOException {
+		return ScaleCatalogue.load(catalogueFile);
+	}
+}
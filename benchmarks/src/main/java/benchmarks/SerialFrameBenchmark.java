@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import serialio.FrameEncoder;
+
+/**
+ * Benchmarks encoding the frames sent to the synthesizer.
+ * @author Kaamraan Kamaal
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerialFrameBenchmark {
+	
+	private final byte[] frame = new byte[16];
+	private final int[] buttons = {60, 62, 64, 65, 67, 69, 71, 72};
+	private int note = 60;
+	
+	@Benchmark
+	public byte[] noteOnAndOff() {
+		note = note == 95 ? 12 : note + 1;
+		int length = FrameEncoder.encodeNoteOn(frame, 0, 0, note, 100);
+		FrameEncoder.encodeNoteOff(frame, length, 0, note);
+		return frame;
+	}
+	
+	@Benchmark
+	public byte[] buttonConfig() {
+		FrameEncoder.encodeConfig(frame, 0, buttons);
+		return frame;
+	}
+}
@@ -0,0 +1,189 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import serialio.FrameEncoder;
+import serialio.Protocol;
+import serialio.SerialMetrics;
+import serialio.SerialMetricsMXBean;
+import serialio.SerialWriter;
+
+/**
+ * Soak-tests the serial writer at a steady rate of notes for a while, with
+ * a pseudo-terminal pair (see PtyPair) standing in for the synthesizer, so
+ * no device is needed. Prints the writer's metrics, read back over JMX,
+ * every second, and checks at the end that every byte written came out
+ * the other side. Exits with 1 if not.
+ * <pre>
+ * java -cp target/benchmarks.jar:../libraries/jSerialComm-1.3.7.jar \
+ *     benchmarks.SerialSoak --rate 2000 --seconds 30 --protocol midi
+ * </pre>
+ * The options are --rate (notes a second), --seconds, --protocol, --gap
+ * (the frame gap in milliseconds) and --device-rate (the bytes a second
+ * the device reads, 0 for as fast as it can).
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SerialSoak {
+
+	// the name the metrics are registered under
+	private static final String OBJECT_NAME = SerialMetrics.OBJECT_NAME
+					+ ",name=soak";
+	// the time allowed for more bytes to come out of the device
+	private static final long DRAIN_MILLIS = 5000;
+
+	public static void main(String[] args) throws IOException,
+								InterruptedException, JMException {
+		int rate = 2000;
+		int seconds = 10;
+		Protocol protocol = Protocol.LEGACY;
+		double gapMillis = 0;
+		int deviceRate = 0;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "--rate":
+				rate = Integer.parseInt(args[i + 1]);
+				break;
+			case "--seconds":
+				seconds = Integer.parseInt(args[i + 1]);
+				break;
+			case "--protocol":
+				protocol = Protocol.fromName(args[i + 1]);
+				break;
+			case "--gap":
+				gapMillis = Double.parseDouble(args[i + 1]);
+				break;
+			case "--device-rate":
+				deviceRate = Integer.parseInt(args[i + 1]);
+				break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		try (PtyPair pty = new PtyPair(deviceRate)) {
+			SerialPort port = SerialPort.getCommPort(pty.getSlavePath());
+			if (!port.openPort())
+				throw new IOException("Could not open " + pty.getSlavePath());
+			port.setComPortTimeouts(SerialPort.TIMEOUT_WRITE_SEMI_BLOCKING,
+								0, 0);
+			AtomicLong received = new AtomicLong();
+			Thread device = new Thread(() -> drain(pty.getInput(), received),
+								"soak-device");
+			device.setDaemon(true);
+			device.start();
+
+			SerialMetrics metrics = new SerialMetrics();
+			metrics.register(OBJECT_NAME);
+			SerialMetricsMXBean jmx = JMX.newMXBeanProxy(
+						ManagementFactory.getPlatformMBeanServer(),
+						new ObjectName(OBJECT_NAME), SerialMetricsMXBean.class);
+			SerialWriter writer = new SerialWriter(port,
+								SerialWriter.DEFAULT_CAPACITY, metrics);
+			writer.setFrameGapNanos((long) (gapMillis * 1_000_000L));
+			writer.setProtocol(protocol);
+			writer.start();
+
+			System.out.printf("%s, %s, %d notes/s for %d s%n",
+						pty.getSlavePath(), protocol, rate, seconds);
+			long events = play(writer, rate, seconds, jmx, received);
+			writer.stop(DRAIN_MILLIS);
+			// a slow device can still be reading, so wait as long as it is
+			long lastCount = -1;
+			long deadline = 0;
+			while (received.get() < jmx.getBytesSent()
+							&& System.currentTimeMillis() < deadline
+							|| lastCount != received.get()) {
+				if (lastCount != received.get()) {
+					lastCount = received.get();
+					deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+				}
+				Thread.sleep(10);
+			}
+			port.closePort();
+
+			print("total", events, jmx, received.get());
+			boolean isIntact = received.get() == jmx.getBytesSent()
+							&& jmx.getFailedWrites() == 0;
+			System.out.println(isIntact ? "OK" : "FAILED: bytes lost");
+			System.exit(isIntact ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Queues notes on and off at the given rate, printing the metrics every
+	 * second.
+	 * @return
+	 * 			The number of notes queued.
+	 */
+	private static long play(SerialWriter writer, int rate, int seconds,
+				SerialMetricsMXBean jmx, AtomicLong received) {
+		byte[] frame = new byte[SerialWriter.MAX_FRAME_LENGTH];
+		long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+		long start = System.nanoTime();
+		long end = start + TimeUnit.SECONDS.toNanos(seconds);
+		long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+		long events = 0;
+		long now;
+		while ((now = System.nanoTime()) < end) {
+			// catch up on the notes due, as a sleep can overshoot
+			long due = (now - start) / interval + 1;
+			for (; events < due; events++) {
+				int note = 48 + (int) (events / 2 % 24);
+				int length = events % 2 == 0
+						? FrameEncoder.encodeNoteOn(frame, 0, 0, note, 100)
+						: FrameEncoder.encodeNoteOff(frame, 0, 0, note);
+				writer.enqueue(frame, 0, length, System.nanoTime());
+			}
+			if (now >= nextReport) {
+				print((now - start) / 1_000_000_000L + " s", events, jmx,
+								received.get());
+				nextReport += TimeUnit.SECONDS.toNanos(1);
+			}
+			LockSupport.parkNanos(start + events * interval - System.nanoTime());
+		}
+		return events;
+	}
+
+	/**
+	 * Counts the bytes coming out of the device until it closes.
+	 */
+	private static void drain(InputStream in, AtomicLong received) {
+		byte[] buffer = new byte[4096];
+		try {
+			int n;
+			while ((n = in.read(buffer)) != -1)
+				received.addAndGet(n);
+		} catch (IOException e) {
+			// the pair was closed
+		}
+	}
+
+	/**
+	 * Prints a line of the metrics.
+	 */
+	private static void print(String label, long events,
+				SerialMetricsMXBean jmx, long received) {
+		System.out.printf("%-6s notes %8d  frames %8d  bytes %8d/%-8d  writes"
+				+ " %6d  short %4d  failed %3d  dropped %6d  queue %3d/%-3d"
+				+ "  write p50 %7.1f p99 %7.1f max %8.1f us%n",
+				label, events, jmx.getFramesSent(), jmx.getBytesSent(),
+				received, jmx.getWrites(), jmx.getShortWrites(),
+				jmx.getFailedWrites(), jmx.getDroppedFrames(),
+				jmx.getQueueDepth(), jmx.getMaxQueueDepth(),
+				jmx.getWriteP50Micros(), jmx.getWriteP99Micros(),
+				jmx.getWriteMaxMicros());
+	}
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import serialio.FrameEncoder;
+import serialio.Protocol;
+import serialio.WireEncoder;
+
+/**
+ * Benchmarks putting the notes into each serial protocol, for a stream of
+ * dense chords and arpegiator runs. Each operation encodes the whole
+ * stream; the bytes and events counters give the bytes per event of each
+ * protocol (bytes / events) and the events encoded per second.
+ * @author Kaamraan Kamaal
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WireEncoderBenchmark {
+	
+	@Param({"legacy", "midi", "compact"})
+	private String protocol;
+	
+	private WireEncoder encoder;
+	// the messages of the stream, one per row
+	private byte[][] messages;
+	private int[] lengths;
+	private final byte[] out = new byte[16];
+	
+	/**
+	 * Counts the bytes written and the events encoded.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public long bytes;
+		public long events;
+		
+		@Setup(Level.Iteration)
+		public void clear() {
+			bytes = 0;
+			events = 0;
+		}
+	}
+	
+	@Setup
+	public void setUp() {
+		encoder = new WireEncoder(Protocol.fromName(protocol));
+		int[] chord = {48, 55, 60, 64, 67};
+		int[] run = {60, 62, 64, 65, 67, 69, 71, 72, 71, 69, 67, 65, 64, 62};
+		int count = chord.length * 2 + run.length * 2;
+		messages = new byte[count][3];
+		lengths = new int[count];
+		int i = 0;
+		for (int note : chord)
+			lengths[i] = FrameEncoder.encodeNoteOn(messages[i++], 0, 0, note, 100);
+		for (int note : chord)
+			lengths[i] = FrameEncoder.encodeNoteOff(messages[i++], 0, 0, note);
+		for (int note : run) {
+			lengths[i] = FrameEncoder.encodeNoteOn(messages[i++], 0, 0, note, 90);
+			lengths[i] = FrameEncoder.encodeNoteOff(messages[i++], 0, 0, note);
+		}
+	}
+	
+	@Benchmark
+	public byte[] encodeStream(Counters counters) {
+		for (int i = 0; i < messages.length; i++)
+			counters.bytes += encoder.encode(messages[i], 0, lengths[i], out, 0);
+		counters.events += messages.length;
+		return out;
+	}
+}
@@ -0,0 +1,242 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import output.OutputSink;
+
+/**
+ * Arpegiates the notes held down. An arpegiator can operate in various
+ * modes, namely: Ascending, Descending, Ping Pong and Random.
+ * The notes are played in time with the MasterClock, one note per step, for
+ * as long as notes are held down. A step is one note of the chosen division
+ * (an eighth note, a sixteenth note etc) and the steps fall on the clock's
+ * grid, so the arpegio is in phase with the metronome. Changes to the notes,
+ * the mode or the division are picked up at the next step.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ArpegiatorBlock extends Block {
+
+	// the name of the block
+	public static final String NAME = "Arpegiator";
+	// the default note division: eighth notes
+	public static final int DEFAULT_DIVISION = 8;
+
+	/**
+	 * The modes of the arpegiator.
+	 */
+	public enum Mode {
+		ASCENDING("Ascending"),
+		DESCENDING("Descending"),
+		PING_PONG("Ping Pong"),
+		RANDOM("Random");
+
+		// the name of the mode shown to the user
+		private final String displayName;
+
+		private Mode(String displayName) {
+			this.displayName = displayName;
+		}
+
+		/**
+		 * Returns the mode with the given name.
+		 * @param name
+		 * 			The name of the mode shown to the user.
+		 * @return
+		 * 			The mode, ASCENDING if there is no mode with the name.
+		 */
+		public static Mode fromName(String name) {
+			for (Mode mode : values())
+				if (mode.displayName.equals(name))
+					return mode;
+			return ASCENDING;
+		}
+
+		@Override
+		public String toString() {
+			return displayName;
+		}
+	}
+
+	// the mode of the arpegiator
+	private volatile Mode mode = Mode.ASCENDING;
+	// the note division of a step
+	private volatile int division = DEFAULT_DIVISION;
+	// where the notes are played to
+	private volatile Emitter output;
+	// the clock the steps follow
+	private final MasterClock clock;
+	// plays the steps on the clock's ticks
+	private final ClockListener stepper = this::onTick;
+
+	// the number of times each note is held down
+	private final int[] heldCounts = new int[128];
+	// the number of different notes held down
+	private int heldCount = 0;
+	// the notes held down, in ascending order, taken at each step
+	private final int[] sequence = new int[128];
+	// the note sounding, -1 if there is none
+	private int sounding = -1;
+	// the number of notes played since the arpegio started
+	private int position = 0;
+
+	/**
+	 * Creates the block.
+	 * @param clock
+	 * 			The clock the steps follow.
+	 */
+	public ArpegiatorBlock(MasterClock clock) {
+		super(NAME);
+		this.clock = clock;
+	}
+
+	/**
+	 * Sets the mode of the arpegiator.
+	 * @param mode
+	 * 			The mode.
+	 */
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns the mode of the arpegiator.
+	 * @return
+	 * 		The mode of the arpegiator.
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the note division. A step is one note of the division at the
+	 * clock's tempo, for example an eighth note.
+	 * @param division
+	 * 			The note division (4 for quarter notes, 8 for eighth notes,
+	 * 			16 for sixteenth notes etc).
+	 */
+	public void setDivision(int division) {
+		if (division <= 0)
+			throw new IllegalArgumentException("bad division: " + division);
+		this.division = division;
+	}
+
+	/**
+	 * Returns the note division.
+	 * @return
+	 * 		The note division of a step.
+	 */
+	public int getDivision() {
+		return division;
+	}
+
+	/**
+	 * Adds the notes pressed to the notes held down, and removes the notes
+	 * released. The arpegio starts at the next step after the first note
+	 * is held down.
+	 */
+	@Override
+	public synchronized void process(NoteEvent event, Emitter out) {
+		output = out;
+		int note = event.getNote();
+		if (event.isNoteOn()) {
+			if (heldCounts[note]++ == 0)
+				heldCount++;
+			clock.addListener(stepper);
+		}
+		else if (heldCounts[note] > 0 && --heldCounts[note] == 0)
+			heldCount--;
+	}
+
+	/**
+	 * Called on each tick of the clock. At the start of a step the note of
+	 * the step before is turned off and the next note of the arpegio is
+	 * turned on; the note is turned off half way through the step. When no
+	 * note is held down the block stops listening to the clock.
+	 * @param tick
+	 * 			The number of the tick.
+	 * @param timeNanos
+	 * 			The time the tick was due at.
+	 */
+	private synchronized void onTick(long tick, long timeNanos) {
+		int stepTicks = Math.max(1, clock.getPpqn() * 4 / division);
+		long phase = tick % stepTicks;
+		if (phase == 0) {
+			turnOffSounding();
+			if (heldCount == 0) {
+				clock.removeListener(stepper);
+				position = 0;
+				return;
+			}
+			int count = 0;
+			for (int note = 0; count < heldCount; note++)
+				if (heldCounts[note] > 0)
+					sequence[count++] = note;
+			sounding = nextNote(count, position++);
+			output.emit(NoteEvent.noteOn(sounding, OutputSink.DEFAULT_VELOCITY));
+		}
+		else if (phase == stepTicks / 2)
+			turnOffSounding();
+	}
+
+	/**
+	 * Turns off the note sounding, if there is one.
+	 */
+	private void turnOffSounding() {
+		if (sounding != -1) {
+			output.emit(NoteEvent.noteOff(sounding));
+			sounding = -1;
+		}
+	}
+
+	/**
+	 * Returns the note played at the given position of the arpegio.
+	 * @param count
+	 * 			The number of notes in the sequence.
+	 * @param position
+	 * 			The number of notes played so far.
+	 * @return
+	 * 			The note to play.
+	 */
+	private int nextNote(int count, int position) {
+		switch (mode) {
+		case DESCENDING:
+			return sequence[count - 1 - position % count];
+		case PING_PONG:
+			if (count == 1)
+				return sequence[0];
+			int index = position % (2 * count - 2);
+			return sequence[index < count ? index : 2 * count - 2 - index];
+		case RANDOM:
+			return sequence[ThreadLocalRandom.current().nextInt(count)];
+		default:
+			return sequence[position % count];
+		}
+	}
+
+	/**
+	 * Stops playing the arpegio and forgets the notes held. The note
+	 * sounding is not turned off.
+	 */
+	@Override
+	public synchronized void reset() {
+		clock.removeListener(stepper);
+		Arrays.fill(heldCounts, 0);
+		heldCount = 0;
+		position = 0;
+		sounding = -1;
+	}
+
+	/**
+	 * Stops playing the arpegio. The note sounding is turned off.
+	 */
+	@Override
+	public synchronized void stop() {
+		clock.removeListener(stepper);
+		Arrays.fill(heldCounts, 0);
+		heldCount = 0;
+		position = 0;
+		turnOffSounding();
+	}
+}
@@ -0,0 +1,57 @@
+package engine;
+
+/**
+ * The base class for the processing blocks of the engine. The blocks are
+ * plain objects with no user interface; the JavaFX views in the
+ * processingblocks package edit their parameters.
+ * @author Kaamraan Kamaal
+ *
+ */
+public abstract class Block {
+	
+	// the name of the block
+	private final String name;
+	
+	/**
+	 * Creates a block with the given name.
+	 * @param name
+	 * 			The name of the block.
+	 */
+	protected Block(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Returns the name of the block.
+	 * @return
+	 * 		The name of the block.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Processes an event, and emits the resulting events to the next block.
+	 * A block must emit a note off for every note on it has emitted, once
+	 * the note the on came from is turned off.
+	 * @param event
+	 * 			The event coming into the block.
+	 * @param out
+	 * 			Where the resulting events are sent.
+	 */
+	public abstract void process(NoteEvent event, Emitter out);
+	
+	/**
+	 * Stops anything the block is doing in the background. Called when the
+	 * block is removed.
+	 */
+	public void stop() {
+	}
+	
+	/**
+	 * Forgets the notes held, without emitting their offs. Called on a
+	 * panic, when the engine turns off every note sounding itself.
+	 */
+	public void reset() {
+	}
+}
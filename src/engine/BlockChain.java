@@ -0,0 +1,80 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import utilities.FlightEvents;
+
+/**
+ * An ordered chain of processing blocks. The emitter linking each block to
+ * the next one is made when the chain is built, so an event is passed along
+ * with one virtual call per block. A chain never changes; adding or removing
+ * a block builds a new chain.
+ * @author Kaamraan Kamaal
+ *
+ */
+final class BlockChain {
+	
+	// the blocks, in the order the events go through them
+	private final Block[] blocks;
+	// the emitter feeding each block
+	private final Emitter[] inputs;
+	
+	/**
+	 * Builds a chain.
+	 * @param blocks
+	 * 			The blocks, in order.
+	 * @param output
+	 * 			The emitter the last block sends its events to.
+	 */
+	BlockChain(List<Block> blocks, Emitter output) {
+		this.blocks = blocks.toArray(new Block[blocks.size()]);
+		inputs = new Emitter[this.blocks.length + 1];
+		inputs[this.blocks.length] = output;
+		for (int i = this.blocks.length - 1; i >= 0; i--) {
+			Block block = this.blocks[i];
+			Emitter next = inputs[i + 1];
+			inputs[i] = event -> {
+				FlightEvents.BlockProcess flightEvent =
+								new FlightEvents.BlockProcess();
+				flightEvent.begin();
+				block.process(event, next);
+				flightEvent.end();
+				if (flightEvent.shouldCommit()) {
+					flightEvent.block = block.getName();
+					flightEvent.note = event.getNote();
+					flightEvent.isNoteOn = event.isNoteOn();
+					flightEvent.commit();
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Passes an event through all the blocks.
+	 * @param event
+	 * 			The event.
+	 */
+	void process(NoteEvent event) {
+		inputs[0].emit(event);
+	}
+	
+	/**
+	 * Returns the blocks of the chain.
+	 * @return
+	 * 		The blocks, in order.
+	 */
+	List<Block> getBlocks() {
+		return Collections.unmodifiableList(Arrays.asList(blocks));
+	}
+	
+	/**
+	 * Checks if the chain has no blocks.
+	 * @return
+	 * 		True if the events go straight to the output.
+	 */
+	boolean isEmpty() {
+		return blocks.length == 0;
+	}
+}
@@ -0,0 +1,74 @@
+package engine;
+
+import java.util.Arrays;
+
+import keyboard.util.ScaleTables;
+
+/**
+ * Turns each note into the triad built on it from the scale. That is, the
+ * note, the third and the fifth above it in the scale. A note can be held
+ * more than once (two keys shifted to the same note, for example); its
+ * chord is made when it is first pressed and kept until it is last
+ * released, and every on and off of it sends the whole chord.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ChordifyBlock extends Block {
+	
+	// the name of the block
+	public static final String NAME = "Chordify";
+	
+	// the scale the chords are built from
+	private final ScaleModel scaleModel;
+	// the chord sent for each note on, so the offs match it
+	private final int[][] chords = new int[128][3];
+	// the number of times each note is held
+	private final int[] heldCounts = new int[128];
+	
+	/**
+	 * Creates the block.
+	 * @param scaleModel
+	 * 			The scale the chords are built from.
+	 */
+	public ChordifyBlock(ScaleModel scaleModel) {
+		super(NAME);
+		this.scaleModel = scaleModel;
+	}
+	
+	@Override
+	public synchronized void process(NoteEvent event, Emitter out) {
+		int note = event.getNote();
+		int[] chord = chords[note];
+		if (event.isNoteOn()) {
+			if (heldCounts[note]++ == 0)
+				makeChord(note, chord);
+		}
+		else if (heldCounts[note] == 0)
+			return;
+		else
+			heldCounts[note]--;
+		for (int chordNote : chord)
+			out.emit(event.withNote(chordNote));
+	}
+	
+	@Override
+	public synchronized void reset() {
+		Arrays.fill(heldCounts, 0);
+	}
+	
+	/**
+	 * Makes the chord for the note on, from the scale's triad table. Notes
+	 * of the chord above the range of MIDI notes, and the chord of a note
+	 * not in the scale, are replaced by the root note.
+	 * @param firstNote
+	 * 			The note on, the root of the chord.
+	 * @param chord
+	 * 			Filled with the three notes of the chord.
+	 */
+	public void makeChord(int firstNote, int[] chord) {
+		ScaleTables tables = scaleModel.getTables();
+		chord[0] = tables.getTriadNote(firstNote, 0);
+		chord[1] = tables.getTriadNote(firstNote, 1);
+		chord[2] = tables.getTriadNote(firstNote, 2);
+	}
+}
@@ -0,0 +1,22 @@
+package engine;
+
+/**
+ * Receives the ticks of the MasterClock. The callback is made on the clock
+ * thread for every tick, so it must be quick, must not block and should not
+ * allocate.
+ * @author Kaamraan Kamaal
+ *
+ */
+@FunctionalInterface
+public interface ClockListener {
+	
+	/**
+	 * Called on every tick of the clock.
+	 * @param tick
+	 * 			The number of the tick. Tick 0 is the first tick after the
+	 * 			clock started, and every getPpqn() ticks is a beat.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the tick was due at.
+	 */
+	void onTick(long tick, long timeNanos);
+}
@@ -0,0 +1,19 @@
+package engine;
+
+/**
+ * Receives the events produced by a processing block. Each block in the
+ * chain emits to the block after it, and the last block emits to the
+ * output sinks.
+ * @author Kaamraan Kamaal
+ *
+ */
+@FunctionalInterface
+public interface Emitter {
+	
+	/**
+	 * Passes an event on.
+	 * @param event
+	 * 			The event.
+	 */
+	void emit(NoteEvent event);
+}
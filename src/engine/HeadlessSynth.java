@@ -0,0 +1,323 @@
+package engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+
+import keyboard.util.AllScales;
+import keyboard.util.Scale;
+import midi.MidiFileOut;
+import midi.MidiValues;
+import output.LoopbackSink;
+import output.SinkRegistry;
+import serialio.LinkDownPolicy;
+import serialio.Protocol;
+import serialio.SerialOut;
+import utilities.Latency;
+import utilities.ScaleReader;
+
+/**
+ * Runs the synthesizer without a user interface, for scripted tests, load
+ * tests and machines with no display. The notes are read from the standard
+ * input, one command per line:
+ * <pre>
+ * on &lt;note&gt;             press the key of the note (C4 or 60)
+ * off &lt;note&gt;            release the key of the note
+ * block &lt;name&gt;          add a block to the end of the chain (Chordify,
+ *                       Arpegiator, Pitch Shift, Monophonic), or none
+ *                       to remove all the blocks
+ * shift &lt;semitones&gt;     set the parameter of the first pitch shift
+ * mode &lt;name&gt;           set the mode of the first arpegiator
+ * tempo &lt;bpm&gt;          set the tempo of the master clock
+ * division &lt;n&gt;         set the note division of the first arpegiator
+ * metronome on|off      print a line on each beat of the clock
+ * jitter                print how late the clock's ticks were
+ * latency [file]        print the latency of the notes since the keys, or
+ *                       save it to a file
+ * voices &lt;mode&gt; [priority]
+ *                       play the notes leaving the blocks poly, mono or
+ *                       legato, mono ones by last, low or high note priority
+ * panic                 turn off every note sounding
+ * wait &lt;millis&gt;         wait before reading the next command
+ * quit                  save the recording and exit
+ * </pre>
+ * The outputs are chosen with the options --serial &lt;port&gt;,
+ * --record &lt;file.mid&gt; and --loopback. The notes are sent to the serial
+ * port in the protocol given by --protocol legacy|midi|compact, on the MIDI
+ * channel given by --channel &lt;0-15&gt;. The serial port is opened again
+ * if it is unplugged; --link-down buffer|drop says what is done with the
+ * notes meanwhile. A scale is chosen with
+ * --scales &lt;file.csv&gt; --root &lt;root&gt; --mode &lt;mode&gt;.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class HeadlessSynth {
+
+	// the engine playing the notes
+	private final SynthEngine engine = SynthEngine.getInstance();
+
+	/**
+	 * Starts the synthesizer with the given options and plays the commands
+	 * read from the standard input.
+	 * @param args
+	 * 			The options.
+	 * @throws IOException
+	 * 			If the input could not be read, or the recording could not
+	 * 			be saved.
+	 */
+	public static void main(String[] args) throws IOException {
+		HeadlessSynth synth = new HeadlessSynth();
+		synth.configure(args);
+		try (BufferedReader in = new BufferedReader(
+								new InputStreamReader(System.in))) {
+			synth.run(in);
+		} finally {
+			synth.shutdown();
+		}
+	}
+
+	/**
+	 * Applies the command line options.
+	 * @param args
+	 * 			The options.
+	 */
+	private void configure(String[] args) {
+		SinkRegistry outputs = engine.getOutputs();
+		File scalesFile = null;
+		String root = null;
+		String mode = null;
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("--loopback")) {
+				outputs.enable(SinkRegistry.LOOPBACK);
+				continue;
+			}
+			if (i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+			switch (option) {
+			case "--serial":
+				SerialOut.setSerialPort(value);
+				outputs.enable(SinkRegistry.SERIAL);
+				break;
+			case "--protocol":
+				SerialOut.setProtocol(Protocol.fromName(value));
+				break;
+			case "--channel":
+				SerialOut.setChannel(Integer.parseInt(value));
+				break;
+			case "--link-down":
+				SerialOut.setLinkDownPolicy(LinkDownPolicy.fromName(value));
+				break;
+			case "--record":
+				MidiFileOut.setFile(new File(value));
+				MidiFileOut.setRecording(true);
+				outputs.enable(SinkRegistry.FILE);
+				break;
+			case "--scales":
+				scalesFile = new File(value);
+				break;
+			case "--root":
+				root = value;
+				break;
+			case "--mode":
+				mode = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+		if (scalesFile != null && root != null && mode != null)
+			engine.getScaleModel().setScale(loadScale(scalesFile, root, mode));
+	}
+
+	/**
+	 * Reads the scale with the given root and mode from the scales file.
+	 * @param scalesFile
+	 * 			The CSV file of scales.
+	 * @param root
+	 * 			The root of the scale.
+	 * @param mode
+	 * 			The mode of the scale.
+	 * @return
+	 * 			The scale.
+	 */
+	private static Scale loadScale(File scalesFile, String root, String mode) {
+		AllScales scales = new AllScales();
+		ScaleReader.getScales(scalesFile, scales);
+		Scale scale = new Scale();
+		scale.setMode(mode);
+		scale.setRoot(root);
+		scale.setNotes(scales.getNotes(mode, root));
+		return scale;
+	}
+
+	/**
+	 * Plays the commands read from the input until it ends or quit is read.
+	 * @param in
+	 * 			The input.
+	 * @throws IOException
+	 * 			If the input could not be read.
+	 */
+	private void run(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			int space = line.indexOf(' ');
+			String command = space < 0 ? line : line.substring(0, space);
+			String argument = space < 0 ? "" : line.substring(space + 1).trim();
+			try {
+				if (!execute(command, argument))
+					return;
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Executes one command.
+	 * @param command
+	 * 			The command.
+	 * @param argument
+	 * 			The rest of the line.
+	 * @return
+	 * 			False if the command was quit.
+	 */
+	private boolean execute(String command, String argument) {
+		switch (command) {
+		case "on":
+			int note = parseNote(argument);
+			engine.keyPressed(note, note);
+			break;
+		case "off":
+			engine.keyReleased(parseNote(argument));
+			break;
+		case "block":
+			if (argument.equals("none")) {
+				engine.setBlocks(Collections.<Block>emptyList());
+				break;
+			}
+			Block block = engine.createBlock(argument);
+			if (block == null)
+				throw new IllegalArgumentException("Unknown block " + argument);
+			engine.addBlock(block);
+			break;
+		case "shift":
+			PitchShiftBlock pitchShift = engine.findBlock(PitchShiftBlock.class);
+			if (pitchShift != null)
+				pitchShift.setShift(Integer.parseInt(argument));
+			break;
+		case "mode":
+			ArpegiatorBlock arpegiator = engine.findBlock(ArpegiatorBlock.class);
+			if (arpegiator != null)
+				arpegiator.setMode(ArpegiatorBlock.Mode.fromName(argument));
+			break;
+		case "tempo":
+			engine.getClock().setTempo(Double.parseDouble(argument));
+			break;
+		case "division":
+			ArpegiatorBlock arp = engine.findBlock(ArpegiatorBlock.class);
+			if (arp != null)
+				arp.setDivision(Integer.parseInt(argument));
+			break;
+		case "metronome":
+			Metronome metronome = engine.getMetronome();
+			if (argument.equals("on")) {
+				metronome.setOnBeat(beat -> System.out.println("beat " + beat));
+				metronome.start();
+			}
+			else
+				metronome.stop();
+			break;
+		case "jitter":
+			MasterClock clock = engine.getClock();
+			System.out.printf("%d ticks, mean %.3f ms, max %.3f ms late%n",
+					clock.getTicks(), clock.getMeanJitterNanos() / 1e6,
+					clock.getMaxJitterNanos() / 1e6);
+			break;
+		case "latency":
+			if (argument.isEmpty()) {
+				System.out.print(Latency.report());
+				break;
+			}
+			try {
+				Latency.dump(new File(argument));
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Could not save " + argument);
+			}
+			break;
+		case "voices":
+			String[] voiceArgs = argument.split("\\s+");
+			VoiceAllocator voices = engine.getVoices();
+			voices.setMode(VoiceAllocator.Mode.fromName(voiceArgs[0]));
+			if (voiceArgs.length > 1)
+				voices.setPriority(VoiceAllocator.Priority.fromName(
+								voiceArgs[1]));
+			break;
+		case "panic":
+			engine.panic();
+			break;
+		case "wait":
+			try {
+				Thread.sleep(Long.parseLong(argument));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			break;
+		case "quit":
+			return false;
+		default:
+			throw new IllegalArgumentException("Unknown command " + command);
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a note given by its name (C4) or its MIDI value (60).
+	 * @param text
+	 * 			The note.
+	 * @return
+	 * 			The MIDI value of the note.
+	 */
+	private static int parseNote(String text) {
+		int note;
+		if (!text.isEmpty() && Character.isDigit(text.charAt(0)))
+			note = Integer.parseInt(text);
+		else
+			note = MidiValues.getMidiValue(text);
+		if (note < 0 || note >= SynthEngine.MAX_KEYS)
+			throw new IllegalArgumentException("Not a note: " + text);
+		return note;
+	}
+
+	/**
+	 * Stops the blocks, saves the recording and closes the outputs.
+	 * @throws IOException
+	 * 			If the recording could not be saved.
+	 */
+	private void shutdown() throws IOException {
+		engine.setBlocks(Collections.<Block>emptyList());
+		SinkRegistry outputs = engine.getOutputs();
+		boolean isLoopbackOn = outputs.isEnabled(SinkRegistry.LOOPBACK);
+		// delivers the notes still queued for the sinks
+		outputs.disableAll();
+		if (isLoopbackOn) {
+			LoopbackSink loopback =
+					(LoopbackSink) outputs.getSink(SinkRegistry.LOOPBACK);
+			System.out.println(loopback.getEventCount()
+							+ " events sent to the loopback");
+		}
+		try {
+			MidiFileOut.setRecording(false);
+			MidiFileOut.saveAndClose();
+		} finally {
+			outputs.closeAll();
+		}
+	}
+}
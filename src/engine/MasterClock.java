@@ -0,0 +1,315 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import utilities.FlightEvents;
+
+/**
+ * The musical clock everything that plays in time follows: the metronome,
+ * the arpegiator, the recorder and file playback. It ticks a number of times
+ * per quarter note (the PPQN) at the current tempo, from a single thread.
+ * Each tick is due one tick length after the tick before was due, measured
+ * with System.nanoTime, so the ticks do not drift however long the clock
+ * runs. A tick that is late is still delivered, as soon as possible; if the
+ * clock falls more than a beat behind it starts again from the current time.
+ * The clock only runs while it has listeners.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class MasterClock {
+	
+	// the default number of ticks per quarter note, as in MIDI beat clock
+	public static final int DEFAULT_PPQN = 24;
+	// the default tempo, in beats (quarter notes) per minute
+	public static final double DEFAULT_BPM = 100;
+	// how long before a tick the clock thread stops parking and spins
+	private static final long SPIN_NANOS = 200_000L;
+	// no listeners
+	private static final ClockListener[] NO_LISTENERS = new ClockListener[0];
+	
+	// the number of ticks per quarter note
+	private volatile int ppqn;
+	// the tempo, in beats per minute
+	private volatile double bpm = DEFAULT_BPM;
+	// the length of a tick, from the tempo and the PPQN
+	private volatile long tickNanos;
+	
+	// the listeners, replaced whole when one is added or removed
+	private volatile ClockListener[] listeners = NO_LISTENERS;
+	// the clock thread, null until the first listener is added
+	private Thread clockThread;
+	
+	// the number of the last tick delivered, -1 before the first
+	private volatile long tick = -1;
+	// the time the last tick was due at
+	private volatile long tickTime;
+	
+	// the number of ticks delivered, and their total and largest lateness
+	private long ticks = 0;
+	private long totalLateNanos = 0;
+	private long maxLateNanos = 0;
+	
+	/**
+	 * Creates a clock with the default PPQN.
+	 */
+	public MasterClock() {
+		this(DEFAULT_PPQN);
+	}
+	
+	/**
+	 * Creates a clock.
+	 * @param ppqn
+	 * 			The number of ticks per quarter note.
+	 */
+	public MasterClock(int ppqn) {
+		setPpqn(ppqn);
+	}
+	
+	/**
+	 * Sets the number of ticks per quarter note. Takes effect from the next
+	 * tick.
+	 * @param ppqn
+	 * 			The number of ticks per quarter note.
+	 */
+	public synchronized void setPpqn(int ppqn) {
+		if (ppqn <= 0)
+			throw new IllegalArgumentException("bad PPQN: " + ppqn);
+		this.ppqn = ppqn;
+		tickNanos = Math.round(60e9 / (bpm * ppqn));
+	}
+	
+	/**
+	 * Returns the number of ticks per quarter note.
+	 * @return
+	 * 		The PPQN.
+	 */
+	public int getPpqn() {
+		return ppqn;
+	}
+	
+	/**
+	 * Sets the tempo. Takes effect from the next tick.
+	 * @param bpm
+	 * 			The tempo, in beats (quarter notes) per minute.
+	 */
+	public synchronized void setTempo(double bpm) {
+		if (!(bpm > 0))
+			throw new IllegalArgumentException("bad tempo: " + bpm);
+		this.bpm = bpm;
+		tickNanos = Math.round(60e9 / (bpm * ppqn));
+	}
+	
+	/**
+	 * Sets the tempo from a MIDI tempo, the length of a quarter note.
+	 * @param microsPerQuarter
+	 * 			The length of a quarter note in microseconds.
+	 */
+	public void setTempoMicros(int microsPerQuarter) {
+		setTempo(60e6 / microsPerQuarter);
+	}
+	
+	/**
+	 * Returns the tempo.
+	 * @return
+	 * 		The tempo, in beats per minute.
+	 */
+	public double getTempo() {
+		return bpm;
+	}
+	
+	/**
+	 * Returns the tempo as a MIDI tempo.
+	 * @return
+	 * 		The length of a quarter note in microseconds.
+	 */
+	public int getTempoMicros() {
+		return (int) Math.round(60e6 / bpm);
+	}
+	
+	/**
+	 * Returns the length of a tick at the current tempo.
+	 * @return
+	 * 		The length of a tick in nanoseconds.
+	 */
+	public long getTickNanos() {
+		return tickNanos;
+	}
+	
+	/**
+	 * Adds a listener. The clock starts ticking if it was not.
+	 * @param listener
+	 * 			The listener.
+	 */
+	public synchronized void addListener(ClockListener listener) {
+		ClockListener[] current = listeners;
+		for (ClockListener l : current)
+			if (l == listener)
+				return;
+		ClockListener[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = listener;
+		listeners = updated;
+		if (clockThread == null) {
+			clockThread = new Thread(this::run, "master-clock");
+			clockThread.setDaemon(true);
+			clockThread.start();
+		}
+		else if (current.length == 0)
+			LockSupport.unpark(clockThread);
+	}
+	
+	/**
+	 * Removes a listener. The clock stops ticking when it has no listeners.
+	 * @param listener
+	 * 			The listener.
+	 */
+	public synchronized void removeListener(ClockListener listener) {
+		ClockListener[] current = listeners;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == listener) {
+				ClockListener[] updated = new ClockListener[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i,
+									current.length - i - 1);
+				listeners = updated;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Checks if the clock is ticking.
+	 * @return
+	 * 		True if the clock has listeners.
+	 */
+	public boolean isRunning() {
+		return listeners.length > 0;
+	}
+	
+	/**
+	 * Returns the number of the last tick.
+	 * @return
+	 * 		The last tick, -1 if the clock has not ticked.
+	 */
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * Returns the time of the last beat, that is the last tick on a quarter
+	 * note. Used to line things up with the beat.
+	 * @return
+	 * 		The System.nanoTime() of the last beat, or the current time if
+	 * 		the clock is not running.
+	 */
+	public long getBeatNanos() {
+		if (!isRunning() || tick < 0)
+			return System.nanoTime();
+		long lastTick;
+		long lastTime;
+		synchronized (this) {
+			lastTick = tick;
+			lastTime = tickTime;
+		}
+		return lastTime - (lastTick % ppqn) * tickNanos;
+	}
+	
+	/**
+	 * The body of the clock thread.
+	 */
+	private void run() {
+		long deadline = System.nanoTime();
+		long next = 0;
+		while (true) {
+			ClockListener[] current = listeners;
+			if (current.length == 0) {
+				LockSupport.park(this);
+				deadline = System.nanoTime();
+				continue;
+			}
+			waitUntil(deadline);
+			long late = System.nanoTime() - deadline;
+			if (late > ppqn * tickNanos) {
+				// more than a beat behind; carry on from now
+				deadline = System.nanoTime();
+				late = 0;
+			}
+			synchronized (this) {
+				tick = next;
+				tickTime = deadline;
+			}
+			FlightEvents.ClockTick flightEvent = new FlightEvents.ClockTick();
+			flightEvent.begin();
+			for (ClockListener listener : current) {
+				try {
+					listener.onTick(next, deadline);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+			flightEvent.end();
+			if (flightEvent.shouldCommit()) {
+				flightEvent.tick = next;
+				flightEvent.lateness = late;
+				flightEvent.listeners = current.length;
+				flightEvent.commit();
+			}
+			recordLateness(late);
+			next++;
+			deadline += tickNanos;
+		}
+	}
+	
+	/**
+	 * Waits until the given time. Parks until shortly before it and then
+	 * spins, as parking alone can wake up a millisecond late.
+	 * @param deadline
+	 * 			The System.nanoTime() to wait for.
+	 */
+	private static void waitUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS)
+			LockSupport.parkNanos(remaining - SPIN_NANOS);
+		while (deadline - System.nanoTime() > 0)
+			;
+	}
+	
+	/**
+	 * Adds the lateness of a tick to the jitter statistics.
+	 * @param lateNanos
+	 * 			How late the tick was delivered.
+	 */
+	private synchronized void recordLateness(long lateNanos) {
+		ticks++;
+		totalLateNanos += lateNanos;
+		if (lateNanos > maxLateNanos)
+			maxLateNanos = lateNanos;
+	}
+	
+	/**
+	 * Returns the number of ticks delivered.
+	 * @return
+	 * 		The number of ticks.
+	 */
+	public synchronized long getTicks() {
+		return ticks;
+	}
+	
+	/**
+	 * Returns the average time the ticks were delivered after they were due.
+	 * @return
+	 * 		The average lateness in nanoseconds.
+	 */
+	public synchronized long getMeanJitterNanos() {
+		return ticks == 0 ? 0 : totalLateNanos / ticks;
+	}
+	
+	/**
+	 * Returns the longest time a tick was delivered after it was due.
+	 * @return
+	 * 		The largest lateness in nanoseconds.
+	 */
+	public synchronized long getMaxJitterNanos() {
+		return maxLateNanos;
+	}
+}
@@ -0,0 +1,79 @@
+package engine;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the beats of the MasterClock while it is on. The beats fall on the
+ * clock's quarter notes, so the metronome is in phase with the arpegiator
+ * and everything else following the clock.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class Metronome implements ClockListener {
+	
+	// the number of beats in a bar
+	public static final int BEATS_PER_BAR = 4;
+	
+	// the clock the beats come from
+	private final MasterClock clock;
+	// told the number of each beat, on the clock thread
+	private volatile LongConsumer onBeat;
+	// the number of beats since the metronome was turned on
+	private volatile long beats = 0;
+	
+	/**
+	 * Creates a metronome following the given clock.
+	 * @param clock
+	 * 			The clock.
+	 */
+	public Metronome(MasterClock clock) {
+		this.clock = clock;
+	}
+	
+	/**
+	 * Sets what is told about each beat. The callback is made on the clock
+	 * thread, with the number of the beat since the metronome was turned
+	 * on (0 for the first beat).
+	 * @param onBeat
+	 * 			The callback, or null.
+	 */
+	public void setOnBeat(LongConsumer onBeat) {
+		this.onBeat = onBeat;
+	}
+	
+	/**
+	 * Turns the metronome on. The first beat is the clock's next quarter
+	 * note.
+	 */
+	public void start() {
+		beats = 0;
+		clock.addListener(this);
+	}
+	
+	/**
+	 * Turns the metronome off.
+	 */
+	public void stop() {
+		clock.removeListener(this);
+	}
+	
+	/**
+	 * Returns the number of beats since the metronome was turned on.
+	 * @return
+	 * 		The number of beats.
+	 */
+	public long getBeats() {
+		return beats;
+	}
+	
+	@Override
+	public void onTick(long tick, long timeNanos) {
+		if (tick % clock.getPpqn() != 0)
+			return;
+		long beat = beats;
+		beats = beat + 1;
+		LongConsumer callback = onBeat;
+		if (callback != null)
+			callback.accept(beat);
+	}
+}
@@ -0,0 +1,76 @@
+package engine;
+
+/**
+ * Lets only one note sound at a time. Of the notes held, the one chosen by
+ * the priority (the last one played by default) sounds; when it is
+ * released the next one by priority sounds again. In legato the new note
+ * is turned on before the old one is turned off, so the synthesizer can
+ * glide between them instead of playing each note afresh.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class MonophonicBlock extends Block {
+	
+	// the name of the block
+	public static final String NAME = "Monophonic";
+	// the channel the notes of the block are kept on
+	private static final int CHANNEL = 0;
+	
+	// the notes held and the one sounding
+	private final VoiceAllocator voices =
+					new VoiceAllocator(VoiceAllocator.Mode.MONO);
+	
+	/**
+	 * Creates the block.
+	 */
+	public MonophonicBlock() {
+		super(NAME);
+	}
+	
+	/**
+	 * Sets which of the notes held sounds.
+	 * @param priority
+	 * 			The priority.
+	 */
+	public void setPriority(VoiceAllocator.Priority priority) {
+		voices.setPriority(priority);
+	}
+	
+	/**
+	 * Returns which of the notes held sounds.
+	 * @return
+	 * 		The priority.
+	 */
+	public VoiceAllocator.Priority getPriority() {
+		return voices.getPriority();
+	}
+	
+	/**
+	 * Sets if the notes are played legato.
+	 * @param isLegato
+	 * 			True to turn the new note on before the old one off.
+	 */
+	public void setLegato(boolean isLegato) {
+		voices.setMode(isLegato ? VoiceAllocator.Mode.LEGATO
+								: VoiceAllocator.Mode.MONO);
+	}
+	
+	/**
+	 * Checks if the notes are played legato.
+	 * @return
+	 * 		True if they are.
+	 */
+	public boolean isLegato() {
+		return voices.getMode() == VoiceAllocator.Mode.LEGATO;
+	}
+	
+	@Override
+	public void process(NoteEvent event, Emitter out) {
+		voices.process(CHANNEL, event, out);
+	}
+	
+	@Override
+	public void reset() {
+		voices.reset();
+	}
+}
@@ -0,0 +1,401 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Carries note events from the threads publishing them to any number of
+ * subscribers, each on its own thread, without locks. The events are written
+ * into a ring of preallocated slots (a packed long for the type, key, note,
+ * velocity and channel, and a long for the time stamp), so publishing an
+ * event allocates nothing. Every subscriber sees every event, in the order
+ * they were published.
+ * A publisher claims the next slot with a compare and swap, so events can
+ * be published from more than one thread. An event is dropped, and counted,
+ * if the slowest subscriber is a whole ring behind; the publisher never
+ * waits. Events that must not be lost, such as note offs, are published with
+ * publishOrWait() instead, which waits for room rather than dropping them.
+ * An idle subscriber spins for a short while and then parks until an event
+ * is published.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class NoteBus {
+
+	// the default number of slots in the ring
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	// the types of the events
+	public static final int NOTE_ON = 1;
+	public static final int NOTE_OFF = 2;
+	public static final int CONFIG = 3;
+	public static final int ALL_NOTES_OFF = 4;
+
+	// how many times an idle subscriber checks for an event before parking
+	private static final int SPINS = 1000;
+	// the longest an idle subscriber parks for before checking again
+	private static final long PARK_NANOS = 1_000_000L;
+	// no subscribers
+	private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+	// the slots of the ring, the number of slots is a power of two
+	private final int mask;
+	private final long[] events;
+	private final long[] times;
+	// the sequence number of the event in each slot, once it is published
+	private final AtomicLongArray published;
+	// the sequence number of the next event to publish
+	private final AtomicLong claimed = new AtomicLong(0);
+	// the number of events dropped because the ring was full
+	private final AtomicLong droppedEvents = new AtomicLong(0);
+	// the number of events that waited for room because the ring was full
+	private final AtomicLong delayedEvents = new AtomicLong(0);
+	// the subscribers, replaced whole when one is added or removed
+	private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+	/**
+	 * Receives the events of the bus on its own thread.
+	 */
+	public final class Subscription implements AutoCloseable {
+
+		// the handler given the events
+		private final NoteHandler handler;
+		// the thread calling the handler
+		private final Thread thread;
+		// the sequence number of the next event to handle
+		private final AtomicLong sequence;
+		// checks if the thread is parked, waiting for an event
+		private volatile boolean isWaiting = false;
+		// checks if the subscription is still taking events
+		private volatile boolean isRunning = true;
+
+		/**
+		 * Creates a subscription, starting from the next event published.
+		 * @param handler
+		 * 			The handler given the events.
+		 * @param name
+		 * 			The name of the thread.
+		 */
+		private Subscription(NoteHandler handler, String name) {
+			this.handler = handler;
+			sequence = new AtomicLong(claimed.get());
+			thread = new Thread(this::run, name);
+			thread.setDaemon(true);
+		}
+
+		/**
+		 * The body of the subscriber's thread.
+		 */
+		private void run() {
+			long next = sequence.get();
+			int idle = 0;
+			while (true) {
+				int slot = (int) next & mask;
+				if (published.get(slot) == next) {
+					try {
+						handler.onEvent(events[slot], times[slot]);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+					sequence.lazySet(++next);
+					idle = 0;
+				}
+				else if (!isRunning)
+					return;
+				else if (++idle > SPINS) {
+					isWaiting = true;
+					if (published.get(slot) != next && isRunning)
+						LockSupport.parkNanos(this, PARK_NANOS);
+					isWaiting = false;
+				}
+			}
+		}
+
+		/**
+		 * Waits until the subscriber has handled every event published
+		 * before this was called.
+		 */
+		public void drain() {
+			long last = claimed.get();
+			while (sequence.get() < last && thread.isAlive())
+				LockSupport.parkNanos(PARK_NANOS / 10);
+		}
+
+		/**
+		 * Handles the events already published and stops the subscriber's
+		 * thread.
+		 */
+		@Override
+		public void close() {
+			drain();
+			isRunning = false;
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			unsubscribe(this);
+		}
+	}
+
+	/**
+	 * Creates a bus with the default capacity.
+	 */
+	public NoteBus() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a bus.
+	 * @param capacity
+	 * 			The number of events the ring holds, rounded up to a power of
+	 * 			two.
+	 */
+	public NoteBus(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		mask = size - 1;
+		events = new long[size];
+		times = new long[size];
+		long[] none = new long[size];
+		Arrays.fill(none, -1);
+		published = new AtomicLongArray(none);
+	}
+
+	/**
+	 * Packs an event into a long.
+	 * @param type
+	 * 			NOTE_ON, NOTE_OFF or CONFIG.
+	 * @param key
+	 * 			The key the event is for (0 - 255).
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note.
+	 * @param channel
+	 * 			The MIDI channel (0 - 15).
+	 * @return
+	 * 			The packed event.
+	 */
+	public static long pack(int type, int key, int note, int velocity,
+								int channel) {
+		return (long) type << 32 | (long) (key & 0xFF) << 24
+				| (channel & 0xF) << 16 | (note & 0x7F) << 8 | (velocity & 0x7F);
+	}
+
+	/**
+	 * Returns the type of a packed event.
+	 * @param event
+	 * 			The packed event.
+	 * @return
+	 * 			NOTE_ON, NOTE_OFF or CONFIG.
+	 */
+	public static int getType(long event) {
+		return (int) (event >>> 32);
+	}
+
+	/**
+	 * Returns the key of a packed event.
+	 * @param event
+	 * 			The packed event.
+	 * @return
+	 * 			The key.
+	 */
+	public static int getKey(long event) {
+		return (int) event >>> 24 & 0xFF;
+	}
+
+	/**
+	 * Returns the channel of a packed event.
+	 * @param event
+	 * 			The packed event.
+	 * @return
+	 * 			The MIDI channel.
+	 */
+	public static int getChannel(long event) {
+		return (int) event >>> 16 & 0xF;
+	}
+
+	/**
+	 * Returns the note of a packed event.
+	 * @param event
+	 * 			The packed event.
+	 * @return
+	 * 			The MIDI value of the note.
+	 */
+	public static int getNote(long event) {
+		return (int) event >>> 8 & 0x7F;
+	}
+
+	/**
+	 * Returns the velocity of a packed event.
+	 * @param event
+	 * 			The packed event.
+	 * @return
+	 * 			The velocity.
+	 */
+	public static int getVelocity(long event) {
+		return (int) event & 0x7F;
+	}
+
+	/**
+	 * Publishes an event, stamped with the current time.
+	 * @param event
+	 * 			The packed event.
+	 * @return
+	 * 			False if the ring was full and the event was dropped.
+	 */
+	public boolean publish(long event) {
+		return publish(event, System.nanoTime());
+	}
+
+	/**
+	 * Publishes an event. Does not allocate or wait.
+	 * @param event
+	 * 			The packed event.
+	 * @param timeNanos
+	 * 			The System.nanoTime() of the event.
+	 * @return
+	 * 			False if the ring was full and the event was dropped.
+	 */
+	public boolean publish(long event, long timeNanos) {
+		if (tryPublish(event, timeNanos))
+			return true;
+		droppedEvents.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Publishes an event that must not be lost, such as a note off. If the
+	 * ring is full, waits until the slowest subscriber makes room instead of
+	 * dropping the event, and counts the event as delayed. Must not be called
+	 * from the thread of one of the bus's subscribers, which could never make
+	 * the room it waits for.
+	 * @param event
+	 * 			The packed event.
+	 * @param timeNanos
+	 * 			The System.nanoTime() of the event.
+	 */
+	public void publishOrWait(long event, long timeNanos) {
+		if (tryPublish(event, timeNanos))
+			return;
+		delayedEvents.incrementAndGet();
+		int idle = 0;
+		while (!tryPublish(event, timeNanos)) {
+			if (++idle > SPINS)
+				LockSupport.parkNanos(PARK_NANOS / 10);
+		}
+	}
+
+	/**
+	 * Publishes an event if there is room in the ring.
+	 * @param event
+	 * 			The packed event.
+	 * @param timeNanos
+	 * 			The System.nanoTime() of the event.
+	 * @return
+	 * 			False if the ring was full.
+	 */
+	private boolean tryPublish(long event, long timeNanos) {
+		Subscription[] current = subscriptions;
+		long next;
+		do {
+			next = claimed.get();
+			if (next - events.length >= slowest(current, next))
+				return false;
+		} while (!claimed.compareAndSet(next, next + 1));
+		int slot = (int) next & mask;
+		events[slot] = event;
+		times[slot] = timeNanos;
+		published.set(slot, next);
+		for (Subscription subscription : current)
+			if (subscription.isWaiting)
+				LockSupport.unpark(subscription.thread);
+		return true;
+	}
+
+	/**
+	 * Adds a subscriber, which is given every event published from now on.
+	 * @param handler
+	 * 			The handler given the events, on the subscriber's thread.
+	 * @param name
+	 * 			The name of the subscriber's thread.
+	 * @return
+	 * 			The subscription, closed to stop it.
+	 */
+	public synchronized Subscription subscribe(NoteHandler handler,
+									String name) {
+		Subscription subscription = new Subscription(handler, name);
+		Subscription[] current = subscriptions;
+		Subscription[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = subscription;
+		subscriptions = updated;
+		subscription.thread.start();
+		return subscription;
+	}
+
+	/**
+	 * Removes a subscriber.
+	 * @param subscription
+	 * 			The subscription.
+	 */
+	private synchronized void unsubscribe(Subscription subscription) {
+		Subscription[] current = subscriptions;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == subscription) {
+				Subscription[] updated = new Subscription[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i,
+									updated.length - i);
+				subscriptions = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Handles the events already published and stops all the subscribers.
+	 */
+	public void close() {
+		for (Subscription subscription : subscriptions)
+			subscription.close();
+	}
+
+	/**
+	 * Returns the number of events dropped because the ring was full.
+	 * @return
+	 * 		The number of dropped events.
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	/**
+	 * Returns the number of events published with publishOrWait() that had
+	 * to wait for room because the ring was full.
+	 * @return
+	 * 		The number of delayed events.
+	 */
+	public long getDelayedEvents() {
+		return delayedEvents.get();
+	}
+
+	/**
+	 * Returns the sequence number of the slowest subscriber.
+	 * @param current
+	 * 			The subscribers.
+	 * @param next
+	 * 			The sequence number of the next event, returned if there are
+	 * 			no subscribers.
+	 * @return
+	 * 			The lowest sequence number of the next event to handle.
+	 */
+	private static long slowest(Subscription[] current, long next) {
+		long lowest = next;
+		for (Subscription subscription : current)
+			lowest = Math.min(lowest, subscription.sequence.get());
+		return lowest;
+	}
+}
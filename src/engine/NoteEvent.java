@@ -0,0 +1,147 @@
+package engine;
+
+/**
+ * A note on or a note off passed along the chain of processing blocks.
+ * Events are immutable, so a block can hold on to the events it is given.
+ * An event caused by a key carries the time the key was played at, so the
+ * latency of each stage after it can be measured.
+ * @author Kaamraan Kamaal
+ *
+ */
+public final class NoteEvent {
+	
+	// checks if this is a note on
+	private final boolean isNoteOn;
+	// the MIDI value of the note
+	private final int note;
+	// the velocity of the note, 0 for a note off
+	private final int velocity;
+	// the System.nanoTime() of the key that caused the event, 0 if none
+	private final long timeNanos;
+	
+	/**
+	 * Creates an event.
+	 * @param isNoteOn
+	 * 			True for a note on.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note.
+	 * @param timeNanos
+	 * 			The time of the key that caused the event, 0 if none.
+	 */
+	private NoteEvent(boolean isNoteOn, int note, int velocity,
+								long timeNanos) {
+		this.isNoteOn = isNoteOn;
+		this.note = note;
+		this.velocity = velocity;
+		this.timeNanos = timeNanos;
+	}
+	
+	/**
+	 * Creates a note on.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note.
+	 * @return
+	 * 			The event.
+	 */
+	public static NoteEvent noteOn(int note, int velocity) {
+		return new NoteEvent(true, note, velocity, 0);
+	}
+	
+	/**
+	 * Creates a note on caused by a key.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the key was played at.
+	 * @return
+	 * 			The event.
+	 */
+	public static NoteEvent noteOn(int note, int velocity, long timeNanos) {
+		return new NoteEvent(true, note, velocity, timeNanos);
+	}
+	
+	/**
+	 * Creates a note off.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @return
+	 * 			The event.
+	 */
+	public static NoteEvent noteOff(int note) {
+		return new NoteEvent(false, note, 0, 0);
+	}
+	
+	/**
+	 * Creates a note off caused by a key.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the key was played at.
+	 * @return
+	 * 			The event.
+	 */
+	public static NoteEvent noteOff(int note, long timeNanos) {
+		return new NoteEvent(false, note, 0, timeNanos);
+	}
+	
+	/**
+	 * Returns an event of the same kind and velocity for another note.
+	 * @param otherNote
+	 * 			The MIDI value of the other note.
+	 * @return
+	 * 			The event for the other note.
+	 */
+	public NoteEvent withNote(int otherNote) {
+		if (otherNote == note)
+			return this;
+		return new NoteEvent(isNoteOn, otherNote, velocity, timeNanos);
+	}
+	
+	/**
+	 * Checks if this is a note on.
+	 * @return
+	 * 		True for a note on, false for a note off.
+	 */
+	public boolean isNoteOn() {
+		return isNoteOn;
+	}
+	
+	/**
+	 * Returns the note.
+	 * @return
+	 * 		The MIDI value of the note.
+	 */
+	public int getNote() {
+		return note;
+	}
+	
+	/**
+	 * Returns the velocity.
+	 * @return
+	 * 		The velocity of the note, 0 for a note off.
+	 */
+	public int getVelocity() {
+		return velocity;
+	}
+	
+	/**
+	 * Returns the time of the key that caused the event.
+	 * @return
+	 * 		The System.nanoTime() the key was played at, 0 if the event was
+	 * 		not caused by a key (an arpegiator step, for example).
+	 */
+	public long getTimeNanos() {
+		return timeNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return (isNoteOn ? "on " : "off ") + note;
+	}
+}
@@ -0,0 +1,21 @@
+package engine;
+
+/**
+ * Receives the events of a NoteBus. The callback is made on the
+ * subscriber's own thread for every event, in the order the events were
+ * published; it is given the packed event, so it should not allocate.
+ * @author Kaamraan Kamaal
+ *
+ */
+@FunctionalInterface
+public interface NoteHandler {
+
+	/**
+	 * Called for each event published on the bus.
+	 * @param event
+	 * 			The packed event, read with NoteBus.getType(), getNote() etc.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the event was published at.
+	 */
+	void onEvent(long event, long timeNanos);
+}
@@ -0,0 +1,85 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Shifts each note by a number of semitones, and then to the closest note
+ * in the scale, read from the scale's lookup tables. A note can be held
+ * more than once; its shifted note is worked out when it is first pressed
+ * and kept until it is last released, so every off matches an on.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class PitchShiftBlock extends Block {
+	
+	// the name of the block
+	public static final String NAME = "Pitch Shift";
+	
+	// the scale the shifted notes are kept in
+	private final ScaleModel scaleModel;
+	// the number of semitones to shift by
+	private volatile int shift = 0;
+	// the shifted note sent for each note on, so the off matches it
+	private final int[] shiftedNotes = new int[128];
+	// the number of times each note is held
+	private final int[] heldCounts = new int[128];
+	
+	/**
+	 * Creates the block.
+	 * @param scaleModel
+	 * 			The scale the shifted notes are kept in.
+	 */
+	public PitchShiftBlock(ScaleModel scaleModel) {
+		super(NAME);
+		this.scaleModel = scaleModel;
+	}
+	
+	@Override
+	public synchronized void process(NoteEvent event, Emitter out) {
+		int note = event.getNote();
+		if (event.isNoteOn()) {
+			if (heldCounts[note]++ == 0)
+				shiftedNotes[note] = getPitchShiftedNote(note);
+		}
+		else if (heldCounts[note] == 0)
+			return;
+		else
+			heldCounts[note]--;
+		out.emit(event.withNote(shiftedNotes[note]));
+	}
+	
+	@Override
+	public synchronized void reset() {
+		Arrays.fill(heldCounts, 0);
+	}
+	
+	/**
+	 * Sets the pitch shift parameter.
+	 * @param semitones
+	 * 			The number of semitones to shift the notes by.
+	 */
+	public void setShift(int semitones) {
+		shift = semitones;
+	}
+	
+	/**
+	 * Returns the pitch shift parameter.
+	 * @return
+	 * 		The number of semitones the notes are shifted by.
+	 */
+	public int getShift() {
+		return shift;
+	}
+	
+	/**
+	 * Returns the shifted note corresponding to the given note.
+	 * @param note
+	 * 			The original note.
+	 * @return
+	 * 			The shifted note, moved to the closest note in the scale if
+	 * 			it is not in the scale.
+	 */
+	public int getPitchShiftedNote(int note) {
+		return scaleModel.getTables().getClosest(note + shift);
+	}
+}
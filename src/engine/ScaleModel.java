@@ -0,0 +1,63 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import keyboard.util.Scale;
+import keyboard.util.ScaleTables;
+
+/**
+ * Holds the scale the notes are played in. The blocks use it to keep the
+ * notes they produce in the scale.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ScaleModel {
+	
+	// the current scale, null until one is chosen
+	private volatile Scale currentScale;
+	
+	/**
+	 * Sets the current scale.
+	 * @param scale
+	 * 			The scale the notes are played in.
+	 */
+	public void setScale(Scale scale) {
+		currentScale = scale;
+	}
+	
+	/**
+	 * Returns the current scale.
+	 * @return
+	 * 		The current scale, null if none has been chosen.
+	 */
+	public Scale getScale() {
+		return currentScale;
+	}
+	
+	/**
+	 * Returns the lookup tables of the current scale.
+	 * @return
+	 * 		The tables of the scale, ScaleTables.EMPTY if no scale has been
+	 * 		chosen.
+	 */
+	public ScaleTables getTables() {
+		Scale scale = currentScale;
+		if (scale != null)
+			return scale.getTables();
+		return ScaleTables.EMPTY;
+	}
+	
+	/**
+	 * Returns the midi values corresponding to the notes in the scale.
+	 * @return
+	 * 		The List of midi values of the notes in the scale (empty if no
+	 * 		scale has been chosen).
+	 */
+	public List<Integer> getMidiOfScale() {
+		Scale scale = currentScale;
+		if (scale != null)
+			return scale.getMidiValues();
+		return new ArrayList<>();
+	}
+}
@@ -0,0 +1,424 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import output.OutputSink;
+import output.SinkRegistry;
+import utilities.FlightEvents;
+import utilities.Latency;
+
+/**
+ * The core of the synthesizer. Takes the keys pressed and released, runs the
+ * notes through the chain of processing blocks and sends the result to the
+ * output sinks. The engine does not depend on JavaFX, so it can run without
+ * a user interface; the KeyboardUI and the processing block views only
+ * forward the user's input to it.
+ * The chain is rebuilt when a block is added or removed, and swapped in
+ * whole, so the notes never wait for an edit of the chain. A key released
+ * goes through the chain it was pressed in, so its note offs always match
+ * its note ons.
+ * The keys pressed and released are published on a NoteBus and run through
+ * the chain on the engine's own thread, so the thread of the user interface
+ * only packs the key into the bus and never waits for the blocks or sinks.
+ * The notes leaving the chain go through a VoiceAllocator, which makes sure
+ * every note on sent to the sinks gets exactly one note off, and can turn
+ * off every note at once (see panic()).
+ * This class uses a singleton design.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SynthEngine {
+	
+	// the number of keys the engine can keep track of
+	public static final int MAX_KEYS = 128;
+	// the value stored for a key that is not held down
+	private static final int NO_NOTE = -1;
+	// the channel the notes of the keys are kept on in the voice table
+	private static final int OUTPUT_CHANNEL = 0;
+	// the channel the notes of a MIDI file played are kept on in the voice
+	// table
+	public static final int PLAYBACK_CHANNEL = 1;
+	
+	// the only instance of this class available to use.
+	private static final SynthEngine INSTANCE = new SynthEngine();
+	
+	// the scale the notes are played in
+	private final ScaleModel scaleModel = new ScaleModel();
+	// the clock everything playing in time follows
+	private final MasterClock clock = new MasterClock();
+	// the metronome, following the clock
+	private final Metronome metronome = new Metronome(clock);
+	// the output sinks the notes are sent to
+	private final SinkRegistry outputs;
+	// sends the notes sounding to the sinks currently chosen
+	private final Emitter sinks;
+	// the notes sounding at the end of the chain
+	private final VoiceAllocator voices =
+					new VoiceAllocator(VoiceAllocator.Mode.POLY);
+	// sends the events leaving the chain through the voice table
+	private final Emitter output;
+	// the chain of processing blocks
+	private volatile BlockChain chain;
+	// carries the keys pressed and released to the chain's thread
+	private final NoteBus inputBus = new NoteBus();
+	// runs the keys through the chain
+	private final NoteBus.Subscription chainSubscription;
+	
+	// the note pressed for each key
+	private final int[] pressedNotes = new int[MAX_KEYS];
+	// the chain each key was pressed in, only used on the chain's thread
+	private final BlockChain[] pressedChains = new BlockChain[MAX_KEYS];
+	// the panics published but not yet run on the chain's thread; the keys
+	// pressed before them are skipped
+	private final AtomicInteger pendingPanics = new AtomicInteger();
+	
+	/**
+	 * Creates the engine.
+	 */
+	private SynthEngine() {
+		this(SinkRegistry.getInstance());
+	}
+	
+	/**
+	 * Creates an engine sending its notes to the given sinks.
+	 * @param outputs
+	 * 			The registry of the output sinks.
+	 */
+	SynthEngine(SinkRegistry outputs) {
+		this.outputs = outputs;
+		sinks = event -> {
+			FlightEvents.NoteDispatch flightEvent =
+							new FlightEvents.NoteDispatch();
+			flightEvent.begin();
+			long keyNanos = event.getTimeNanos();
+			Latency.record(Latency.Stage.BLOCKS, keyNanos);
+			long timeNanos = keyNanos != 0 ? keyNanos : System.nanoTime();
+			if (event.isNoteOn())
+				outputs.getOutput().noteOn(event.getNote(), event.getVelocity(),
+								timeNanos);
+			else
+				outputs.getOutput().noteOff(event.getNote(), timeNanos);
+			flightEvent.end();
+			if (flightEvent.shouldCommit()) {
+				flightEvent.note = event.getNote();
+				flightEvent.velocity = event.getVelocity();
+				flightEvent.isNoteOn = event.isNoteOn();
+				flightEvent.sinceKey = keyNanos != 0
+								? System.nanoTime() - keyNanos : 0;
+				flightEvent.commit();
+			}
+		};
+		output = event -> voices.process(OUTPUT_CHANNEL, event, sinks);
+		chain = new BlockChain(Collections.<Block>emptyList(), output);
+		Arrays.fill(pressedNotes, NO_NOTE);
+		chainSubscription = inputBus.subscribe(this::runKey, "note-chain");
+	}
+	
+	/**
+	 * Returns the available instance.
+	 * @return
+	 * 		The instance that can be accessed by the outside classes.
+	 */
+	public static SynthEngine getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Returns the scale the notes are played in.
+	 * @return
+	 * 		The scale model.
+	 */
+	public ScaleModel getScaleModel() {
+		return scaleModel;
+	}
+	
+	/**
+	 * Returns the clock everything playing in time follows.
+	 * @return
+	 * 		The master clock.
+	 */
+	public MasterClock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * Returns the metronome.
+	 * @return
+	 * 		The metronome.
+	 */
+	public Metronome getMetronome() {
+		return metronome;
+	}
+	
+	/**
+	 * Returns the registry of the output sinks.
+	 * @return
+	 * 		The output sinks.
+	 */
+	public SinkRegistry getOutputs() {
+		return outputs;
+	}
+	
+	/**
+	 * Returns the table of the notes sounding at the end of the chain.
+	 * @return
+	 * 		The voice table.
+	 */
+	public VoiceAllocator getVoices() {
+		return voices;
+	}
+	
+	/**
+	 * Makes a new processing block with the given name.
+	 * @param name
+	 * 			The name of the block.
+	 * @return
+	 * 			The block, or null if there is no block with the name.
+	 */
+	public Block createBlock(String name) {
+		switch (name) {
+		case ChordifyBlock.NAME:
+			return new ChordifyBlock(scaleModel);
+		case ArpegiatorBlock.NAME:
+			return new ArpegiatorBlock(clock);
+		case PitchShiftBlock.NAME:
+			return new PitchShiftBlock(scaleModel);
+		case MonophonicBlock.NAME:
+			return new MonophonicBlock();
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Replaces the chain of processing blocks. The blocks no longer in the
+	 * chain are stopped.
+	 * @param blocks
+	 * 			The blocks, in the order the notes go through them. An
+	 * 			empty list plays the notes unprocessed.
+	 */
+	public synchronized void setBlocks(List<Block> blocks) {
+		// the keys played before the change go through the old chain
+		drain();
+		BlockChain oldChain = chain;
+		chain = new BlockChain(blocks, output);
+		for (Block block : oldChain.getBlocks())
+			if (!blocks.contains(block))
+				block.stop();
+	}
+	
+	/**
+	 * Adds a block to the end of the chain.
+	 * @param block
+	 * 			The block.
+	 */
+	public synchronized void addBlock(Block block) {
+		List<Block> blocks = new ArrayList<>(chain.getBlocks());
+		blocks.add(block);
+		setBlocks(blocks);
+	}
+	
+	/**
+	 * Removes a block from the chain.
+	 * @param block
+	 * 			The block.
+	 */
+	public synchronized void removeBlock(Block block) {
+		List<Block> blocks = new ArrayList<>(chain.getBlocks());
+		if (blocks.remove(block))
+			setBlocks(blocks);
+	}
+	
+	/**
+	 * Returns the blocks of the chain.
+	 * @return
+	 * 		The blocks, in the order the notes go through them.
+	 */
+	public List<Block> getBlocks() {
+		return chain.getBlocks();
+	}
+	
+	/**
+	 * Returns the first block of the given type in the chain.
+	 * @param type
+	 * 			The type of the block.
+	 * @return
+	 * 			The block, or null if there is none in the chain.
+	 */
+	public <T extends Block> T findBlock(Class<T> type) {
+		for (Block block : chain.getBlocks())
+			if (type.isInstance(block))
+				return type.cast(block);
+		return null;
+	}
+	
+	/**
+	 * Plays the given note for a key pressed. The note is run through the
+	 * chain of blocks, on the engine's thread, and the result is sent to the
+	 * output. A key already held down is ignored.
+	 * @param key
+	 * 			The key pressed (0 - MAX_KEYS-1).
+	 * @param note
+	 * 			The MIDI value of the note of the key.
+	 */
+	public void keyPressed(int key, int note) {
+		keyPressed(key, note, System.nanoTime());
+	}
+	
+	/**
+	 * Plays the given note for a key pressed at the given time.
+	 * @param key
+	 * 			The key pressed (0 - MAX_KEYS-1).
+	 * @param note
+	 * 			The MIDI value of the note of the key.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the key was pressed at, which the
+	 * 			latency of the note is measured from.
+	 */
+	public void keyPressed(int key, int note, long timeNanos) {
+		synchronized (pressedNotes) {
+			if (pressedNotes[key] != NO_NOTE)
+				return;
+			pressedNotes[key] = note;
+			if (!inputBus.publish(NoteBus.pack(NoteBus.NOTE_ON, key, note,
+								OutputSink.DEFAULT_VELOCITY, 0), timeNanos))
+				pressedNotes[key] = NO_NOTE;
+		}
+	}
+	
+	/**
+	 * Sends the off notes for a key released.
+	 * @param key
+	 * 			The key released (0 - MAX_KEYS-1).
+	 */
+	public void keyReleased(int key) {
+		keyReleased(key, System.nanoTime());
+	}
+	
+	/**
+	 * Sends the off notes for a key released at the given time. Unlike a key
+	 * pressed, a key released is never dropped when the engine falls behind,
+	 * as its notes would be left on: this waits for room on the bus instead.
+	 * @param key
+	 * 			The key released (0 - MAX_KEYS-1).
+	 * @param timeNanos
+	 * 			The System.nanoTime() the key was released at.
+	 */
+	public void keyReleased(int key, long timeNanos) {
+		synchronized (pressedNotes) {
+			int note = pressedNotes[key];
+			if (note == NO_NOTE)
+				return;
+			pressedNotes[key] = NO_NOTE;
+			inputBus.publishOrWait(NoteBus.pack(NoteBus.NOTE_OFF, key, note, 0,
+								0), timeNanos);
+		}
+	}
+	
+	/**
+	 * Turns off every note sounding and forgets the keys held, as when a
+	 * note is stuck. The panic is run on the engine's thread after the keys
+	 * played before it, and is never dropped: if the bus is full this waits
+	 * for room. The keys pressed before the panic that are still queued are
+	 * skipped, so none of them can turn a note on again afterwards, and the
+	 * engine catches up quickly.
+	 */
+	public void panic() {
+		synchronized (pressedNotes) {
+			Arrays.fill(pressedNotes, NO_NOTE);
+			pendingPanics.incrementAndGet();
+			inputBus.publishOrWait(NoteBus.pack(NoteBus.ALL_NOTES_OFF, 0, 0, 0,
+								0), System.nanoTime());
+		}
+	}
+	
+	/**
+	 * Plays a note that does not come from a key, such as a note of a MIDI
+	 * file being played. The note skips the blocks, but goes through the
+	 * voice table on its own channel, so a panic turns it off and its off
+	 * never cuts short the same note held by a key.
+	 * @param channel
+	 * 			The channel of the voice table (see PLAYBACK_CHANNEL), not
+	 * 			the one the keys use.
+	 * @param event
+	 * 			The note on or off.
+	 */
+	public void playNote(int channel, NoteEvent event) {
+		if (channel == OUTPUT_CHANNEL)
+			throw new IllegalArgumentException("channel " + channel
+								+ " is used by the keys");
+		voices.process(channel, event, sinks);
+	}
+	
+	/**
+	 * Waits until every key pressed or released so far has been run through
+	 * the chain.
+	 */
+	public void drain() {
+		chainSubscription.drain();
+	}
+	
+	/**
+	 * Runs a key taken from the input bus through the chain, on the chain's
+	 * thread.
+	 * @param event
+	 * 			The packed key event.
+	 * @param timeNanos
+	 * 			The time the key was played at.
+	 */
+	private void runKey(long event, long timeNanos) {
+		int key = NoteBus.getKey(event);
+		int note = NoteBus.getNote(event);
+		switch (NoteBus.getType(event)) {
+		case NoteBus.NOTE_ON:
+			// a key pressed before a panic still to come would never be
+			// released
+			if (pendingPanics.get() > 0)
+				break;
+			BlockChain chain = this.chain;
+			pressedChains[key] = chain;
+			chain.process(NoteEvent.noteOn(note, NoteBus.getVelocity(event),
+								timeNanos));
+			break;
+		case NoteBus.NOTE_OFF:
+			BlockChain pressedChain = pressedChains[key];
+			pressedChains[key] = null;
+			if (pressedChain != null)
+				pressedChain.process(NoteEvent.noteOff(note, timeNanos));
+			break;
+		case NoteBus.ALL_NOTES_OFF:
+			runPanic(timeNanos);
+			pendingPanics.decrementAndGet();
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Makes the blocks forget the notes held, and turns off every note
+	 * sounding. Run on the chain's thread.
+	 * @param timeNanos
+	 * 			The time of the panic.
+	 */
+	private void runPanic(long timeNanos) {
+		Arrays.fill(pressedChains, null);
+		for (Block block : chain.getBlocks())
+			block.reset();
+		voices.allNotesOff(timeNanos, sinks);
+	}
+	
+	/**
+	 * Sends the button mapping to the external synth. That is, the MIDI
+	 * values of the first eight keys.
+	 * @param buttonNotes
+	 * 			The MIDI values of the buttons.
+	 */
+	public void sendButtonConfig(List<Integer> buttonNotes) {
+		outputs.getOutput().sendConfig(buttonNotes);
+	}
+}
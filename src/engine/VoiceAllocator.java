@@ -0,0 +1,410 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * The table of the notes held and sounding on each MIDI channel. Every note
+ * on and off goes through it, and it makes sure each note on sent out is
+ * matched by exactly one note off:
+ * <ul>
+ * <li>A note is counted each time it is turned on and uncounted each time
+ * it is turned off, so a note played twice (by two chords sharing it, for
+ * example) is turned on once and only turned off when both are released.
+ * An off for a note that is not on is ignored.</li>
+ * <li>In the mono modes only one of the notes held sounds, chosen by the
+ * Priority; when it is released the next one by priority sounds in its
+ * place. MONO turns the old note off before the new one on, so the new one
+ * is played afresh; LEGATO turns the new note on first, so a synthesizer
+ * can glide from one to the other.</li>
+ * <li>allNotesOff() turns off every note sounding, as a panic. The notes
+ * are kept as two 64 bit words per channel, so it touches only the notes
+ * that are sounding, however many notes were played before.</li>
+ * <li>The notes are sent out without their channel, so a note sounding on
+ * more than one channel (a key and a MIDI file playing the same note, for
+ * example) is turned on when it starts sounding on the first and off only
+ * when it stops sounding on the last.</li>
+ * </ul>
+ * The table is thread safe: the notes from the keys and from the
+ * arpegiator's clock can go through it at the same time.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class VoiceAllocator {
+
+	// the number of MIDI channels
+	public static final int CHANNELS = 16;
+	// the number of MIDI notes
+	public static final int NOTES = 128;
+	// the value of a channel's mono note when no note sounds
+	private static final int NO_NOTE = -1;
+
+	/**
+	 * How the notes held are turned into the notes sounding.
+	 */
+	public enum Mode {
+		POLY("Poly"),
+		MONO("Mono"),
+		LEGATO("Legato");
+
+		// the name of the mode shown to the user
+		private final String displayName;
+
+		private Mode(String displayName) {
+			this.displayName = displayName;
+		}
+
+		/**
+		 * Returns the mode with the given name.
+		 * @param name
+		 * 			The name of the mode, in any case.
+		 * @return
+		 * 			The mode.
+		 * @throws IllegalArgumentException
+		 * 			If there is no mode with the name.
+		 */
+		public static Mode fromName(String name) {
+			for (Mode mode : values())
+				if (mode.displayName.equalsIgnoreCase(name))
+					return mode;
+			throw new IllegalArgumentException("Unknown voice mode " + name);
+		}
+
+		@Override
+		public String toString() {
+			return displayName;
+		}
+	}
+
+	/**
+	 * Which of the notes held sounds in the mono modes.
+	 */
+	public enum Priority {
+		LAST("Last"),
+		LOW("Low"),
+		HIGH("High");
+
+		// the name of the priority shown to the user
+		private final String displayName;
+
+		private Priority(String displayName) {
+			this.displayName = displayName;
+		}
+
+		/**
+		 * Returns the priority with the given name.
+		 * @param name
+		 * 			The name of the priority, in any case.
+		 * @return
+		 * 			The priority.
+		 * @throws IllegalArgumentException
+		 * 			If there is no priority with the name.
+		 */
+		public static Priority fromName(String name) {
+			for (Priority priority : values())
+				if (priority.displayName.equalsIgnoreCase(name))
+					return priority;
+			throw new IllegalArgumentException("Unknown note priority " + name);
+		}
+
+		@Override
+		public String toString() {
+			return displayName;
+		}
+	}
+
+	// how the notes held are turned into the notes sounding
+	private Mode mode;
+	// which note held sounds in the mono modes
+	private Priority priority = Priority.LAST;
+	// the number of ons of each note on each channel not matched by an off
+	private final int[] counts = new int[CHANNELS * NOTES];
+	// the velocity each note was last turned on with
+	private final byte[] velocities = new byte[CHANNELS * NOTES];
+	// the notes held on each channel, a bit per note in two words
+	private final long[] held = new long[CHANNELS * 2];
+	// the notes sounding on each channel, a bit per note in two words
+	private final long[] sounding = new long[CHANNELS * 2];
+	// the channels with a note held or sounding, a bit per channel
+	private int activeChannels = 0;
+	// the notes held on each channel, in the order they were turned on
+	private final byte[] order = new byte[CHANNELS * NOTES];
+	// the number of notes in the order of each channel
+	private final int[] orderLength = new int[CHANNELS];
+	// the note sounding on each channel in the mono modes
+	private final int[] monoNotes = new int[CHANNELS];
+	// the number of notes sounding
+	private int soundingCount = 0;
+	// the number of channels each note is sounding on
+	private final int[] channelsSounding = new int[NOTES];
+
+	/**
+	 * Creates a table in the given mode.
+	 * @param mode
+	 * 			The mode.
+	 */
+	public VoiceAllocator(Mode mode) {
+		this.mode = mode;
+		Arrays.fill(monoNotes, NO_NOTE);
+	}
+
+	/**
+	 * Sets the mode. The notes sounding carry on until they are released.
+	 * @param mode
+	 * 			The mode.
+	 */
+	public synchronized void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns the mode.
+	 * @return
+	 * 		The mode.
+	 */
+	public synchronized Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets which of the notes held sounds in the mono modes, from the next
+	 * note on or off.
+	 * @param priority
+	 * 			The priority.
+	 */
+	public synchronized void setPriority(Priority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Returns which of the notes held sounds in the mono modes.
+	 * @return
+	 * 		The priority.
+	 */
+	public synchronized Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Passes a note on or off through the table, emitting the notes that
+	 * start or stop sounding because of it.
+	 * @param channel
+	 * 			The channel of the note (0 - 15).
+	 * @param event
+	 * 			The note on or off.
+	 * @param out
+	 * 			Where the notes sounding are turned on and off.
+	 */
+	public synchronized void process(int channel, NoteEvent event,
+								Emitter out) {
+		// a note outside the MIDI range cannot be sent
+		if (event.getNote() < 0 || event.getNote() >= NOTES)
+			return;
+		if (event.isNoteOn())
+			noteOn(channel, event, out);
+		else
+			noteOff(channel, event, out);
+	}
+
+	/**
+	 * Turns off every note sounding on every channel, and forgets the notes
+	 * held, so their offs are ignored when they come.
+	 * @param timeNanos
+	 * 			The time of the offs, 0 if none.
+	 * @param out
+	 * 			Where the notes are turned off.
+	 */
+	public synchronized void allNotesOff(long timeNanos, Emitter out) {
+		int channels = activeChannels;
+		while (channels != 0) {
+			int channel = Integer.numberOfTrailingZeros(channels);
+			channels &= channels - 1;
+			for (int word = channel * 2; word < channel * 2 + 2; word++) {
+				int firstNote = (word & 1) * 64;
+				for (long bits = sounding[word]; bits != 0; bits &= bits - 1) {
+					int note = firstNote + Long.numberOfTrailingZeros(bits);
+					// a note sounding on several channels is turned off once
+					if (channelsSounding[note] == 0)
+						continue;
+					channelsSounding[note] = 0;
+					out.emit(NoteEvent.noteOff(note, timeNanos));
+				}
+				for (long bits = held[word]; bits != 0; bits &= bits - 1)
+					counts[channel * NOTES + firstNote
+						+ Long.numberOfTrailingZeros(bits)] = 0;
+				sounding[word] = 0;
+				held[word] = 0;
+			}
+			orderLength[channel] = 0;
+			monoNotes[channel] = NO_NOTE;
+		}
+		activeChannels = 0;
+		soundingCount = 0;
+	}
+
+	/**
+	 * Forgets every note held and sounding, without turning any off, as
+	 * when they have been turned off further along.
+	 */
+	public void reset() {
+		allNotesOff(0, event -> { });
+	}
+
+	/**
+	 * Checks if a note is sounding.
+	 * @param channel
+	 * 			The channel (0 - 15).
+	 * @param note
+	 * 			The note.
+	 * @return
+	 * 			True if the note has been turned on and not off.
+	 */
+	public synchronized boolean isSounding(int channel, int note) {
+		return isSet(sounding, channel, note);
+	}
+
+	/**
+	 * Returns the number of notes sounding on all the channels.
+	 * @return
+	 * 		The number of notes.
+	 */
+	public synchronized int getSoundingCount() {
+		return soundingCount;
+	}
+
+	/**
+	 * Counts a note on, and sounds it or the note it takes the place of.
+	 */
+	private void noteOn(int channel, NoteEvent event, Emitter out) {
+		int note = event.getNote();
+		int index = channel * NOTES + note;
+		velocities[index] = (byte) event.getVelocity();
+		if (counts[index]++ > 0)
+			return;
+		set(held, channel, note);
+		activeChannels |= 1 << channel;
+		order[channel * NOTES + orderLength[channel]++] = (byte) note;
+		if (mode == Mode.POLY)
+			sound(channel, note, event.getTimeNanos(), out);
+		else
+			switchTo(channel, choose(channel), event.getTimeNanos(), out);
+	}
+
+	/**
+	 * Uncounts a note off, and silences the note once all its ons are
+	 * matched, sounding the next note held by priority in the mono modes.
+	 */
+	private void noteOff(int channel, NoteEvent event, Emitter out) {
+		int note = event.getNote();
+		int index = channel * NOTES + note;
+		if (counts[index] == 0 || --counts[index] > 0)
+			return;
+		clear(held, channel, note);
+		removeFromOrder(channel, note);
+		if (mode != Mode.POLY)
+			switchTo(channel, choose(channel), event.getTimeNanos(), out);
+		// a note sounding from before the mode was changed
+		silence(channel, note, event.getTimeNanos(), out);
+		if (held[channel * 2] == 0 && held[channel * 2 + 1] == 0
+				&& sounding[channel * 2] == 0 && sounding[channel * 2 + 1] == 0)
+			activeChannels &= ~(1 << channel);
+	}
+
+	/**
+	 * Makes the given note the one sounding on a channel in the mono modes.
+	 * @param target
+	 * 			The note, NO_NOTE for none.
+	 */
+	private void switchTo(int channel, int target, long timeNanos,
+								Emitter out) {
+		int current = monoNotes[channel];
+		if (target == current)
+			return;
+		monoNotes[channel] = target;
+		if (mode == Mode.LEGATO && current != NO_NOTE && target != NO_NOTE) {
+			sound(channel, target, timeNanos, out);
+			silence(channel, current, timeNanos, out);
+			return;
+		}
+		if (current != NO_NOTE)
+			silence(channel, current, timeNanos, out);
+		if (target != NO_NOTE)
+			sound(channel, target, timeNanos, out);
+	}
+
+	/**
+	 * Returns the note held on a channel that sounds in the mono modes.
+	 * @return
+	 * 			The note, NO_NOTE if none is held.
+	 */
+	private int choose(int channel) {
+		long low = held[channel * 2];
+		long high = held[channel * 2 + 1];
+		if (low == 0 && high == 0)
+			return NO_NOTE;
+		switch (priority) {
+		case LOW:
+			return low != 0 ? Long.numberOfTrailingZeros(low)
+						: 64 + Long.numberOfTrailingZeros(high);
+		case HIGH:
+			return high != 0 ? 127 - Long.numberOfLeadingZeros(high)
+						: 63 - Long.numberOfLeadingZeros(low);
+		case LAST:
+		default:
+			return order[channel * NOTES + orderLength[channel] - 1];
+		}
+	}
+
+	/**
+	 * Removes a note released from the order of the notes held.
+	 */
+	private void removeFromOrder(int channel, int note) {
+		int start = channel * NOTES;
+		int end = start + orderLength[channel];
+		for (int i = end - 1; i >= start; i--) {
+			if (order[i] == note) {
+				System.arraycopy(order, i + 1, order, i, end - i - 1);
+				orderLength[channel]--;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Turns a note on, if it is not sounding.
+	 */
+	private void sound(int channel, int note, long timeNanos, Emitter out) {
+		if (isSet(sounding, channel, note))
+			return;
+		set(sounding, channel, note);
+		soundingCount++;
+		if (channelsSounding[note]++ > 0)
+			return;
+		out.emit(NoteEvent.noteOn(note, velocities[channel * NOTES + note],
+								timeNanos));
+	}
+
+	/**
+	 * Turns a note off, if it is sounding.
+	 */
+	private void silence(int channel, int note, long timeNanos, Emitter out) {
+		if (!isSet(sounding, channel, note))
+			return;
+		clear(sounding, channel, note);
+		soundingCount--;
+		if (--channelsSounding[note] > 0)
+			return;
+		out.emit(NoteEvent.noteOff(note, timeNanos));
+	}
+
+	private static boolean isSet(long[] bits, int channel, int note) {
+		return (bits[channel * 2 + (note >> 6)] & 1L << note) != 0;
+	}
+
+	private static void set(long[] bits, int channel, int note) {
+		bits[channel * 2 + (note >> 6)] |= 1L << note;
+	}
+
+	private static void clear(long[] bits, int channel, int note) {
+		bits[channel * 2 + (note >> 6)] &= ~(1L << note);
+	}
+}
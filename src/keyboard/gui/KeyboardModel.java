@@ -1,11 +1,20 @@
 package keyboard.gui;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
+import engine.ScaleModel;
+import engine.SynthEngine;
 import keyboard.util.AllScales;
 import keyboard.util.Note;
 import keyboard.util.Scale;
+import utilities.ScaleCatalogue;
+import utilities.ScaleError;
 import utilities.ScaleReader;
+import utilities.ScaleWatcher;
 
 /**
  * The model of the Keyboard input option.
@@ -18,9 +27,14 @@ import utilities.ScaleReader;
 public class KeyboardModel {
 	
 	// the current scale chosen
-	private static Scale currentScale;
+	private Scale currentScale;
+	// the engine's copy of the current scale, used by the blocks
+	private final ScaleModel scaleModel = 
+							SynthEngine.getInstance().getScaleModel();
 	// list of all the scales available for the user
-	private AllScales scales;
+	private volatile AllScales scales;
+	// reads the scales file again when it changes, null if none is loaded
+	private ScaleWatcher scaleWatcher;
 	// the position of the latest sent note
 	private int currentPosition = 0;
 	// the position of the note sent before the latest
@@ -39,11 +53,69 @@ public class KeyboardModel {
 	}
 	
 	/**
-	 * Loads the list of available scales from the file chosen by the user.
+	 * Loads the list of available scales from the file chosen by the user,
+	 * in the background. The scales are added as they are read, so they can
+	 * be shown while a large file is still loading. A CSV file is then
+	 * watched, and its scales are loaded again whenever it changes.
+	 * The scales are only changed by tasks given to the publisher, so they
+	 * can be read safely from the publisher's thread.
+	 * @param scalesFile
+	 * 			The CSV file of scales, or a scale catalogue.
+	 * @param publisher
+	 * 			Runs the tasks changing the scales (Platform::runLater for
+	 * 			the user interface).
+	 * @param onChanged
+	 * 			Run by the publisher each time scales have been added or
+	 * 			reloaded.
+	 * @param onFinished
+	 * 			Given the rows that could not be read, by the publisher, once
+	 * 			the file has been read.
 	 */
-	public void loadScales() {
-		ScaleReader.getFile();
-		ScaleReader.getScales(scales);
+	public void loadScales(File scalesFile, Executor publisher,
+			Runnable onChanged, Consumer<List<ScaleError>> onFinished) {
+		AllScales loading = new AllScales();
+		scales = loading;
+		if (scaleWatcher != null) {
+			scaleWatcher.close();
+			scaleWatcher = null;
+		}
+		ScaleReader.readScalesInBackground(scalesFile,
+			chunk -> publisher.execute(() -> {
+				if (scales != loading)
+					return;
+				loading.addAll(chunk);
+				onChanged.run();
+			}),
+			(all, errors) -> publisher.execute(() -> {
+				if (scales != loading)
+					return;
+				watch(scalesFile, publisher, onChanged);
+				onFinished.accept(errors);
+			}));
+	}
+	
+	/**
+	 * Watches a CSV file of scales, and loads it again when it changes.
+	 * @param scalesFile
+	 * 			The CSV file of scales.
+	 * @param publisher
+	 * 			Runs the tasks changing the scales.
+	 * @param onChanged
+	 * 			Run by the publisher each time the scales have been reloaded.
+	 */
+	private void watch(File scalesFile, Executor publisher, Runnable onChanged) {
+		if (scalesFile.getName().endsWith(ScaleCatalogue.EXTENSION))
+			return;
+		try {
+			scaleWatcher = new ScaleWatcher(scalesFile,
+					reloaded -> publisher.execute(() -> {
+						scales = reloaded;
+						onChanged.run();
+					}));
+		} catch (IOException e) {
+			// the scales are loaded, they just are not reloaded on changes
+			e.printStackTrace();
+		}
 	}
 	
 	/**
@@ -60,11 +132,8 @@ public class KeyboardModel {
 	 * @return
 	 * 		The List of midi values of the notes in the scale.
 	 */
-	public static List<Integer> getMidiOfScale() {
-		if (currentScale != null) {
-			return currentScale.getMidiValues(); 
-		}
-		return null;
+	public List<Integer> getMidiOfScale() {
+		return scaleModel.getMidiOfScale();
 	}
 	
 	/**
@@ -87,6 +156,7 @@ public class KeyboardModel {
 		for (Note note : currentScale.getNotes()) {
 			note.setOctave(endOctave);
 		}
+		scaleModel.setScale(currentScale);
 		prevPosition = 0;
 		currentPosition = 0;
 	}
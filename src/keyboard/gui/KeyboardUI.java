@@ -1,31 +1,32 @@
 package keyboard.gui;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
+import engine.MasterClock;
+import engine.Metronome;
+import engine.SynthEngine;
 import launcher.SynthUI;
 import midi.MidiFileOut;
 import midi.MidiValues;
 
-import org.jfugue.pattern.Pattern;
-import org.jfugue.rhythm.Rhythm;
-
-import processingblocks.Arpegiator;
-import processingblocks.Chordify;
-import processingblocks.PitchShift;
 import processingblocks.ProcessingBlockManager;
-import serialio.SerialOut;
 import javafx.animation.FadeTransition;
 import javafx.animation.ParallelTransition;
 import javafx.animation.ScaleTransition;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.geometry.Side;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.effect.Reflection;
 import javafx.scene.input.KeyCode;
@@ -36,16 +37,29 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
 import javafx.util.Duration;
 import keyboard.util.KeyboardKeyList;
+import utilities.FxCoalescer;
+import utilities.ScaleError;
 
 /**
  * The controller and view class for the virtual keyboard input choice.
+ * The notes are played by the SynthEngine; this class only turns the keys
+ * pressed into the engine's key presses.
  * @author Kaamraan Kamaal
  *
  */
 public class KeyboardUI {
 
+	// the most skipped rows of a scales file listed to the user
+	private static final int MAX_ERRORS_SHOWN = 10;
+	// the number of keys of the virtual piano
+	private static final int NO_OF_KEYS = 15;
+	// the styles of the keys that are not pressed
+	private static final String SHARP_KEY_STYLE = "-fx-base: #4a4a4a";
+	private static final String NATURAL_KEY_STYLE = "-fx-base: #ffffff";
+	
 	// the list of keys of the virtual piano
 	private static List<Button> keys;
 	// the list of all the modes
@@ -72,10 +86,22 @@ public class KeyboardUI {
 	private Button btnMetronome;
 	// button to start recording to the file
 	private static Button btnRecord;
+	// button to show the latency of the notes
+	private Button btnLatency;
+	// the window showing the latency of the notes, made when first shown
+	private LatencyPanel latencyPanel;
+	// button to turn off every note sounding
+	private Button btnPanic;
 	// visual effects for the metronome
 	private List<Rectangle> metroDisplay;
 	// boolean to check if the metronome is on
 	private boolean isMetroOn = false;
+	// the tempo of the clock, in beats per minute
+	private TextField tempoField;
+	// the metronome, following the engine's clock
+	private Metronome metronome = engine.getMetronome();
+	// draws the metronome's beats on the JavaFX thread
+	private FxCoalescer metroUpdate = new FxCoalescer(this::drawMetronome);
 	
 	// MenuButton for the processing blocks
 	private MenuButton menuButton;
@@ -101,22 +127,16 @@ public class KeyboardUI {
 	
 	// Flag to check if a key is currently pressed
 	private int[] keyPressCounter;
-	// The On Note corresponding to the key pressed
-	private int[] currentOnNotes;
-
-	// Stores the value of the currently on note
-	private int currentNoteOn = 0;
+	// the MIDI value of the note of each key, updated when the keys change,
+	// so playing a key does not read the key's text
+	private int[] keyNotes;
+	// the style of each key when it is not pressed
+	private String[] keyStyles;
+	// the reflection under the keys that are not pressed
+	private Reflection keyReflection;
 	
-	// List of all the notes to arpegiate between 
-	private List<Integer> arpNotes;
-	
-	/*
-	 * Integer value to check the output choice selected.
-	 * <value> = 1 -> outputChoice = MIDI File
-	 * <value> = 2 -> outputChoice = Serial Out
-	 * <value> = 3 -> outputChoice = Serial Out + MIDI File
-	 */
-	private static int outputChoice = SynthUI.getOutputChoice();
+	// the engine playing the notes
+	private static SynthEngine engine = SynthEngine.getInstance();
 	
 	/**
 	 * Initializes all the fields.
@@ -130,9 +150,12 @@ public class KeyboardUI {
 		roots = new ChoiceBox<String>();
 		keyboard = k;
 		keyList = new KeyboardKeyList();
-		keyPressCounter  = new int[15];
-		currentOnNotes = new int[15];
-		arpNotes = Collections.synchronizedList(new ArrayList<>());
+		keyPressCounter  = new int[NO_OF_KEYS];
+		keyNotes = new int[NO_OF_KEYS];
+		keyStyles = new String[NO_OF_KEYS];
+		keyReflection = new Reflection();
+		keyReflection.setFraction(0.35);
+		keyReflection.setTopOpacity(0.3);
 		processingBlocksBox = new HBox();
 		processingBlocksBox.setAlignment(Pos.CENTER);
 		buildScene();
@@ -167,6 +190,8 @@ public class KeyboardUI {
 		makeMetronome();
 		makeMenuButton();
 		makeRecordButton();
+		makeLatencyButton();
+		makePanicButton();
 		setTopLayout();
 		primaryPane.setBottom(processingBlocksBox);
 		currentScene = new Scene(primaryPane, 1100, 600);
@@ -185,10 +210,10 @@ public class KeyboardUI {
 		key.setScaleX(1.0);
 		key.setScaleY(1.0);
 		if (key.getText().contains("#")) {
-			key.setStyle("-fx-base: #4a4a4a");
+			key.setStyle(SHARP_KEY_STYLE);
 		}
 		else {
-			key.setStyle("-fx-base: #ffffff");
+			key.setStyle(NATURAL_KEY_STYLE);
 		}
 		if (key.getText().contains(keyboard.getRoot())
 				&& !(key.getText().contains("*")))
@@ -200,6 +225,21 @@ public class KeyboardUI {
 		
 	}
 	
+	/**
+	 * Returns a key pressed on the virtual piano to how it looks when it
+	 * is not pressed, using the style worked out when the keys last changed.
+	 * @param index
+	 * 			The index of the key.
+	 */
+	private void resetKeyStyle(int index) {
+		Button key = keys.get(index);
+		key.setOpacity(1.0);
+		key.setScaleX(1.0);
+		key.setScaleY(1.0);
+		key.setStyle(keyStyles[index]);
+		key.setEffect(keyReflection);
+	}
+	
 	/**
 	 * Returns the note on the key.
 	 * Thats is, trims the text on the key to a valid string representaion
@@ -232,16 +272,51 @@ public class KeyboardUI {
 			if (btnRecord.getText().equals("Start")) {
 				btnRecord.setText("Stop");
 				btnRecord.setStyle("-fx-base: #a0ffa0");
+				MidiFileOut.setRecording(true);
 			}
 			else {
 				btnRecord.setText("Start");
 				btnRecord.setStyle("");
+				MidiFileOut.setRecording(false);
 			}
 		});
 		btnRecord.setOnKeyPressed(e -> handleKeyboardKeyPressed(e.getCode()));
 		btnRecord.setOnKeyReleased(e -> keyboardKeyReleased(e.getCode()));
 	}
 	
+	/**
+	 * Makes the button showing the latency of the notes.
+	 */
+	private void makeLatencyButton() {
+		btnLatency = new Button("Latency");
+		btnLatency.setMinSize(60, 30);
+		btnLatency.setOnAction(e -> {
+			if (latencyPanel == null)
+				latencyPanel = new LatencyPanel();
+			latencyPanel.show();
+		});
+		btnLatency.setOnKeyPressed(e -> handleKeyboardKeyPressed(e.getCode()));
+		btnLatency.setOnKeyReleased(e -> keyboardKeyReleased(e.getCode()));
+	}
+	
+	/**
+	 * Makes the button turning off every note sounding, for a stuck note.
+	 * The keys shown pressed are released.
+	 */
+	private void makePanicButton() {
+		btnPanic = new Button("Panic");
+		btnPanic.setMinSize(60, 30);
+		btnPanic.setOnAction(e -> {
+			engine.panic();
+			Arrays.fill(keyPressCounter, 0);
+			// the keys are only there once a scale has been chosen
+			for (int i = 0; i < keys.size(); i++)
+				resetKeyStyle(i);
+		});
+		btnPanic.setOnKeyPressed(e -> handleKeyboardKeyPressed(e.getCode()));
+		btnPanic.setOnKeyReleased(e -> keyboardKeyReleased(e.getCode()));
+	}
+	
 	/**
 	 * Makes the back button.
 	 */
@@ -265,6 +340,11 @@ public class KeyboardUI {
 		btnMetronome.setOnAction(e -> metronomePressed());
 		btnMetronome.setOnKeyPressed(e -> handleKeyboardKeyPressed(e.getCode()));
 		btnMetronome.setOnKeyReleased(e -> keyboardKeyReleased(e.getCode()));
+		tempoField = new TextField();
+		tempoField.setPromptText("BPM");
+		tempoField.setPrefColumnCount(4);
+		tempoField.textProperty().addListener(
+						(observable, oldText, newText) -> tempoChanged());
 		metroDisplay = new ArrayList<>();
 		double rectX = 0.0;
 		for (int i = 0; i < 4; i++) {
@@ -308,7 +388,7 @@ public class KeyboardUI {
 		hb.setSpacing(20);
 		hb.setAlignment(Pos.CENTER);
 		
-		HBox hbMetro = new HBox(btnMetronome);
+		HBox hbMetro = new HBox(tempoField, btnMetronome);
 		hbMetro.getChildren().addAll(metroDisplay);
 		hbMetro.setSpacing(10);
 		hbMetro.setAlignment(Pos.CENTER_RIGHT);
@@ -316,6 +396,8 @@ public class KeyboardUI {
 		HBox hbox = new HBox();
 		hbox.getChildren().add(new Text("Record:"));
 		hbox.getChildren().add(btnRecord);
+		hbox.getChildren().add(btnLatency);
+		hbox.getChildren().add(btnPanic);
 		hbox.setSpacing(10);
 		hbox.setAlignment(Pos.CENTER_RIGHT);
 		
@@ -329,21 +411,46 @@ public class KeyboardUI {
 	}
 	
 	/**
-	 * Populates the scale roots and modes options.
+	 * Populates the scale roots and modes options. The root and mode chosen
+	 * are kept if they are still available.
 	 */
 	private void makeScalesList() {
-		List<String> modesString = keyboard.getAllScales().getAllModes();
-		List<String> rootsString = keyboard.getAllScales().getAllRoots();
-		roots.getItems().add("Root");
-		modes.getItems().add("Mode");
-		for (int i = 0; i < 12; i++) {
-			roots.getItems().add(rootsString.get(i));
-		}
-		for (int i = 0; i < modesString.size(); i += 12) {
-			modes.getItems().add(modesString.get(i));
-		}
-		roots.getSelectionModel().selectFirst();
-		modes.getSelectionModel().selectFirst();
+		String root = roots.getValue();
+		String mode = modes.getValue();
+		roots.getItems().setAll("Root");
+		modes.getItems().setAll("Mode");
+		roots.getItems().addAll(keyboard.getAllScales().getAllRoots());
+		modes.getItems().addAll(keyboard.getAllScales().getAllModes());
+		if (root != null && roots.getItems().contains(root))
+			roots.setValue(root);
+		else
+			roots.getSelectionModel().selectFirst();
+		if (mode != null && modes.getItems().contains(mode))
+			modes.setValue(mode);
+		else
+			modes.getSelectionModel().selectFirst();
+	}
+	
+	/**
+	 * Tells the user which rows of the scales file could not be read.
+	 * @param errors
+	 * 			The rows that could not be read.
+	 */
+	private void showScaleErrors(List<ScaleError> errors) {
+		if (errors.isEmpty())
+			return;
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < errors.size() && i < MAX_ERRORS_SHOWN; i++)
+			content.append(errors.get(i)).append('\n');
+		if (errors.size() > MAX_ERRORS_SHOWN)
+			content.append("and ").append(errors.size() - MAX_ERRORS_SHOWN)
+					.append(" more");
+		Alert alert = new Alert(AlertType.WARNING);
+		alert.setTitle("Scales");
+		alert.setHeaderText(errors.size() + " rows of the scales file "
+								+ "were skipped");
+		alert.setContentText(content.toString());
+		alert.show();
 	}
 	
 	/**
@@ -362,8 +469,12 @@ public class KeyboardUI {
 	private void makeLoadFileButton() {
 		btnLoadFile = new Button("Load Scales");
 		btnLoadFile.setOnAction(e -> {
-			keyboard.loadScales();
-			makeScalesList();
+			FileChooser fileChooser = new FileChooser();
+			File scalesFile = fileChooser.showOpenDialog(SynthUI.getStage());
+			if (scalesFile != null) {
+				keyboard.loadScales(scalesFile, Platform::runLater,
+							this::makeScalesList, this::showScaleErrors);
+			}
 		});
 		btnOkay.setOnKeyPressed(e -> handleKeyboardKeyPressed(e.getCode()));
 		btnOkay.setOnKeyReleased(e -> keyboardKeyReleased(e.getCode()));
@@ -428,7 +539,7 @@ public class KeyboardUI {
 	private void makeKeys() {
 		keyBox = new HBox();
 		keyBox.setAlignment(Pos.CENTER);
-		for (int i = 0; i < 15; i++) {
+		for (int i = 0; i < NO_OF_KEYS; i++) {
 			Button key = new Button();
 			key.setText(keyboard.getNextNote());
 			setKeyStyle(key);
@@ -436,6 +547,7 @@ public class KeyboardUI {
 			keys.add(key);
 		}
 		setKeyText();
+		updateKeyNotes();
 		keyBox.getChildren().addAll(keys);
 		sendButtonConfig();
 		
@@ -478,6 +590,32 @@ public class KeyboardUI {
 		}
 	}
 	
+	/**
+	 * Works out the note and the style of each key of the virtual piano,
+	 * after the keys have changed. Each key is also given its index, so the
+	 * mouse handlers do not have to search for it.
+	 */
+	private void updateKeyNotes() {
+		for (int i = 0; i < keys.size(); i++) {
+			Button key = keys.get(i);
+			keyNotes[i] = MidiValues.getMidiValue(getKeyText(key));
+			keyStyles[i] = key.getText().contains("#") ? SHARP_KEY_STYLE
+										: NATURAL_KEY_STYLE;
+			key.setUserData(i);
+		}
+	}
+	
+	/**
+	 * Returns the index of a key of the virtual piano.
+	 * @param key
+	 * 			The key.
+	 * @return
+	 * 			The index of the key in the list of all the keys.
+	 */
+	private static int indexOf(Button key) {
+		return (Integer) key.getUserData();
+	}
+	
 	/**
 	 * Adds the various event handlers associated with each key on the virtual
 	 * piano.
@@ -492,12 +630,14 @@ public class KeyboardUI {
 		key.setOnKeyReleased(e -> keyboardKeyReleased(e.getCode()));
 		
 		key.setOnMousePressed(e -> {
-			keyPressCounter[keys.indexOf(key)] = 1;
-			playOnNotes(key, keys.indexOf(key));
+			int index = indexOf(key);
+			keyPressCounter[index] = 1;
+			playOnNotes(key, index);
 		});
 		key.setOnMouseReleased(e -> {
-			mouseReleased(key);
-			setKeyStyle(key);
+			int index = indexOf(key);
+			mouseReleased(index);
+			resetKeyStyle(index);
 		});
 	}
 	
@@ -546,66 +686,63 @@ public class KeyboardUI {
 	 */
 	
 	/**
-	 * Plays the metronome. When the metronome is played, a new thread
-	 * is fired to cycle between the colors of the visual metronome and this
-	 * thread runs concurrently with the ticks of the metronome.
+	 * Turns the metronome on or off. The metronome follows the engine's
+	 * clock; its beats are drawn on the JavaFX thread through the
+	 * coalescer, so the clock thread never waits for the display.
 	 */
-	@SuppressWarnings("deprecation")
 	private void metronomePressed() {
-		Thread thread = new Thread();
-		Pattern pattern = new Pattern();
 		isMetroOn = !isMetroOn;
 		if (isMetroOn) {
-			Rhythm rhythm = new Rhythm();
-			rhythm.setLength(15);
-			rhythm.addLayer("s.x.x.x.");
-			if (outputChoice == 1 || outputChoice == 3)
-				pattern.add(rhythm.getPattern());
-			Runnable task = () -> {
-				btnMetronome.setStyle("-fx-base: #a0ffa0");
-				
-				//makeshift implementation of cycling of colors of rectangle
-				int count = 0;
-				boolean cycle = true;
-				while (isMetroOn) {
-					if (cycle) {
-						if (count == 0) {
-							metroDisplay.get(count++).setFill(Color.YELLOW);
-							try {Thread.sleep(500);} catch(Exception e){}
-						}
-						metroDisplay.get(count++).setFill(Color.DARKCYAN);
-						try {Thread.sleep(500);} catch(Exception e){}
-						if (count == 4) {
-							count = 0;
-							cycle = false;
-						}
-					}
-					else {
-						if (count == 0) {
-							metroDisplay.get(count++).setFill(Color.GOLDENROD);
-							try {Thread.sleep(500);} catch(Exception e){}
-						}
-						metroDisplay.get(count++).setFill(Color.INDIANRED);
-						try {Thread.sleep(500);} catch(Exception e){}
-						if (count == 4) {
-							count = 0;
-							cycle = true;
-						}
-					}
-				}
-			};
-			thread = new Thread(task);
-			thread.start();
+			btnMetronome.setStyle("-fx-base: #a0ffa0");
+			metronome.setOnBeat(beat -> metroUpdate.request());
+			metronome.start();
 		}
 		else {
+			metronome.stop();
+			metronome.setOnBeat(null);
 			btnMetronome.setStyle("");
 			for (Rectangle r : metroDisplay)
 				r.setFill(Color.BEIGE);
-			thread.stop();
-			MidiFileOut.addPatternToFile(pattern);
 		}
 	}
 	
+	/**
+	 * Draws the metronome for the latest beat. The beats of a bar light up
+	 * one by one, in colours alternating from bar to bar.
+	 */
+	private void drawMetronome() {
+		long beats = metronome.getBeats();
+		if (!isMetroOn || beats == 0)
+			return;
+		long beat = beats - 1;
+		int beatInBar = (int) (beat % Metronome.BEATS_PER_BAR);
+		boolean isEvenBar = (beat / Metronome.BEATS_PER_BAR) % 2 == 0;
+		for (int i = 0; i <= beatInBar; i++) {
+			if (isEvenBar)
+				metroDisplay.get(i).setFill(i == 0 ? Color.YELLOW 
+													: Color.DARKCYAN);
+			else
+				metroDisplay.get(i).setFill(i == 0 ? Color.GOLDENROD
+													: Color.INDIANRED);
+		}
+	}
+	
+	/**
+	 * Sets the tempo of the engine's clock from the tempo field. An empty
+	 * or invalid tempo uses the default tempo.
+	 */
+	private void tempoChanged() {
+		double bpm = MasterClock.DEFAULT_BPM;
+		try {
+			if (!tempoField.getText().trim().isEmpty())
+				bpm = Double.parseDouble(tempoField.getText().trim());
+		} catch (NumberFormatException e) {
+		}
+		if (!(bpm > 0))
+			bpm = MasterClock.DEFAULT_BPM;
+		engine.getClock().setTempo(bpm);
+	}
+	
 	/**
 	 * Performs the action corresponding to the key pressed on the hardware
 	 * keyboard. For example, increases the octave when "Plus" key is pressed,
@@ -685,6 +822,7 @@ public class KeyboardUI {
 		addKeyEventHandlers(key);
 		keys.add(key);
 		setKeyText();
+		updateKeyNotes();
 		
 		keyBox.getChildren().add(key);
 		FadeTransition fadeIn = new FadeTransition();
@@ -748,6 +886,7 @@ public class KeyboardUI {
 		addKeyEventHandlers(key);
 		keys.add(0, key);
 		setKeyText();
+		updateKeyNotes();
 		
 		keyBox.getChildren().add(0, key);
 		FadeTransition fadeIn = new FadeTransition();
@@ -772,98 +911,17 @@ public class KeyboardUI {
 	 * 			on the virtual piano.
 	 */
 	private void playOnNotes(Button key, int index) {
+		// the latency of the note is measured from here
+		long pressedAt = System.nanoTime();
 		if (keyPressCounter[index] == 1) {
 			keyPressCounter[index] = 2;
 			key.setOpacity(0.6);
 			key.setScaleY(0.95);
 			key.setScaleX(0.95);
-			if (blockManager.isAnyBlockOn())
-				sendNotesAfterBlocks(key, index);
-			else {
-				int onNote = MidiValues.getMidiValue(getKeyText(key));
-				currentOnNotes[index] = onNote;
-				sendNoteOnToOutput(onNote);
-				}
+			engine.keyPressed(index, keyNotes[index], pressedAt);
 		}
 	}
 	
-	/**
-	 * When there is an active processing block, the note on is processed,
-	 * and the corresponding modified note is sent to the output.
-	 * @param key
-	 * 			The key on the virtual piano.
-	 * @param index
-	 * 			The index of the key in the list of all the keys on the piano.
-	 */
-	private void sendNotesAfterBlocks(Button key, int index) {
-		switch (blockManager.getBlockOn()) {
-		case "Monophonic":
-			if (currentNoteOn == 0) {
-				currentNoteOn = MidiValues.getMidiValue(getKeyText(key));
-				currentOnNotes[index] = currentNoteOn;
-				sendNoteOnToOutput(currentNoteOn);
-			}
-			else {
-				sendNoteOffToOutput(currentNoteOn);
-				currentNoteOn = MidiValues.getMidiValue(getKeyText(key));
-				currentOnNotes[index] = currentNoteOn;
-				sendNoteOnToOutput(currentNoteOn);
-			}
-			break;
-		case "Pitch Shift":
-			int shiftedNote = PitchShift.getPitchShiftedNote(
-							MidiValues.getMidiValue(getKeyText(key)));
-			currentOnNotes[index] = shiftedNote;
-			sendNoteOnToOutput(shiftedNote);
-			break;
-		case "Chordify":
-			int firstNote = MidiValues.getMidiValue(getKeyText(key));
-			currentOnNotes[index] = -1;
-			Chordify.makeChord(firstNote);
-			sendNoteOnToOutput(Chordify.getFirstNote());
-			sendNoteOnToOutput(Chordify.getSecondNote(firstNote));
-			sendNoteOnToOutput(Chordify.getThirdNote(firstNote));
-			// sends the major chord of the note to the file
-			if (outputChoice == 1 || outputChoice == 3) {
-				MidiFileOut.addToFile(MidiValues.getStringForMidi
-													(firstNote) + "maj");
-			}
-			break;
-		case "Arpegiator":
-			int note = MidiValues.getMidiValue(getKeyText(key));
-			arpNotes.add(note);
-			currentOnNotes[index] = note;
-			Arpegiator.playArpNotes(arpNotes);
-			break;
-		}
-	}
-	
-	/**
-	 * Send the note on to the output media selected.
-	 * @param onNote
-	 * 			The note on.
-	 */
-	public static void sendNoteOnToOutput(int onNote) {
-		if (outputChoice == 2 || outputChoice == 3)
-			SerialOut.sendNoteOn(onNote);
-		if (outputChoice == 1 || outputChoice == 3) {
-			if (btnRecord.getText().equals("Stop")) {
-				String note = MidiValues.getStringForMidi(onNote);
-				MidiFileOut.addToFile(note);
-			}
-		}
-	}
-	
-	/**
-	 * Sends the note off to the output media selected.
-	 * @param offNote
-	 * 			The note off.
-	 */
-	public static void sendNoteOffToOutput(int offNote) {
-		if (outputChoice == 2 || outputChoice == 3)
-			SerialOut.sendNoteOff(offNote);
-	}
-	
 	/**
 	 * 'Plays' the key corresponding to the hardware key pressed.
 	 * @param keyCode
@@ -886,48 +944,23 @@ public class KeyboardUI {
 	 * 			The KeyCode of the key released.
 	 */
 	private void keyboardKeyReleased(KeyCode keyCode) {
+			long releasedAt = System.nanoTime();
 			int index = keyList.getIndexOfKeyCode(keyCode);
 			if (index != -1) {
-				setKeyStyle(keys.get(index));
+				resetKeyStyle(index);
 				keyPressCounter[index] = 0;
-				if (! (currentOnNotes[index] == -1)) {
-					arpNotes.remove((Integer) MidiValues.getMidiValue(
-												getKeyText(keys.get(index))));
-					sendNoteOffToOutput(currentOnNotes[index]);
-				}
-				else
-					sendChordOffNotes(keys.get(index));
+				engine.keyReleased(index, releasedAt);
 			}
 	}
 	
 	/**
 	 * Sends the off note of the note corresponding to the key released.
-	 * @param key
-	 * 			The key released.
+	 * @param index
+	 * 			The index of the key released.
 	 */
-	private void mouseReleased(Button key) {
-		int index = keys.indexOf(key);
+	private void mouseReleased(int index) {
 		keyPressCounter[index] = 0;	
-		if (!(currentOnNotes[index] == -1)) {
-			arpNotes.remove((Integer) MidiValues.getMidiValue(getKeyText(key)));
-			SerialOut.sendNoteOff(currentOnNotes[index]);
-		}
-		else
-			sendChordOffNotes(key);
-	}
-	
-	/**
-	 * Sends the off notes for the three notes that were 'on' when a chord
-	 * was produced.
-	 * @param key
-	 * 			The key which was released.
-	 */
-	private void sendChordOffNotes(Button key) {
-		int firstNote = MidiValues.getMidiValue(getKeyText(key));
-		Chordify.makeChord(firstNote);
-		sendNoteOffToOutput(Chordify.getFirstNote());
-		sendNoteOffToOutput(Chordify.getSecondNote(firstNote));
-		sendNoteOffToOutput(Chordify.getThirdNote(firstNote));
+		engine.keyReleased(index);
 	}
 	
 	/**
@@ -947,16 +980,9 @@ public class KeyboardUI {
 	 * configuration of the buttons to the synthesizer.
 	 */
 	private void sendButtonConfig() {
-		String keyName = new String();
 		ArrayList<Integer> midiOfKeys = new ArrayList<>();
-		for (int i = 0; i < 8; i++) {
-			keyName = keys.get(i).getText();
-			keyName = keyName.substring(0, keyName.indexOf('\n'));
-			if (keyName.contains("*"))
-				keyName = keyName.substring(0, keyName.indexOf('*'));
-			midiOfKeys.add(MidiValues.getMidiValue(keyName));
-		}
-		if (outputChoice == 2 || outputChoice == 3)
-			SerialOut.sendConfigData(midiOfKeys);
+		for (int i = 0; i < 8; i++)
+			midiOfKeys.add(keyNotes[i]);
+		engine.sendButtonConfig(midiOfKeys);
 	}
 }
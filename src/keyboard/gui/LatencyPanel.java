@@ -0,0 +1,105 @@
+package keyboard.gui;
+
+import java.io.File;
+import java.io.IOException;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import utilities.Latency;
+
+/**
+ * A small window showing the latency from a key being played to each stage
+ * of the note's way to the synthesizer, at the 50th, 99th and 99.9th
+ * percentiles. The table is refreshed twice a second while the window is
+ * open, and can be reset or saved to a file.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class LatencyPanel {
+
+	// how often the table is refreshed
+	private static final Duration REFRESH = Duration.millis(500);
+
+	// the window
+	private final Stage stage;
+	// the table of latencies
+	private final Text table;
+	// refreshes the table
+	private final Timeline refresh;
+
+	/**
+	 * Makes the window, without showing it.
+	 */
+	public LatencyPanel() {
+		table = new Text(Latency.report());
+		table.setFont(Font.font("Monospaced", 13));
+		Button btnReset = new Button("Reset");
+		btnReset.setOnAction(e -> {
+			Latency.reset();
+			update();
+		});
+		Button btnSave = new Button("Save");
+		btnSave.setOnAction(e -> savePressed());
+		HBox buttons = new HBox(btnReset, btnSave);
+		buttons.setSpacing(10);
+		buttons.setAlignment(Pos.CENTER_RIGHT);
+		VBox box = new VBox(table, buttons);
+		box.setSpacing(10);
+		box.setPadding(new Insets(10));
+		stage = new Stage();
+		stage.setTitle("Latency");
+		stage.setScene(new Scene(box));
+		refresh = new Timeline(new KeyFrame(REFRESH, e -> update()));
+		refresh.setCycleCount(Timeline.INDEFINITE);
+		stage.setOnShown(e -> refresh.play());
+		stage.setOnHidden(e -> refresh.stop());
+	}
+
+	/**
+	 * Shows the window, or brings it to the front if it is showing.
+	 */
+	public void show() {
+		update();
+		stage.show();
+		stage.toFront();
+	}
+
+	/**
+	 * Shows the latest latencies.
+	 */
+	private void update() {
+		table.setText(Latency.report());
+	}
+
+	/**
+	 * Saves the latencies to a file chosen by the user.
+	 */
+	private void savePressed() {
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.setInitialFileName("latency.txt");
+		File file = fileChooser.showSaveDialog(stage);
+		if (file == null)
+			return;
+		try {
+			Latency.dump(file);
+		} catch (IOException e) {
+			Alert alert = new Alert(AlertType.ERROR,
+							"Could not save " + file.getName());
+			alert.initOwner(stage);
+			alert.showAndWait();
+		}
+	}
+}
@@ -1,63 +1,272 @@
 package keyboard.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Contains the list of all the scales available to the user to choose from.
+ * The scales are indexed by mode and root, so a scale is found in constant
+ * time however many scales are loaded: each mode is given an id when it is
+ * first seen, and the scales of a mode are stored by the pitch class (0 - 11)
+ * of their root. The distinct modes and roots are kept as they are added.
+ * Each scale is stored as its mode id and its notes packed into a long, 4
+ * bits per pitch class; the Scale object is only made when the scale is
+ * asked for, so catalogues of many thousands of scales load quickly.
+ * The scales should be added from one thread, and then handed over.
  * @author Kaamraan Kamaal
  *
  */
 public class AllScales {
-	// List of all the scales available
-	private List<Scale> allScales;
-	
+	// the most notes a scale can have, including the octave of the root
+	public static final int MAX_NOTES = 15;
+	// the names of the pitch classes, from C to B
+	private static final String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E",
+							"F", "F#", "G", "G#", "A", "A#", "B"};
+
+	// the number of scales added
+	private int count;
+	// the mode id of each scale
+	private int[] scaleModes;
+	// the pitch class of the root of each scale
+	private byte[] scaleRoots;
+	// the notes of each scale, packed 4 bits per pitch class
+	private long[] scaleNotes;
+	// the scale objects made so far, null until asked for
+	private Scale[] scales;
+	// the id of each mode, each mode string is kept once
+	private Map<String, Integer> modeIds;
+	// the distinct modes, by id
+	private List<String> modes;
+	// the distinct roots, in the order they were added
+	private List<String> roots;
+	// the roots already added, as a bit set of pitch classes
+	private int rootMask;
+	// the position of the scales of each mode id, by the pitch class of the
+	// root, -1 if there is none
+	private List<int[]> index;
+
 	/**
 	 * Creates a new empty list of scales.
 	 */
 	public AllScales() {
-		allScales = new ArrayList<Scale>();
+		scaleModes = new int[16];
+		scaleRoots = new byte[16];
+		scaleNotes = new long[16];
+		scales = new Scale[16];
+		modeIds = new HashMap<String, Integer>();
+		modes = new ArrayList<String>();
+		roots = new ArrayList<String>();
+		index = new ArrayList<int[]>();
 	}
-	
+
 	/**
-	 * Adds a given scale to the list.
+	 * Adds a given scale to the list. If there is already a scale with the
+	 * same mode and root, the scale added first is kept in the index.
 	 * @param scale
 	 * 			The scale to be added to the list of scales.
+	 * @throws IllegalArgumentException
+	 * 			If the root of the scale is not a note, or the scale has more
+	 * 			than MAX_NOTES notes.
 	 */
 	public void addScale(Scale scale) {
-		Scale copyOfScale = new Scale();
-		copyOfScale.setMode(scale.getMode()); 
-		copyOfScale.setRoot(scale.getRoot());
-		copyOfScale.setNotes(scale.getNotes());
-		allScales.add(copyOfScale);
+		int pitchClass = scale.getRootNote().getPitchClass();
+		if (pitchClass < 0)
+			throw new IllegalArgumentException("Not a root: " + scale.getRoot());
+		List<Note> notes = scale.getNotes();
+		if (notes.size() > MAX_NOTES)
+			throw new IllegalArgumentException("Too many notes in "
+						+ scale.getMode() + " " + scale.getRoot());
+		long packed = notes.size();
+		for (int i = 0; i < notes.size(); i++) {
+			int notePitchClass = notes.get(i).getPitchClass();
+			if (notePitchClass < 0)
+				throw new IllegalArgumentException("Not a note: "
+								+ notes.get(i).getNote());
+			packed |= (long) notePitchClass << 4 * (i + 1);
+		}
+		addScale(addMode(scale.getMode()), pitchClass, packed);
+	}
+
+	/**
+	 * Adds a scale given by its mode id and its packed notes.
+	 * @param modeId
+	 * 			The id of the mode, returned by addMode().
+	 * @param rootPitchClass
+	 * 			The pitch class of the root of the scale (0 - 11).
+	 * @param packedNotes
+	 * 			The number of notes in the low 4 bits, then the pitch class of
+	 * 			each note in the next 4 bits in turn.
+	 */
+	public void addScale(int modeId, int rootPitchClass, long packedNotes) {
+		if (count == scaleModes.length) {
+			int capacity = count * 2;
+			scaleModes = Arrays.copyOf(scaleModes, capacity);
+			scaleRoots = Arrays.copyOf(scaleRoots, capacity);
+			scaleNotes = Arrays.copyOf(scaleNotes, capacity);
+			scales = Arrays.copyOf(scales, capacity);
+		}
+		scaleModes[count] = modeId;
+		scaleRoots[count] = (byte) rootPitchClass;
+		scaleNotes[count] = packedNotes;
+		int[] scalesOfMode = index.get(modeId);
+		if (scalesOfMode[rootPitchClass] < 0)
+			scalesOfMode[rootPitchClass] = count;
+		if ((rootMask & 1 << rootPitchClass) == 0) {
+			rootMask |= 1 << rootPitchClass;
+			roots.add(NOTE_NAMES[rootPitchClass]);
+		}
+		count++;
 	}
-	
+
 	/**
-	 * Returns the list of all the modes available.
+	 * Adds all the scales of another list of scales.
+	 * @param other
+	 * 			The scales to add.
+	 */
+	public void addAll(AllScales other) {
+		int[] modeIds = new int[other.modes.size()];
+		for (int i = 0; i < modeIds.length; i++)
+			modeIds[i] = addMode(other.modes.get(i));
+		for (int i = 0; i < other.count; i++)
+			addScale(modeIds[other.scaleModes[i]], other.scaleRoots[i],
+							other.scaleNotes[i]);
+	}
+
+	/**
+	 * Adds a mode, if it has not been added yet.
+	 * @param mode
+	 * 			The mode.
 	 * @return
-	 * 		The list of the modes available.
+	 * 			The id of the mode.
 	 */
-	public List<String> getAllModes() {
-		List<String> modes = new ArrayList<String>();
-		for (int i = 0; i < allScales.size(); i++) {
-			modes.add(allScales.get(i).getMode());
+	public int addMode(String mode) {
+		Integer modeId = modeIds.get(mode);
+		if (modeId == null) {
+			modeId = modes.size();
+			modeIds.put(mode, modeId);
+			modes.add(mode);
+			int[] scalesOfMode = new int[12];
+			Arrays.fill(scalesOfMode, -1);
+			index.add(scalesOfMode);
 		}
-		return modes;
+		return modeId;
 	}
-	
+
 	/**
-	 * Returns the list of all the roots available.
+	 * Returns the number of scales added.
 	 * @return
-	 * 		The list of all the roots available.
+	 * 		The number of scales.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the mode id of the scale at the given position.
+	 * @param position
+	 * 			The position of the scale, in the order it was added.
+	 * @return
+	 * 			The id of its mode.
+	 */
+	public int getModeIdAt(int position) {
+		return scaleModes[position];
+	}
+
+	/**
+	 * Returns the pitch class of the root of the scale at the given position.
+	 * @param position
+	 * 			The position of the scale, in the order it was added.
+	 * @return
+	 * 			The pitch class of its root (0 - 11).
+	 */
+	public int getRootAt(int position) {
+		return scaleRoots[position];
+	}
+
+	/**
+	 * Returns the notes of the scale at the given position.
+	 * @param position
+	 * 			The position of the scale, in the order it was added.
+	 * @return
+	 * 			The packed notes, as taken by addScale(int, int, long).
+	 */
+	public long getPackedNotesAt(int position) {
+		return scaleNotes[position];
+	}
+
+	/**
+	 * Returns the list of all the modes available, each mode once.
+	 * @return
+	 * 		The list of the modes available, in the order they were added.
+	 */
+	public List<String> getAllModes() {
+		return Collections.unmodifiableList(modes);
+	}
+
+	/**
+	 * Returns the list of all the roots available, each root once.
+	 * @return
+	 * 		The list of all the roots available, in the order they were
+	 * 		added.
 	 */
 	public List<String> getAllRoots() {
-		List<String> roots = new ArrayList<String>();
-		for (int i = 0; i < allScales.size(); i++) {
-			roots.add(allScales.get(i).getRoot());
+		return Collections.unmodifiableList(roots);
+	}
+
+	/**
+	 * Returns the id of the given mode.
+	 * @param mode
+	 * 			The mode.
+	 * @return
+	 * 			The id of the mode, its position in getAllModes(), or -1 if
+	 * 			there is no such mode.
+	 */
+	public int getModeId(String mode) {
+		Integer modeId = modeIds.get(mode);
+		return modeId == null ? -1 : modeId;
+	}
+
+	/**
+	 * Returns the scale with the given mode id and root.
+	 * @param modeId
+	 * 			The id of the mode.
+	 * @param pitchClass
+	 * 			The pitch class of the root (0 for C, 11 for B).
+	 * @return
+	 * 			The scale, or null if there is none.
+	 */
+	public Scale getScale(int modeId, int pitchClass) {
+		if (modeId < 0 || modeId >= index.size() || pitchClass < 0
+				|| pitchClass >= 12)
+			return null;
+		int position = index.get(modeId)[pitchClass];
+		if (position < 0)
+			return null;
+		Scale scale = scales[position];
+		if (scale == null) {
+			scale = makeScale(position, pitchClass);
+			scales[position] = scale;
 		}
-		return roots;
+		return scale;
 	}
-	
+
+	/**
+	 * Returns the scale with the given mode and root.
+	 * @param mode
+	 * 			The mode of the scale.
+	 * @param root
+	 * 			The root of the scale.
+	 * @return
+	 * 			The scale, or null if there is none.
+	 */
+	public Scale getScale(String mode, String root) {
+		return getScale(getModeId(mode), Note.getPitchClass(root));
+	}
+
 	/**
 	 * Returns the notes corresponding to the scale given by the
 	 * mode and the root.
@@ -69,14 +278,31 @@ public class AllScales {
 	 * 			The list of the notes in the selected scale.
 	 */
 	public List<Note> getNotes(String mode, String root) {
-		List<Note> notes = new ArrayList<Note>();
-		for (int i = 0; i < allScales.size(); i++) {
-			if ((mode.equals(allScales.get(i).getMode())) &&
-					root.equals(allScales.get(i).getRoot())) {
-				notes = allScales.get(i).getNotes();
-				break;
-			}
-		}
-		return notes;
+		Scale scale = getScale(mode, root);
+		if (scale == null)
+			return new ArrayList<Note>();
+		return scale.getNotes();
+	}
+
+	/**
+	 * Makes the Scale object of the scale at the given position.
+	 * @param position
+	 * 			The position of the scale.
+	 * @param rootPitchClass
+	 * 			The pitch class of the root.
+	 * @return
+	 * 			The scale.
+	 */
+	private Scale makeScale(int position, int rootPitchClass) {
+		long packed = scaleNotes[position];
+		int noOfNotes = (int) (packed & 0xF);
+		List<String> notes = new ArrayList<String>(noOfNotes);
+		for (int i = 1; i <= noOfNotes; i++)
+			notes.add(NOTE_NAMES[(int) (packed >>> 4 * i & 0xF)]);
+		Scale scale = new Scale();
+		scale.setMode(modes.get(scaleModes[position]));
+		scale.setRoot(NOTE_NAMES[rootPitchClass]);
+		scale.setNotesString(notes);
+		return scale;
 	}
 }
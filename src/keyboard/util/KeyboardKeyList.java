@@ -1,13 +1,15 @@
 package keyboard.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javafx.scene.input.KeyCode;
 
 /**
  * Contains the list of all the keys on the hardware keyboard, which correspond
- * to a key on the virtual piano.
+ * to a key on the virtual piano. The position of each key is kept in an
+ * array by KeyCode, so a key event finds its key without a search.
  * @author Kaamraan Kamaal
  *
  */
@@ -20,14 +22,20 @@ public class KeyboardKeyList {
 			KeyCode.M, KeyCode.Q, KeyCode.W, KeyCode.E, KeyCode.R, KeyCode.T,
 			KeyCode.Y, KeyCode.U, KeyCode.I
 	};
+	// the index of each KeyCode, by its ordinal, -1 for the other keys
+	private int[] indexOfKeyCode;
 	
 	/**
 	 * Initializes the fields with the list of all the valid keys.
 	 */
 	public KeyboardKeyList() {
 		keys = new ArrayList<KeyCode>();
-		for (int i = 0; i < keyCodes.length; i++)
+		indexOfKeyCode = new int[KeyCode.values().length];
+		Arrays.fill(indexOfKeyCode, -1);
+		for (int i = 0; i < keyCodes.length; i++) {
 			keys.add(keyCodes[i]);
+			indexOfKeyCode[keyCodes[i].ordinal()] = i;
+		}
 	}
 	
 	/**
@@ -35,10 +43,10 @@ public class KeyboardKeyList {
 	 * @param keyCode
 	 * 			The KeyCode whose index is to be obtained.
 	 * @return
-	 * 			The index of the KeyCode.
+	 * 			The index of the KeyCode, or -1 if it is not a valid key.
 	 */
 	public int getIndexOfKeyCode(KeyCode keyCode) {
-		return keys.indexOf(keyCode);
+		return indexOfKeyCode[keyCode.ordinal()];
 	}
 	
 	/**
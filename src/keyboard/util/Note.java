@@ -8,6 +8,9 @@ package keyboard.util;
  *
  */
 public class Note {
+	// the pitch class of each letter, from A to G
+	private static final int[] LETTER_PITCHES = {9, 11, 0, 2, 4, 5, 7};
+	
 	// The name of the note
 	private String note;
 	// The octave of the note
@@ -91,6 +94,41 @@ public class Note {
 		return this.octave;
 	}
 	
+	/**
+	 * Returns the pitch class of the note, ignoring the octave.
+	 * @return
+	 * 		The pitch class (0 for C, 11 for B), or -1 if the note has no
+	 * 		valid name.
+	 */
+	public int getPitchClass() {
+		return getPitchClass(this.note);
+	}
+	
+	/**
+	 * Returns the pitch class of the note with the given name, for example
+	 * 1 for "C#", "Db" or "C#/Db". Nothing is allocated.
+	 * @param name
+	 * 			The name of the note.
+	 * @return
+	 * 			The pitch class (0 for C, 11 for B), or -1 if the name is not
+	 * 			a note.
+	 */
+	public static int getPitchClass(CharSequence name) {
+		if (name.length() == 0)
+			return -1;
+		int letter = name.charAt(0) - 'A';
+		if (letter < 0 || letter >= LETTER_PITCHES.length)
+			return -1;
+		int pitchClass = LETTER_PITCHES[letter];
+		if (name.length() > 1) {
+			if (name.charAt(1) == '#')
+				pitchClass++;
+			else if (name.charAt(1) == 'b')
+				pitchClass--;
+		}
+		return (pitchClass + 12) % 12;
+	}
+	
 	/**
 	 * Removes the 'flat' representation from the note.
 	 * That is, A#/Bb becomes A#.
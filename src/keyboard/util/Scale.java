@@ -3,8 +3,6 @@ package keyboard.util;
 import java.util.ArrayList;
 import java.util.List;
 
-import midi.MidiValues;
-
 /**
  * The instances of this class store the information about a scale.
  * That is, it stores the type of the scale, the root note, and a list of all
@@ -19,6 +17,10 @@ public class Scale {
 	private List<Note> notes;
 	//stores the midi values of the first octave of the notes
 	private List<Integer> midis;
+	// the pitch classes in the scale, bit 0 for C to bit 11 for B
+	private int pitchClassMask;
+	// the lookup tables of the scale, built when first asked for
+	private volatile ScaleTables tables;
 	
 	/**
 	 * The default constructor to initialise the Scale.
@@ -94,6 +96,33 @@ public class Scale {
 		return copyOfMidis;
 	}
 	
+	/**
+	 * Returns the pitch classes of the notes in the scale, as a 12 bit mask.
+	 * Two scales with the same mask have the same notes.
+	 * @return
+	 * 		The mask, with bit 0 set if the scale has a C, bit 1 for C# and so
+	 * 		on up to bit 11 for B.
+	 */
+	public int getPitchClassMask() {
+		return pitchClassMask;
+	}
+	
+	/**
+	 * Returns the lookup tables of the scale over all the MIDI notes. The
+	 * tables are built once, and again only if the root or the notes change.
+	 * @return
+	 * 		The tables of the scale.
+	 */
+	public ScaleTables getTables() {
+		ScaleTables scaleTables = tables;
+		if (scaleTables == null) {
+			scaleTables = new ScaleTables(pitchClassMask,
+							Math.max(0, root.getPitchClass()));
+			tables = scaleTables;
+		}
+		return scaleTables;
+	}
+	
 	/**
 	 * Sets the root of the scale to the given root.
 	 * @param root
@@ -101,6 +130,7 @@ public class Scale {
 	 */
 	public void setRoot(String root) {
 		this.root = new Note(root);
+		tables = null;
 	}
 	
 	/**
@@ -130,18 +160,24 @@ public class Scale {
 	}
 	
 	/**
-	 * Sets the MIDI values of the notes in the scale.
+	 * Sets the MIDI values of the notes in the scale, octaves 1 to 7. The
+	 * values are worked out from the pitch classes, so no strings are made.
 	 */
 	private void setMidiValues() {
 		midis.clear();
+		pitchClassMask = 0;
+		tables = null;
+		for (int i = 0; i < notes.size(); i++) {
+			int pitchClass = notes.get(i).getPitchClass();
+			if (pitchClass >= 0)
+				pitchClassMask |= 1 << pitchClass;
+		}
 		int noOfNotes = notes.size() - 1;
 		for (int i = 1; i <= 7; i++) {
 			for (int j = 0; j < noOfNotes; j++) {
-				String note = notes.get(j).getNote();
-				note += i;
-				try {
-					midis.add(MidiValues.getMidiValue(note));
-				}catch (Exception e){}
+				int pitchClass = notes.get(j).getPitchClass();
+				if (pitchClass >= 0)
+					midis.add(i * 12 + pitchClass);
 			}
 		}
 	}
@@ -0,0 +1,167 @@
+package keyboard.util;
+
+import java.util.Arrays;
+
+/**
+ * Lookup tables of a scale over all the 128 MIDI notes: whether a note is in
+ * the scale, the closest note in the scale, the degree of a note and the
+ * triad built on it. The tables are built once per scale, so each lookup is
+ * an array read that allocates nothing. The tables are never changed once
+ * built, so they can be shared between threads.
+ * @author Kaamraan Kamaal
+ *
+ */
+public final class ScaleTables {
+
+	// the number of MIDI notes
+	public static final int NOTES = 128;
+	// the tables of no scale: no note is in it and every note is its own
+	// closest note
+	public static final ScaleTables EMPTY = new ScaleTables(0, 0);
+
+	// the pitch classes of the scale, bit 0 for C to bit 11 for B
+	private final int pitchClassMask;
+	// the closest note in the scale to each note
+	private final byte[] closest = new byte[NOTES];
+	// the degree of each note counted from the root (0 for the root), -1 if
+	// the note is not in the scale
+	private final byte[] degrees = new byte[NOTES];
+	// the root, third and fifth of the triad on each note, three per note
+	private final byte[] triads = new byte[NOTES * 3];
+
+	/**
+	 * Builds the tables of a scale.
+	 * @param pitchClassMask
+	 * 			The pitch classes in the scale, bit 0 for C to bit 11 for B.
+	 * @param rootPitchClass
+	 * 			The pitch class of the root of the scale (0 - 11).
+	 */
+	public ScaleTables(int pitchClassMask, int rootPitchClass) {
+		this.pitchClassMask = pitchClassMask & 0xFFF;
+		// the notes in the scale, in ascending order
+		int[] scaleNotes = new int[NOTES];
+		int count = 0;
+		for (int note = 0; note < NOTES; note++) {
+			degrees[note] = -1;
+			if (isInScale(note))
+				scaleNotes[count++] = note;
+		}
+		int[] degreeOfPitchClass = new int[12];
+		int degree = 0;
+		for (int i = 0; i < 12; i++) {
+			int pitchClass = (rootPitchClass + i) % 12;
+			if ((this.pitchClassMask & 1 << pitchClass) != 0)
+				degreeOfPitchClass[pitchClass] = degree++;
+		}
+		// the position in scaleNotes of the closest scale note at or below
+		int below = -1;
+		for (int note = 0; note < NOTES; note++) {
+			if (below + 1 < count && scaleNotes[below + 1] == note)
+				below++;
+			if (isInScale(note)) {
+				closest[note] = (byte) note;
+				degrees[note] = (byte) degreeOfPitchClass[note % 12];
+				triads[note * 3] = (byte) note;
+				triads[note * 3 + 1] = (byte) (below + 2 < count ?
+							scaleNotes[below + 2] : note);
+				triads[note * 3 + 2] = (byte) (below + 4 < count ?
+							scaleNotes[below + 4] : note);
+				continue;
+			}
+			closest[note] = (byte) closestOf(note, scaleNotes, below, count);
+			Arrays.fill(triads, note * 3, note * 3 + 3, (byte) note);
+		}
+	}
+
+	/**
+	 * Returns the scale note closest to the given note. When the scale notes
+	 * above and below are as close, the one below is taken.
+	 * @param note
+	 * 			The note, which is not in the scale.
+	 * @param scaleNotes
+	 * 			The notes in the scale, in ascending order.
+	 * @param below
+	 * 			The position of the scale note below the note, -1 if there
+	 * 			is none.
+	 * @param count
+	 * 			The number of notes in the scale.
+	 * @return
+	 * 			The closest note, or the note itself if the scale is empty.
+	 */
+	private static int closestOf(int note, int[] scaleNotes, int below,
+								int count) {
+		if (count == 0)
+			return note;
+		if (below < 0)
+			return scaleNotes[0];
+		if (below + 1 == count)
+			return scaleNotes[below];
+		int lower = scaleNotes[below];
+		int upper = scaleNotes[below + 1];
+		return note - lower <= upper - note ? lower : upper;
+	}
+
+	/**
+	 * Returns the pitch classes of the scale.
+	 * @return
+	 * 		The mask, bit 0 for C to bit 11 for B.
+	 */
+	public int getPitchClassMask() {
+		return pitchClassMask;
+	}
+
+	/**
+	 * Checks if the note is in the scale.
+	 * @param note
+	 * 			The MIDI note (0 - 127).
+	 * @return
+	 * 			True if the note is in the scale.
+	 */
+	public boolean isInScale(int note) {
+		return (pitchClassMask & 1 << note % 12) != 0;
+	}
+
+	/**
+	 * Returns the note in the scale closest to the given note. Notes below 0
+	 * or above 127 are first brought into the MIDI range.
+	 * @param note
+	 * 			The note.
+	 * @return
+	 * 			The closest note in the scale, the note itself if it is in the
+	 * 			scale or the scale is empty.
+	 */
+	public int getClosest(int note) {
+		if (note < 0)
+			note = 0;
+		else if (note >= NOTES)
+			note = NOTES - 1;
+		return closest[note];
+	}
+
+	/**
+	 * Returns the scale degree of the note, counted from the root.
+	 * @param note
+	 * 			The MIDI note (0 - 127).
+	 * @return
+	 * 			0 for the root, 1 for the second note of the scale and so on,
+	 * 			or -1 if the note is not in the scale.
+	 */
+	public int getDegree(int note) {
+		return degrees[note];
+	}
+
+	/**
+	 * Returns a note of the triad built on the given note from the scale.
+	 * Notes of the triad above the range of MIDI notes, and all the notes
+	 * of the triad of a note not in the scale, are the note itself.
+	 * @param note
+	 * 			The MIDI note (0 - 127), the root of the triad.
+	 * @param voice
+	 * 			0 for the root, 1 for the third and 2 for the fifth.
+	 * @return
+	 * 			The note of the triad.
+	 */
+	public int getTriadNote(int note, int voice) {
+		return triads[note * 3 + voice];
+	}
+}
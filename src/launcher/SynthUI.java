@@ -1,11 +1,15 @@
 package launcher;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import midi.MIDIFileIn;
 import midi.MidiFileOut;
+import output.SinkRegistry;
+import serialio.Protocol;
 import serialio.SerialOut;
 import javafx.animation.FadeTransition;
 import javafx.application.*;
@@ -23,6 +27,8 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
+import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import keyboard.gui.KeyboardModel;
@@ -48,8 +54,6 @@ public class SynthUI extends Application {
 	
 	private static String outputChoice = new String();
 	
-	private static int outChoice;
-	
 	/**
 	 * Creates the UI of the application.
 	 */
@@ -135,6 +139,7 @@ public class SynthUI extends Application {
 			onStageCloseRequest();
 		});
 		primaryStage.show();
+		showRecoveredJournal();
 	}
 	
 	/**
@@ -160,10 +165,63 @@ public class SynthUI extends Application {
 	 * the scene is switched back to the Main Scene.
 	 */
 	public static void backButtonPressed() {
-		MidiFileOut.saveFile();
+		saveRecording();
 		primaryStage.setScene(mainScene);
 	}
 	
+	/**
+	 * Saves the notes recorded to the MIDI file, and tells the user if they
+	 * could not be saved.
+	 */
+	public static void saveRecording() {
+		try {
+			MidiFileOut.saveFile();
+		} catch (IOException e) {
+			showSaveError();
+		}
+	}
+	
+	/**
+	 * Tells the user the MIDI file could not be saved.
+	 */
+	private static void showSaveError() {
+		Alert alert = new Alert(AlertType.ERROR);
+		alert.setTitle("Error");
+		alert.setHeaderText("Sorry! Couldn't save file");
+		alert.setContentText("Oops! There was an error in "
+									+ "saving to MIDI file.\n"
+									+ "Please go back and try again");
+		alert.showAndWait();
+	}
+	
+	/**
+	 * Brings up a FileChooser for the user to create a new file where
+	 * they would like to store their MIDI data.
+	 */
+	private static void chooseMidiOutFile() {
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.getExtensionFilters().add(
+						new ExtensionFilter("Midi Files (.mid)", "*.mid"));
+		MidiFileOut.setFile(fileChooser.showSaveDialog(primaryStage));
+	}
+	
+	/**
+	 * Turns the journal left behind by a session that did not close cleanly
+	 * into a MIDI file, and tells the user where it was saved.
+	 */
+	private static void showRecoveredJournal() {
+		File recovered = MidiFileOut.recoverJournal();
+		if (recovered != null) {
+			Alert alert = new Alert(AlertType.INFORMATION);
+			alert.setTitle("Recording recovered");
+			alert.setHeaderText("Recovered an unsaved recording");
+			alert.setContentText("The last session did not close "
+					+ "properly.\nIts recording was saved to "
+					+ recovered.getAbsolutePath());
+			alert.showAndWait();
+		}
+	}
+	
 	/**
 	 * Makes the dialog for output selection.
 	 */
@@ -180,18 +238,21 @@ public class SynthUI extends Application {
 		if (result.isPresent()) {
 			outputChoice = result.get();
 			System.out.println(outputChoice);
+			SinkRegistry registry = SinkRegistry.getInstance();
+			registry.disableAll();
 			if (outputChoice.equals("Serial Port")) {
-				outChoice = 2;
+				registry.enable(SinkRegistry.SERIAL);
 				makeSerialPortDialog();
 			}
 			else if (outputChoice.equals("MIDI File")) {
-				MidiFileOut.getFile();
-				outChoice = 1;
+				chooseMidiOutFile();
+				registry.enable(SinkRegistry.FILE);
 			}
 			else {
 				makeSerialPortDialog();
-				MidiFileOut.getFile();
-				outChoice = 3;
+				chooseMidiOutFile();
+				registry.enable(SinkRegistry.SERIAL);
+				registry.enable(SinkRegistry.FILE);
 			}
 		}
 	}
@@ -221,27 +282,33 @@ public class SynthUI extends Application {
 			String port = new String();
 			if (result.isPresent()) {
 				port = result.get();
+				makeProtocolDialog();
 				SerialOut.setSerialPort(port);
 			}
 		}
 	}
 	
 	/**
-	 * Returns the primary stage.
-	 * @return
-	 * 		The primary stage.
+	 * Makes a dialog for the protocol the notes are sent to the serial port
+	 * in. The protocol is left as it is if the dialog is cancelled.
 	 */
-	public static Stage getStage() {
-		return primaryStage;
+	private void makeProtocolDialog() {
+		ChoiceDialog<Protocol> dialog = new ChoiceDialog<Protocol>(
+				SerialOut.getProtocol(), Protocol.values());
+		dialog.setTitle("Serial protocol");
+		dialog.setHeaderText("Select the protocol of the synthesizer");
+		Optional<Protocol> result = dialog.showAndWait();
+		if (result.isPresent())
+			SerialOut.setProtocol(result.get());
 	}
 	
 	/**
-	 * Returns integer representation of the outputChoice.
+	 * Returns the primary stage.
 	 * @return
-	 * 		The output choice.
+	 * 		The primary stage.
 	 */
-	public static int getOutputChoice() {
-		return outChoice;
+	public static Stage getStage() {
+		return primaryStage;
 	}
 	
 	/**
@@ -263,8 +330,12 @@ public class SynthUI extends Application {
 		
 		Optional<ButtonType> result = alert.showAndWait();
 		if (result.get() == ButtonType.OK) {
-			MidiFileOut.saveFile();
-			SerialOut.closePort();
+			try {
+				MidiFileOut.saveAndClose();
+			} catch (IOException e) {
+				showSaveError();
+			}
+			SinkRegistry.getInstance().closeAll();
 			primaryStage.close();
 		}
 	}
@@ -2,17 +2,17 @@ package midi;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-import javax.sound.midi.InvalidMidiDataException;
-
-import org.jfugue.midi.MidiFileManager;
-import org.jfugue.pattern.Pattern;
-
+import engine.SynthEngine;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
@@ -33,6 +33,8 @@ public class MIDIFileIn {
 	private Button btnStop;
 	// button to load the file
 	private Button btnLoadFile;
+	// the time (in seconds) to start playing from
+	private TextField startTime;
 	
 	// main pane for the scene
 	private BorderPane bPane;
@@ -46,6 +48,11 @@ public class MIDIFileIn {
 	// the MIDI file
 	private File midiFile;
 	
+	// plays the MIDI file to the outputs
+	private MidiPlayer player;
+	// the seek index of the MIDI file, built in the background on load
+	private Future<SeekIndex> seekIndex;
+	
 	/**
 	 * Creates a new MIDI file scene.
 	 * @param primaryStage
@@ -53,10 +60,12 @@ public class MIDIFileIn {
 	 */
 	public MIDIFileIn() {
 		isFileLoaded = false;
+		player = new MidiPlayer(SynthEngine.getInstance().getClock());
 		btnBack = new Button();
 		btnStart = new Button();
 		btnStop = new Button();
 		btnLoadFile = new Button();
+		startTime = new TextField();
 		
 		bPane = new BorderPane();
 		drawScene();
@@ -79,7 +88,10 @@ public class MIDIFileIn {
 		btnStart.setMinSize(70, 50);
 		btnStop.setMinSize(70, 50);
 		
-		VBox pane = new VBox(btnStart, btnStop, btnLoadFile);
+		startTime.setPromptText("Start at (seconds)");
+		startTime.setMaxWidth(150);
+		
+		VBox pane = new VBox(btnStart, btnStop, startTime, btnLoadFile);
 		pane.setSpacing(30);
 		pane.setAlignment(Pos.CENTER);
 		bPane.setLeft(btnBack);
@@ -114,19 +126,56 @@ public class MIDIFileIn {
 			isFileLoaded = true;
 			btnStart.setDisable(!isFileLoaded);
 			btnStop.setDisable(!isFileLoaded);
+			buildSeekIndex(midiFile);
+		}
+	}
+	
+	/**
+	 * Loads (or builds) the seek index of the file on a background thread, so
+	 * that playback can later start from any time without delay. The player
+	 * waits for the index on its own thread if it is not ready yet.
+	 * @param file
+	 * 			The MIDI file.
+	 */
+	private void buildSeekIndex(File file) {
+		FutureTask<SeekIndex> task = new FutureTask<>(() -> SeekIndex.load(file));
+		seekIndex = task;
+		Thread indexThread = new Thread(task, "seek-index");
+		indexThread.setDaemon(true);
+		indexThread.start();
+	}
+	
+	/**
+	 * Returns the time to start playing from.
+	 * @return
+	 * 		The start time in microseconds.
+	 */
+	private long getStartMicros() {
+		try {
+			return (long) (Double.parseDouble(startTime.getText()) * 1e6);
+		} catch (NumberFormatException e) {
+			startTime.clear();
+			return 0;
 		}
 	}
 	
 	/**
 	 * Starts playing the file when the play button is pressed.
+	 * The notes played are also recorded to the output file.
 	 */
 	private void startPressed() {
 		btnStart.setDisable(true);
 		btnStop.setDisable(false);
 		try {
-			Pattern pattern = MidiFileManager.loadPatternFromMidi(midiFile);
-			MidiFileOut.addPatternToFile(pattern);
-		} catch (IOException | InvalidMidiDataException e) {
+			MidiFileOut.setRecording(true);
+			SynthEngine engine = SynthEngine.getInstance();
+			player.play(midiFile, seekIndex, getStartMicros(),
+					event -> engine.playNote(SynthEngine.PLAYBACK_CHANNEL, event),
+					() -> Platform.runLater(this::playbackFinished));
+		} catch (IOException e) {
+			MidiFileOut.setRecording(false);
+			btnStart.setDisable(false);
+			btnStop.setDisable(true);
 			Alert alert = new Alert(AlertType.ERROR);
 			alert.setTitle("Error!");
 			alert.setHeaderText("Error! Wrong file format");
@@ -143,13 +192,25 @@ public class MIDIFileIn {
 	private void stopPressed() {
 		btnStart.setDisable(false);
 		btnStop.setDisable(true);
-		MidiFileOut.saveFile();
+		player.stop();
+		MidiFileOut.setRecording(false);
+		SynthUI.saveRecording();
+	}
+	
+	/**
+	 * Resets the buttons when the file has been played to the end.
+	 */
+	private void playbackFinished() {
+		if (!btnStop.isDisabled())
+			stopPressed();
 	}
 	
 	/**
 	 * Goes back to the homescreen when the back button is pressed.
 	 */
 	private void backButtonPressed() {
+		player.stop();
+		MidiFileOut.setRecording(false);
 		SynthUI.backButtonPressed();
 	}
 	
@@ -2,19 +2,17 @@ package midi;
 
 import java.io.File;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
-import javafx.scene.control.Alert;
-import javafx.scene.control.Alert.AlertType;
-import javafx.stage.FileChooser;
-import javafx.stage.FileChooser.ExtensionFilter;
-import launcher.SynthUI;
-
-import org.jfugue.midi.MidiFileManager;
-import org.jfugue.pattern.Pattern;
+import engine.MasterClock;
+import engine.SynthEngine;
+import utilities.FlightEvents;
 
 /**
  * Handles the output MIDI file. That is, saves the notes being played
- * to a standard MIDI file.
+ * to a standard MIDI file. The file is chosen, and errors are shown, by the
+ * user interface.
  * @author Kaamraan Kamaal
  *
  */
@@ -22,57 +20,188 @@ public class MidiFileOut {
 	
 	// the file to save the notes to
 	private static File midiOutFile;
-	// the pattern stores all the notes being played.
-	private static Pattern pattern = new Pattern();
+	// the recorder stores all the notes being played, with their timing.
+	private static final MidiRecorder recorder = new MidiRecorder();
+	// the file the recording is journalled to until it is saved
+	private static final File JOURNAL_FILE = new File("recording.journal");
+	// journals the recorded notes, so that a crash does not lose them
+	private static RecordingJournal journal;
+	// the clock the recording follows
+	private static final MasterClock clock = 
+							SynthEngine.getInstance().getClock();
+	
+	/**
+	 * Records an on note, if recording is on.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note.
+	 */
+	public static void addNoteOn(int note, int velocity) {
+		recorder.record(MidiRecorder.NOTE_ON, note, velocity);
+	}
 	
 	/**
-	 * Adds the given string to the pattern (which is finally saved to
-	 * the MIDI file)
+	 * Records an off note, if recording is on.
 	 * @param note
-	 * 			The note on.
+	 * 			The MIDI value of the note.
 	 */
-	public static void addToFile(String note) {
-		pattern.add(note);
+	public static void addNoteOff(int note) {
+		recorder.record(MidiRecorder.NOTE_OFF, note, 0);
 	}
 	
 	/**
-	 * Adds the pattern to the pattern. Which is finally saved
-	 * to the MIDI file.
-	 * @param patternToAdd
-	 * 			The pattern to add to the current pattern.
-	 * (This function is used to store the metronome)
+	 * Records an on note played at the given time, if recording is on.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the note was played at.
+	 */
+	public static void addNoteOn(int note, int velocity, long timeNanos) {
+		recorder.record(MidiRecorder.NOTE_ON, note, velocity, timeNanos);
+	}
+	
+	/**
+	 * Records an off note played at the given time, if recording is on.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the note was played at.
 	 */
-	public static void addPatternToFile(Pattern patternToAdd) {
-		pattern.add(patternToAdd);
+	public static void addNoteOff(int note, long timeNanos) {
+		recorder.record(MidiRecorder.NOTE_OFF, note, 0, timeNanos);
 	}
 	
 	/**
-	 * Brings up a FileChooser for the user to create a new file where
-	 * they would like to store their MIDI data.
+	 * Starts or stops recording the notes played. While the clock is
+	 * running, the recording starts from its last beat, so the beats of the
+	 * file line up with the metronome and the arpegiator.
+	 * @param recording
+	 * 			True to start recording.
 	 */
-	public static void getFile() {
-		FileChooser fileChooser = new FileChooser();
-		fileChooser.getExtensionFilters().add(
-						new ExtensionFilter("Midi Files (.mid)", "*.mid"));
-		midiOutFile = fileChooser.showSaveDialog(SynthUI.getStage());
+	public static void setRecording(boolean recording) {
+		if (recording) {
+			recorder.start(clock.getBeatNanos());
+			startJournal();
+		}
+		else
+			recorder.stop();
+	}
+	
+	/**
+	 * Checks if the notes played are being recorded.
+	 * @return
+	 * 		True if recording is on.
+	 */
+	public static boolean isRecording() {
+		return recorder.isRecording();
+	}
+	
+	/**
+	 * Returns the recorder holding the notes recorded so far.
+	 * @return
+	 * 		The recorder.
+	 */
+	public static MidiRecorder getRecorder() {
+		return recorder;
+	}
+	
+	/**
+	 * Sets the file the notes are saved to.
+	 * @param file
+	 * 			The MIDI file, null to not save the notes.
+	 */
+	public static void setFile(File file) {
+		midiOutFile = file;
+	}
+	
+	/**
+	 * Returns the file the notes are saved to.
+	 * @return
+	 * 		The MIDI file, null if none has been chosen.
+	 */
+	public static File getFile() {
+		return midiOutFile;
+	}
+	
+	/**
+	 * Saves all the notes to the MIDI file, at the tempo of the clock.
+	 * @return
+	 * 		True if the notes were saved, false if no file has been chosen.
+	 * @throws IOException
+	 * 		If the file could not be written.
+	 */
+	public static boolean saveFile() throws IOException {
+		if (midiOutFile == null)
+			return false;
+		FlightEvents.MidiFileSave flightEvent = new FlightEvents.MidiFileSave();
+		flightEvent.begin();
+		new SmfWriter(1, SmfWriter.DEFAULT_PPQN, clock.getTempoMicros())
+							.write(recorder, midiOutFile);
+		flightEvent.end();
+		if (flightEvent.shouldCommit()) {
+			flightEvent.file = midiOutFile.getPath();
+			flightEvent.events = recorder.size();
+			flightEvent.bytes = midiOutFile.length();
+			flightEvent.commit();
+		}
+		return true;
+	}
+	
+	/**
+	 * Saves all the notes to the MIDI file and closes the journal. The
+	 * journal is only deleted if the notes were saved.
+	 * @throws IOException
+	 * 		If the file could not be written. The journal is kept.
+	 */
+	public static void saveAndClose() throws IOException {
+		boolean isSaved = false;
+		try {
+			isSaved = saveFile() || recorder.size() == 0;
+		} finally {
+			if (journal != null) {
+				journal.close(isSaved);
+				journal = null;
+			}
+		}
+	}
+	
+	/**
+	 * Turns the journal left behind by a session that did not close cleanly
+	 * into a MIDI file.
+	 * @return
+	 * 		The MIDI file the recording was saved to, or null if there was
+	 * 		nothing to recover.
+	 */
+	public static File recoverJournal() {
+		if (!JOURNAL_FILE.isFile())
+			return null;
+		String time = new SimpleDateFormat("yyyyMMdd-HHmmss").format(
+								new Date(JOURNAL_FILE.lastModified()));
+		File recovered = new File("recovered-" + time + ".mid");
+		try {
+			int events = RecordingJournal.recover(JOURNAL_FILE, recovered);
+			JOURNAL_FILE.delete();
+			return events > 0 ? recovered : null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
 	}
 	
 	/**
-	 * Saves all the notes to the MIDI file.
+	 * Starts journalling the recording, if it is not already.
 	 */
-	public static void saveFile() {
-		if (midiOutFile != null) {
+	private static void startJournal() {
+		if (journal == null) {
+			journal = new RecordingJournal(JOURNAL_FILE, recorder);
 			try {
-				MidiFileManager.savePatternToMidi(
-									pattern.getPattern(), midiOutFile);
+				journal.start();
 			} catch (IOException e) {
-				Alert alert = new Alert(AlertType.ERROR);
-				alert.setTitle("Error");
-				alert.setHeaderText("Sorry! Couldn't save file");
-				alert.setContentText("Oops! There was an error in "
-											+ "saving to MIDI file.\n"
-											+ "Please go back and try again");
-				alert.showAndWait();
+				e.printStackTrace();
+				journal = null;
 			}
 		}
 	}
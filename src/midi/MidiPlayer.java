@@ -0,0 +1,341 @@
+package midi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+import engine.Emitter;
+import engine.MasterClock;
+import engine.NoteEvent;
+import output.OutputSink;
+import utilities.FlightEvents;
+
+/**
+ * Plays a MIDI file, in real time. The notes are sent to an Emitter, which
+ * in the application passes them to SynthEngine.playNote(), so they share
+ * the engine's voice table with the keys: a panic turns them off, and a
+ * note of the file ending never cuts short the same note held by a key.
+ * The events are streamed from an SmfReader on a playback thread, which waits
+ * for the exact time of each event before sending it. The thread parks until
+ * shortly before the event is due and spins for the rest, so the events go out
+ * within microseconds of their time.
+ * While a file plays, its tempo changes are passed on to the clock, so the
+ * metronome and the arpegiator follow the tempo of the file, and the clock's
+ * tempo is put back when it stops. The events are not dispatched on the
+ * clock's ticks: their times are already in microseconds, from the file's own
+ * tempo map, and rarely fall on the clock's grid of ticks.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class MidiPlayer {
+	
+	// how long before an event the playback thread stops parking and spins
+	private static final long SPIN_NANOS = 200_000L;
+	
+	// the thread playing the file
+	private Thread playThread;
+	// checks if the file is being played
+	private volatile boolean isPlaying = false;
+	// the number of ons of each note not yet matched by an off, so they can
+	// be turned off when stopped
+	private final int[] notesOn = new int[128];
+	// the clock following the tempo of the file, null if there is none
+	private final MasterClock clock;
+	
+	/**
+	 * Creates a player that does not set the tempo of a clock.
+	 */
+	public MidiPlayer() {
+		this(null);
+	}
+	
+	/**
+	 * Creates a player.
+	 * @param clock
+	 * 			The clock set to the tempo of the file being played. May be
+	 * 			null.
+	 */
+	public MidiPlayer(MasterClock clock) {
+		this.clock = clock;
+	}
+	
+	/**
+	 * Starts playing the given file. Any file already playing is stopped.
+	 * The file is opened before this method returns, so a file that is not a
+	 * MIDI file is reported straight away.
+	 * @param midiFile
+	 * 			The file to play.
+	 * @param out
+	 * 			Where the notes are sent.
+	 * @param onFinished
+	 * 			Run on the playback thread when the file ends (not when it is
+	 * 			stopped). May be null.
+	 * @throws IOException
+	 * 			If the file cannot be read, or is not a MIDI file.
+	 */
+	public void play(File midiFile, Emitter out, Runnable onFinished)
+						throws IOException {
+		play(midiFile, null, 0, out, onFinished);
+	}
+	
+	/**
+	 * Starts playing the given file from the given time. Any file already
+	 * playing is stopped. The notes that are held over the start time are
+	 * turned on when playback starts.
+	 * The seek index may still be being built: the playback thread waits for
+	 * it, so the caller never does.
+	 * @param midiFile
+	 * 			The file to play.
+	 * @param index
+	 * 			The seek index of the file, as it is being built. May be null,
+	 * 			in which case the index is loaded on the playback thread if
+	 * 			it is needed.
+	 * @param startMicros
+	 * 			The time to start from, in microseconds.
+	 * @param out
+	 * 			Where the notes are sent.
+	 * @param onFinished
+	 * 			Run on the playback thread when the file ends (not when it is
+	 * 			stopped). May be null.
+	 * @throws IOException
+	 * 			If the file cannot be read, or is not a MIDI file.
+	 */
+	public synchronized void play(File midiFile, Future<SeekIndex> index,
+			long startMicros, Emitter out, Runnable onFinished)
+							throws IOException {
+		stop();
+		SmfReader reader = new SmfReader(midiFile);
+		isPlaying = true;
+		playThread = new Thread(() -> {
+			long[] heldNotes = new long[2];
+			boolean hasEvent;
+			try {
+				hasEvent = seek(midiFile, reader, index, startMicros, heldNotes);
+			} catch (IOException e) {
+				e.printStackTrace();
+				closeReader(reader);
+				isPlaying = false;
+				return;
+			} catch (InterruptedException e) {
+				// stopped while waiting for the index
+				closeReader(reader);
+				isPlaying = false;
+				return;
+			}
+			playLoop(reader, hasEvent, startMicros, heldNotes, out,
+						onFinished);
+		}, "midi-playback");
+		playThread.setDaemon(true);
+		playThread.start();
+	}
+	
+	/**
+	 * Moves the reader to the time playback starts from, on the playback
+	 * thread.
+	 * @param midiFile
+	 * 			The file being played.
+	 * @param reader
+	 * 			The reader of the file.
+	 * @param index
+	 * 			The seek index of the file, as it is being built. May be null.
+	 * @param startMicros
+	 * 			The time to start from, in microseconds.
+	 * @param heldNotes
+	 * 			Filled with the notes held over the start time, as a 128 bit
+	 * 			set.
+	 * @return
+	 * 			False if there are no events to play.
+	 * @throws IOException
+	 * 			If the file or its index cannot be read.
+	 * @throws InterruptedException
+	 * 			If playback is stopped while waiting for the index.
+	 */
+	private static boolean seek(File midiFile, SmfReader reader,
+			Future<SeekIndex> index, long startMicros, long[] heldNotes)
+							throws IOException, InterruptedException {
+		FlightEvents.MidiFileLoad flightEvent = new FlightEvents.MidiFileLoad();
+		flightEvent.begin();
+		boolean hasEvent;
+		if (startMicros > 0) {
+			SeekIndex seekIndex;
+			if (index == null)
+				seekIndex = SeekIndex.load(midiFile);
+			else {
+				try {
+					seekIndex = index.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+			hasEvent = seekIndex.seekToTime(reader, startMicros, heldNotes);
+		}
+		else
+			hasEvent = reader.next();
+		flightEvent.end();
+		if (flightEvent.shouldCommit()) {
+			flightEvent.file = midiFile.getPath();
+			flightEvent.startMicros = startMicros;
+			flightEvent.commit();
+		}
+		return hasEvent;
+	}
+	
+	/**
+	 * Closes the reader of the file played.
+	 * @param reader
+	 * 			The reader.
+	 */
+	private static void closeReader(SmfReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Stops playing, and turns off all the notes left on.
+	 */
+	public synchronized void stop() {
+		if (playThread == null)
+			return;
+		isPlaying = false;
+		playThread.interrupt();
+		try {
+			playThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		playThread = null;
+	}
+	
+	/**
+	 * Checks if a file is being played.
+	 * @return
+	 * 		True if a file is being played.
+	 */
+	public boolean isPlaying() {
+		return isPlaying;
+	}
+	
+	/**
+	 * The body of the playback thread.
+	 * @param reader
+	 * 			The reader of the file being played, on its first event.
+	 * @param hasEvent
+	 * 			False if there are no events to play.
+	 * @param startMicros
+	 * 			The time of the file playback starts from.
+	 * @param heldNotes
+	 * 			The notes held over the start time, as a 128 bit set.
+	 * @param out
+	 * 			Where the notes are sent.
+	 * @param onFinished
+	 * 			Run when the file ends.
+	 */
+	private void playLoop(SmfReader reader, boolean hasEvent,
+			long startMicros, long[] heldNotes, Emitter out,
+			Runnable onFinished) {
+		long startNanos = System.nanoTime() - startMicros * 1000L;
+		boolean isFinished = false;
+		double savedTempo = 0;
+		if (clock != null) {
+			savedTempo = clock.getTempo();
+			clock.setTempoMicros(reader.getTempo());
+		}
+		try {
+			for (int note = 0; note < notesOn.length; note++) {
+				if ((heldNotes[note >> 6] & 1L << (note & 63)) != 0)
+					dispatch(out, 0x90, note, OutputSink.DEFAULT_VELOCITY);
+			}
+			while (isPlaying && hasEvent) {
+				int type = reader.getStatus() & 0xF0;
+				if (type == 0x80 || type == 0x90) {
+					if (!waitUntil(startNanos
+								+ reader.getTimeMicros() * 1000L))
+						break;
+					dispatch(out, type, reader.getData1(),
+								reader.getData2());
+				}
+				else if (clock != null && reader.getStatus() == SmfReader.META
+						&& reader.getMetaType() == SmfReader.META_TEMPO) {
+					if (!waitUntil(startNanos
+								+ reader.getTimeMicros() * 1000L))
+						break;
+					clock.setTempoMicros(reader.getTempo());
+				}
+				hasEvent = reader.next();
+			}
+			isFinished = isPlaying;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			allNotesOff(out);
+			if (clock != null)
+				clock.setTempo(savedTempo);
+			closeReader(reader);
+			isPlaying = false;
+		}
+		if (isFinished && onFinished != null)
+			onFinished.run();
+	}
+	
+	/**
+	 * Sends a note event. An off with no on left to match is not sent.
+	 * @param out
+	 * 			Where the note is sent.
+	 * @param type
+	 * 			0x90 for note on, 0x80 for note off.
+	 * @param note
+	 * 			The note.
+	 * @param velocity
+	 * 			The velocity of the note.
+	 */
+	private void dispatch(Emitter out, int type, int note, int velocity) {
+		if (type == 0x90 && velocity > 0) {
+			notesOn[note]++;
+			out.emit(NoteEvent.noteOn(note, velocity));
+		}
+		else if (notesOn[note] > 0) {
+			notesOn[note]--;
+			out.emit(NoteEvent.noteOff(note));
+		}
+	}
+	
+	/**
+	 * Turns off all the notes left on, once for each on not yet matched.
+	 * @param out
+	 * 			Where the notes were sent.
+	 */
+	private void allNotesOff(Emitter out) {
+		for (int note = 0; note < notesOn.length; note++) {
+			for (; notesOn[note] > 0; notesOn[note]--)
+				out.emit(NoteEvent.noteOff(note));
+		}
+	}
+	
+	/**
+	 * Waits until the given time.
+	 * @param deadline
+	 * 			The System.nanoTime() to wait for.
+	 * @return
+	 * 			False if playback was stopped while waiting.
+	 */
+	private boolean waitUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+			LockSupport.parkNanos(remaining - SPIN_NANOS);
+			if (!isPlaying)
+				return false;
+		}
+		while (deadline - System.nanoTime() > 0) {
+			if (!isPlaying)
+				return false;
+		}
+		return isPlaying;
+	}
+}
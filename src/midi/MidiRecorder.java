@@ -0,0 +1,206 @@
+package midi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the notes played, with the time (in nanoseconds) they were played
+ * at. The events are stored in primitive arrays, allocated in fixed size
+ * chunks, so recording never copies what was recorded before and a long
+ * session does not create an object per note.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class MidiRecorder {
+	
+	// the status bytes of the recorded events
+	public static final int NOTE_ON = 0x90;
+	public static final int NOTE_OFF = 0x80;
+	
+	// the number of events in each chunk
+	private static final int CHUNK_SIZE = 4096;
+	
+	// the times of the events, in nanoseconds from the start of the recording
+	private final List<long[]> timeChunks = new ArrayList<>();
+	// the events, packed as (status << 16 | data1 << 8 | data2)
+	private final List<int[]> eventChunks = new ArrayList<>();
+	// the number of recorded events
+	private int size = 0;
+	
+	// checks if the recorder is recording
+	private boolean isRecording = false;
+	// subtracted from System.nanoTime() to get the time of an event
+	private long timeOffset = 0;
+	// the time the recording was last paused at
+	private long pausedAt = -1;
+	
+	/**
+	 * Starts (or resumes) recording. The time spent paused is not recorded.
+	 */
+	public void start() {
+		start(System.nanoTime());
+	}
+	
+	/**
+	 * Starts (or resumes) recording. When starting, the times of the events
+	 * are measured from the given time, so the recording can be lined up
+	 * with the beat of the clock. When resuming, the time spent paused is
+	 * not recorded.
+	 * @param origin
+	 * 			The System.nanoTime() the recording starts at. Not after the
+	 * 			current time.
+	 */
+	public synchronized void start(long origin) {
+		if (isRecording)
+			return;
+		long now = System.nanoTime();
+		if (pausedAt < 0)
+			timeOffset = Math.min(origin, now);
+		else
+			timeOffset += now - pausedAt;
+		isRecording = true;
+	}
+	
+	/**
+	 * Pauses the recording.
+	 */
+	public synchronized void stop() {
+		if (isRecording) {
+			pausedAt = System.nanoTime();
+			isRecording = false;
+		}
+	}
+	
+	/**
+	 * Checks if the recorder is recording.
+	 * @return
+	 * 		True if recording.
+	 */
+	public synchronized boolean isRecording() {
+		return isRecording;
+	}
+	
+	/**
+	 * Records an event at the current time, if recording.
+	 * @param status
+	 * 			The status byte of the event (NOTE_ON, NOTE_OFF).
+	 * @param data1
+	 * 			The first data byte (the note).
+	 * @param data2
+	 * 			The second data byte (the velocity).
+	 */
+	public synchronized void record(int status, int data1, int data2) {
+		record(status, data1, data2, System.nanoTime());
+	}
+	
+	/**
+	 * Records an event played at the given time, if recording. An event
+	 * older than the last one recorded is recorded at the time of the last.
+	 * @param status
+	 * 			The status byte of the event (NOTE_ON, NOTE_OFF).
+	 * @param data1
+	 * 			The first data byte (the note).
+	 * @param data2
+	 * 			The second data byte (the velocity).
+	 * @param nanoTime
+	 * 			The System.nanoTime() the event was played at.
+	 */
+	public synchronized void record(int status, int data1, int data2,
+									long nanoTime) {
+		if (!isRecording)
+			return;
+		long time = Math.max(0, nanoTime - timeOffset);
+		if (size > 0)
+			time = Math.max(time, getTime(size - 1));
+		append(time, pack(status, data1, data2));
+	}
+	
+	/**
+	 * Adds an event with the given time to the end of the recording.
+	 * The times must not decrease.
+	 * @param time
+	 * 			The time of the event, in nanoseconds from the start.
+	 * @param event
+	 * 			The packed event (see pack()).
+	 */
+	public synchronized void append(long time, int event) {
+		int chunk = size / CHUNK_SIZE;
+		if (chunk == timeChunks.size()) {
+			timeChunks.add(new long[CHUNK_SIZE]);
+			eventChunks.add(new int[CHUNK_SIZE]);
+		}
+		timeChunks.get(chunk)[size % CHUNK_SIZE] = time;
+		eventChunks.get(chunk)[size % CHUNK_SIZE] = event;
+		size++;
+	}
+	
+	/**
+	 * Returns the number of recorded events.
+	 * @return
+	 * 		The number of events.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the time of the event at the given index.
+	 * @param index
+	 * 			The index of the event.
+	 * @return
+	 * 			The time of the event in nanoseconds from the start.
+	 */
+	public synchronized long getTime(int index) {
+		checkIndex(index);
+		return timeChunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE];
+	}
+	
+	/**
+	 * Returns the packed event at the given index.
+	 * @param index
+	 * 			The index of the event.
+	 * @return
+	 * 			The event, packed as (status << 16 | data1 << 8 | data2).
+	 */
+	public synchronized int getEvent(int index) {
+		checkIndex(index);
+		return eventChunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE];
+	}
+	
+	/**
+	 * Removes all the recorded events.
+	 */
+	public synchronized void clear() {
+		timeChunks.clear();
+		eventChunks.clear();
+		size = 0;
+		pausedAt = -1;
+		timeOffset = System.nanoTime();
+	}
+	
+	/**
+	 * Packs an event into an int.
+	 * @param status
+	 * 			The status byte.
+	 * @param data1
+	 * 			The first data byte.
+	 * @param data2
+	 * 			The second data byte.
+	 * @return
+	 * 			The packed event.
+	 */
+	public static int pack(int status, int data1, int data2) {
+		return (status & 0xFF) << 16 | (data1 & 0x7F) << 8 | (data2 & 0x7F);
+	}
+	
+	/**
+	 * Checks that the index is in range.
+	 * @param index
+	 * 			The index of the event.
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("event " + index
+								+ " of " + size);
+	}
+}
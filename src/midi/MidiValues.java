@@ -1,33 +1,40 @@
 package midi;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * Stores two maps (indirect form of bidi maps) to map the midi values
- * and the String representation of the notes.
+ * Maps the MIDI values and the String representation of the notes, in both
+ * directions. Both directions are array lookups: note names are parsed
+ * straight from the characters, so no objects are created when a key is
+ * pressed.
  * This class uses a singleton design.
  * @author Kaamraan Kamaal
  *
  */
 public class MidiValues {
-	
+
 	// the only instance of this class available to use.
 	private static final MidiValues INSTANCE = new MidiValues();
-	// map of string to the MIDI value
-	private static Map<String, Integer> midiMap;
-	// map of MIDI value to the string
-	private static Map<Integer, String> midiToStringMap;
-	
+
+	// the lowest and highest notes that have a name (C1 and B7)
+	public static final int LOWEST_NOTE = 12;
+	public static final int HIGHEST_NOTE = 95;
+
+	// the MIDI value for [letter][sharp][octave], -1 if there is none
+	private static final byte[] MIDI_TABLE = new byte[7 * 2 * 10];
+	// the name of each MIDI value, null if there is none
+	private static final String[] NOTE_NAMES = new String[128];
+
+	static {
+		populateTables();
+	}
+
 	/**
-	 * Creates an instance of the map.
+	 * Creates the instance.
 	 */
 	private MidiValues() {
-		midiMap = new HashMap<>();
-		midiToStringMap = new HashMap<>();
-		populateMap();
 	}
-	
+
 	/**
 	 * Returns the available instance.
 	 * @return
@@ -36,54 +43,103 @@ public class MidiValues {
 	public static MidiValues getInstance() {
 		return INSTANCE;
 	}
-	
+
 	/**
-	 * Populates the Hash map with the note name (String),
-	 * corresponding to its MIDI note value. Ex: C7 -> 84
+	 * Populates the tables with the note name (String) corresponding to
+	 * each MIDI note value and back. Ex: C7 -> 84
 	 */
 	/*
 	 * The algorithm used is inspired from the original found on:
 	 * 	http://stackoverflow.com/questions/712679/convert-midi-note-
 	 * 										numbers-to-name-and-octave
 	 */
-	private void populateMap() {
+	private static void populateTables() {
 		String notes = "C C#D D#E F F#G G#A A#B ";
-        int octave;
-        String note;
-        for (int noteNum = 12; noteNum <= 95; noteNum++) {
-            octave = noteNum / 12;
-            note = notes.substring(
-                (noteNum % 12) * 2,
-                (noteNum % 12) * 2 + 2);
-            note += octave;
-            midiMap.put(note.replace(" ",""), noteNum);
-            midiToStringMap.put(noteNum, note.replace(" ", ""));
-        }
+		Arrays.fill(MIDI_TABLE, (byte) -1);
+		for (int noteNum = LOWEST_NOTE; noteNum <= HIGHEST_NOTE; noteNum++) {
+			int octave = noteNum / 12;
+			String note = notes.substring(
+					(noteNum % 12) * 2,
+					(noteNum % 12) * 2 + 2).trim();
+			NOTE_NAMES[noteNum] = note + octave;
+			int sharp = note.length() > 1 ? 1 : 0;
+			MIDI_TABLE[tableIndex(note.charAt(0) - 'A', sharp, octave)] =
+												(byte) noteNum;
+		}
+	}
+
+	/**
+	 * Returns the MIDI value of the note at the start of the given text,
+	 * for example "C#4", "A2*" or "G5\n\n\n(Q)". Nothing is allocated.
+	 * @param noteText
+	 * 			The text starting with the note name and octave.
+	 * @return
+	 * 			The MIDI value of the note, or -1 if the text does not start
+	 * 			with a valid note.
+	 */
+	public static int parseMidiValue(CharSequence noteText) {
+		int length = noteText.length();
+		if (length < 2)
+			return -1;
+		int letter = noteText.charAt(0) - 'A';
+		if (letter < 0 || letter > 'G' - 'A')
+			return -1;
+		int position = 1;
+		int sharp = 0;
+		if (noteText.charAt(position) == '#') {
+			sharp = 1;
+			position++;
+			if (position == length)
+				return -1;
+		}
+		int octave = noteText.charAt(position) - '0';
+		if (octave < 0 || octave > 9)
+			return -1;
+		return MIDI_TABLE[tableIndex(letter, sharp, octave)];
 	}
-	
+
 	/**
 	 * Returns the MIDI value corresponding to the note.
 	 * @param noteString
 	 * 			The string representation of the note
 	 * @return
 	 * 			The MIDI value of the note.
+	 * @throws IllegalArgumentException
+	 * 			If the string is not a valid note.
 	 */
 	public static int getMidiValue(String noteString) {
-		if (noteString.length() > 3) {
-			noteString = noteString.substring(0, 3);
-		}
-		noteString.replace('+', ' ');
-		noteString.trim();
-		return midiMap.get(noteString);
+		int midiValue = parseMidiValue(noteString);
+		if (midiValue < 0)
+			throw new IllegalArgumentException("Not a note: " + noteString);
+		return midiValue;
 	}
-	
+
 	/**
 	 * Returns the string representation of the note corresponding
 	 * to the MIDI value.
 	 * @param midiNote
+	 * 			The MIDI value of the note.
 	 * @return
+	 * 			The name of the note, or null if it has none.
 	 */
 	public static String getStringForMidi(int midiNote) {
-		return midiToStringMap.get(midiNote);
+		if (midiNote < 0 || midiNote >= NOTE_NAMES.length)
+			return null;
+		return NOTE_NAMES[midiNote];
+	}
+
+	/**
+	 * Returns the position of a note in the MIDI table.
+	 * @param letter
+	 * 			The letter of the note (0 for A, 6 for G).
+	 * @param sharp
+	 * 			1 if the note is sharp, 0 otherwise.
+	 * @param octave
+	 * 			The octave of the note (0 - 9).
+	 * @return
+	 * 			The index in the table.
+	 */
+	private static int tableIndex(int letter, int sharp, int octave) {
+		return (letter * 2 + sharp) * 10 + octave;
 	}
 }
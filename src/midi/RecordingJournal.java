@@ -0,0 +1,226 @@
+package midi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of the events recorded by a MidiRecorder.
+ * A background thread copies the newly recorded events to a memory mapped
+ * file every FLUSH_INTERVAL_MILLIS. The file is mapped in fixed size windows
+ * and only the current window is forced to disk, so the cost of a flush
+ * depends on the events in it, not on the length of the session.
+ * If the application crashes before the recording is saved, recover() turns
+ * the journal into a MIDI file on the next launch.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class RecordingJournal {
+	
+	// the time between two flushes of the journal
+	public static final long FLUSH_INTERVAL_MILLIS = 250;
+	
+	// marks the start of a journal file
+	private static final int MAGIC = 0x4D49444A; // "MIDJ"
+	// the version of the journal format
+	private static final int VERSION = 1;
+	// the header: magic, version, number of events (long)
+	private static final int HEADER_LENGTH = 16;
+	// the position of the event count in the header
+	private static final int COUNT_POSITION = 8;
+	// each event: time (long) and packed event (int)
+	private static final int RECORD_LENGTH = 12;
+	// the number of events in each mapped window
+	private static final int WINDOW_EVENTS = 4096;
+	// the number of bytes in each mapped window
+	private static final int WINDOW_LENGTH = WINDOW_EVENTS * RECORD_LENGTH;
+	
+	// the journal file
+	private final File file;
+	// the recorder whose events are journalled
+	private final MidiRecorder recorder;
+	// the channel of the journal file
+	private FileChannel channel;
+	// the mapped header of the file
+	private MappedByteBuffer header;
+	// the mapped window the next events are written to
+	private MappedByteBuffer window;
+	// the number of events written to the journal
+	private int journalled = 0;
+	// flushes the journal in the background
+	private ScheduledExecutorService flusher;
+	
+	/**
+	 * Creates a journal for the given recorder.
+	 * @param file
+	 * 			The journal file.
+	 * @param recorder
+	 * 			The recorder whose events are journalled.
+	 */
+	public RecordingJournal(File file, MidiRecorder recorder) {
+		this.file = file;
+		this.recorder = recorder;
+	}
+	
+	/**
+	 * Creates a new, empty journal file and starts flushing to it.
+	 * Any old journal in the same file is overwritten.
+	 * @throws IOException
+	 * 			If the journal file cannot be created.
+	 */
+	public synchronized void start() throws IOException {
+		if (channel != null)
+			return;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+								HEADER_LENGTH);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putLong(COUNT_POSITION, 0);
+		header.force();
+		journalled = 0;
+		window = null;
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "recording-journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly,
+				FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Copies the events recorded since the last flush to the journal and
+	 * forces them to disk.
+	 * @throws IOException
+	 * 			If the journal cannot be written.
+	 */
+	public synchronized void flush() throws IOException {
+		if (channel == null)
+			return;
+		int size = recorder.size();
+		if (size == journalled)
+			return;
+		while (journalled < size) {
+			int slot = journalled % WINDOW_EVENTS;
+			if (slot == 0 || window == null) {
+				if (window != null)
+					window.force();
+				mapWindow(journalled / WINDOW_EVENTS);
+			}
+			int position = slot * RECORD_LENGTH;
+			window.putLong(position, recorder.getTime(journalled));
+			window.putInt(position + 8, recorder.getEvent(journalled));
+			journalled++;
+		}
+		window.force();
+		// the count is only moved on once the events are on disk
+		header.putLong(COUNT_POSITION, journalled);
+		header.force();
+	}
+	
+	/**
+	 * Stops flushing, and closes the journal. 
+	 * @param delete
+	 * 			True to delete the journal file (when the recording has
+	 * 			been saved), false to flush and keep it.
+	 */
+	public synchronized void close(boolean delete) {
+		if (channel == null)
+			return;
+		flusher.shutdown();
+		try {
+			if (!delete)
+				flush();
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+		header = null;
+		window = null;
+		if (delete)
+			file.delete();
+	}
+	
+	/**
+	 * Turns a journal left behind by a crashed session into a MIDI file.
+	 * @param journal
+	 * 			The journal file.
+	 * @param midiFile
+	 * 			The MIDI file to write the events to.
+	 * @return
+	 * 			The number of events recovered, 0 if there was nothing
+	 * 			to recover.
+	 * @throws IOException
+	 * 			If the journal cannot be read, or the MIDI file written.
+	 */
+	public static int recover(File journal, File midiFile)
+							throws IOException {
+		if (!journal.isFile() || journal.length() < HEADER_LENGTH)
+			return 0;
+		MidiRecorder recovered = new MidiRecorder();
+		try (RandomAccessFile raf = new RandomAccessFile(journal, "r");
+				FileChannel in = raf.getChannel()) {
+			ByteBuffer head = ByteBuffer.allocate(HEADER_LENGTH);
+			in.read(head, 0);
+			if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION)
+				throw new IOException("Not a recording journal: " + journal);
+			long count = Math.min(head.getLong(COUNT_POSITION),
+					(in.size() - HEADER_LENGTH) / RECORD_LENGTH);
+			ByteBuffer records = ByteBuffer.allocate(WINDOW_LENGTH);
+			long position = HEADER_LENGTH;
+			long read = 0;
+			while (read < count) {
+				records.clear();
+				int events = (int) Math.min(WINDOW_EVENTS, count - read);
+				records.limit(events * RECORD_LENGTH);
+				while (records.hasRemaining()) {
+					if (in.read(records, position + records.position()) < 0)
+						throw new IOException("Journal ended early");
+				}
+				for (int i = 0; i < events; i++) {
+					recovered.append(records.getLong(i * RECORD_LENGTH),
+							records.getInt(i * RECORD_LENGTH + 8));
+				}
+				position += events * RECORD_LENGTH;
+				read += events;
+			}
+		}
+		if (recovered.size() > 0)
+			new SmfWriter().write(recovered, midiFile);
+		return recovered.size();
+	}
+	
+	/**
+	 * Maps the window with the given number.
+	 * @param index
+	 * 			The number of the window.
+	 * @throws IOException
+	 * 			If the window cannot be mapped.
+	 */
+	private void mapWindow(int index) throws IOException {
+		window = channel.map(FileChannel.MapMode.READ_WRITE,
+				HEADER_LENGTH + (long) index * WINDOW_LENGTH, WINDOW_LENGTH);
+	}
+	
+	/**
+	 * Flushes the journal from the background thread.
+	 */
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,466 @@
+package midi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * An index of checkpoints into a MIDI file, so that playback can start from
+ * any position without decoding the file from the start.
+ * Every CHECKPOINT_EVENTS events, the index stores the tick, time and tempo
+ * (with the last tempo change), the notes on, and the position, tick and
+ * running status of every track.
+ * Seeking finds the last checkpoint before the target with a binary search,
+ * restores the reader to it, and scans forward over at most
+ * CHECKPOINT_EVENTS events.
+ * The index is saved next to the MIDI file (with an ".idx" extension) and is
+ * rebuilt when the file's length or modification time changes.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SeekIndex {
+	
+	// the number of events between two checkpoints
+	public static final int CHECKPOINT_EVENTS = 2048;
+	
+	// marks the start of an index file
+	private static final int MAGIC = 0x4D494458; // "MIDX"
+	// the version of the index format
+	private static final int VERSION = 1;
+	
+	// the length and modification time of the indexed file
+	private final long fileLength;
+	private final long fileModified;
+	// the number of tracks in the indexed file
+	private final int trackCount;
+	// the number of checkpoints
+	private int size = 0;
+	
+	// the values saved at each checkpoint
+	private long[] ticks;
+	private long[] micros;
+	private int[] tempos;
+	// the tick and time of the last tempo change before each checkpoint
+	private long[] tempoTicks;
+	private long[] tempoMicros;
+	// the notes on at each checkpoint, two longs per checkpoint
+	private long[] notesOn;
+	// the state of each track at each checkpoint, trackCount per checkpoint
+	private long[] trackPositions;
+	private long[] trackTicks;
+	private int[] trackStatuses;
+	
+	/**
+	 * Creates an empty index.
+	 * @param fileLength
+	 * 			The length of the indexed file.
+	 * @param fileModified
+	 * 			The modification time of the indexed file.
+	 * @param trackCount
+	 * 			The number of tracks in the indexed file.
+	 * @param capacity
+	 * 			The initial number of checkpoints that can be stored.
+	 */
+	private SeekIndex(long fileLength, long fileModified, int trackCount,
+						int capacity) {
+		this.fileLength = fileLength;
+		this.fileModified = fileModified;
+		this.trackCount = trackCount;
+		allocate(Math.max(capacity, 16));
+	}
+	
+	/**
+	 * Returns the index of the given MIDI file. The saved index is used if it
+	 * is up to date, otherwise the index is built and saved.
+	 * @param midiFile
+	 * 			The MIDI file.
+	 * @return
+	 * 			The index of the file.
+	 * @throws IOException
+	 * 			If the MIDI file cannot be read.
+	 */
+	public static SeekIndex load(File midiFile) throws IOException {
+		File indexFile = indexFileFor(midiFile);
+		if (indexFile.isFile()) {
+			try {
+				SeekIndex index = read(indexFile);
+				if (index.fileLength == midiFile.length()
+						&& index.fileModified == midiFile.lastModified())
+					return index;
+			} catch (IOException e) {
+				// a damaged index is rebuilt
+			}
+		}
+		SeekIndex index = build(midiFile);
+		try {
+			index.write(indexFile);
+		} catch (IOException e) {
+			// the index still works, it just is not cached
+			e.printStackTrace();
+		}
+		return index;
+	}
+	
+	/**
+	 * Builds the index of the given MIDI file.
+	 * @param midiFile
+	 * 			The MIDI file.
+	 * @return
+	 * 			The index of the file.
+	 * @throws IOException
+	 * 			If the MIDI file cannot be read.
+	 */
+	public static SeekIndex build(File midiFile) throws IOException {
+		long length = midiFile.length();
+		long modified = midiFile.lastModified();
+		try (SmfReader reader = new SmfReader(midiFile)) {
+			int tracks = reader.getTrackCount();
+			SeekIndex index = new SeekIndex(length, modified, tracks, 16);
+			long[] notes = new long[2];
+			long[] positions = new long[tracks];
+			long[] trackTicks = new long[tracks];
+			int[] statuses = new int[tracks];
+			long events = 0;
+			while (reader.next()) {
+				trackNote(reader, notes);
+				if (++events % CHECKPOINT_EVENTS == 0) {
+					reader.saveTrackState(positions, trackTicks, statuses);
+					index.add(reader, notes, positions, trackTicks,
+							statuses);
+				}
+			}
+			return index;
+		}
+	}
+	
+	/**
+	 * Moves the reader to the first event at or after the given time.
+	 * After this method returns true, the reader's current event is that
+	 * event (next() should not be called before it is used).
+	 * @param reader
+	 * 			A reader of the indexed file.
+	 * @param targetMicros
+	 * 			The time to seek to, in microseconds.
+	 * @param notes
+	 * 			Filled with the notes on at the target, as a 128 bit set
+	 * 			(two longs).
+	 * @return
+	 * 			False if there are no events after the target.
+	 * @throws IOException
+	 * 			If the file cannot be read.
+	 */
+	public boolean seekToTime(SmfReader reader, long targetMicros,
+						long[] notes) throws IOException {
+		return seek(reader, search(micros, targetMicros), targetMicros,
+					false, notes);
+	}
+	
+	/**
+	 * Moves the reader to the first event at or after the given tick.
+	 * After this method returns true, the reader's current event is that
+	 * event.
+	 * @param reader
+	 * 			A reader of the indexed file.
+	 * @param targetTick
+	 * 			The tick to seek to.
+	 * @param notes
+	 * 			Filled with the notes on at the target, as a 128 bit set
+	 * 			(two longs).
+	 * @return
+	 * 			False if there are no events after the target.
+	 * @throws IOException
+	 * 			If the file cannot be read.
+	 */
+	public boolean seekToTick(SmfReader reader, long targetTick,
+						long[] notes) throws IOException {
+		return seek(reader, search(ticks, targetTick), targetTick, true,
+					notes);
+	}
+	
+	/**
+	 * Returns the number of checkpoints in the index.
+	 * @return
+	 * 		The number of checkpoints.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the index file used for the given MIDI file.
+	 * @param midiFile
+	 * 			The MIDI file.
+	 * @return
+	 * 			The index file.
+	 */
+	public static File indexFileFor(File midiFile) {
+		return new File(midiFile.getPath() + ".idx");
+	}
+	
+	/**
+	 * Restores the reader to the given checkpoint and scans forward to the
+	 * target.
+	 * @param reader
+	 * 			A reader of the indexed file.
+	 * @param checkpoint
+	 * 			The checkpoint to start from, -1 for the start of the file.
+	 * @param target
+	 * 			The tick or time to seek to.
+	 * @param isTick
+	 * 			True if the target is a tick, false if it is a time.
+	 * @param notes
+	 * 			Filled with the notes on at the target.
+	 * @return
+	 * 			False if there are no events after the target.
+	 * @throws IOException
+	 * 			If the file cannot be read.
+	 */
+	private boolean seek(SmfReader reader, int checkpoint, long target,
+				boolean isTick, long[] notes) throws IOException {
+		if (reader.getTrackCount() != trackCount)
+			throw new IOException("The index does not match the file");
+		notes[0] = 0;
+		notes[1] = 0;
+		if (checkpoint >= 0) {
+			long[] positions = new long[trackCount];
+			long[] tracksTicks = new long[trackCount];
+			int[] statuses = new int[trackCount];
+			int base = checkpoint * trackCount;
+			System.arraycopy(trackPositions, base, positions, 0, trackCount);
+			System.arraycopy(trackTicks, base, tracksTicks, 0, trackCount);
+			System.arraycopy(trackStatuses, base, statuses, 0, trackCount);
+			reader.restore(tempos[checkpoint], tempoTicks[checkpoint],
+				tempoMicros[checkpoint], positions, tracksTicks, statuses);
+			notes[0] = notesOn[checkpoint * 2];
+			notes[1] = notesOn[checkpoint * 2 + 1];
+		}
+		while (reader.next()) {
+			long position = isTick ? reader.getTick()
+									: reader.getTimeMicros();
+			if (position >= target)
+				return true;
+			trackNote(reader, notes);
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the last checkpoint strictly before the target.
+	 * @param values
+	 * 			The ticks or times of the checkpoints.
+	 * @param target
+	 * 			The target tick or time.
+	 * @return
+	 * 			The number of the checkpoint, -1 if there is none.
+	 */
+	private int search(long[] values, long target) {
+		int low = 0;
+		int high = size - 1;
+		int found = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < target) {
+				found = middle;
+				low = middle + 1;
+			}
+			else
+				high = middle - 1;
+		}
+		return found;
+	}
+	
+	/**
+	 * Updates the set of notes on with the reader's current event.
+	 * @param reader
+	 * 			The reader.
+	 * @param notes
+	 * 			The notes on, as a 128 bit set.
+	 */
+	private static void trackNote(SmfReader reader, long[] notes) {
+		int type = reader.getStatus() & 0xF0;
+		int note = reader.getData1();
+		if (type == 0x90 && reader.getData2() > 0)
+			notes[note >> 6] |= 1L << (note & 63);
+		else if (type == 0x80 || type == 0x90)
+			notes[note >> 6] &= ~(1L << (note & 63));
+	}
+	
+	/**
+	 * Adds a checkpoint at the reader's current event.
+	 * @param reader
+	 * 			The reader.
+	 * @param notes
+	 * 			The notes on.
+	 * @param positions
+	 * 			The position of each track.
+	 * @param tracksTicks
+	 * 			The tick of each track.
+	 * @param statuses
+	 * 			The running status of each track.
+	 */
+	private void add(SmfReader reader, long[] notes, long[] positions,
+					long[] tracksTicks, int[] statuses) {
+		if (size == ticks.length)
+			grow();
+		ticks[size] = reader.getTick();
+		micros[size] = reader.getTimeMicros();
+		tempos[size] = reader.getTempo();
+		tempoTicks[size] = reader.getTempoTick();
+		tempoMicros[size] = reader.getTempoMicros();
+		notesOn[size * 2] = notes[0];
+		notesOn[size * 2 + 1] = notes[1];
+		System.arraycopy(positions, 0, trackPositions, size * trackCount,
+							trackCount);
+		System.arraycopy(tracksTicks, 0, trackTicks, size * trackCount,
+							trackCount);
+		System.arraycopy(statuses, 0, trackStatuses, size * trackCount,
+							trackCount);
+		size++;
+	}
+	
+	/**
+	 * Allocates the arrays for the given number of checkpoints.
+	 * @param capacity
+	 * 			The number of checkpoints.
+	 */
+	private void allocate(int capacity) {
+		ticks = new long[capacity];
+		micros = new long[capacity];
+		tempos = new int[capacity];
+		tempoTicks = new long[capacity];
+		tempoMicros = new long[capacity];
+		notesOn = new long[capacity * 2];
+		trackPositions = new long[capacity * trackCount];
+		trackTicks = new long[capacity * trackCount];
+		trackStatuses = new int[capacity * trackCount];
+	}
+	
+	/**
+	 * Doubles the number of checkpoints that can be stored.
+	 */
+	private void grow() {
+		long[] oldTicks = ticks;
+		long[] oldMicros = micros;
+		int[] oldTempos = tempos;
+		long[] oldTempoTicks = tempoTicks;
+		long[] oldTempoMicros = tempoMicros;
+		long[] oldNotes = notesOn;
+		long[] oldPositions = trackPositions;
+		long[] oldTrackTicks = trackTicks;
+		int[] oldStatuses = trackStatuses;
+		allocate(ticks.length * 2);
+		System.arraycopy(oldTicks, 0, ticks, 0, size);
+		System.arraycopy(oldMicros, 0, micros, 0, size);
+		System.arraycopy(oldTempos, 0, tempos, 0, size);
+		System.arraycopy(oldTempoTicks, 0, tempoTicks, 0, size);
+		System.arraycopy(oldTempoMicros, 0, tempoMicros, 0, size);
+		System.arraycopy(oldNotes, 0, notesOn, 0, size * 2);
+		System.arraycopy(oldPositions, 0, trackPositions, 0,
+							size * trackCount);
+		System.arraycopy(oldTrackTicks, 0, trackTicks, 0, size * trackCount);
+		System.arraycopy(oldStatuses, 0, trackStatuses, 0, size * trackCount);
+	}
+	
+	/**
+	 * Saves the index to the given file. The index is written to a temporary
+	 * file of its own and moved into place, so an index being read, or saved
+	 * at the same time by another thread, is never seen half written.
+	 * @param indexFile
+	 * 			The file to save to.
+	 * @throws IOException
+	 * 			If the file cannot be written.
+	 */
+	private void write(File indexFile) throws IOException {
+		File directory = indexFile.getAbsoluteFile().getParentFile();
+		Path tempFile = Files.createTempFile(directory.toPath(),
+							indexFile.getName(), ".tmp");
+		try {
+			writeTo(tempFile.toFile());
+			Files.move(tempFile, indexFile.toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	/**
+	 * Writes the index to the given file.
+	 * @param file
+	 * 			The file to write to.
+	 * @throws IOException
+	 * 			If the file cannot be written.
+	 */
+	private void writeTo(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileLength);
+			out.writeLong(fileModified);
+			out.writeInt(trackCount);
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				out.writeLong(ticks[i]);
+				out.writeLong(micros[i]);
+				out.writeInt(tempos[i]);
+				out.writeLong(tempoTicks[i]);
+				out.writeLong(tempoMicros[i]);
+				out.writeLong(notesOn[i * 2]);
+				out.writeLong(notesOn[i * 2 + 1]);
+				for (int t = i * trackCount; t < (i + 1) * trackCount; t++) {
+					out.writeLong(trackPositions[t]);
+					out.writeLong(trackTicks[t]);
+					out.writeByte(trackStatuses[t]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads an index from the given file.
+	 * @param indexFile
+	 * 			The file to read.
+	 * @return
+	 * 			The index.
+	 * @throws IOException
+	 * 			If the file cannot be read or is not an index.
+	 */
+	private static SeekIndex read(File indexFile) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a seek index: " + indexFile);
+			long length = in.readLong();
+			long modified = in.readLong();
+			int tracks = in.readInt();
+			int count = in.readInt();
+			if (tracks < 0 || count < 0)
+				throw new IOException("Damaged seek index: " + indexFile);
+			SeekIndex index = new SeekIndex(length, modified, tracks, count);
+			for (int i = 0; i < count; i++) {
+				index.ticks[i] = in.readLong();
+				index.micros[i] = in.readLong();
+				index.tempos[i] = in.readInt();
+				index.tempoTicks[i] = in.readLong();
+				index.tempoMicros[i] = in.readLong();
+				index.notesOn[i * 2] = in.readLong();
+				index.notesOn[i * 2 + 1] = in.readLong();
+				for (int t = i * tracks; t < (i + 1) * tracks; t++) {
+					index.trackPositions[t] = in.readLong();
+					index.trackTicks[t] = in.readLong();
+					index.trackStatuses[t] = in.readUnsignedByte();
+				}
+			}
+			index.size = count;
+			return index;
+		}
+	}
+}
@@ -0,0 +1,556 @@
+package midi;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Reads the events of a Standard MIDI File in the order they are played.
+ * Only the chunk headers are read when the file is opened. Each track is then
+ * decoded lazily through its own small buffer, and the tracks are merged with
+ * a priority queue ordered by tick (a k-way merge). So the memory used does
+ * not depend on the size of the file, and the first event is available as
+ * soon as the headers have been read.
+ * The reader does not create an object per event: next() moves on to the next
+ * event and its values are read through the getters.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SmfReader implements Closeable {
+	
+	// the status of the meta events
+	public static final int META = 0xFF;
+	// the type of the set tempo meta event
+	public static final int META_TEMPO = 0x51;
+	// the type of the end of track meta event
+	public static final int META_END_OF_TRACK = 0x2F;
+	// the tempo used until the file sets one (120 bpm)
+	public static final int DEFAULT_TEMPO = 500_000;
+	
+	// the size of the buffer of each track
+	private static final int TRACK_BUFFER_SIZE = 4096;
+	
+	// the file being read
+	private final RandomAccessFile file;
+	// the channel of the file
+	private final FileChannel channel;
+	// the format of the file (0, 1 or 2)
+	private final int format;
+	// the division from the header (ticks per quarter note if positive)
+	private final int division;
+	// all the tracks of the file
+	private final List<TrackCursor> tracks = new ArrayList<>();
+	// the tracks with events left, ordered by the tick of their next event
+	private final PriorityQueue<TrackCursor> queue;
+	
+	// the track of the current event
+	private TrackCursor current;
+	// the tempo, in microseconds per quarter note
+	private int tempo = DEFAULT_TEMPO;
+	// the tick of the last tempo change
+	private long tempoTick = 0;
+	// the time of tempoTick, in microseconds
+	private long tempoMicros = 0;
+	// the time of the current event, in microseconds
+	private long timeMicros = 0;
+	
+	/**
+	 * Opens the given MIDI file and reads its chunk headers.
+	 * @param midiFile
+	 * 			The file to read.
+	 * @throws IOException
+	 * 			If the file cannot be read, or is not a MIDI file.
+	 */
+	public SmfReader(File midiFile) throws IOException {
+		file = new RandomAccessFile(midiFile, "r");
+		channel = file.getChannel();
+		try {
+			ByteBuffer header = ByteBuffer.allocate(14);
+			readFully(header, 0);
+			if (header.getInt(0) != 0x4D546864) // "MThd"
+				throw new IOException("Not a MIDI file: " + midiFile);
+			int headerLength = header.getInt(4);
+			format = header.getShort(8);
+			int trackCount = header.getShort(10) & 0xFFFF;
+			division = header.getShort(12);
+			long position = 8L + headerLength;
+			ByteBuffer chunk = ByteBuffer.allocate(8);
+			while (tracks.size() < trackCount
+					&& position + 8 <= channel.size()) {
+				chunk.clear();
+				readFully(chunk, position);
+				long length = chunk.getInt(4) & 0xFFFFFFFFL;
+				if (chunk.getInt(0) == 0x4D54726B) // "MTrk"
+					tracks.add(new TrackCursor(tracks.size(), position + 8,
+										position + 8 + length));
+				position += 8 + length;
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		queue = new PriorityQueue<>(Math.max(1, tracks.size()),
+				(a, b) -> a.tick != b.tick ? Long.compare(a.tick, b.tick)
+										: Integer.compare(a.index, b.index));
+		for (TrackCursor track : tracks) {
+			if (track.advance())
+				queue.add(track);
+		}
+	}
+	
+	/**
+	 * Saves the state of every track, so that reading can later be resumed
+	 * from the current event with restore(). The state of a track is the
+	 * position, tick and running status its next event is decoded from, or
+	 * a position of -1 if the track has ended.
+	 * @param positions
+	 * 			Filled with the position of each track.
+	 * @param ticks
+	 * 			Filled with the tick of each track.
+	 * @param runningStatuses
+	 * 			Filled with the running status of each track.
+	 */
+	public void saveTrackState(long[] positions, long[] ticks,
+						int[] runningStatuses) {
+		for (TrackCursor track : tracks) {
+			int i = track.index;
+			if (track.isEnded) {
+				positions[i] = -1;
+			}
+			else if (track == current) {
+				positions[i] = track.position();
+				ticks[i] = track.tick;
+				runningStatuses[i] = track.runningStatus;
+			}
+			else {
+				positions[i] = track.eventStart;
+				ticks[i] = track.previousTick;
+				runningStatuses[i] = track.previousRunningStatus;
+			}
+		}
+	}
+	
+	/**
+	 * Resumes reading from a state saved with saveTrackState(). The next call
+	 * to next() returns the event after the one that was current when the
+	 * state was saved.
+	 * @param tempo
+	 * 			The tempo after the event that was current.
+	 * @param tempoTick
+	 * 			The tick of the last tempo change before it.
+	 * @param tempoTime
+	 * 			The time of the last tempo change before it.
+	 * @param positions
+	 * 			The saved position of each track.
+	 * @param ticks
+	 * 			The saved tick of each track.
+	 * @param runningStatuses
+	 * 			The saved running status of each track.
+	 * @throws IOException
+	 * 			If the file cannot be read.
+	 */
+	public void restore(int tempo, long tempoTick, long tempoTime,
+			long[] positions, long[] ticks, int[] runningStatuses)
+							throws IOException {
+		queue.clear();
+		current = null;
+		for (TrackCursor track : tracks) {
+			int i = track.index;
+			if (positions[i] < 0) {
+				track.isEnded = true;
+				continue;
+			}
+			track.reset(positions[i], ticks[i], runningStatuses[i]);
+			if (track.advance())
+				queue.add(track);
+		}
+		this.tempo = tempo;
+		this.tempoTick = tempoTick;
+		tempoMicros = tempoTime;
+		timeMicros = tempoTime;
+	}
+	
+	/**
+	 * Moves on to the next event.
+	 * @return
+	 * 		True if there is a next event, false at the end of the file.
+	 * @throws IOException
+	 * 			If the file cannot be read.
+	 */
+	public boolean next() throws IOException {
+		if (current != null && current.advance())
+			queue.add(current);
+		current = queue.poll();
+		if (current == null)
+			return false;
+		updateTime(current.tick);
+		if (current.status == META && current.metaType == META_TEMPO) {
+			tempo = current.metaValue;
+			tempoTick = current.tick;
+			tempoMicros = timeMicros;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the tick of the current event.
+	 * @return
+	 * 		The tick, from the start of the file.
+	 */
+	public long getTick() {
+		return current.tick;
+	}
+	
+	/**
+	 * Returns the time of the current event, taking into account all the
+	 * tempo changes before it.
+	 * @return
+	 * 		The time in microseconds from the start of the file.
+	 */
+	public long getTimeMicros() {
+		return timeMicros;
+	}
+	
+	/**
+	 * Returns the status byte of the current event. META for meta events,
+	 * 0xF0 or 0xF7 for system exclusive events.
+	 * @return
+	 * 		The status byte.
+	 */
+	public int getStatus() {
+		return current.status;
+	}
+	
+	/**
+	 * Returns the first data byte of the current channel event.
+	 * @return
+	 * 		The first data byte (the note for note events).
+	 */
+	public int getData1() {
+		return current.data1;
+	}
+	
+	/**
+	 * Returns the second data byte of the current channel event.
+	 * @return
+	 * 		The second data byte (the velocity for note events).
+	 */
+	public int getData2() {
+		return current.data2;
+	}
+	
+	/**
+	 * Returns the type of the current meta event.
+	 * @return
+	 * 		The type of the meta event.
+	 */
+	public int getMetaType() {
+		return current.metaType;
+	}
+	
+	/**
+	 * Returns the number of the track of the current event.
+	 * @return
+	 * 		The number of the track.
+	 */
+	public int getTrack() {
+		return current.index;
+	}
+	
+	/**
+	 * Returns the current tempo.
+	 * @return
+	 * 		The tempo in microseconds per quarter note.
+	 */
+	public int getTempo() {
+		return tempo;
+	}
+	
+	/**
+	 * Returns the tick of the last tempo change.
+	 * @return
+	 * 		The tick of the last tempo change (0 if there was none).
+	 */
+	public long getTempoTick() {
+		return tempoTick;
+	}
+	
+	/**
+	 * Returns the time of the last tempo change.
+	 * @return
+	 * 		The time in microseconds of the last tempo change.
+	 */
+	public long getTempoMicros() {
+		return tempoMicros;
+	}
+	
+	/**
+	 * Returns the format of the file.
+	 * @return
+	 * 		0, 1 or 2.
+	 */
+	public int getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Returns the number of tracks in the file.
+	 * @return
+	 * 		The number of tracks.
+	 */
+	public int getTrackCount() {
+		return tracks.size();
+	}
+	
+	/**
+	 * Returns the division of the file.
+	 * @return
+	 * 		The number of ticks per quarter note if positive, otherwise the
+	 * 		SMPTE format and ticks per frame.
+	 */
+	public int getDivision() {
+		return division;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+	
+	/**
+	 * Works out the time of the given tick from the time of the last tempo
+	 * change, so that rounding errors do not add up from event to event.
+	 * @param tick
+	 * 			The tick of the current event.
+	 */
+	private void updateTime(long tick) {
+		long ticks = tick - tempoTick;
+		if (division > 0) {
+			timeMicros = tempoMicros + ticks * tempo / division;
+		}
+		else {
+			// SMPTE: the high byte is -(frames per second)
+			int framesPerSecond = -(division >> 8);
+			int ticksPerFrame = division & 0xFF;
+			timeMicros = tempoMicros + ticks * 1_000_000L
+						/ (framesPerSecond * ticksPerFrame);
+		}
+	}
+	
+	/**
+	 * Reads the buffer full from the given position of the file.
+	 * @param buffer
+	 * 			The buffer to fill.
+	 * @param position
+	 * 			The position in the file.
+	 * @throws IOException
+	 * 			If the file ends before the buffer is full.
+	 */
+	private void readFully(ByteBuffer buffer, long position)
+							throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException();
+		}
+	}
+	
+	/**
+	 * Decodes the events of one track, one at a time.
+	 */
+	private class TrackCursor {
+		
+		// the number of the track
+		final int index;
+		// the position of the end of the track in the file
+		final long end;
+		// the buffered bytes of the track
+		final ByteBuffer buffer = ByteBuffer.allocate(TRACK_BUFFER_SIZE);
+		// the position in the file of the first byte in the buffer
+		long bufferStart;
+		
+		// the tick of the current event
+		long tick = 0;
+		// the running status of the track
+		int runningStatus = 0;
+		// the position, tick and running status the current event was
+		// decoded from
+		long eventStart;
+		long previousTick;
+		int previousRunningStatus;
+		// checks if the track has ended
+		boolean isEnded = false;
+		// the values of the current event
+		int status;
+		int data1;
+		int data2;
+		int metaType;
+		int metaValue;
+		
+		/**
+		 * Creates a cursor for the track between the given positions.
+		 * @param index
+		 * 			The number of the track.
+		 * @param start
+		 * 			The position of the first event of the track.
+		 * @param end
+		 * 			The position after the last byte of the track.
+		 */
+		TrackCursor(int index, long start, long end) {
+			this.index = index;
+			this.end = end;
+			bufferStart = start;
+			buffer.limit(0);
+		}
+		
+		/**
+		 * Decodes the next event of the track.
+		 * @return
+		 * 		False if the track has ended.
+		 * @throws IOException
+		 * 			If the file cannot be read.
+		 */
+		boolean advance() throws IOException {
+			if (position() >= end) {
+				isEnded = true;
+				return false;
+			}
+			eventStart = position();
+			previousTick = tick;
+			previousRunningStatus = runningStatus;
+			tick += readVarLength();
+			int first = readByte();
+			if (first < 0x80) {
+				// running status, the byte read is the first data byte
+				status = runningStatus;
+				data1 = first;
+			}
+			else {
+				status = first;
+				if (status < 0xF0)
+					runningStatus = status;
+				else if (status <= 0xF7)
+					runningStatus = 0;
+				data1 = status < 0xF0 ? readByte() : 0;
+			}
+			data2 = 0;
+			metaType = 0;
+			if (status == META) {
+				metaType = readByte();
+				long length = readVarLength();
+				if (metaType == META_TEMPO && length == 3) {
+					metaValue = readByte() << 16 | readByte() << 8
+								| readByte();
+				}
+				else
+					skip(length);
+				if (metaType == META_END_OF_TRACK) {
+					isEnded = true;
+					return false;
+				}
+			}
+			else if (status == 0xF0 || status == 0xF7) {
+				skip(readVarLength());
+			}
+			else if (status < 0x80) {
+				throw new IOException("Data byte with no running status in "
+								+ "track " + index);
+			}
+			else {
+				int type = status & 0xF0;
+				if (type != 0xC0 && type != 0xD0)
+					data2 = readByte();
+			}
+			return true;
+		}
+		
+		/**
+		 * Moves the cursor to the given state.
+		 * @param position
+		 * 			The position of the next event.
+		 * @param tick
+		 * 			The tick the delta time of the next event is added to.
+		 * @param runningStatus
+		 * 			The running status before the next event.
+		 */
+		void reset(long position, long tick, int runningStatus) {
+			bufferStart = position;
+			buffer.limit(0);
+			this.tick = tick;
+			this.runningStatus = runningStatus;
+			isEnded = false;
+		}
+		
+		/**
+		 * Returns the position in the file of the next byte to be read.
+		 * @return
+		 * 		The position in the file.
+		 */
+		long position() {
+			return bufferStart + buffer.position();
+		}
+		
+		/**
+		 * Reads the next byte of the track.
+		 * @return
+		 * 		The byte read (0 - 255).
+		 * @throws IOException
+		 * 			If the track ends early.
+		 */
+		int readByte() throws IOException {
+			if (!buffer.hasRemaining()) {
+				long start = position();
+				if (start >= end)
+					throw new EOFException("Track " + index + " ended early");
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - start));
+				bufferStart = start;
+				readFully(buffer, start);
+				buffer.flip();
+			}
+			return buffer.get() & 0xFF;
+		}
+		
+		/**
+		 * Reads a variable length quantity.
+		 * @return
+		 * 		The value read.
+		 * @throws IOException
+		 * 			If the track ends early.
+		 */
+		long readVarLength() throws IOException {
+			long value = 0;
+			int b;
+			do {
+				b = readByte();
+				value = value << 7 | (b & 0x7F);
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+		
+		/**
+		 * Skips the given number of bytes.
+		 * @param length
+		 * 			The number of bytes to skip.
+		 * @throws IOException
+		 * 			If the track ends early.
+		 */
+		void skip(long length) throws IOException {
+			if (length <= buffer.remaining()) {
+				buffer.position(buffer.position() + (int) length);
+				return;
+			}
+			long target = position() + length;
+			if (target > end)
+				throw new EOFException("Track " + index + " ended early");
+			bufferStart = target;
+			buffer.limit(0);
+		}
+	}
+}
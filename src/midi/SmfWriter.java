@@ -0,0 +1,303 @@
+package midi;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the events recorded by a MidiRecorder to a Standard MIDI File.
+ * The nanosecond times are converted to ticks at a fixed tempo, so the file
+ * plays back at the speed it was played. Note offs are written as note ons
+ * with zero velocity and running status is used, so most events take two
+ * bytes plus the delta time.
+ * The track length is worked out in a first pass over the events and the
+ * events are written in a second pass, so the file is streamed out without
+ * being built in memory.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SmfWriter {
+	
+	// the default number of ticks per quarter note
+	public static final int DEFAULT_PPQN = 480;
+	// the default tempo, in microseconds per quarter note (120 bpm)
+	public static final int DEFAULT_TEMPO = 500_000;
+	
+	// the length of the tempo meta event
+	private static final int TEMPO_EVENT_LENGTH = 7;
+	// the length of the end of track meta event
+	private static final int END_OF_TRACK_LENGTH = 4;
+	
+	// the MIDI file format (0 or 1)
+	private final int format;
+	// the number of ticks per quarter note
+	private final int ppqn;
+	// the tempo written to the file
+	private final int tempo;
+	
+	/**
+	 * Creates a writer for type 1 files at the default resolution.
+	 */
+	public SmfWriter() {
+		this(1, DEFAULT_PPQN, DEFAULT_TEMPO);
+	}
+	
+	/**
+	 * Creates a writer.
+	 * @param format
+	 * 			0 for a single track file, 1 for a tempo track and a note
+	 * 			track.
+	 * @param ppqn
+	 * 			The number of ticks per quarter note.
+	 * @param tempo
+	 * 			The tempo in microseconds per quarter note.
+	 */
+	public SmfWriter(int format, int ppqn, int tempo) {
+		if (format != 0 && format != 1)
+			throw new IllegalArgumentException("format must be 0 or 1");
+		if (ppqn <= 0 || ppqn > 0x7FFF)
+			throw new IllegalArgumentException("bad ppqn: " + ppqn);
+		this.format = format;
+		this.ppqn = ppqn;
+		this.tempo = tempo;
+	}
+	
+	/**
+	 * Writes the recorded events to the given file.
+	 * @param recorder
+	 * 			The recorded events.
+	 * @param file
+	 * 			The file to write to.
+	 * @throws IOException
+	 * 			If the file cannot be written.
+	 */
+	public void write(MidiRecorder recorder, File file) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(
+										new FileOutputStream(file))) {
+			write(recorder, out);
+		}
+	}
+	
+	/**
+	 * Writes the recorded events to the given stream.
+	 * @param recorder
+	 * 			The recorded events.
+	 * @param out
+	 * 			The stream to write to.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	public void write(MidiRecorder recorder, OutputStream out)
+							throws IOException {
+		synchronized (recorder) {
+			int count = recorder.size();
+			out.write(new byte[] {'M', 'T', 'h', 'd'});
+			writeInt(out, 6);
+			writeShort(out, format);
+			writeShort(out, format == 0 ? 1 : 2);
+			writeShort(out, ppqn);
+			if (format == 0) {
+				startTrack(out, TEMPO_EVENT_LENGTH
+						+ noteEventsLength(recorder, count)
+						+ END_OF_TRACK_LENGTH);
+				writeTempo(out);
+				writeNoteEvents(recorder, count, out);
+				writeEndOfTrack(out);
+			}
+			else {
+				startTrack(out, TEMPO_EVENT_LENGTH + END_OF_TRACK_LENGTH);
+				writeTempo(out);
+				writeEndOfTrack(out);
+				startTrack(out, noteEventsLength(recorder, count)
+								+ END_OF_TRACK_LENGTH);
+				writeNoteEvents(recorder, count, out);
+				writeEndOfTrack(out);
+			}
+			out.flush();
+		}
+	}
+	
+	/**
+	 * Converts a time in nanoseconds to ticks.
+	 * @param nanos
+	 * 			The time in nanoseconds.
+	 * @return
+	 * 			The time in ticks.
+	 */
+	public long toTicks(long nanos) {
+		return nanos * ppqn / (tempo * 1000L);
+	}
+	
+	/**
+	 * Works out the number of bytes the note events take in the track.
+	 * @param recorder
+	 * 			The recorded events.
+	 * @param count
+	 * 			The number of events to write.
+	 * @return
+	 * 			The number of bytes.
+	 */
+	private int noteEventsLength(MidiRecorder recorder, int count) {
+		int length = 0;
+		int runningStatus = -1;
+		long lastTick = 0;
+		for (int i = 0; i < count; i++) {
+			long tick = toTicks(recorder.getTime(i));
+			length += varLength(tick - lastTick);
+			lastTick = tick;
+			int status = fileStatus(recorder.getEvent(i));
+			if (status != runningStatus)
+				length++;
+			runningStatus = status;
+			length += 2;
+		}
+		return length;
+	}
+	
+	/**
+	 * Writes the note events of the track.
+	 * @param recorder
+	 * 			The recorded events.
+	 * @param count
+	 * 			The number of events to write.
+	 * @param out
+	 * 			The stream to write to.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	private void writeNoteEvents(MidiRecorder recorder, int count,
+						OutputStream out) throws IOException {
+		int runningStatus = -1;
+		long lastTick = 0;
+		for (int i = 0; i < count; i++) {
+			long tick = toTicks(recorder.getTime(i));
+			writeVarLength(out, tick - lastTick);
+			lastTick = tick;
+			int event = recorder.getEvent(i);
+			int status = fileStatus(event);
+			if (status != runningStatus)
+				out.write(status);
+			runningStatus = status;
+			out.write(event >> 8 & 0x7F);
+			out.write(status == (event >>> 16) ? event & 0x7F : 0);
+		}
+	}
+	
+	/**
+	 * Returns the status byte the event is written with. Note offs are
+	 * written as note ons with zero velocity, so they share the running
+	 * status of the note ons.
+	 * @param event
+	 * 			The packed event.
+	 * @return
+	 * 			The status byte.
+	 */
+	private static int fileStatus(int event) {
+		int status = event >>> 16;
+		if ((status & 0xF0) == MidiRecorder.NOTE_OFF)
+			return MidiRecorder.NOTE_ON | (status & 0x0F);
+		return status;
+	}
+	
+	/**
+	 * Writes the track header.
+	 * @param out
+	 * 			The stream to write to.
+	 * @param length
+	 * 			The number of bytes in the track.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	private static void startTrack(OutputStream out, int length)
+							throws IOException {
+		out.write(new byte[] {'M', 'T', 'r', 'k'});
+		writeInt(out, length);
+	}
+	
+	/**
+	 * Writes the set tempo meta event at tick 0.
+	 * @param out
+	 * 			The stream to write to.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	private void writeTempo(OutputStream out) throws IOException {
+		out.write(new byte[] {0, (byte) 0xFF, 0x51, 0x03,
+				(byte) (tempo >> 16), (byte) (tempo >> 8), (byte) tempo});
+	}
+	
+	/**
+	 * Writes the end of track meta event.
+	 * @param out
+	 * 			The stream to write to.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	private static void writeEndOfTrack(OutputStream out) throws IOException {
+		out.write(new byte[] {0, (byte) 0xFF, 0x2F, 0});
+	}
+	
+	/**
+	 * Returns the number of bytes a variable length quantity takes.
+	 * @param value
+	 * 			The value.
+	 * @return
+	 * 			The number of bytes.
+	 */
+	static int varLength(long value) {
+		int length = 1;
+		while ((value >>= 7) > 0)
+			length++;
+		return length;
+	}
+	
+	/**
+	 * Writes a variable length quantity.
+	 * @param out
+	 * 			The stream to write to.
+	 * @param value
+	 * 			The value to write.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	static void writeVarLength(OutputStream out, long value)
+							throws IOException {
+		for (int shift = (varLength(value) - 1) * 7; shift > 0; shift -= 7)
+			out.write((int) (value >> shift & 0x7F) | 0x80);
+		out.write((int) (value & 0x7F));
+	}
+	
+	/**
+	 * Writes a big endian 32 bit int.
+	 * @param out
+	 * 			The stream to write to.
+	 * @param value
+	 * 			The value to write.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	private static void writeInt(OutputStream out, int value)
+							throws IOException {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+	
+	/**
+	 * Writes a big endian 16 bit int.
+	 * @param out
+	 * 			The stream to write to.
+	 * @param value
+	 * 			The value to write.
+	 * @throws IOException
+	 * 			If the stream cannot be written.
+	 */
+	private static void writeShort(OutputStream out, int value)
+							throws IOException {
+		out.write(value >>> 8);
+		out.write(value);
+	}
+}
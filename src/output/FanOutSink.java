@@ -0,0 +1,187 @@
+package output;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import engine.NoteBus;
+
+/**
+ * Delivers every note to a number of sinks in parallel. The notes are
+ * published once on a NoteBus, and each sink takes them from the bus on its
+ * own thread, so a slow sink never delays the others or the caller. Nothing
+ * is allocated or locked for a note; if a sink falls a whole ring behind,
+ * the newest note ons are dropped and counted. A note off is never dropped,
+ * as its note would be left on: the caller waits for room instead.
+ * The bus lives as long as the fan out. When the sinks change, only the
+ * subscribers of the sinks added or removed are started or stopped, so a
+ * note sent at the same time still reaches every sink kept.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class FanOutSink implements OutputSink {
+
+	// the name of the fan out sink
+	public static final String NAME = "Fan Out";
+
+	// the sinks the notes are delivered to
+	private volatile List<OutputSink> sinks = Collections.emptyList();
+	// the subscriber of each sink, in the order the sinks were given
+	private final Map<OutputSink, NoteBus.Subscription> deliveries =
+					new LinkedHashMap<>();
+	// the bus carrying the notes to the sinks
+	private final NoteBus bus = new NoteBus();
+	// the latest button configuration, read by the sinks when they take a
+	// CONFIG event from the bus
+	private volatile List<Integer> pendingConfig;
+
+	/**
+	 * Creates a fan out over the given sinks, and starts a thread for each.
+	 * @param targets
+	 * 			The sinks the notes are delivered to.
+	 */
+	public FanOutSink(List<OutputSink> targets) {
+		setSinks(targets);
+	}
+
+	/**
+	 * Changes the sinks the notes are delivered to. A sink added is given the
+	 * notes sent from now on; a sink removed is given the notes already sent
+	 * before its thread is stopped. The sinks kept are not disturbed.
+	 * @param targets
+	 * 			The sinks the notes are delivered to.
+	 */
+	public synchronized void setSinks(List<OutputSink> targets) {
+		List<OutputSink> updated =
+						Collections.unmodifiableList(new ArrayList<>(targets));
+		for (OutputSink sink : updated)
+			if (!deliveries.containsKey(sink))
+				deliveries.put(sink, bus.subscribe(new Delivery(sink)::onEvent,
+								"sink-" + sink.getName()));
+		sinks = updated;
+		List<OutputSink> removed = new ArrayList<>(deliveries.keySet());
+		removed.removeAll(updated);
+		for (OutputSink sink : removed)
+			deliveries.remove(sink).close();
+	}
+
+	/**
+	 * Hands the events of the bus to one sink.
+	 */
+	private class Delivery {
+		private final OutputSink sink;
+		// the configuration last delivered to the sink
+		private List<Integer> deliveredConfig;
+
+		private Delivery(OutputSink sink) {
+			this.sink = sink;
+		}
+
+		private void onEvent(long event, long timeNanos) {
+			switch (NoteBus.getType(event)) {
+			case NoteBus.NOTE_ON:
+				sink.noteOn(NoteBus.getNote(event), NoteBus.getVelocity(event),
+								timeNanos);
+				break;
+			case NoteBus.NOTE_OFF:
+				sink.noteOff(NoteBus.getNote(event), timeNanos);
+				break;
+			case NoteBus.CONFIG:
+				List<Integer> config = pendingConfig;
+				if (config != null && config != deliveredConfig) {
+					deliveredConfig = config;
+					sink.sendConfig(config);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void noteOn(int note, int velocity) {
+		bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, note, velocity, 0));
+	}
+
+	@Override
+	public void noteOff(int note) {
+		noteOff(note, System.nanoTime());
+	}
+
+	@Override
+	public void noteOn(int note, int velocity, long timeNanos) {
+		bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, note, velocity, 0),
+						timeNanos);
+	}
+
+	@Override
+	public void noteOff(int note, long timeNanos) {
+		bus.publishOrWait(NoteBus.pack(NoteBus.NOTE_OFF, 0, note, 0, 0),
+						timeNanos);
+	}
+
+	/**
+	 * Sends the configuration to all the sinks. If several are sent before
+	 * a sink gets to them, the sink is only sent the latest.
+	 */
+	@Override
+	public void sendConfig(List<Integer> buttonNotes) {
+		pendingConfig = buttonNotes;
+		bus.publish(NoteBus.pack(NoteBus.CONFIG, 0, 0, 0, 0));
+	}
+
+	/**
+	 * Returns the sinks the notes are delivered to.
+	 * @return
+	 * 		The sinks.
+	 */
+	public List<OutputSink> getSinks() {
+		return sinks;
+	}
+
+	/**
+	 * Returns the number of notes dropped because a sink fell behind.
+	 * @return
+	 * 		The number of dropped notes.
+	 */
+	public long getDroppedEvents() {
+		return bus.getDroppedEvents();
+	}
+
+	/**
+	 * Returns the number of note offs that waited for a sink to fall less
+	 * than a whole ring behind.
+	 * @return
+	 * 		The number of delayed note offs.
+	 */
+	public long getDelayedEvents() {
+		return bus.getDelayedEvents();
+	}
+
+	/**
+	 * Delivers the notes still queued and stops the delivery threads.
+	 * The sinks themselves are left open.
+	 */
+	public void stop() {
+		setSinks(Collections.<OutputSink>emptyList());
+	}
+
+	/**
+	 * Stops the delivery threads and closes all the sinks.
+	 */
+	@Override
+	public void close() {
+		List<OutputSink> closed = sinks;
+		stop();
+		for (OutputSink sink : closed)
+			sink.close();
+	}
+}
@@ -0,0 +1,36 @@
+package output;
+
+import midi.MidiFileOut;
+
+/**
+ * Records the notes to the output MIDI file while recording is on.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class FileSink implements OutputSink {
+
+	@Override
+	public String getName() {
+		return SinkRegistry.FILE;
+	}
+
+	@Override
+	public void noteOn(int note, int velocity) {
+		MidiFileOut.addNoteOn(note, velocity);
+	}
+
+	@Override
+	public void noteOff(int note) {
+		MidiFileOut.addNoteOff(note);
+	}
+
+	@Override
+	public void noteOn(int note, int velocity, long timeNanos) {
+		MidiFileOut.addNoteOn(note, velocity, timeNanos);
+	}
+
+	@Override
+	public void noteOff(int note, long timeNanos) {
+		MidiFileOut.addNoteOff(note, timeNanos);
+	}
+}
@@ -0,0 +1,172 @@
+package output;
+
+/**
+ * An in-memory sink. Stores every note it receives, with the System.nanoTime()
+ * at which it was received, in preallocated arrays. 
+ * Used in place of the hardware to measure the latency and the throughput of
+ * the output path, for example on a machine with no serial port.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class LoopbackSink implements OutputSink {
+
+	// the default number of events stored
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	// the status of the stored events
+	public static final int NOTE_ON = 0x90;
+	public static final int NOTE_OFF = 0x80;
+
+	// the times the events were received at
+	private final long[] times;
+	// the events, packed as (status << 16 | note << 8 | velocity)
+	private final int[] events;
+	// the total number of events received (the oldest are overwritten)
+	private long eventCount = 0;
+
+	/**
+	 * Creates a loopback sink storing the last DEFAULT_CAPACITY events.
+	 */
+	public LoopbackSink() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a loopback sink storing the last 'capacity' events.
+	 * @param capacity
+	 * 			The number of events stored.
+	 */
+	public LoopbackSink(int capacity) {
+		times = new long[capacity];
+		events = new int[capacity];
+	}
+
+	@Override
+	public String getName() {
+		return SinkRegistry.LOOPBACK;
+	}
+
+	@Override
+	public void noteOn(int note, int velocity) {
+		store(NOTE_ON << 16 | note << 8 | velocity);
+	}
+
+	@Override
+	public void noteOff(int note) {
+		store(NOTE_OFF << 16 | note << 8);
+	}
+
+	/**
+	 * Returns the total number of events received.
+	 * @return
+	 * 		The number of events received.
+	 */
+	public synchronized long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Waits until at least the given number of events have been received.
+	 * @param count
+	 * 			The number of events to wait for.
+	 * @param timeoutMillis
+	 * 			The maximum time to wait.
+	 * @return
+	 * 			True if the events were received in time.
+	 */
+	public synchronized boolean awaitEventCount(long count,
+								long timeoutMillis) {
+		long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+		while (eventCount < count) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return false;
+			try {
+				wait(Math.max(1, remaining / 1_000_000L));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the time the event with the given sequence number was received.
+	 * @param sequence
+	 * 			The number of the event (0 for the first event received).
+	 * @return
+	 * 			The System.nanoTime() at which the event was received.
+	 */
+	public synchronized long getTime(long sequence) {
+		return times[slot(sequence)];
+	}
+
+	/**
+	 * Returns the status (NOTE_ON or NOTE_OFF) of the given event.
+	 * @param sequence
+	 * 			The number of the event.
+	 * @return
+	 * 			The status of the event.
+	 */
+	public synchronized int getStatus(long sequence) {
+		return events[slot(sequence)] >>> 16;
+	}
+
+	/**
+	 * Returns the note of the given event.
+	 * @param sequence
+	 * 			The number of the event.
+	 * @return
+	 * 			The MIDI value of the note.
+	 */
+	public synchronized int getNote(long sequence) {
+		return events[slot(sequence)] >> 8 & 0xFF;
+	}
+
+	/**
+	 * Returns the velocity of the given event.
+	 * @param sequence
+	 * 			The number of the event.
+	 * @return
+	 * 			The velocity of the note.
+	 */
+	public synchronized int getVelocity(long sequence) {
+		return events[slot(sequence)] & 0xFF;
+	}
+
+	/**
+	 * Clears all the stored events.
+	 */
+	public synchronized void reset() {
+		eventCount = 0;
+	}
+
+	/**
+	 * Stores an event with the current time.
+	 * @param event
+	 * 			The packed event.
+	 */
+	private synchronized void store(int event) {
+		int slot = (int) (eventCount % times.length);
+		times[slot] = System.nanoTime();
+		events[slot] = event;
+		eventCount++;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the slot of the given event.
+	 * @param sequence
+	 * 			The number of the event.
+	 * @return
+	 * 			The index of the event in the arrays.
+	 */
+	private int slot(long sequence) {
+		if (sequence < 0 || sequence >= eventCount
+				|| sequence < eventCount - times.length)
+			throw new IndexOutOfBoundsException("event " + sequence
+								+ " is not stored");
+		return (int) (sequence % times.length);
+	}
+}
@@ -0,0 +1,82 @@
+package output;
+
+import java.util.List;
+
+/**
+ * A destination for the notes played. That is, the serial port, the MIDI file,
+ * an in-memory loopback etc. 
+ * Sinks are registered with the SinkRegistry, which routes the notes to all
+ * the sinks the user has chosen.
+ * @author Kaamraan Kamaal
+ *
+ */
+public interface OutputSink {
+	
+	// the velocity used when the input has no velocity of its own
+	int DEFAULT_VELOCITY = 100;
+	
+	/**
+	 * Returns the name of the sink. The name is used as the key of the sink
+	 * in the SinkRegistry.
+	 * @return
+	 * 		The name of the sink.
+	 */
+	String getName();
+	
+	/**
+	 * Sends an on note for the given note.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note (0 - 127).
+	 */
+	void noteOn(int note, int velocity);
+	
+	/**
+	 * Sends an off note for the given note.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 */
+	void noteOff(int note);
+	
+	/**
+	 * Sends an on note played at the given time. Sinks that keep the time
+	 * of the notes (the MIDI file) use it instead of the time the note
+	 * reaches them.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param velocity
+	 * 			The velocity of the note (0 - 127).
+	 * @param timeNanos
+	 * 			The System.nanoTime() the note was played at.
+	 */
+	default void noteOn(int note, int velocity, long timeNanos) {
+		noteOn(note, velocity);
+	}
+	
+	/**
+	 * Sends an off note played at the given time.
+	 * @param note
+	 * 			The MIDI value of the note.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the note was played at.
+	 */
+	default void noteOff(int note, long timeNanos) {
+		noteOff(note);
+	}
+	
+	/**
+	 * Sends the button configuration, that is the MIDI values of the buttons
+	 * on the hardware. Sinks with no buttons ignore it.
+	 * @param buttonNotes
+	 * 			The MIDI values of the buttons.
+	 */
+	default void sendConfig(List<Integer> buttonNotes) {
+	}
+	
+	/**
+	 * Releases the resources held by the sink.
+	 */
+	default void close() {
+	}
+}
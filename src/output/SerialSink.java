@@ -0,0 +1,49 @@
+package output;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import serialio.SerialOut;
+
+/**
+ * Sends the notes to the synthesizer connected to the serial port.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SerialSink implements OutputSink {
+
+	@Override
+	public String getName() {
+		return SinkRegistry.SERIAL;
+	}
+
+	@Override
+	public void noteOn(int note, int velocity) {
+		SerialOut.sendNoteOn(note, velocity, 0);
+	}
+
+	@Override
+	public void noteOff(int note) {
+		SerialOut.sendNoteOff(note);
+	}
+
+	@Override
+	public void noteOn(int note, int velocity, long timeNanos) {
+		SerialOut.sendNoteOn(note, velocity, timeNanos);
+	}
+
+	@Override
+	public void noteOff(int note, long timeNanos) {
+		SerialOut.sendNoteOff(note, timeNanos);
+	}
+
+	@Override
+	public void sendConfig(List<Integer> buttonNotes) {
+		SerialOut.sendConfigData(new ArrayList<>(buttonNotes));
+	}
+
+	@Override
+	public void close() {
+		SerialOut.closePort();
+	}
+}
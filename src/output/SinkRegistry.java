@@ -0,0 +1,148 @@
+package output;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps all the available output sinks, and the ones chosen by the user.
+ * The notes played are sent to getOutput(), which delivers them to all the
+ * chosen sinks through a FanOutSink, so each chosen sink takes the notes on
+ * its own thread and the thread playing them never waits for a sink. The
+ * same FanOutSink is used for as long as the registry, and is only told
+ * which sinks to deliver to when the chosen sinks change.
+ * This class uses a singleton design.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SinkRegistry {
+	
+	// the names of the built in sinks
+	public static final String FILE = "MIDI File";
+	public static final String SERIAL = "Serial Port";
+	public static final String LOOPBACK = "Loopback";
+	
+	// the only instance of this class available to use.
+	private static final SinkRegistry INSTANCE = new SinkRegistry();
+	
+	// all the registered sinks, by name
+	private final Map<String, OutputSink> sinks = new LinkedHashMap<>();
+	// the names of the chosen sinks
+	private final Set<String> enabledSinks = new LinkedHashSet<>();
+	// delivers the notes to the chosen sinks; kept for the life of the
+	// registry, so a note sent while the chosen sinks change is not lost
+	private final FanOutSink output =
+					new FanOutSink(Collections.<OutputSink>emptyList());
+	
+	/**
+	 * Registers the built in sinks.
+	 */
+	private SinkRegistry() {
+		register(new FileSink());
+		register(new SerialSink());
+		register(new LoopbackSink());
+	}
+	
+	/**
+	 * Returns the available instance.
+	 * @return
+	 * 		The instance that can be accessed by the outside classes.
+	 */
+	public static SinkRegistry getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Registers a sink, replacing any sink with the same name.
+	 * @param sink
+	 * 			The sink to register.
+	 */
+	public synchronized void register(OutputSink sink) {
+		sinks.put(sink.getName(), sink);
+		rebuildOutput();
+	}
+	
+	/**
+	 * Returns the sink registered with the given name.
+	 * @param name
+	 * 			The name of the sink.
+	 * @return
+	 * 			The sink, or null if there is no sink with that name.
+	 */
+	public synchronized OutputSink getSink(String name) {
+		return sinks.get(name);
+	}
+	
+	/**
+	 * Chooses the sink with the given name as one of the outputs.
+	 * @param name
+	 * 			The name of the sink.
+	 */
+	public synchronized void enable(String name) {
+		if (!sinks.containsKey(name))
+			throw new IllegalArgumentException("No sink named " + name);
+		if (enabledSinks.add(name))
+			rebuildOutput();
+	}
+	
+	/**
+	 * Removes the sink with the given name from the outputs.
+	 * @param name
+	 * 			The name of the sink.
+	 */
+	public synchronized void disable(String name) {
+		if (enabledSinks.remove(name))
+			rebuildOutput();
+	}
+	
+	/**
+	 * Removes all the sinks from the outputs.
+	 */
+	public synchronized void disableAll() {
+		enabledSinks.clear();
+		rebuildOutput();
+	}
+	
+	/**
+	 * Checks if the sink with the given name is one of the outputs.
+	 * @param name
+	 * 			The name of the sink.
+	 * @return
+	 * 			True if the sink is chosen.
+	 */
+	public synchronized boolean isEnabled(String name) {
+		return enabledSinks.contains(name);
+	}
+	
+	/**
+	 * Returns the sink all the notes should be sent to.
+	 * @return
+	 * 		The sink delivering to all the chosen sinks.
+	 */
+	public OutputSink getOutput() {
+		return output;
+	}
+	
+	/**
+	 * Closes all the registered sinks.
+	 */
+	public synchronized void closeAll() {
+		disableAll();
+		for (OutputSink sink : sinks.values())
+			sink.close();
+	}
+	
+	/**
+	 * Gives the output the chosen sinks.
+	 */
+	private void rebuildOutput() {
+		List<OutputSink> chosen = new ArrayList<>();
+		for (String name : enabledSinks)
+			chosen.add(sinks.get(name));
+		output.setSinks(chosen);
+	}
+}
@@ -1,24 +1,29 @@
 package processingblocks;
 
-import java.util.Collections;
-import java.util.List;
-
 import javafx.scene.control.ChoiceBox;
-import keyboard.gui.KeyboardUI;;
+import engine.ArpegiatorBlock;
+import engine.ArpegiatorBlock.Mode;
+import engine.Block;
+import engine.SynthEngine;
 
 /**
  * This class handles the Arpegiator processing block.
  * An arpegiator can operate in various modes, namely:
- * Ascending, Descending, Ping Pong and Random.
+ * Ascending, Descending, Ping Pong and Random. The notes are played by the
+ * engine's ArpegiatorBlock, in time with the engine's clock; this class lets
+ * the user choose the mode and the note division.
  * @author Kaamraan Kamaal
  *
  */
 public class Arpegiator extends ProcessingBlock{
 
 	// the various modes of the Arpegiator
-	private static ChoiceBox<String> parameters;
-	// thread to play the arpegiate the notes
-	private static Thread playThread = new Thread();
+	private ChoiceBox<Mode> parameters;
+	// the note division of a step
+	private ChoiceBox<String> division;
+	// the block playing the notes
+	private final ArpegiatorBlock block = new ArpegiatorBlock(
+							SynthEngine.getInstance().getClock());
 	
 	/**
 	 * Initialies the fields.
@@ -28,77 +33,19 @@ public class Arpegiator extends ProcessingBlock{
 	public Arpegiator(String name) {
 		super(name);
 		parameters = new ChoiceBox<>();
-		parameters.getItems().addAll("Ascending", "Descending", 
-							"Ping Pong", "Random");
+		parameters.getItems().addAll(Mode.values());
+		parameters.getSelectionModel().selectedItemProperty().addListener(
+						(observable, oldMode, newMode) -> block.setMode(newMode));
 		parameters.getSelectionModel().selectFirst();
-		blkParamBox.getChildren().add(parameters);
-	}
-
-	/**
-	 * Arpegiates the notes given in the List of notes
-	 * @param notes
-	 * 			The notes on which are to be arpegiated.
-	 */
-	@SuppressWarnings("deprecation")
-	public static void playArpNotes(List<Integer> notes) {
-		Collections.sort(notes);
-		Runnable task = () -> {
-			switch (parameters.getValue()) {
-			case "Ascending":
-				for (int note : notes) {
-					KeyboardUI.sendNoteOnToOutput(note);
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-					KeyboardUI.sendNoteOffToOutput(note);
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-				}
-				break;
-			case "Descending":
-				for (int i = notes.size() - 1; i >= 0; i--) {
-					KeyboardUI.sendNoteOnToOutput(notes.get(i));
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-					KeyboardUI.sendNoteOffToOutput(notes.get(i));
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-				}
-				break;
-			case "Ping Pong":
-				for (int note : notes) {
-					KeyboardUI.sendNoteOffToOutput(note);
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-					KeyboardUI.sendNoteOffToOutput(note);
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-				}
-				for (int i = notes.size() - 2; i >= 0; i--) {
-					KeyboardUI.sendNoteOnToOutput(notes.get(i));
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-					KeyboardUI.sendNoteOffToOutput(notes.get(i));
-					try{Thread.sleep(150);} catch (InterruptedException e){}
-				}
-				break;
-			case "Random":
-				Collections.shuffle(notes);
-				for (int note : notes) {
-					KeyboardUI.sendNoteOnToOutput(note);
-					try{Thread.sleep(500);} catch (InterruptedException e){}
-					KeyboardUI.sendNoteOffToOutput(note);
-					try{Thread.sleep(500);} catch (InterruptedException e){}
-				}
-				break;
-			}
-		};
-		if (playThread.isAlive()) {
-			playThread.stop();
-		}
-		playThread = new Thread(task);
-		playThread.start();
-	}
-	
-	/**
-	 * Returns the thread responsible for playing the arpegiator.
-	 * @return
-	 * 		The thread playing the arpegiator.
-	 */
-	public Thread getPlayThread() {
-		return playThread;
+		
+		division = new ChoiceBox<>();
+		division.getItems().addAll("1/4", "1/8", "1/16", "1/32");
+		division.getSelectionModel().select("1/" + 
+							ArpegiatorBlock.DEFAULT_DIVISION);
+		division.getSelectionModel().selectedItemProperty().addListener(
+						(observable, oldDivision, newDivision) -> block.setDivision(
+								Integer.parseInt(newDivision.substring(2))));
+		blkParamBox.getChildren().addAll(parameters, division);
 	}
 	
 	/**
@@ -107,6 +54,11 @@ public class Arpegiator extends ProcessingBlock{
 	 * 		The mode of the arpegiator.
 	 */
 	public String getParameter() {
-		return parameters.getValue();
+		return block.getMode().toString();
+	}
+	
+	@Override
+	public Block getBlock() {
+		return block;
 	}
 }
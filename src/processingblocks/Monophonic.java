@@ -1,11 +1,26 @@
 package processingblocks;
 
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import engine.Block;
+import engine.MonophonicBlock;
+import engine.VoiceAllocator.Priority;
+
 /**
- * Creates the Monophonic processing block.
+ * Creates the Monophonic processing block. The user chooses which of the
+ * notes held sounds (the last, lowest or highest) and if the notes are
+ * played legato.
  * @author Kaamraan Kamaal
  *
  */
 public class Monophonic extends ProcessingBlock{
+	
+	// the note priorities
+	private ChoiceBox<Priority> priority;
+	// plays the notes legato
+	private CheckBox legato;
+	// the block keeping one note on at a time
+	private final MonophonicBlock block = new MonophonicBlock();
 
 	/**
 	 * Creates the processing block with the given name.
@@ -14,5 +29,23 @@ public class Monophonic extends ProcessingBlock{
 	 */
 	public Monophonic(String name) {
 		super(name);
+		priority = new ChoiceBox<>();
+		priority.getItems().addAll(Priority.values());
+		priority.getSelectionModel().select(block.getPriority());
+		priority.getSelectionModel().selectedItemProperty().addListener(
+						(observable, oldPriority, newPriority) ->
+								block.setPriority(newPriority));
+		
+		legato = new CheckBox("Legato");
+		legato.setSelected(block.isLegato());
+		legato.selectedProperty().addListener(
+						(observable, wasLegato, isLegato) ->
+								block.setLegato(isLegato));
+		blkParamBox.getChildren().addAll(priority, legato);
+	}
+	
+	@Override
+	public Block getBlock() {
+		return block;
 	}
 }
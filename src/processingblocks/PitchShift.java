@@ -1,19 +1,22 @@
 package processingblocks;
 
-import java.util.List;
-
 import javafx.scene.control.TextField;
-import keyboard.gui.KeyboardModel;
+import engine.Block;
+import engine.PitchShiftBlock;
+import engine.SynthEngine;
 
 /**
- * Handles the Pitch Shift processing block.
+ * Handles the Pitch Shift processing block. The notes are shifted by the
+ * engine's PitchShiftBlock; this class edits its parameter.
  * @author Kaamraan Kamaal
  *
  */
 public class PitchShift extends ProcessingBlock{
 
-	// the pitch shift parameter
-	private static TextField shiftParameter;
+	// the text field holding the pitch shift parameter
+	private TextField shiftParameter;
+	// the block shifting the notes
+	private final PitchShiftBlock block;
 	
 	/**
 	 * Creates the processing block with the given name.
@@ -22,24 +25,28 @@ public class PitchShift extends ProcessingBlock{
 	 */
 	public PitchShift(String name) {
 		super(name);
+		block = new PitchShiftBlock(
+						SynthEngine.getInstance().getScaleModel());
 		shiftParameter = new TextField();
 		shiftParameter.setPromptText("Pitch Shift Parameter");
 		shiftParameter.setMinWidth(30);
+		shiftParameter.textProperty().addListener(
+						(observable, oldText, newText) -> parseShift(newText));
 		blkParamBox.getChildren().add(shiftParameter);
 	}
 	
 	/**
-	 * Returns the pitch shift parameter.
-	 * @return
-	 * 		The pitch shift parameter.
+	 * Parses the pitch shift parameter from the text field. The parameter is
+	 * parsed once when it is edited, not on every note.
+	 * @param text
+	 * 			The text of the field.
 	 */
-	private static int getShiftParameter() {
+	private void parseShift(String text) {
 		try {
-			return (Integer.parseInt(shiftParameter.getText()));
+			block.setShift(text.isEmpty() ? 0 : Integer.parseInt(text.trim()));
 		} catch (NumberFormatException e) {
-			shiftParameter.clear();
+			block.setShift(0);
 		}
-		return 0;
 	}
 	
 	/**
@@ -48,48 +55,11 @@ public class PitchShift extends ProcessingBlock{
 	 * 		The shift parameter.
 	 */
 	public int getParameter() {
-		try {
-			return (Integer.parseInt(shiftParameter.getText()));
-		} catch (NumberFormatException e) {
-			shiftParameter.clear();
-			return 0;
-		}
+		return block.getShift();
 	}
 	
-	/**
-	 * Returns the shifted note corresponding to the given note.
-	 * @param note
-	 * 			The original note.
-	 * @return
-	 * 			The shifted note.
-	 */
-	public static int getPitchShiftedNote(int note) {
-		int shiftedNote = note + getShiftParameter();
-		if (! KeyboardModel.getMidiOfScale().contains(shiftedNote)) {
-			shiftedNote = getClosestValue(shiftedNote, 
-							KeyboardModel.getMidiOfScale());
-		}
-		return shiftedNote;
-	}
-	
-	/**
-	 * Returns the shifted note closest to the valid notes in the scale.
-	 * @param note
-	 * 			The shifted note.
-	 * @param notes
-	 * 			The list of all the MIDI notes in the scale.
-	 * @return
-	 * 			The shifted note rounded to the closest valid note.
-	 */
-	private static int getClosestValue(int note, List<Integer> notes) {
-		int distance = Math.abs(note - notes.get(0));
-		int shiftedNote = notes.get(0);
-		for (int i = 1; i < notes.size(); i++) {
-			int tempDistance = Math.abs(note - notes.get(i));
-			if (tempDistance < distance)
-				shiftedNote = notes.get(i);
-			distance = tempDistance;
-		}
-		return shiftedNote;
+	@Override
+	public Block getBlock() {
+		return block;
 	}
 }
@@ -1,17 +1,17 @@
 package processingblocks;
 
-import java.util.List;
-
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
-import keyboard.gui.KeyboardModel;
+import engine.Block;
 import keyboard.gui.KeyboardUI;
 
 /**
  * An abstract class forming the base class for all the Processing Blocks.
+ * A processing block is the view of an engine Block: the notes are processed
+ * by the engine, the view only shows the block and edits its parameters.
  * @author Kaamraan Kamaal.
  *
  */
@@ -24,8 +24,6 @@ public abstract class ProcessingBlock {
 	// box to hold the block and its parameters
 	private VBox vbox;
 	
-	// List of all the MIDI notes in the scale
-	protected List<Integer> midiOfScale = KeyboardModel.getMidiOfScale();
 	// Block containing the parameters of the block
 	protected HBox blkParamBox;
 	
@@ -92,4 +90,11 @@ public abstract class ProcessingBlock {
 	public String getName() {
 		return btnBlock.getText();
 	}
+	
+	/**
+	 * Returns the engine block this is the view of.
+	 * @return
+	 * 		The engine block.
+	 */
+	public abstract Block getBlock();
 }
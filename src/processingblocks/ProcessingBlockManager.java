@@ -11,6 +11,7 @@ import java.util.Scanner;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.layout.VBox;
+import engine.SynthEngine;
 
 /**
  * Manager to manage all the processing blocks.
@@ -23,12 +24,12 @@ public class ProcessingBlockManager {
 	// the instance of the manager available outside
 	private static final ProcessingBlockManager INSTANCE = 
 									new ProcessingBlockManager();
-	// the list of all the blocks on
+	// the list of all the blocks on, in the order the notes go through them
 	private List<ProcessingBlock> processingBlocks;
 	// the box containing all the procesisng blocks
 	private List<VBox> blockBoxes = new ArrayList<>();
-	// checks if there is a block active
-	private boolean isAnyBlockOn = false;
+	// the engine processing the notes
+	private final SynthEngine engine = SynthEngine.getInstance();
 	
 	/**
 	 * Initialises the fields.
@@ -47,61 +48,47 @@ public class ProcessingBlockManager {
 	}
 	
 	/**
-	 * Adds a new block with the given name.
+	 * Adds a new block with the given name to the end of the chain of
+	 * blocks.
 	 * @param blockName
 	 * 			The name of the new block to be added.
 	 */
 	public void addNewBlock(String blockName) {
-		if (!processingBlocks.isEmpty()) {
-			processingBlocks.clear();
-			blockBoxes.clear();
-		}
+		ProcessingBlock processingBlock;
 		switch (blockName) {
 		case "Chordify":
-			Chordify chordify = new Chordify("Chordify");
-			processingBlocks.add(chordify);
-			blockBoxes.add(chordify.getProcessingBlock());
+			processingBlock = new Chordify("Chordify");
 			break;
 		case "Arpegiator":
-			Arpegiator arpegiator = new Arpegiator("Arpegiator");
-			processingBlocks.add(arpegiator);
-			blockBoxes.add(arpegiator.getProcessingBlock());
+			processingBlock = new Arpegiator("Arpegiator");
 			break;
 		case "Pitch Shift":
-			PitchShift pitchShift = new PitchShift("Pitch Shift");
-			processingBlocks.add(pitchShift);
-			blockBoxes.add(pitchShift.getProcessingBlock());
-			break;
 		case "PitchShift":
-			PitchShift pitchShiftBlock = new PitchShift("Pitch Shift");
-			processingBlocks.add(pitchShiftBlock);
-			blockBoxes.add(pitchShiftBlock.getProcessingBlock());
+			processingBlock = new PitchShift("Pitch Shift");
 			break;
 		case "Monophonic":
-			Monophonic monophonic = new Monophonic("Monophonic");
-			processingBlocks.add(monophonic);
-			blockBoxes.add(monophonic.getProcessingBlock());
+			processingBlock = new Monophonic("Monophonic");
 			break;
 		case "Load":
 			ArrayList<String> blockConfig = readFromFile();
-			addNewBlock(blockConfig.get(0));
-			break;
-		}	
-		isAnyBlockOn = true;
+			if (!blockConfig.isEmpty())
+				addNewBlock(blockConfig.get(0));
+			return;
+		default:
+			return;
+		}
+		processingBlocks.add(processingBlock);
+		blockBoxes.add(processingBlock.getProcessingBlock());
+		engine.addBlock(processingBlock.getBlock());
 	}
 	
 	/**
-	 * Removes the given processing block from the list of blocks.
+	 * Removes the given processing block from the chain of blocks.
 	 * @param processingBlock
 	 * 				The processing block to be removed.
 	 */
-	@SuppressWarnings("deprecation")
 	public void removeBlock(ProcessingBlock processingBlock) {
-		if (processingBlock.getName().equals("Arpegiator")) {
-			Arpegiator arp = (Arpegiator) processingBlock;
-			if (arp.getPlayThread().isAlive())
-				arp.getPlayThread().stop();
-		}
+		engine.removeBlock(processingBlock.getBlock());
 		ArrayList<String> blockConfigs = new ArrayList<>();
 		blockConfigs.add(processingBlock.getName());
 		if (processingBlock.getName().equals("Arpegiator"))
@@ -112,8 +99,6 @@ public class ProcessingBlockManager {
 		writeConfigToFile(blockConfigs);
 		blockBoxes.remove(processingBlock.getProcessingBlock());
 		processingBlocks.remove(processingBlock);
-		if (processingBlocks.isEmpty())
-			isAnyBlockOn = false;
 	}
 	
 	/**
@@ -131,16 +116,7 @@ public class ProcessingBlockManager {
 	 * 		True if there is a currently active block.
 	 */
 	public boolean isAnyBlockOn() {
-		return this.isAnyBlockOn;
-	}
-	
-	/**
-	 * Returns the name of the block active.
-	 * @return
-	 * 		The name of the block active.
-	 */
-	public String getBlockOn() {
-		return processingBlocks.get(0).getName();
+		return !processingBlocks.isEmpty();
 	}
 	
 	/**
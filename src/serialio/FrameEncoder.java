@@ -0,0 +1,160 @@
+package serialio;
+
+/**
+ * Encodes the frames queued for the synthesizer as MIDI 1.0 messages: a
+ * status byte holding the channel, followed by the note and its velocity.
+ * The button configuration is a system exclusive message holding the note
+ * of each of the eight buttons, or, when only a few buttons change, a
+ * shorter one holding the button and note of each change. The messages
+ * are turned into the bytes of the chosen protocol by a WireEncoder as they
+ * are written to the port.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class FrameEncoder {
+	
+	// the status of a note off, before the channel is added
+	public static final int NOTE_OFF = 0x80;
+	// the status of a note on, before the channel is added
+	public static final int NOTE_ON = 0x90;
+	// the first and last bytes of a system exclusive message
+	public static final int SYSEX_START = 0xF0;
+	public static final int SYSEX_END = 0xF7;
+	// the manufacturer id reserved for non-commercial use
+	public static final int NON_COMMERCIAL_ID = 0x7D;
+	// the number of buttons on the synthesizer
+	public static final int BUTTON_COUNT = 8;
+	// the length of a button configuration message
+	public static final int CONFIG_LENGTH = BUTTON_COUNT + 3;
+	// the first data byte of a change to the configuration; it gives the
+	// change an odd number of data bytes, where the full one has eight
+	public static final int CONFIG_DELTA = 0x7F;
+	// the most buttons changed in one change to the configuration; with
+	// more the full configuration is as short
+	public static final int MAX_DELTA_BUTTONS = 3;
+	
+	/**
+	 * Encodes a note on.
+	 * @param frame
+	 * 			The buffer to write the frame to.
+	 * @param offset
+	 * 			The position to write the frame at.
+	 * @param channel
+	 * 			The MIDI channel (0 - 15).
+	 * @param note
+	 * 			The note to on.
+	 * @param velocity
+	 * 			The velocity of the note (1 - 127).
+	 * @return
+	 * 			The number of bytes written.
+	 */
+	public static int encodeNoteOn(byte[] frame, int offset, int channel,
+							int note, int velocity) {
+		frame[offset] = (byte) (NOTE_ON | channel & 0xF);
+		frame[offset + 1] = (byte) (note & 0x7F);
+		frame[offset + 2] = (byte) (velocity & 0x7F);
+		return 3;
+	}
+	
+	/**
+	 * Encodes a note off.
+	 * @param frame
+	 * 			The buffer to write the frame to.
+	 * @param offset
+	 * 			The position to write the frame at.
+	 * @param channel
+	 * 			The MIDI channel (0 - 15).
+	 * @param note
+	 * 			The note to off.
+	 * @return
+	 * 			The number of bytes written.
+	 */
+	public static int encodeNoteOff(byte[] frame, int offset, int channel,
+							int note) {
+		frame[offset] = (byte) (NOTE_OFF | channel & 0xF);
+		frame[offset + 1] = (byte) (note & 0x7F);
+		frame[offset + 2] = 0;
+		return 3;
+	}
+	
+	/**
+	 * Encodes a button configuration.
+	 * @param frame
+	 * 			The buffer to write the frame to.
+	 * @param offset
+	 * 			The position to write the frame at.
+	 * @param buttonNotes
+	 * 			The notes of the buttons. Buttons with no note are sent as 0.
+	 * @return
+	 * 			The number of bytes written.
+	 */
+	public static int encodeConfig(byte[] frame, int offset,
+							int[] buttonNotes) {
+		frame[offset] = (byte) SYSEX_START;
+		frame[offset + 1] = NON_COMMERCIAL_ID;
+		for (int i = 0; i < BUTTON_COUNT; i++) {
+			frame[offset + 2 + i] = i < buttonNotes.length
+									? (byte) (buttonNotes[i] & 0x7F) : 0;
+		}
+		frame[offset + CONFIG_LENGTH - 1] = (byte) SYSEX_END;
+		return CONFIG_LENGTH;
+	}
+	
+	/**
+	 * Encodes the change from one button configuration to another: the full
+	 * configuration if there was none before or more than maxChanges
+	 * buttons changed, or else a system exclusive message holding
+	 * CONFIG_DELTA and the button (0 - 7) and new note of each change, in
+	 * the order of the buttons.
+	 * @param frame
+	 * 			The buffer to write the frame to.
+	 * @param offset
+	 * 			The position to write the frame at.
+	 * @param sentNotes
+	 * 			The notes of the buttons the synthesizer has, null if it has
+	 * 			none.
+	 * @param buttonNotes
+	 * 			The notes of the buttons to send.
+	 * @param maxChanges
+	 * 			The most buttons sent as a change, up to MAX_DELTA_BUTTONS;
+	 * 			0 to send any change as the full configuration, for a
+	 * 			protocol with no change message.
+	 * @return
+	 * 			The number of bytes written, 0 if nothing changed.
+	 */
+	public static int encodeConfigUpdate(byte[] frame, int offset,
+					int[] sentNotes, int[] buttonNotes, int maxChanges) {
+		if (sentNotes == null)
+			return encodeConfig(frame, offset, buttonNotes);
+		int length = 3;
+		for (int i = 0; i < BUTTON_COUNT; i++) {
+			int note = noteOf(buttonNotes, i);
+			if (note == noteOf(sentNotes, i))
+				continue;
+			if (length == 3 + 2 * Math.min(maxChanges, MAX_DELTA_BUTTONS))
+				return encodeConfig(frame, offset, buttonNotes);
+			frame[offset + length++] = (byte) i;
+			frame[offset + length++] = (byte) note;
+		}
+		if (length == 3)
+			return 0;
+		frame[offset] = (byte) SYSEX_START;
+		frame[offset + 1] = NON_COMMERCIAL_ID;
+		frame[offset + 2] = CONFIG_DELTA;
+		frame[offset + length] = (byte) SYSEX_END;
+		return length + 1;
+	}
+	
+	/**
+	 * Returns the note of a button, as it is sent.
+	 * @param buttonNotes
+	 * 			The notes of the buttons.
+	 * @param button
+	 * 			The button.
+	 * @return
+	 * 			The note, 0 for a button with no note.
+	 */
+	private static int noteOf(int[] buttonNotes, int button) {
+		return button < buttonNotes.length ? buttonNotes[button] & 0x7F : 0;
+	}
+}
@@ -0,0 +1,62 @@
+package serialio;
+
+/**
+ * What is done with the notes played while the serial port is
+ * disconnected.
+ * @author Kaamraan Kamaal
+ *
+ */
+public enum LinkDownPolicy {
+	/**
+	 * The notes are kept in the writer's queue, as many as it holds, and
+	 * sent when the port is back, along with those of a failed write that
+	 * the port did not take. Once the queue is full, note ons are dropped
+	 * first: a note off takes the place of a queued note on, so no note is
+	 * left sounding. An off is only dropped when the queue holds nothing but
+	 * offs.
+	 */
+	BUFFER("buffer"),
+	/**
+	 * The notes are dropped, along with any still queued, or in a failed
+	 * write, when the port went away, so nothing stale is played when it is
+	 * back. The dropped notes are counted in the metrics.
+	 */
+	DROP("drop");
+
+	// the name of the policy, as typed by the user
+	private final String name;
+
+	private LinkDownPolicy(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of the policy.
+	 * @return
+	 * 		The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the policy with the given name.
+	 * @param name
+	 * 			The name, in any case.
+	 * @return
+	 * 			The policy.
+	 * @throws IllegalArgumentException
+	 * 			If there is no policy with the name.
+	 */
+	public static LinkDownPolicy fromName(String name) {
+		for (LinkDownPolicy policy : values())
+			if (policy.name.equalsIgnoreCase(name))
+				return policy;
+		throw new IllegalArgumentException("Unknown link down policy " + name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,216 @@
+package serialio;
+
+import java.io.File;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+/**
+ * Keeps a serial port connected for as long as it is chosen. A background
+ * thread looks for the port every RESCAN_MILLIS, opens it when it appears,
+ * and closes it when it disappears from the system or a write to it fails,
+ * as when the synthesizer's USB cable is pulled out. Each time the port is
+ * opened the writer sends it the whole button configuration first, so the
+ * synthesizer is set up again after being unplugged.
+ * The notes go to the supervisor's SerialWriter, which keeps or drops them
+ * while the port is gone (see LinkDownPolicy). Nothing here is done on the
+ * threads playing the notes, or on the thread choosing the port: the port
+ * is looked for, opened and closed only on the supervisor's thread, so a
+ * slow or missing port never holds up a key or the user interface.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class PortSupervisor {
+
+	// the time between two looks for the port
+	public static final long RESCAN_MILLIS = 500;
+
+	// the system name of the port chosen
+	private final String portName;
+	// writes the frames to the port while it is open
+	private final SerialWriter writer;
+	// the port while it is open, only used by the supervisor thread
+	private SerialPort openPort = null;
+	// checks if the supervisor is running
+	private volatile boolean isRunning = false;
+	// the time allowed for the queued frames to be written when stopped
+	private volatile long stopTimeoutMillis = 0;
+	// the supervisor thread
+	private Thread supervisorThread;
+
+	/**
+	 * Creates a supervisor for the port with the given name, counting what
+	 * is sent into the given metrics.
+	 * @param portName
+	 * 			The system name of the port, as listed by getCommPorts(), or
+	 * 			the path of a device.
+	 * @param metrics
+	 * 			The metrics to count into.
+	 */
+	public PortSupervisor(String portName, SerialMetrics metrics) {
+		this.portName = portName;
+		writer = new SerialWriter(null, SerialWriter.DEFAULT_CAPACITY,
+								metrics);
+	}
+
+	/**
+	 * Starts the writer and the supervisor. The supervisor tries the port
+	 * straight away, on its own thread.
+	 */
+	public synchronized void start() {
+		if (isRunning)
+			return;
+		isRunning = true;
+		writer.start();
+		supervisorThread = new Thread(this::superviseLoop, "serial-supervisor");
+		supervisorThread.setDaemon(true);
+		supervisorThread.start();
+	}
+
+	/**
+	 * Stops the supervisor, which writes out the frames still queued if the
+	 * port is open, and closes it. Waits for that for at most the given
+	 * time; a port that takes longer is closed when it is done.
+	 * @param timeoutMillis
+	 * 			The maximum time to wait for the queued frames to be written.
+	 */
+	public void stop(long timeoutMillis) {
+		Thread thread;
+		synchronized (this) {
+			if (!isRunning)
+				return;
+			stopTimeoutMillis = timeoutMillis;
+			isRunning = false;
+			thread = supervisorThread;
+		}
+		thread.interrupt();
+		try {
+			thread.join(timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the writer the frames are queued on.
+	 * @return
+	 * 		The writer.
+	 */
+	public SerialWriter getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Returns the name of the port.
+	 * @return
+	 * 		The name.
+	 */
+	public String getPortName() {
+		return portName;
+	}
+
+	/**
+	 * Checks if the port is open.
+	 * @return
+	 * 		True if the port is open and writable.
+	 */
+	public boolean isLinkUp() {
+		return writer.getPort() != null;
+	}
+
+	/**
+	 * Sends the button configuration, and keeps it to send again whenever
+	 * the port is opened. While the port is gone it is only kept.
+	 * @param notes
+	 * 			The notes of the buttons.
+	 */
+	public void setButtonNotes(int[] notes) {
+		writer.setButtonNotes(notes);
+	}
+
+	/**
+	 * The body of the supervisor thread.
+	 */
+	private void superviseLoop() {
+		check();
+		if (openPort == null && isRunning)
+			System.out.println("Port " + portName + " not found, waiting for it");
+		while (isRunning) {
+			try {
+				Thread.sleep(RESCAN_MILLIS);
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (isRunning)
+				check();
+		}
+		// an interrupt from stop() that came during a check is not for the
+		// writer
+		Thread.interrupted();
+		writer.stop(stopTimeoutMillis);
+		if (openPort != null) {
+			openPort.closePort();
+			openPort = null;
+			writer.getMetrics().setLinkUp(false);
+		}
+	}
+
+	/**
+	 * Closes the port if it has gone, and opens it if it is there. Only
+	 * called on the supervisor thread.
+	 */
+	private void check() {
+		if (openPort != null) {
+			if (writer.getPort() != null && isPresent())
+				return;
+			writer.setPort(null);
+			openPort.closePort();
+			openPort = null;
+			System.out.println("Port " + portName + " disconnected");
+		}
+		SerialPort port = findPort();
+		if (port == null || !port.openPort())
+			return;
+		port.setComPortTimeouts(SerialPort.TIMEOUT_WRITE_SEMI_BLOCKING, 0, 0);
+		openPort = port;
+		writer.setPort(port);
+		System.out.println("Port " + portName + " opened");
+	}
+
+	/**
+	 * Looks for the port among the ports of the system, or as a device file.
+	 * @return
+	 * 			The port, null if it is not there.
+	 */
+	private SerialPort findPort() {
+		for (SerialPort port : SerialPort.getCommPorts())
+			if (portName.equals(port.getSystemPortName()))
+				return port;
+		if (isDevicePath() && new File(portName).exists())
+			return SerialPort.getCommPort(portName);
+		return null;
+	}
+
+	/**
+	 * Checks if the port is still on the system.
+	 * @return
+	 * 			True if it is.
+	 */
+	private boolean isPresent() {
+		if (isDevicePath())
+			return new File(portName).exists();
+		for (SerialPort port : SerialPort.getCommPorts())
+			if (portName.equals(port.getSystemPortName()))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks if the port was given as the path of a device, like a
+	 * pseudo-terminal, which getCommPorts() does not list.
+	 * @return
+	 * 			True if it was.
+	 */
+	private boolean isDevicePath() {
+		return portName.startsWith("/");
+	}
+}
@@ -0,0 +1,84 @@
+package serialio;
+
+/**
+ * The protocols the notes can be sent to the synthesizer in.
+ * @author Kaamraan Kamaal
+ *
+ */
+public enum Protocol {
+	/**
+	 * The original framing of the synthesizer's firmware: a header byte
+	 * (127 for on, 126 for off, 125 for the buttons) and the note. It has no
+	 * channel or velocity. Any change to the buttons is sent as the whole
+	 * configuration, the only one the deployed firmware understands.
+	 */
+	LEGACY("legacy", false),
+	/**
+	 * Standard MIDI 1.0 messages with running status: a status byte is only
+	 * sent when it differs from the last one, and note offs are sent as note
+	 * ons with velocity 0 so a run of notes shares one status byte. The
+	 * buttons are sent as a non-commercial system exclusive message, and a
+	 * change to a few of them as a shorter one.
+	 */
+	MIDI("midi", true),
+	/**
+	 * A compact encoding for the synthesizer's firmware. A note on the same
+	 * channel as the last one, within 32 semitones of it and (for an on) at
+	 * the same velocity, is one byte holding the difference from the last
+	 * note; any other note is three bytes. A change to a few of the buttons
+	 * is sent as just those buttons.
+	 */
+	COMPACT("compact", true);
+
+	// the name of the protocol, as typed by the user
+	private final String name;
+	// checks if a change to a few buttons can be sent on its own
+	private final boolean hasConfigDelta;
+
+	private Protocol(String name, boolean hasConfigDelta) {
+		this.name = name;
+		this.hasConfigDelta = hasConfigDelta;
+	}
+
+	/**
+	 * Returns the name of the protocol.
+	 * @return
+	 * 		The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Checks if a change to a few of the buttons can be sent as just those
+	 * buttons. The synthesizer's firmware must understand the change
+	 * message; where it cannot (LEGACY), every change is sent as the whole
+	 * configuration.
+	 * @return
+	 * 		True if the protocol has a change message.
+	 */
+	public boolean hasConfigDelta() {
+		return hasConfigDelta;
+	}
+
+	/**
+	 * Returns the protocol with the given name.
+	 * @param name
+	 * 			The name, in any case.
+	 * @return
+	 * 			The protocol.
+	 * @throws IllegalArgumentException
+	 * 			If there is no protocol with the name.
+	 */
+	public static Protocol fromName(String name) {
+		for (Protocol protocol : values())
+			if (protocol.name.equalsIgnoreCase(name))
+				return protocol;
+		throw new IllegalArgumentException("Unknown protocol " + name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
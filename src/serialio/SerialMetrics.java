@@ -0,0 +1,228 @@
+package serialio;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import utilities.LatencyHistogram;
+
+/**
+ * Counts what a SerialWriter sends and how the port copes: bytes and frames
+ * written, short and failed writes, frames dropped, the depth of the queue,
+ * the time each write takes and the port coming and going. The counters
+ * take no lock and allocate nothing, and can be registered with the
+ * platform MBean server so they can be watched over JMX while the
+ * synthesizer is played.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SerialMetrics implements SerialMetricsMXBean {
+
+	// the name the metrics of the synthesizer's port are registered under
+	public static final String OBJECT_NAME = "midiblocks:type=SerialLink";
+
+	// the number of bytes written
+	private final AtomicLong bytesSent = new AtomicLong();
+	// the number of frames written in full
+	private final AtomicLong framesSent = new AtomicLong();
+	// the number of batches written
+	private final AtomicLong writes = new AtomicLong();
+	// the number of writes the port took only part of
+	private final AtomicLong shortWrites = new AtomicLong();
+	// the number of writes that failed
+	private final AtomicLong failedWrites = new AtomicLong();
+	// the number of frames dropped because the queue was full
+	private final AtomicLong droppedFrames = new AtomicLong();
+	// the number of frames waiting to be written
+	private volatile int queueDepth = 0;
+	// the largest number of frames that have waited to be written
+	private volatile int maxQueueDepth = 0;
+	// checks if the writer has a port to write to
+	private volatile boolean isLinkUp = false;
+	// the number of times the port went away
+	private final AtomicLong disconnects = new AtomicLong();
+	// the time each write took
+	private final LatencyHistogram writeTimes = new LatencyHistogram();
+
+	/**
+	 * Registers the metrics with the platform MBean server. A failure is
+	 * reported and otherwise ignored, as the link works without them.
+	 * @param name
+	 * 			The object name to register under.
+	 * @return
+	 * 			True if the metrics were registered.
+	 */
+	public boolean register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			server.registerMBean(this, objectName);
+			return true;
+		} catch (JMException e) {
+			System.err.println("Could not register " + name + ": " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Records the number of frames in the queue. Called by the writer with
+	 * the queue locked.
+	 * @param depth
+	 * 			The number of frames waiting to be written.
+	 */
+	void setQueueDepth(int depth) {
+		queueDepth = depth;
+		if (depth > maxQueueDepth)
+			maxQueueDepth = depth;
+	}
+
+	/**
+	 * Records a frame dropped because the queue was full.
+	 */
+	void frameDropped() {
+		droppedFrames.incrementAndGet();
+	}
+
+	/**
+	 * Records frames dropped because the port went away.
+	 * @param frames
+	 * 			The number of frames.
+	 */
+	void framesDropped(int frames) {
+		droppedFrames.addAndGet(frames);
+	}
+
+	/**
+	 * Records the writer getting or losing its port.
+	 * @param isUp
+	 * 			True if the writer has a port to write to.
+	 */
+	void setLinkUp(boolean isUp) {
+		isLinkUp = isUp;
+	}
+
+	/**
+	 * Records the port going away.
+	 */
+	void disconnected() {
+		disconnects.incrementAndGet();
+	}
+
+	/**
+	 * Records a write to the port.
+	 * @param bytes
+	 * 			The number of bytes the port took.
+	 * @param frames
+	 * 			The number of frames written in full.
+	 * @param nanos
+	 * 			The time the write took.
+	 */
+	void written(int bytes, int frames, long nanos) {
+		writes.incrementAndGet();
+		bytesSent.addAndGet(bytes);
+		framesSent.addAndGet(frames);
+		writeTimes.record(nanos);
+	}
+
+	/**
+	 * Records a write the port took only part of.
+	 */
+	void shortWrite() {
+		shortWrites.incrementAndGet();
+	}
+
+	/**
+	 * Records a write that failed.
+	 */
+	void writeFailed() {
+		failedWrites.incrementAndGet();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	@Override
+	public long getFramesSent() {
+		return framesSent.get();
+	}
+
+	@Override
+	public long getWrites() {
+		return writes.get();
+	}
+
+	@Override
+	public long getShortWrites() {
+		return shortWrites.get();
+	}
+
+	@Override
+	public long getFailedWrites() {
+		return failedWrites.get();
+	}
+
+	@Override
+	public long getDroppedFrames() {
+		return droppedFrames.get();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	@Override
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	@Override
+	public boolean isLinkUp() {
+		return isLinkUp;
+	}
+
+	@Override
+	public long getDisconnects() {
+		return disconnects.get();
+	}
+
+	@Override
+	public double getWriteP50Micros() {
+		return writeTimes.getValueAtPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getWriteP99Micros() {
+		return writeTimes.getValueAtPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getWriteP999Micros() {
+		return writeTimes.getValueAtPercentile(99.9) / 1000.0;
+	}
+
+	@Override
+	public double getWriteMaxMicros() {
+		return writeTimes.getMax() / 1000.0;
+	}
+
+	@Override
+	public void reset() {
+		bytesSent.set(0);
+		framesSent.set(0);
+		writes.set(0);
+		shortWrites.set(0);
+		failedWrites.set(0);
+		droppedFrames.set(0);
+		disconnects.set(0);
+		maxQueueDepth = queueDepth;
+		writeTimes.reset();
+	}
+}
@@ -0,0 +1,99 @@
+package serialio;
+
+/**
+ * The throughput and health of the serial link, as shown over JMX (in
+ * JConsole or JDK Mission Control, under midiblocks:type=SerialLink).
+ * @author Kaamraan Kamaal
+ *
+ */
+public interface SerialMetricsMXBean {
+
+	/**
+	 * @return
+	 * 		The number of bytes written to the port.
+	 */
+	long getBytesSent();
+
+	/**
+	 * @return
+	 * 		The number of frames written to the port in full.
+	 */
+	long getFramesSent();
+
+	/**
+	 * @return
+	 * 		The number of batches written to the port.
+	 */
+	long getWrites();
+
+	/**
+	 * @return
+	 * 		The number of writes the port took only part of.
+	 */
+	long getShortWrites();
+
+	/**
+	 * @return
+	 * 		The number of writes that failed, losing the rest of their batch.
+	 */
+	long getFailedWrites();
+
+	/**
+	 * @return
+	 * 		The number of frames dropped because the queue was full.
+	 */
+	long getDroppedFrames();
+
+	/**
+	 * @return
+	 * 		The number of frames waiting to be written.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return
+	 * 		The largest number of frames that have waited to be written.
+	 */
+	int getMaxQueueDepth();
+
+	/**
+	 * @return
+	 * 		True if the port is connected.
+	 */
+	boolean isLinkUp();
+
+	/**
+	 * @return
+	 * 		The number of times the port went away.
+	 */
+	long getDisconnects();
+
+	/**
+	 * @return
+	 * 		The median time a write to the port took, in microseconds.
+	 */
+	double getWriteP50Micros();
+
+	/**
+	 * @return
+	 * 		The 99th percentile of the time a write took, in microseconds.
+	 */
+	double getWriteP99Micros();
+
+	/**
+	 * @return
+	 * 		The 99.9th percentile of the time a write took, in microseconds.
+	 */
+	double getWriteP999Micros();
+
+	/**
+	 * @return
+	 * 		The longest time a write took, in microseconds.
+	 */
+	double getWriteMaxMicros();
+
+	/**
+	 * Sets all the counters back to 0.
+	 */
+	void reset();
+}
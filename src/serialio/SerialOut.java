@@ -6,100 +6,214 @@ import java.util.List;
 import com.fazecast.jSerialComm.SerialPort;
 
 /**
- * Handles the communications with the serial port.
+ * Handles the communications with the serial port. The notes are sent in
+ * the chosen Protocol: the synthesizer's original framing by default, or
+ * standard MIDI, or the compact encoding. What is sent is counted in
+ * SerialMetrics, shown over JMX as midiblocks:type=SerialLink.
+ * The chosen port is kept connected by a PortSupervisor, which opens it
+ * again after it is unplugged and sends the last button configuration; the
+ * notes played meanwhile are kept or dropped as the LinkDownPolicy says.
  * @author Kaamraan Kamaal
  *
  */
 public class SerialOut {
 	
-	// an array of all the port names available on the machine
-	private static SerialPort[] portNames = SerialPort.getCommPorts();
-	// the port chosen
-	private static SerialPort chosenPort;
-	// checks if the chosen port is open
-	private static boolean isPortOpen = false;
+	// keeps the chosen port open, null if no port is chosen
+	private static volatile PortSupervisor supervisor;
+	// writes the frames to the chosen port on its own thread, null if no
+	// port is chosen
+	private static volatile SerialWriter writer;
+	// the gap the writer leaves between two writes
+	private static long frameGapNanos = SerialWriter.DEFAULT_FRAME_GAP_NANOS;
+	// the time allowed for the queued frames to go out when closing
+	private static final long CLOSE_TIMEOUT_MILLIS = 500;
+	// the velocity of the notes sent without one
+	private static final int DEFAULT_VELOCITY = 100;
+	// the protocol the notes are sent in
+	private static volatile Protocol protocol = Protocol.LEGACY;
+	// the MIDI channel the notes are sent on
+	private static volatile int channel = 0;
+	// what is done with the notes while the port is disconnected
+	private static volatile LinkDownPolicy linkDownPolicy =
+								LinkDownPolicy.BUFFER;
+	// the notes of the buttons last sent, null if none were
+	private static volatile int[] buttonNotes;
+	// counts what is sent, for as long as the application runs
+	private static final SerialMetrics metrics = new SerialMetrics();
+	
+	static {
+		metrics.register(SerialMetrics.OBJECT_NAME);
+	}
 	
 	/**
-	 * Returns the list of all the ports available.
+	 * Returns the list of all the ports available now.
 	 * @return
 	 * 		The list of ports available.
 	 */
 	public static List<String> getSystemPorts() {
-		System.out.println(portNames);
+		SerialPort[] ports = SerialPort.getCommPorts();
 		List<String> systemPorts = new ArrayList<>();
-		for (int i = 0; i < portNames.length; i++)
-			systemPorts.add(portNames[i].getSystemPortName());
+		for (int i = 0; i < ports.length; i++)
+			systemPorts.add(ports[i].getSystemPortName());
 		return systemPorts;
 	}
 	
 	/**
-	 * Sets the chosen port to the port corresponding to the portName
+	 * Sets the chosen port to the port corresponding to the portName. If the
+	 * port is not there yet, or is unplugged later, it is opened as soon as
+	 * it appears.
 	 * @param portName
-	 * 			The String representation of the SystemPortName;
+	 * 			The String representation of the SystemPortName, or the path
+	 * 			of a device.
 	 */
 	public static void setSerialPort(String portName) {
-		if (! (chosenPort == null))
-			chosenPort.closePort();
-		for (int i = 0; i < portNames.length; i++) {
-			if (portName.equals(portNames[i].getSystemPortName())) {
-				chosenPort = portNames[i];
-				break;
-			}
-		}
-		isPortOpen = chosenPort.openPort();
-		if (isPortOpen)
-			System.out.println("Port successfully opened");
-		chosenPort.setComPortTimeouts(SerialPort.
-									TIMEOUT_WRITE_SEMI_BLOCKING, 0, 0);
+		closePort();
+		PortSupervisor newSupervisor = new PortSupervisor(portName, metrics);
+		SerialWriter newWriter = newSupervisor.getWriter();
+		newWriter.setFrameGapNanos(frameGapNanos);
+		newWriter.setProtocol(protocol);
+		newWriter.setLinkDownPolicy(linkDownPolicy);
+		int[] notes = buttonNotes;
+		if (notes != null)
+			newSupervisor.setButtonNotes(notes);
+		newSupervisor.start();
+		writer = newWriter;
+		supervisor = newSupervisor;
+	}
+	
+	/**
+	 * Checks if the chosen port is connected.
+	 * @return
+	 * 		True if a port is chosen and open.
+	 */
+	public static boolean isLinkUp() {
+		PortSupervisor current = supervisor;
+		return current != null && current.isLinkUp();
+	}
+	
+	/**
+	 * Sets what is done with the notes played while the port is
+	 * disconnected.
+	 * @param policy
+	 * 			The policy.
+	 */
+	public static void setLinkDownPolicy(LinkDownPolicy policy) {
+		linkDownPolicy = policy;
+		SerialWriter current = writer;
+		if (current != null)
+			current.setLinkDownPolicy(policy);
 	}
 	
 	/**
-	 * Sends the button configuration data to the selected port. 
+	 * Returns the counts of what has been sent to the serial port.
+	 * @return
+	 * 		The metrics.
+	 */
+	public static SerialMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sends the button configuration data to the selected port. Changes made
+	 * in quick succession are sent as one, and, except in the legacy
+	 * protocol, only the buttons that differ from what the port was last
+	 * sent go out.
 	 * @param btnConfigs
 	 * 			The list of button MIDI values.
 	 */
 	public static void sendConfigData(ArrayList<Integer> btnConfigs) {
-		byte[] configs = new byte [9];
-		configs[0] = 0b01111101;
-		for (int i = 0; i < btnConfigs.size(); i++) {
-			int temp = btnConfigs.get(i);
-			configs[i + 1] = (byte) temp;
-		}
-		if (isPortOpen) {
-			for (int i = 0; i < configs.length; i++) {
-				byte[] buffer = {configs[i]};
-				chosenPort.writeBytes(buffer, 1);
-				try { Thread.sleep(5);} catch (InterruptedException e){}
-			}
-		}
+		int[] notes = new int[btnConfigs.size()];
+		for (int i = 0; i < notes.length; i++)
+			notes[i] = btnConfigs.get(i);
+		buttonNotes = notes;
+		PortSupervisor current = supervisor;
+		if (current != null)
+			current.setButtonNotes(notes);
 	}
 	
 	/**
-	 * Closes the port if it is open.
+	 * Closes the port if it is open, and stops looking for it. The frames
+	 * still queued are written before the port is closed.
 	 */
 	public static void closePort() {
-		if (isPortOpen) {
-			chosenPort.closePort();
-			isPortOpen = false;
+		PortSupervisor current = supervisor;
+		if (current != null) {
+			supervisor = null;
+			writer = null;
+			current.stop(CLOSE_TIMEOUT_MILLIS);
 		}
 	}
 	
+	/**
+	 * Sets the minimum time the writer leaves between two writes to the port.
+	 * @param gapMillis
+	 * 			The gap in milliseconds.
+	 */
+	public static void setFrameGap(double gapMillis) {
+		frameGapNanos = (long) (gapMillis * 1_000_000L);
+		SerialWriter current = writer;
+		if (current != null)
+			current.setFrameGapNanos(frameGapNanos);
+	}
+	
+	/**
+	 * Sets the protocol the notes are sent in. The first note after a change
+	 * is sent in full.
+	 * @param newProtocol
+	 * 			The protocol.
+	 */
+	public static void setProtocol(Protocol newProtocol) {
+		protocol = newProtocol;
+		SerialWriter current = writer;
+		if (current != null)
+			current.setProtocol(newProtocol);
+	}
+	
+	/**
+	 * Returns the protocol the notes are sent in.
+	 * @return
+	 * 		The protocol.
+	 */
+	public static Protocol getProtocol() {
+		return protocol;
+	}
+	
+	/**
+	 * Sets the MIDI channel the notes are sent on. The legacy protocol has
+	 * no channel.
+	 * @param newChannel
+	 * 			The channel (0 - 15).
+	 */
+	public static void setChannel(int newChannel) {
+		if (newChannel < 0 || newChannel > 15)
+			throw new IllegalArgumentException("Not a channel: " + newChannel);
+		channel = newChannel;
+	}
+	
 	/**
 	 * Sends an off note for the given note
 	 * @param noteValue
 	 * 			The note to off.
 	 */
 	public static void sendNoteOff(int noteValue) {
-		if (isPortOpen) {
-			byte noteOff = 0b01111110;
-			byte note = (byte) noteValue;
-			byte[] buffer = {noteOff};
-			chosenPort.writeBytes(buffer, 1);
-			try {Thread.sleep(5);} catch(InterruptedException e){}
-			buffer = new byte[1];
-			buffer[0] = note;
-			chosenPort.writeBytes(buffer, 1);
-			try {Thread.sleep(5);} catch(InterruptedException e){}
+		sendNoteOff(noteValue, 0);
+	}
+	
+	/**
+	 * Sends an off note for the given note, played at the given time.
+	 * @param noteValue
+	 * 			The note to off.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the note was played at, which the
+	 * 			latency of the frame is measured from. 0 if not measured.
+	 */
+	public static void sendNoteOff(int noteValue, long timeNanos) {
+		SerialWriter current = writer;
+		if (current != null) {
+			byte[] frame = new byte[3];
+			int length = FrameEncoder.encodeNoteOff(frame, 0, channel,
+								noteValue);
+			current.enqueue(frame, 0, length, timeNanos);
 		}
 	}
 	
@@ -109,16 +223,28 @@ public class SerialOut {
 	 * 			The note to on.
 	 */
 	public static void sendNoteOn(int noteValue) {
-		if (isPortOpen) {
-			byte noteOn = 0b01111111;
-			byte note = (byte) noteValue;
-			byte[] buffer = {noteOn};
-			chosenPort.writeBytes(buffer, 1);
-			try {Thread.sleep(5);} catch(InterruptedException e){}
-			buffer = new byte[1];
-			buffer[0] = note;
-			chosenPort.writeBytes(buffer, 1);
-			try {Thread.sleep(5);} catch(InterruptedException e){}
+		sendNoteOn(noteValue, DEFAULT_VELOCITY, 0);
+	}
+	
+	/**
+	 * Sends an on note for the given note, played at the given time.
+	 * @param noteValue
+	 * 			The note to on.
+	 * @param velocity
+	 * 			The velocity of the note (1 - 127). The legacy protocol has
+	 * 			no velocity.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the note was played at, which the
+	 * 			latency of the frame is measured from. 0 if not measured.
+	 */
+	public static void sendNoteOn(int noteValue, int velocity,
+								long timeNanos) {
+		SerialWriter current = writer;
+		if (current != null) {
+			byte[] frame = new byte[3];
+			int length = FrameEncoder.encodeNoteOn(frame, 0, channel,
+								noteValue, velocity);
+			current.enqueue(frame, 0, length, timeNanos);
 		}
 	}
 }
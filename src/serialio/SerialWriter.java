@@ -0,0 +1,762 @@
+package serialio;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import utilities.FlightEvents;
+import utilities.Latency;
+
+/**
+ * Writes frames to a serial port from a dedicated writer thread.
+ * Frames are queued in a bounded ring buffer, so the callers (the key
+ * handlers on the JavaFX thread, the arpegiator etc) only copy a few bytes
+ * and return. The writer thread combines all the frames queued at that moment
+ * into one batch, sends it with a single writeBytes call, and then waits for
+ * the inter frame gap before sending the next batch.
+ * A frame can carry the time its note was played at; the latency to the
+ * queue and to the end of the write is then recorded (see Latency).
+ * The frames are queued as MIDI messages and put into the chosen Protocol as
+ * the batch is made, so the running status and note differences are always
+ * worked out from the bytes that actually go out.
+ * What is sent, and how the port copes with it, is counted in the writer's
+ * SerialMetrics. A write the port takes only part of is carried on with the
+ * rest of the batch.
+ * The port can be disconnected and connected again while the writer runs
+ * (see PortSupervisor). A failed write takes the port away from the writer,
+ * and the frames queued until a port is set again are kept or dropped as the
+ * LinkDownPolicy says; queueing never waits for the port either way. The
+ * frames of a batch stay queued until the port has taken them, so the frames
+ * of a failed write that did not go out are kept (or dropped and counted)
+ * like the rest.
+ * When the queue is full, a note off still gets in: a queued note on is
+ * dropped to make room, so no note is left sounding for want of its off.
+ * The button configuration is not queued: the writer keeps the latest one,
+ * and sends it once it has not changed for CONFIG_SETTLE_NANOS, so holding
+ * down a key that shifts the buttons sends only where they end up. Only the
+ * buttons that differ from the configuration last written to the port are
+ * sent, in protocols with a change message, and a newly opened port is sent
+ * the whole configuration.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SerialWriter {
+
+	// the largest frame that can be queued
+	public static final int MAX_FRAME_LENGTH = 16;
+	// the default number of frames the ring buffer can hold
+	public static final int DEFAULT_CAPACITY = 256;
+	// the default gap between two writes to the port
+	public static final long DEFAULT_FRAME_GAP_NANOS = 5_000_000L;
+	// the default number of frames combined into one write
+	public static final int DEFAULT_MAX_BATCH = 16;
+	// the time the button configuration must stay the same before it is sent
+	public static final long CONFIG_SETTLE_NANOS = 50_000_000L;
+
+	/**
+	 * Writes bytes to a port. The writer writes through one, so that the
+	 * tests can stand in for the port.
+	 */
+	interface PortOutput {
+
+		/**
+		 * Writes the first bytes of a buffer to a port.
+		 * @param port
+		 * 			The port.
+		 * @param buffer
+		 * 			The bytes.
+		 * @param length
+		 * 			The number of bytes to write.
+		 * @return
+		 * 			The number of bytes the port took, -1 if the write failed.
+		 */
+		int writeBytes(SerialPort port, byte[] buffer, long length);
+	}
+
+	// the port the frames are written to, null while it is disconnected
+	private SerialPort port;
+	// the port a batch is being written to, null between writes
+	private SerialPort writingPort = null;
+	// what is done with the frames while the port is disconnected
+	private LinkDownPolicy linkDownPolicy = LinkDownPolicy.BUFFER;
+	// the frames waiting to be written, MAX_FRAME_LENGTH bytes per slot
+	private final byte[] ring;
+	// the length of the frame in each slot
+	private final int[] lengths;
+	// the time the note of the frame in each slot was played at, 0 if none
+	private final long[] stamps;
+	// the number of slots in the ring
+	private final int capacity;
+	// the slot the next frame is read from
+	private int head = 0;
+	// the number of frames in the ring
+	private int count = 0;
+	// the number of frames at the head of the ring in the batch being
+	// written; they stay queued until the port has taken them
+	private int inFlight = 0;
+	// the buffer a batch is assembled in before it is written
+	private final byte[] batch;
+	// the time the note of each frame in the batch was played at
+	private final long[] batchStamps;
+	// the position in the batch just past each frame
+	private final int[] batchEnds;
+	// the buffer the change to the button configuration is encoded in
+	private final byte[] configFrame = new byte[MAX_FRAME_LENGTH];
+	// the notes of the buttons to send, null until they are set
+	private int[] buttonNotes = null;
+	// the time the notes of the buttons last changed
+	private long buttonsChangedAt;
+	// checks if the notes of the buttons are waiting to be sent
+	private boolean isConfigPending = false;
+	// the notes of the buttons last written to the port, null if none were
+	private int[] sentButtonNotes = null;
+
+	// the minimum time between two writes
+	private volatile long frameGapNanos = DEFAULT_FRAME_GAP_NANOS;
+	// the maximum number of frames sent in one write
+	private volatile int maxBatch = DEFAULT_MAX_BATCH;
+	// the protocol the frames are written in
+	private volatile Protocol protocol = Protocol.LEGACY;
+	// the number of frames dropped because the ring was full
+	private long droppedFrames = 0;
+	// counts what is written to the port
+	private final SerialMetrics metrics;
+	// writes the batches to the port
+	private volatile PortOutput output = SerialPort::writeBytes;
+
+	// checks if the writer is accepting frames
+	private volatile boolean isRunning = false;
+	// the writer thread
+	private Thread writerThread;
+
+	/**
+	 * Creates a writer for the given port with the default capacity.
+	 * @param port
+	 * 			The (open) port to write to, or null to queue the frames
+	 * 			until one is set.
+	 */
+	public SerialWriter(SerialPort port) {
+		this(port, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a writer for the given port.
+	 * @param port
+	 * 			The (open) port to write to, or null to queue the frames
+	 * 			until one is set.
+	 * @param capacity
+	 * 			The number of frames the ring buffer can hold.
+	 */
+	public SerialWriter(SerialPort port, int capacity) {
+		this(port, capacity, new SerialMetrics());
+	}
+
+	/**
+	 * Creates a writer for the given port, counting into the given metrics.
+	 * The metrics can be shared by the writers of one port, so they carry on
+	 * when the port is opened again.
+	 * @param port
+	 * 			The (open) port to write to, or null to queue the frames
+	 * 			until one is set.
+	 * @param capacity
+	 * 			The number of frames the ring buffer can hold.
+	 * @param metrics
+	 * 			The metrics to count into.
+	 */
+	public SerialWriter(SerialPort port, int capacity, SerialMetrics metrics) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.port = port;
+		this.capacity = capacity;
+		this.metrics = metrics;
+		metrics.setLinkUp(port != null);
+		ring = new byte[capacity * MAX_FRAME_LENGTH];
+		lengths = new int[capacity];
+		stamps = new long[capacity];
+		// room for the button configuration ahead of the frames
+		batch = new byte[(DEFAULT_CAPACITY + 1) * MAX_FRAME_LENGTH];
+		batchStamps = new long[DEFAULT_CAPACITY + 1];
+		batchEnds = new int[DEFAULT_CAPACITY + 1];
+	}
+
+	/**
+	 * Starts the writer thread.
+	 */
+	public synchronized void start() {
+		if (isRunning)
+			return;
+		isRunning = true;
+		writerThread = new Thread(this::writeLoop, "serial-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops accepting frames, writes out what is still queued and stops the
+	 * writer thread.
+	 * @param timeoutMillis
+	 * 			The maximum time to wait for the queued frames to be written.
+	 */
+	public void stop(long timeoutMillis) {
+		Thread thread;
+		synchronized (this) {
+			if (!isRunning)
+				return;
+			isRunning = false;
+			thread = writerThread;
+			notifyAll();
+		}
+		try {
+			thread.join(timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues a frame to be written. Never blocks; if the ring buffer is full
+	 * the frame is dropped, unless it is a note off and a note on can be
+	 * dropped in its place (see makeRoom).
+	 * @param frame
+	 * 			The buffer holding the frame.
+	 * @param offset
+	 * 			The position of the first byte of the frame.
+	 * @param length
+	 * 			The number of bytes in the frame.
+	 * @return
+	 * 			True if the frame was queued.
+	 */
+	public boolean enqueue(byte[] frame, int offset, int length) {
+		return enqueue(frame, offset, length, 0);
+	}
+
+	/**
+	 * Queues the frame of a note played at the given time.
+	 * @param frame
+	 * 			The buffer holding the frame.
+	 * @param offset
+	 * 			The position of the first byte of the frame.
+	 * @param length
+	 * 			The number of bytes in the frame.
+	 * @param timeNanos
+	 * 			The System.nanoTime() the note was played at, 0 if the
+	 * 			latency of the frame is not measured.
+	 * @return
+	 * 			True if the frame was queued.
+	 */
+	public boolean enqueue(byte[] frame, int offset, int length,
+								long timeNanos) {
+		if (length <= 0 || length > MAX_FRAME_LENGTH)
+			throw new IllegalArgumentException("bad frame length: " + length);
+		synchronized (this) {
+			if (!isRunning)
+				return false;
+			if (port == null && linkDownPolicy == LinkDownPolicy.DROP
+					|| count == capacity && !makeRoom(frame, offset, length)) {
+				droppedFrames++;
+				metrics.frameDropped();
+				return false;
+			}
+			int slot = (head + count) % capacity;
+			System.arraycopy(frame, offset, ring,
+							slot * MAX_FRAME_LENGTH, length);
+			lengths[slot] = length;
+			stamps[slot] = timeNanos;
+			count++;
+			metrics.setQueueDepth(count);
+			if (count == 1)
+				notifyAll();
+		}
+		Latency.record(Latency.Stage.SERIAL_QUEUED, timeNanos);
+		return true;
+	}
+
+	/**
+	 * Sets the notes of the buttons. They are sent once they have stayed
+	 * the same for CONFIG_SETTLE_NANOS, as a change from those last written
+	 * to the port. Never blocks.
+	 * @param notes
+	 * 			The notes of the buttons.
+	 */
+	public synchronized void setButtonNotes(int[] notes) {
+		buttonNotes = notes.clone();
+		buttonsChangedAt = System.nanoTime();
+		isConfigPending = true;
+		notifyAll();
+	}
+
+	/**
+	 * Sets the port the frames are written to, as the port is disconnected
+	 * and connected again. Waits for a write to the old port to finish, so
+	 * the old port can be closed once this returns. The first frame written
+	 * to a new port is sent in full, after the whole button configuration.
+	 * @param newPort
+	 * 			The (open) port, or null while it is disconnected.
+	 */
+	public synchronized void setPort(SerialPort newPort) {
+		if (port != null && newPort == null)
+			linkDown();
+		if (newPort != null && newPort != port) {
+			sentButtonNotes = null;
+			isConfigPending = buttonNotes != null;
+			buttonsChangedAt = System.nanoTime() - CONFIG_SETTLE_NANOS;
+		}
+		port = newPort;
+		metrics.setLinkUp(newPort != null);
+		notifyAll();
+		while (writingPort != null && writingPort != newPort) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sets what the batches are written to the port through, in place of the
+	 * port's own writeBytes.
+	 * @param output
+	 * 			The output.
+	 */
+	void setOutput(PortOutput output) {
+		this.output = output;
+	}
+
+	/**
+	 * Returns the port the frames are written to.
+	 * @return
+	 * 		The port, null if it is disconnected or a write to it failed.
+	 */
+	public synchronized SerialPort getPort() {
+		return port;
+	}
+
+	/**
+	 * Sets what is done with the frames while the port is disconnected.
+	 * @param policy
+	 * 			The policy.
+	 */
+	public synchronized void setLinkDownPolicy(LinkDownPolicy policy) {
+		linkDownPolicy = policy;
+	}
+
+	/**
+	 * Sets the minimum time between two writes to the port.
+	 * @param gapNanos
+	 * 			The gap in nanoseconds.
+	 */
+	public void setFrameGapNanos(long gapNanos) {
+		if (gapNanos < 0)
+			throw new IllegalArgumentException("gap must not be negative");
+		frameGapNanos = gapNanos;
+	}
+
+	/**
+	 * Sets the protocol the frames are written in. The first frame written
+	 * after a change is sent in full.
+	 * @param protocol
+	 * 			The protocol.
+	 */
+	public void setProtocol(Protocol protocol) {
+		this.protocol = protocol;
+	}
+
+	/**
+	 * Sets the maximum number of frames combined into one write. A value of
+	 * 1 sends every frame on its own, separated by the frame gap.
+	 * @param frames
+	 * 			The maximum number of frames in a batch.
+	 */
+	public void setMaxBatch(int frames) {
+		if (frames <= 0 || frames > DEFAULT_CAPACITY)
+			throw new IllegalArgumentException("bad batch size: " + frames);
+		maxBatch = frames;
+	}
+
+	/**
+	 * Returns the number of frames waiting to be written.
+	 * @return
+	 * 		The number of queued frames.
+	 */
+	public synchronized int getQueuedFrames() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of frames dropped because the ring buffer was full.
+	 * @return
+	 * 		The number of dropped frames.
+	 */
+	public synchronized long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * Returns the metrics the writer counts into.
+	 * @return
+	 * 		The metrics.
+	 */
+	public SerialMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * The body of the writer thread. Waits for frames or a settled button
+	 * configuration and a port, waits for the remainder of the frame gap,
+	 * encodes the configuration and all the frames available (up to
+	 * maxBatch) into one batch and writes it.
+	 */
+	private void writeLoop() {
+		long lastWrite = System.nanoTime() - frameGapNanos;
+		WireEncoder encoder = new WireEncoder(protocol);
+		// the port the encoder's running state belongs to
+		SerialPort encodedFor = null;
+		while (true) {
+			synchronized (this) {
+				try {
+					if (!awaitWork())
+						return;
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			waitForGap(lastWrite);
+			int batchLength = 0;
+			int frames = 0;
+			SerialPort target;
+			// the notes of the buttons in the batch, null if none are
+			int[] batchButtons = null;
+			// the number of frames in the batch ahead of the queued ones
+			int configFrames = 0;
+			synchronized (this) {
+				boolean isConfigDue = isConfigDue();
+				// the port may have gone during the gap
+				if (port == null || count == 0 && !isConfigDue)
+					continue;
+				target = port;
+				if (encoder.getProtocol() != protocol)
+					encoder = new WireEncoder(protocol);
+				else if (target != encodedFor)
+					encoder.reset();
+				encodedFor = target;
+				if (isConfigDue) {
+					isConfigPending = false;
+					int length = FrameEncoder.encodeConfigUpdate(configFrame, 0,
+							sentButtonNotes, buttonNotes,
+							encoder.getProtocol().hasConfigDelta()
+									? FrameEncoder.MAX_DELTA_BUTTONS : 0);
+					if (length > 0) {
+						batchLength = encoder.encode(configFrame, 0, length,
+										batch, 0);
+						batchStamps[frames] = 0;
+						batchEnds[frames++] = batchLength;
+						batchButtons = buttonNotes;
+						configFrames = 1;
+					}
+				}
+				int queued = Math.min(count, maxBatch);
+				int slot = head;
+				for (int i = 0; i < queued; i++) {
+					batchLength += encoder.encode(ring, slot * MAX_FRAME_LENGTH,
+							lengths[slot], batch, batchLength);
+					batchStamps[frames] = stamps[slot];
+					batchEnds[frames++] = batchLength;
+					slot = (slot + 1) % capacity;
+				}
+				inFlight = queued;
+				writingPort = target;
+			}
+			int written = 0;
+			if (batchLength > 0) {
+				written = write(target, batchLength, frames);
+				lastWrite = System.nanoTime();
+			}
+			boolean isComplete = written == batchLength;
+			synchronized (this) {
+				// the queued frames the port took in full leave the ring
+				int sent = Math.max(0, sentFrames(written, frames)
+									- configFrames);
+				head = (head + sent) % capacity;
+				count -= sent;
+				inFlight -= sent;
+				if (!isComplete && linkDownPolicy == LinkDownPolicy.DROP) {
+					dropFrames(inFlight);
+					head = (head + inFlight) % capacity;
+					count -= inFlight;
+				}
+				inFlight = 0;
+				metrics.setQueueDepth(count);
+				if (!isComplete && port == target) {
+					linkDown();
+					port = null;
+					metrics.setLinkUp(false);
+				}
+				if (isComplete && batchButtons != null && port == target)
+					sentButtonNotes = batchButtons;
+				writingPort = null;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until there is a port and frames or a settled button
+	 * configuration to write to it, or the writer is stopped. Called with
+	 * the writer locked.
+	 * @return
+	 * 			True if there is something to write, false if the writer is
+	 * 			stopped and has nothing more it can write.
+	 * @throws InterruptedException
+	 * 			If the writer thread is interrupted.
+	 */
+	private boolean awaitWork() throws InterruptedException {
+		while (isRunning) {
+			if (port != null) {
+				if (count > 0)
+					return true;
+				if (isConfigPending) {
+					long remaining = buttonsChangedAt + CONFIG_SETTLE_NANOS
+									- System.nanoTime();
+					if (remaining <= 0)
+						return true;
+					wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+					continue;
+				}
+			}
+			wait();
+		}
+		return port != null && (count > 0 || isConfigPending);
+	}
+
+	/**
+	 * Checks if the button configuration is to go in the next batch: it has
+	 * changed, and has stayed the same for CONFIG_SETTLE_NANOS or the writer
+	 * is stopping. Called with the writer locked.
+	 * @return
+	 * 			True if it is.
+	 */
+	private boolean isConfigDue() {
+		return isConfigPending && (!isRunning || System.nanoTime()
+						- buttonsChangedAt >= CONFIG_SETTLE_NANOS);
+	}
+
+	/**
+	 * Writes a batch to the port, counting it in the metrics and the latency
+	 * of its notes.
+	 * @param target
+	 * 			The port.
+	 * @param length
+	 * 			The number of bytes in the batch.
+	 * @param frames
+	 * 			The number of frames in the batch.
+	 * @return
+	 * 			The number of bytes the port took, less than length if a
+	 * 			write failed.
+	 */
+	private int write(SerialPort target, int length, int frames) {
+		FlightEvents.SerialWrite flightEvent = new FlightEvents.SerialWrite();
+		flightEvent.begin();
+		long start = System.nanoTime();
+		int written = writeBatch(target, length);
+		long end = System.nanoTime();
+		flightEvent.end();
+		int sent = sentFrames(written, frames);
+		metrics.written(written, sent, end - start);
+		if (flightEvent.shouldCommit()) {
+			flightEvent.bytes = written;
+			flightEvent.frames = sent;
+			flightEvent.commit();
+		}
+		for (int i = 0; i < sent; i++)
+			Latency.record(Latency.Stage.SERIAL_WRITTEN, batchStamps[i]);
+		return written;
+	}
+
+	/**
+	 * Returns the number of frames at the start of the batch the port took
+	 * in full.
+	 * @param written
+	 * 			The number of bytes of the batch the port took.
+	 * @param frames
+	 * 			The number of frames in the batch.
+	 * @return
+	 * 			The number of frames written in full.
+	 */
+	private int sentFrames(int written, int frames) {
+		int sent = 0;
+		while (sent < frames && batchEnds[sent] <= written)
+			sent++;
+		return sent;
+	}
+
+	/**
+	 * Writes the batch to the port. When the port takes only part of it the
+	 * rest is moved to the front of the batch (the port has no offset to
+	 * write from) and written again, until it is all out or a write fails.
+	 * @param target
+	 * 			The port.
+	 * @param length
+	 * 			The number of bytes in the batch.
+	 * @return
+	 * 			The number of bytes the port took.
+	 */
+	private int writeBatch(SerialPort target, int length) {
+		int written = 0;
+		while (written < length) {
+			int remaining = length - written;
+			int n = output.writeBytes(target, batch, remaining);
+			if (n <= 0) {
+				metrics.writeFailed();
+				break;
+			}
+			written += n;
+			if (n < remaining) {
+				metrics.shortWrite();
+				System.arraycopy(batch, n, batch, 0, remaining - n);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Counts the port going away and, if the policy says so, drops the
+	 * frames queued. The frames of a batch being written are left to the
+	 * writer thread, which drops those the port does not take. Called with
+	 * the writer locked.
+	 */
+	private void linkDown() {
+		metrics.disconnected();
+		if (linkDownPolicy == LinkDownPolicy.DROP) {
+			dropFrames(count - inFlight);
+			count = inFlight;
+			metrics.setQueueDepth(count);
+		}
+	}
+
+	/**
+	 * Counts frames as dropped.
+	 * @param frames
+	 * 			The number of frames dropped.
+	 */
+	private void dropFrames(int frames) {
+		if (frames > 0) {
+			droppedFrames += frames;
+			metrics.framesDropped(frames);
+		}
+	}
+
+	/**
+	 * Makes room in the full ring for a note off, by dropping a queued note
+	 * on, so no note is left sounding because its off was dropped. If the
+	 * latest queued frame of the same note is its on, the note never
+	 * sounded and the two are dropped together; otherwise the oldest queued
+	 * note on is dropped, and its off, when it comes, does no harm. Frames of
+	 * the batch being written are never dropped. Called with the writer
+	 * locked.
+	 * @param frame
+	 * 			The buffer holding the frame to queue.
+	 * @param offset
+	 * 			The position of the first byte of the frame.
+	 * @param length
+	 * 			The number of bytes in the frame.
+	 * @return
+	 * 			True if there is now room for the frame, false if it is to be
+	 * 			dropped: it is not a note off, there is no note on to drop in
+	 * 			its place, or it was dropped with its on.
+	 */
+	private boolean makeRoom(byte[] frame, int offset, int length) {
+		if (!isNoteOff(frame, offset, length))
+			return false;
+		for (int i = count - 1; i >= inFlight; i--) {
+			int at = (head + i) % capacity * MAX_FRAME_LENGTH;
+			if (lengths[(head + i) % capacity] != 3
+					|| (ring[at] & 0x0F) != (frame[offset] & 0x0F)
+					|| ring[at + 1] != frame[offset + 1])
+				continue;
+			if (!isNoteOn(ring, at, 3))
+				break;
+			removeQueued(i);
+			dropFrames(1);
+			return false;
+		}
+		for (int i = inFlight; i < count; i++) {
+			int slot = (head + i) % capacity;
+			if (isNoteOn(ring, slot * MAX_FRAME_LENGTH, lengths[slot])) {
+				removeQueued(i);
+				dropFrames(1);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a frame from the ring, moving the frames queued after it up.
+	 * Called with the writer locked.
+	 * @param index
+	 * 			The position of the frame in the queue, from the head.
+	 */
+	private void removeQueued(int index) {
+		for (int i = index; i < count - 1; i++) {
+			int to = (head + i) % capacity;
+			int from = (head + i + 1) % capacity;
+			System.arraycopy(ring, from * MAX_FRAME_LENGTH, ring,
+							to * MAX_FRAME_LENGTH, lengths[from]);
+			lengths[to] = lengths[from];
+			stamps[to] = stamps[from];
+		}
+		count--;
+		metrics.setQueueDepth(count);
+	}
+
+	/**
+	 * Checks if a queued frame is a note on.
+	 * @param frame
+	 * 			The buffer holding the frame.
+	 * @param offset
+	 * 			The position of the first byte of the frame.
+	 * @param length
+	 * 			The number of bytes in the frame.
+	 * @return
+	 * 			True if it is a note on with a velocity.
+	 */
+	private static boolean isNoteOn(byte[] frame, int offset, int length) {
+		return length == 3 && (frame[offset] & 0xF0) == FrameEncoder.NOTE_ON
+				&& frame[offset + 2] != 0;
+	}
+
+	/**
+	 * Checks if a queued frame is a note off.
+	 * @param frame
+	 * 			The buffer holding the frame.
+	 * @param offset
+	 * 			The position of the first byte of the frame.
+	 * @param length
+	 * 			The number of bytes in the frame.
+	 * @return
+	 * 			True if it is a note off, or a note on with velocity 0.
+	 */
+	private static boolean isNoteOff(byte[] frame, int offset, int length) {
+		int type = frame[offset] & 0xF0;
+		return length == 3 && (type == FrameEncoder.NOTE_OFF
+				|| type == FrameEncoder.NOTE_ON && frame[offset + 2] == 0);
+	}
+
+	/**
+	 * Sleeps until the frame gap since the last write has passed.
+	 * @param lastWrite
+	 * 			The System.nanoTime() of the last write.
+	 */
+	private void waitForGap(long lastWrite) {
+		long remaining = lastWrite + frameGapNanos - System.nanoTime();
+		while (remaining > 0) {
+			try {
+				Thread.sleep(remaining / 1_000_000L,
+								(int) (remaining % 1_000_000L));
+			} catch (InterruptedException e) {
+				return;
+			}
+			remaining = lastWrite + frameGapNanos - System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package serialio;
+
+/**
+ * Turns the MIDI messages queued for the synthesizer into the bytes of a
+ * protocol, as they are written to the port. The MIDI and compact protocols
+ * leave out what the synthesizer already knows from the bytes before (the
+ * running status, or the last note), so an encoder must see every message
+ * that goes out, in order, and must be reset whenever the synthesizer may
+ * have lost track (the port being opened again, for example). A message
+ * dropped before it reaches the encoder does not upset the others.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class WireEncoder {
+
+	// the headers of the legacy protocol
+	public static final byte LEGACY_NOTE_ON = 0b01111111;
+	public static final byte LEGACY_NOTE_OFF = 0b01111110;
+	public static final byte LEGACY_CONFIG = 0b01111101;
+	// the compact protocol's byte for a note given by its difference from
+	// the last note: 1, then 1 for an on, then the difference plus 32
+	public static final int COMPACT_DELTA = 0x80;
+	public static final int COMPACT_DELTA_ON = 0x40;
+	// the compact protocol's header of a note given in full: 0, then 1 for
+	// an on, then the channel; followed by the note and the velocity
+	public static final int COMPACT_FULL_ON = 0x10;
+	// the compact protocol's header of a button configuration, followed by
+	// the note of each button
+	public static final byte COMPACT_CONFIG = LEGACY_CONFIG;
+	// the compact protocol's header of a change to the button configuration,
+	// followed by a byte with a bit for each button changed and their new
+	// notes; it needs firmware that knows it, the legacy protocol has none
+	public static final byte COMPACT_CONFIG_DELTA = 0b01111100;
+	// the largest difference from the last note sent in one byte
+	private static final int MAX_DELTA = 31;
+
+	// the protocol encoded
+	private final Protocol protocol;
+	// the last status byte sent, -1 if the synthesizer has none
+	private int runningStatus = -1;
+	// the last note, velocity of an on and channel sent in the compact
+	// protocol, -1 if none
+	private int lastNote = -1;
+	private int lastVelocity = -1;
+	private int lastChannel = -1;
+
+	/**
+	 * Creates an encoder.
+	 * @param protocol
+	 * 			The protocol to encode.
+	 */
+	public WireEncoder(Protocol protocol) {
+		this.protocol = protocol;
+	}
+
+	/**
+	 * Returns the protocol encoded.
+	 * @return
+	 * 		The protocol.
+	 */
+	public Protocol getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * Forgets the bytes sent so far, so the next message is sent in full.
+	 */
+	public void reset() {
+		runningStatus = -1;
+		lastNote = -1;
+		lastVelocity = -1;
+		lastChannel = -1;
+	}
+
+	/**
+	 * Encodes a message.
+	 * @param message
+	 * 			The buffer holding the message, as made by FrameEncoder.
+	 * @param offset
+	 * 			The position of the status byte of the message.
+	 * @param length
+	 * 			The length of the message.
+	 * @param out
+	 * 			The buffer to write the bytes to. A message never takes more
+	 * 			bytes than its length.
+	 * @param outOffset
+	 * 			The position to write the bytes at.
+	 * @return
+	 * 			The number of bytes written, 0 if the protocol cannot send
+	 * 			the message.
+	 */
+	public int encode(byte[] message, int offset, int length, byte[] out,
+							int outOffset) {
+		int status = message[offset] & 0xFF;
+		int type = status & 0xF0;
+		if ((type == FrameEncoder.NOTE_ON || type == FrameEncoder.NOTE_OFF)
+				&& length == 3) {
+			int velocity = message[offset + 2];
+			boolean isNoteOn = type == FrameEncoder.NOTE_ON && velocity > 0;
+			return encodeNote(isNoteOn, status & 0xF, message[offset + 1],
+							isNoteOn ? velocity : 0, out, outOffset);
+		}
+		if (status == FrameEncoder.SYSEX_START
+				&& length == FrameEncoder.CONFIG_LENGTH
+				&& message[offset + 1] == FrameEncoder.NON_COMMERCIAL_ID)
+			return encodeConfig(message, offset, length, out, outOffset);
+		if (status == FrameEncoder.SYSEX_START && length > 3
+				&& message[offset + 1] == FrameEncoder.NON_COMMERCIAL_ID
+				&& message[offset + 2] == FrameEncoder.CONFIG_DELTA)
+			return encodeConfigDelta(message, offset, length, out, outOffset);
+		if (protocol != Protocol.MIDI)
+			return 0;
+		return encodeMidi(message, offset, length, out, outOffset);
+	}
+
+	/**
+	 * Encodes a note.
+	 */
+	private int encodeNote(boolean isNoteOn, int channel, int note,
+							int velocity, byte[] out, int outOffset) {
+		switch (protocol) {
+		case LEGACY:
+			out[outOffset] = isNoteOn ? LEGACY_NOTE_ON : LEGACY_NOTE_OFF;
+			out[outOffset + 1] = (byte) note;
+			return 2;
+		case MIDI:
+			// a note off is a note on with velocity 0, to keep the status
+			int length = 0;
+			int status = FrameEncoder.NOTE_ON | channel;
+			if (status != runningStatus) {
+				out[outOffset + length++] = (byte) status;
+				runningStatus = status;
+			}
+			out[outOffset + length++] = (byte) note;
+			out[outOffset + length++] = (byte) velocity;
+			return length;
+		case COMPACT:
+		default:
+			int delta = note - lastNote;
+			if (lastNote >= 0 && channel == lastChannel
+					&& delta >= -MAX_DELTA - 1 && delta <= MAX_DELTA
+					&& (!isNoteOn || velocity == lastVelocity)) {
+				out[outOffset] = (byte) (COMPACT_DELTA
+						| (isNoteOn ? COMPACT_DELTA_ON : 0)
+						| delta + MAX_DELTA + 1);
+				lastNote = note;
+				return 1;
+			}
+			out[outOffset] = (byte) ((isNoteOn ? COMPACT_FULL_ON : 0) | channel);
+			out[outOffset + 1] = (byte) note;
+			out[outOffset + 2] = (byte) velocity;
+			lastNote = note;
+			lastChannel = channel;
+			if (isNoteOn)
+				lastVelocity = velocity;
+			return 3;
+		}
+	}
+
+	/**
+	 * Encodes a button configuration.
+	 */
+	private int encodeConfig(byte[] message, int offset, int length,
+							byte[] out, int outOffset) {
+		if (protocol == Protocol.MIDI) {
+			// a system exclusive message cancels the running status
+			runningStatus = -1;
+			System.arraycopy(message, offset, out, outOffset, length);
+			return length;
+		}
+		out[outOffset] = protocol == Protocol.LEGACY ? LEGACY_CONFIG
+										: COMPACT_CONFIG;
+		System.arraycopy(message, offset + 2, out, outOffset + 1,
+							FrameEncoder.BUTTON_COUNT);
+		return FrameEncoder.BUTTON_COUNT + 1;
+	}
+
+	/**
+	 * Encodes a change to the button configuration. In the compact protocol
+	 * it is a header byte, a byte with a bit set for each button changed
+	 * (button 0 the lowest) and the new notes of those buttons, in order.
+	 * The legacy protocol has no change message (see
+	 * Protocol.hasConfigDelta()), so nothing is written.
+	 */
+	private int encodeConfigDelta(byte[] message, int offset, int length,
+							byte[] out, int outOffset) {
+		if (protocol == Protocol.MIDI) {
+			runningStatus = -1;
+			System.arraycopy(message, offset, out, outOffset, length);
+			return length;
+		}
+		if (protocol == Protocol.LEGACY)
+			return 0;
+		out[outOffset] = COMPACT_CONFIG_DELTA;
+		int mask = 0;
+		int written = 2;
+		for (int i = offset + 3; i + 1 < offset + length - 1; i += 2) {
+			mask |= 1 << message[i];
+			out[outOffset + written++] = message[i + 1];
+		}
+		out[outOffset + 1] = (byte) mask;
+		return written;
+	}
+
+	/**
+	 * Encodes any other MIDI message, keeping the running status.
+	 */
+	private int encodeMidi(byte[] message, int offset, int length,
+							byte[] out, int outOffset) {
+		int status = message[offset] & 0xFF;
+		if (status >= 0xF8) {
+			// real time messages leave the running status alone
+			out[outOffset] = (byte) status;
+			return 1;
+		}
+		int start = offset;
+		if (status < 0xF0 && status == runningStatus)
+			start++;
+		runningStatus = status < 0xF0 ? status : -1;
+		int written = offset + length - start;
+		System.arraycopy(message, start, out, outOffset, written);
+		return written;
+	}
+}
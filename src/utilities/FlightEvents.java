@@ -0,0 +1,168 @@
+package utilities;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of the synthesizer, so a session can be
+ * profiled with the standard JFR tools and the notes, blocks and serial
+ * writes lined up with GC pauses and other JVM events. All the events are
+ * disabled by default; they are turned on with the settings in
+ * midiblocks.jfc. A disabled event costs a check of a flag, and the event
+ * object is not allocated once the JIT has compiled the code using it.
+ * The events are used as JFR intends:
+ * <pre>
+ * FlightEvents.SerialWrite event = new FlightEvents.SerialWrite();
+ * event.begin();
+ * ... the work timed ...
+ * event.end();
+ * if (event.shouldCommit()) {
+ *     ... set the fields ...
+ *     event.commit();
+ * }
+ * </pre>
+ * @author Kaamraan Kamaal
+ *
+ */
+public class FlightEvents {
+
+	// the category all the events are shown under
+	private static final String CATEGORY = "MIDI Blocks";
+
+	private FlightEvents() {
+	}
+
+	/**
+	 * A note on or off handed from the end of the chain of blocks to the
+	 * output sinks.
+	 */
+	@Name("midiblocks.NoteDispatch")
+	@Label("Note Dispatch")
+	@Category({CATEGORY, "Notes"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class NoteDispatch extends Event {
+		@Label("Note")
+		public int note;
+		@Label("Velocity")
+		public int velocity;
+		@Label("Note On")
+		public boolean isNoteOn;
+		@Label("Since Key")
+		@Description("The time since the key of the note was played, 0 if no"
+				+ " key played it")
+		@Timespan(Timespan.NANOSECONDS)
+		public long sinceKey;
+	}
+
+	/**
+	 * A note going through one processing block. The time includes the
+	 * blocks after it, which the block passes the note on to.
+	 */
+	@Name("midiblocks.BlockProcess")
+	@Label("Block Process")
+	@Category({CATEGORY, "Notes"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class BlockProcess extends Event {
+		@Label("Block")
+		public String block;
+		@Label("Note")
+		public int note;
+		@Label("Note On")
+		public boolean isNoteOn;
+	}
+
+	/**
+	 * A batch of frames written to the serial port.
+	 */
+	@Name("midiblocks.SerialWrite")
+	@Label("Serial Write")
+	@Category({CATEGORY, "Serial"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class SerialWrite extends Event {
+		@Label("Bytes")
+		@DataAmount
+		public int bytes;
+		@Label("Frames")
+		public int frames;
+	}
+
+	/**
+	 * A tick of the master clock delivered to its listeners.
+	 */
+	@Name("midiblocks.ClockTick")
+	@Label("Clock Tick")
+	@Category({CATEGORY, "Clock"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class ClockTick extends Event {
+		@Label("Tick")
+		public long tick;
+		@Label("Lateness")
+		@Description("How late the tick was delivered")
+		@Timespan(Timespan.NANOSECONDS)
+		public long lateness;
+		@Label("Listeners")
+		public int listeners;
+	}
+
+	/**
+	 * A file of scales loaded.
+	 */
+	@Name("midiblocks.ScaleLoad")
+	@Label("Scale Load")
+	@Category({CATEGORY, "Files"})
+	@Enabled(false)
+	public static class ScaleLoad extends Event {
+		@Label("File")
+		public String file;
+		@Label("Scales")
+		public int scales;
+		@Label("Errors")
+		public int errors;
+		@Label("From Catalogue")
+		public boolean isFromCatalogue;
+	}
+
+	/**
+	 * A recording saved to a MIDI file.
+	 */
+	@Name("midiblocks.MidiFileSave")
+	@Label("MIDI File Save")
+	@Category({CATEGORY, "Files"})
+	@Enabled(false)
+	public static class MidiFileSave extends Event {
+		@Label("File")
+		public String file;
+		@Label("Events")
+		public int events;
+		@Label("Bytes")
+		@DataAmount
+		public long bytes;
+	}
+
+	/**
+	 * A MIDI file opened for playback.
+	 */
+	@Name("midiblocks.MidiFileLoad")
+	@Label("MIDI File Load")
+	@Category({CATEGORY, "Files"})
+	@Enabled(false)
+	public static class MidiFileLoad extends Event {
+		@Label("File")
+		public String file;
+		@Label("Start")
+		@Description("The time playback starts from")
+		@Timespan(Timespan.MICROSECONDS)
+		public long startMicros;
+	}
+}
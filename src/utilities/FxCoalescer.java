@@ -0,0 +1,47 @@
+package utilities;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+
+/**
+ * Runs a user interface update on the JavaFX thread for changes made on
+ * other threads (the clock, the arpegiator etc). However often request() is
+ * called, at most one update is waiting on the JavaFX thread at a time; the
+ * update reads the latest state when it runs, so the changes in between are
+ * coalesced into one redraw instead of flooding the JavaFX thread.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class FxCoalescer {
+	
+	// the update run on the JavaFX thread
+	private final Runnable update;
+	// checks if an update is waiting to run
+	private final AtomicBoolean isPending = new AtomicBoolean(false);
+	// runs the update and lets the next request through
+	private final Runnable runner;
+	
+	/**
+	 * Creates a coalescer for the given update.
+	 * @param update
+	 * 			The update, run on the JavaFX thread.
+	 */
+	public FxCoalescer(Runnable update) {
+		this.update = update;
+		runner = () -> {
+			isPending.set(false);
+			this.update.run();
+		};
+	}
+	
+	/**
+	 * Asks for the update to be run on the JavaFX thread. Does nothing if an
+	 * update is already waiting. Does not allocate, so it can be called from
+	 * the clock thread.
+	 */
+	public void request() {
+		if (isPending.compareAndSet(false, true))
+			Platform.runLater(runner);
+	}
+}
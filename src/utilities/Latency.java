@@ -0,0 +1,129 @@
+package utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+
+/**
+ * Measures the time from a key being played to each stage of the note's way
+ * to the synthesizer: the end of the processing blocks, the serial writer's
+ * queue and the write to the serial port. The time of the key is stamped
+ * when the keyboard event is received and travels with the note, and each
+ * stage records how long after it the note got there. The latencies are kept
+ * in a LatencyHistogram per stage, so the percentiles can be shown or saved
+ * to a file.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class Latency {
+
+	/**
+	 * The stages of the way from a key to the synthesizer.
+	 */
+	public enum Stage {
+		BLOCKS("Blocks done"),
+		SERIAL_QUEUED("Serial queued"),
+		SERIAL_WRITTEN("Serial written");
+
+		// the name shown for the stage
+		private final String name;
+
+		private Stage(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the name shown for the stage.
+		 * @return
+		 * 		The name.
+		 */
+		public String getName() {
+			return name;
+		}
+	}
+
+	// the percentiles reported
+	private static final double[] PERCENTILES = {50, 99, 99.9};
+
+	// the latencies of each stage
+	private static final LatencyHistogram[] histograms =
+						new LatencyHistogram[Stage.values().length];
+
+	static {
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new LatencyHistogram();
+	}
+
+	private Latency() {
+	}
+
+	/**
+	 * Records that a note reached a stage.
+	 * @param stage
+	 * 			The stage.
+	 * @param keyNanos
+	 * 			The System.nanoTime() of the key that played the note. Nothing
+	 * 			is recorded if this is 0, for a note no key played.
+	 */
+	public static void record(Stage stage, long keyNanos) {
+		if (keyNanos != 0)
+			histograms[stage.ordinal()].record(System.nanoTime() - keyNanos);
+	}
+
+	/**
+	 * Returns the latencies of a stage.
+	 * @param stage
+	 * 			The stage.
+	 * @return
+	 * 			The histogram of the stage.
+	 */
+	public static LatencyHistogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Removes all the latencies recorded.
+	 */
+	public static void reset() {
+		for (LatencyHistogram histogram : histograms)
+			histogram.reset();
+	}
+
+	/**
+	 * Returns a table of the count, percentiles and maximum of each stage,
+	 * in microseconds from the key.
+	 * @return
+	 * 		The table, one line per stage after a heading.
+	 */
+	public static String report() {
+		StringBuilder report = new StringBuilder(String.format(
+						"%-16s %8s %10s %10s %10s %10s%n", "Stage (us)",
+						"Count", "p50", "p99", "p99.9", "Max"));
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = getHistogram(stage);
+			report.append(String.format("%-16s %8d", stage.getName(),
+							histogram.getCount()));
+			for (double percentile : PERCENTILES)
+				report.append(String.format(" %10.1f",
+						histogram.getValueAtPercentile(percentile) / 1000.0));
+			report.append(String.format(" %10.1f%n",
+							histogram.getMax() / 1000.0));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Saves the report to a file.
+	 * @param file
+	 * 			The file, replaced if it exists.
+	 * @throws IOException
+	 * 			If the file cannot be written.
+	 */
+	public static void dump(File file) throws IOException {
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			writer.println("Key to note latency, " + new Date());
+			writer.print(report());
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in nanoseconds in buckets that grow with the value, as
+ * HdrHistogram does: values below 128 ns have a bucket each, and every
+ * power of two above that is split into 64 buckets, so any percentile is
+ * accurate to within about 1.5% from nanoseconds up to minutes. Recording a
+ * value takes no lock and allocates nothing, so it can be done on the note
+ * path from any thread.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class LatencyHistogram {
+
+	// the number of buckets per power of two above the linear range
+	private static final int SUB_BUCKETS = 64;
+	// the values below this have a bucket each
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	// the largest value counted, larger values are counted as this
+	private static final long MAX_VALUE = (1L << 40) - 1;
+	// the number of buckets needed up to MAX_VALUE
+	private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+	// the number of values in each bucket
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	// the number of values recorded
+	private final AtomicLong totalCount = new AtomicLong();
+	// the sum of the values recorded
+	private final AtomicLong totalNanos = new AtomicLong();
+	// the largest value recorded
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 * @param nanos
+	 * 			The latency in nanoseconds. Negative values are counted as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		counts.incrementAndGet(indexOf(value));
+		totalCount.incrementAndGet();
+		totalNanos.addAndGet(value);
+		long max = maxNanos.get();
+		while (value > max && !maxNanos.compareAndSet(max, value))
+			max = maxNanos.get();
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 * @return
+	 * 		The count.
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Returns the largest value recorded.
+	 * @return
+	 * 		The largest latency in nanoseconds, 0 if none was recorded.
+	 */
+	public long getMax() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 * @return
+	 * 		The mean latency in nanoseconds, 0 if none was recorded.
+	 */
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalNanos.get() / count;
+	}
+
+	/**
+	 * Returns the value at the given percentile. Values recorded while this
+	 * is running may or may not be counted.
+	 * @param percentile
+	 * 			The percentile (0 - 100).
+	 * @return
+	 * 			The highest latency in nanoseconds of the bucket holding the
+	 * 			percentile, 0 if none was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += counts.get(i);
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(
+						Math.min(percentile, 100) / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestValueOf(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Removes all the values recorded.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		totalCount.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	/**
+	 * Returns the bucket of a value.
+	 * @param value
+	 * 			The value (0 - MAX_VALUE).
+	 * @return
+	 * 			The index of its bucket.
+	 */
+	private static int indexOf(long value) {
+		if (value < LINEAR_LIMIT)
+			return (int) value;
+		// the shift that brings the value into [SUB_BUCKETS, LINEAR_LIMIT)
+		int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Returns the highest value counted in a bucket.
+	 * @param index
+	 * 			The index of the bucket.
+	 * @return
+	 * 			The highest value.
+	 */
+	private static long highestValueOf(int index) {
+		if (index < LINEAR_LIMIT)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
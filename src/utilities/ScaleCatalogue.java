@@ -0,0 +1,250 @@
+package utilities;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import keyboard.util.AllScales;
+
+/**
+ * Reads and writes scale catalogues: a compact binary form of a CSV file of
+ * scales. A catalogue holds the distinct modes once, then a fixed size
+ * record per scale (its mode id, the pitch class of its root and its notes
+ * packed into a long), so loading it is a memory mapped read of primitives
+ * with no strings made per scale.
+ * The catalogue of a CSV file is saved next to it (with a ".scb" extension)
+ * and is rebuilt when the CSV file's length or modification time changes.
+ * It can also be made from the command line:
+ * <pre>
+ * java utilities.ScaleCatalogue scales.csv [scales.scb]
+ * </pre>
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ScaleCatalogue {
+
+	// the extension of catalogue files
+	public static final String EXTENSION = ".scb";
+
+	// marks the start of a catalogue file
+	private static final int MAGIC = 0x53434C42; // "SCLB"
+	// the version of the catalogue format
+	private static final int VERSION = 1;
+	// the size of the header: magic, version, CSV length and modification
+	// time, number of modes and number of scales
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+	// the size of a scale record: mode id, root and packed notes
+	private static final int RECORD_SIZE = 2 + 1 + 8;
+
+	/**
+	 * Converts a CSV file of scales to a catalogue.
+	 * @param args
+	 * 			The CSV file, and optionally the catalogue file (by default
+	 * 			the CSV file with a ".scb" extension).
+	 * @throws IOException
+	 * 			If the catalogue cannot be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: ScaleCatalogue <scales.csv> [scales"
+								+ EXTENSION + "]");
+			return;
+		}
+		File csvFile = new File(args[0]);
+		File catalogueFile = args.length > 1 ?
+				new File(args[1]) : catalogueFileFor(csvFile);
+		AllScales scales = convert(csvFile, catalogueFile);
+		System.out.println(scales.size() + " scales written to "
+								+ catalogueFile);
+	}
+
+	/**
+	 * Returns the catalogue file saved next to the given CSV file.
+	 * @param csvFile
+	 * 			The CSV file of scales.
+	 * @return
+	 * 			The file with the same name and a ".scb" extension.
+	 */
+	public static File catalogueFileFor(File csvFile) {
+		String name = csvFile.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(csvFile.getAbsoluteFile().getParentFile(),
+							name + EXTENSION);
+	}
+
+	/**
+	 * Reads the scales of a CSV file, and saves them as a catalogue. The rows
+	 * that could not be read are printed to the standard error.
+	 * @param csvFile
+	 * 			The CSV file of scales.
+	 * @param catalogueFile
+	 * 			The catalogue file to write.
+	 * @return
+	 * 			The scales read.
+	 * @throws IOException
+	 * 			If the CSV file cannot be read or the catalogue cannot be
+	 * 			written.
+	 */
+	public static AllScales convert(File csvFile, File catalogueFile)
+							throws IOException {
+		long length = csvFile.length();
+		long modified = csvFile.lastModified();
+		ScaleIngestion ingestion = ScaleIngestion.read(csvFile, null);
+		for (ScaleError error : ingestion.getErrors())
+			System.err.println(csvFile.getName() + ": " + error);
+		write(ingestion.getScales(), catalogueFile, length, modified);
+		return ingestion.getScales();
+	}
+
+	/**
+	 * Reads the catalogue saved for the given CSV file, if it is up to date.
+	 * @param csvFile
+	 * 			The CSV file of scales.
+	 * @return
+	 * 			The scales, or null if there is no catalogue, it is out of
+	 * 			date or it is damaged.
+	 */
+	public static AllScales loadFor(File csvFile) {
+		File catalogueFile = catalogueFileFor(csvFile);
+		if (!catalogueFile.isFile())
+			return null;
+		try {
+			return load(catalogueFile, csvFile.length(),
+							csvFile.lastModified());
+		} catch (IOException e) {
+			// a damaged catalogue is rebuilt
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a catalogue file.
+	 * @param catalogueFile
+	 * 			The catalogue file.
+	 * @return
+	 * 			The scales.
+	 * @throws IOException
+	 * 			If the file cannot be read or is not a catalogue.
+	 */
+	public static AllScales load(File catalogueFile) throws IOException {
+		return load(catalogueFile, -1, -1);
+	}
+
+	/**
+	 * Reads a catalogue file, if it was made from a CSV file of the given
+	 * length and modification time.
+	 * @param catalogueFile
+	 * 			The catalogue file.
+	 * @param csvLength
+	 * 			The length of the CSV file, -1 to read any catalogue.
+	 * @param csvModified
+	 * 			The modification time of the CSV file.
+	 * @return
+	 * 			The scales, or null if the catalogue was made from a
+	 * 			different CSV file.
+	 * @throws IOException
+	 * 			If the file cannot be read or is not a catalogue.
+	 */
+	private static AllScales load(File catalogueFile, long csvLength,
+						long csvModified) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(catalogueFile, "r");
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not a scale catalogue: " + catalogueFile);
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY,
+										0, channel.size());
+			if (in.getInt() != MAGIC || in.getInt() != VERSION)
+				throw new IOException("Not a scale catalogue: " + catalogueFile);
+			long length = in.getLong();
+			long modified = in.getLong();
+			if (csvLength >= 0 && (length != csvLength
+							|| modified != csvModified))
+				return null;
+			int modeCount = in.getInt();
+			int scaleCount = in.getInt();
+			if (modeCount < 0 || scaleCount < 0)
+				throw new IOException("Damaged scale catalogue: "
+								+ catalogueFile);
+			try {
+				AllScales scales = new AllScales();
+				for (int i = 0; i < modeCount; i++) {
+					byte[] name = new byte[in.getShort() & 0xFFFF];
+					in.get(name);
+					scales.addMode(new String(name, StandardCharsets.UTF_8));
+				}
+				if (in.remaining() != (long) scaleCount * RECORD_SIZE)
+					throw new IOException("Damaged scale catalogue: "
+								+ catalogueFile);
+				for (int i = 0; i < scaleCount; i++) {
+					int modeId = in.getShort() & 0xFFFF;
+					int root = in.get();
+					long notes = in.getLong();
+					if (modeId >= modeCount || root < 0 || root >= 12)
+						throw new IOException("Damaged scale catalogue: "
+								+ catalogueFile);
+					scales.addScale(modeId, root, notes);
+				}
+				return scales;
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Damaged scale catalogue: "
+								+ catalogueFile, e);
+			}
+		}
+	}
+
+	/**
+	 * Saves the scales as a catalogue. The file is written next to the
+	 * catalogue and then moved over it, so a catalogue being read is never
+	 * half written.
+	 * @param scales
+	 * 			The scales.
+	 * @param catalogueFile
+	 * 			The file to save to.
+	 * @param csvLength
+	 * 			The length of the CSV file the scales were read from.
+	 * @param csvModified
+	 * 			The modification time of the CSV file.
+	 * @throws IOException
+	 * 			If the file cannot be written.
+	 */
+	public static void write(AllScales scales, File catalogueFile,
+			long csvLength, long csvModified) throws IOException {
+		List<String> modes = scales.getAllModes();
+		if (modes.size() > 0xFFFF)
+			throw new IOException("Too many modes: " + modes.size());
+		File tempFile = new File(catalogueFile.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(csvLength);
+			out.writeLong(csvModified);
+			out.writeInt(modes.size());
+			out.writeInt(scales.size());
+			for (String mode : modes) {
+				byte[] name = mode.getBytes(StandardCharsets.UTF_8);
+				out.writeShort(Math.min(name.length, 0xFFFF));
+				out.write(name, 0, Math.min(name.length, 0xFFFF));
+			}
+			for (int i = 0; i < scales.size(); i++) {
+				out.writeShort(scales.getModeIdAt(i));
+				out.writeByte(scales.getRootAt(i));
+				out.writeLong(scales.getPackedNotesAt(i));
+			}
+		}
+		Files.move(tempFile.toPath(), catalogueFile.toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+	}
+}
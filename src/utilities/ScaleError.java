@@ -0,0 +1,52 @@
+package utilities;
+
+/**
+ * A row of a scales file that could not be read, and why.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ScaleError {
+	
+	// the number of the row, from 1, 0 for the whole file
+	private final int line;
+	// what is wrong with the row
+	private final String message;
+	
+	/**
+	 * Creates an error.
+	 * @param line
+	 * 			The number of the row, from 1, or 0 if the whole file could
+	 * 			not be read.
+	 * @param message
+	 * 			What is wrong with the row.
+	 */
+	public ScaleError(int line, String message) {
+		this.line = line;
+		this.message = message;
+	}
+	
+	/**
+	 * Returns the number of the row.
+	 * @return
+	 * 		The number of the row, from 1, or 0 for the whole file.
+	 */
+	public int getLine() {
+		return line;
+	}
+	
+	/**
+	 * Returns what is wrong with the row.
+	 * @return
+	 * 		The message.
+	 */
+	public String getMessage() {
+		return message;
+	}
+	
+	@Override
+	public String toString() {
+		if (line == 0)
+			return message;
+		return "line " + line + ": " + message;
+	}
+}
@@ -0,0 +1,204 @@
+package utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import keyboard.util.AllScales;
+import keyboard.util.Note;
+
+import com.opencsv.CSVParser;
+
+/**
+ * Reads a CSV file of scales in parallel. The file is split into chunks
+ * that end at the end of a line, and the chunks are parsed at the same time
+ * on the fork-join pool. The chunks are handed over in the order of the file
+ * as soon as each is parsed, so the first scales can be shown while the rest
+ * of the file is still being read. A row that is not a valid scale is
+ * skipped and reported with its line number, and the rest of the file is
+ * still read.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ScaleIngestion {
+
+	// the smallest chunk parsed by one task
+	private static final int MIN_CHUNK_BYTES = 64 * 1024;
+
+	// the scales read so far
+	private final AllScales scales = new AllScales();
+	// the rows that could not be read, in the order of the file
+	private final List<ScaleError> errors = new ArrayList<>();
+
+	/**
+	 * The scales, errors and number of lines of one chunk of the file.
+	 */
+	private static class Chunk {
+		private final AllScales scales = new AllScales();
+		private final List<ScaleError> errors = new ArrayList<>();
+		private int lines = 0;
+	}
+
+	private ScaleIngestion() {
+	}
+
+	/**
+	 * Reads a CSV file of scales, on the calling thread and the fork-join
+	 * pool.
+	 * @param csvFile
+	 * 			The CSV file of scales.
+	 * @param onChunk
+	 * 			Given the scales of each chunk, in the order of the file, on
+	 * 			the calling thread. May be null.
+	 * @return
+	 * 			The scales and errors read.
+	 * @throws IOException
+	 * 			If the file cannot be read.
+	 */
+	public static ScaleIngestion read(File csvFile, Consumer<AllScales> onChunk)
+						throws IOException {
+		byte[] bytes = Files.readAllBytes(csvFile.toPath());
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int chunkBytes = Math.max(MIN_CHUNK_BYTES,
+						bytes.length / (pool.getParallelism() * 4) + 1);
+		List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+		int start = 0;
+		while (start < bytes.length) {
+			int end = Math.min(bytes.length, start + chunkBytes);
+			while (end < bytes.length && bytes[end - 1] != '\n')
+				end++;
+			int chunkStart = start;
+			int chunkEnd = end;
+			tasks.add(pool.submit(() -> parse(bytes, chunkStart, chunkEnd)));
+			start = end;
+		}
+		ScaleIngestion ingestion = new ScaleIngestion();
+		int lines = 0;
+		for (ForkJoinTask<Chunk> task : tasks) {
+			Chunk chunk = task.join();
+			for (ScaleError error : chunk.errors)
+				ingestion.errors.add(new ScaleError(lines + error.getLine(),
+								error.getMessage()));
+			lines += chunk.lines;
+			ingestion.scales.addAll(chunk.scales);
+			if (onChunk != null)
+				onChunk.accept(chunk.scales);
+		}
+		return ingestion;
+	}
+
+	/**
+	 * Returns the scales read.
+	 * @return
+	 * 		The scales.
+	 */
+	public AllScales getScales() {
+		return scales;
+	}
+
+	/**
+	 * Returns the rows that could not be read.
+	 * @return
+	 * 		The errors, in the order of the file.
+	 */
+	public List<ScaleError> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Parses one chunk of the file.
+	 * @param bytes
+	 * 			The file.
+	 * @param start
+	 * 			The start of the chunk, the start of a line.
+	 * @param end
+	 * 			The end of the chunk, the end of a line.
+	 * @return
+	 * 			The scales and errors of the chunk, numbered from its first
+	 * 			line.
+	 */
+	private static Chunk parse(byte[] bytes, int start, int end) {
+		Chunk chunk = new Chunk();
+		String text = new String(bytes, start, end - start,
+							StandardCharsets.UTF_8);
+		CSVParser parser = new CSVParser();
+		int lineStart = 0;
+		while (lineStart < text.length()) {
+			int lineEnd = text.indexOf('\n', lineStart);
+			if (lineEnd < 0)
+				lineEnd = text.length();
+			int next = lineEnd + 1;
+			if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r')
+				lineEnd--;
+			chunk.lines++;
+			try {
+				parseRow(parser.parseLine(text.substring(lineStart, lineEnd)),
+								chunk.scales);
+			} catch (IOException | IllegalArgumentException e) {
+				chunk.errors.add(new ScaleError(chunk.lines, e.getMessage()));
+			}
+			lineStart = next;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Adds the scale of one row: its mode, its root, and its notes starting
+	 * from the root. Blank rows are skipped.
+	 * @param row
+	 * 			The values of the row.
+	 * @param scales
+	 * 			The scale is added to this.
+	 * @throws IllegalArgumentException
+	 * 			If the row is not a valid scale.
+	 */
+	private static void parseRow(String[] row, AllScales scales) {
+		if (row.length == 1 && row[0].trim().isEmpty())
+			return;
+		String mode = row[0].trim();
+		if (mode.isEmpty())
+			throw new IllegalArgumentException("No mode");
+		if (row.length < 2 || row[1].trim().isEmpty())
+			throw new IllegalArgumentException("No root for " + mode);
+		int root = pitchClassOf(row[1].trim());
+		if (root < 0)
+			throw new IllegalArgumentException("Not a root: " + row[1]);
+		long packed = 0;
+		int count = 0;
+		for (int i = 1; i < row.length; i++) {
+			String note = row[i].trim();
+			if (note.isEmpty())
+				continue;
+			int pitchClass = pitchClassOf(note);
+			if (pitchClass < 0)
+				throw new IllegalArgumentException("Not a note: " + note);
+			if (count == AllScales.MAX_NOTES)
+				throw new IllegalArgumentException("More than "
+						+ AllScales.MAX_NOTES + " notes in " + mode);
+			packed |= (long) pitchClass << 4 * ++count;
+		}
+		scales.addScale(scales.addMode(mode), root, packed | count);
+	}
+
+	/**
+	 * Returns the pitch class of a note name such as C, C# or C#/Db.
+	 * @param name
+	 * 			The name of the note.
+	 * @return
+	 * 			The pitch class, or -1 if the name is not a note.
+	 */
+	private static int pitchClassOf(String name) {
+		if (name.length() > 1) {
+			char accidental = name.charAt(1);
+			if (accidental != '#' && accidental != 'b' && accidental != '/')
+				return -1;
+		}
+		return Note.getPitchClass(name);
+	}
+}
@@ -1,70 +1,159 @@
 package utilities;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-import javafx.stage.FileChooser;
 import keyboard.util.AllScales;
-import keyboard.util.Scale;
-import launcher.SynthUI;
-
-import com.opencsv.CSVReader;
 
 /**
- * Provides a method to read in a list of scales from a CSV file.
+ * Provides methods to read in a list of scales from a CSV file.
+ * The scales of a CSV file are saved as a binary ScaleCatalogue next to it
+ * the first time it is read without errors, and the catalogue is read
+ * instead for as long as the CSV file does not change. CSV files are parsed
+ * in parallel by ScaleIngestion.
  * @author Kaamraan Kamaal
  *
  */
 public class ScaleReader {
 	
-	private static File scale;
-	
 	/**
-	 * Parses through the CSV file to add the list of scales.
-	 * The scales are parsed, and added to allScales.
+	 * Reads the list of scales, and adds them to allScales. The rows that
+	 * could not be read are printed to the standard error.
+	 * @param scalesFile
+	 * 			The CSV file of scales, or a scale catalogue.
 	 * @param allScales 
 	 * 			The scales read from the scales.csv file
 	 * 			are added to this.
 	 */
-	public static void getScales(AllScales allScales) {
-		// CSVReader to parse through the CSV file
-		CSVReader reader = null;
+	public static void getScales(File scalesFile, AllScales allScales) {
+		allScales.addAll(readScales(scalesFile));
+	}
+	
+	/**
+	 * Reads the list of scales. The rows that could not be read are printed
+	 * to the standard error.
+	 * @param scalesFile
+	 * 			The CSV file of scales, or a scale catalogue.
+	 * @return
+	 * 			The scales read.
+	 */
+	public static AllScales readScales(File scalesFile) {
+		List<ScaleError> errors = new ArrayList<>();
+		AllScales scales = read(scalesFile, null, errors);
+		for (ScaleError error : errors)
+			System.err.println(scalesFile.getName() + ": " + error);
+		return scales;
+	}
+	
+	/**
+	 * Reads the list of scales on a background thread, so a large file does
+	 * not hold up the caller.
+	 * @param scalesFile
+	 * 			The CSV file of scales, or a scale catalogue.
+	 * @param onChunk
+	 * 			Given the scales as they are read, in the order of the file,
+	 * 			on the background thread.
+	 * @param onFinished
+	 * 			Given all the scales and the rows that could not be read once
+	 * 			the file has been read, on the background thread.
+	 */
+	public static void readScalesInBackground(File scalesFile,
+			Consumer<AllScales> onChunk,
+			BiConsumer<AllScales, List<ScaleError>> onFinished) {
+		Thread readThread = new Thread(() -> {
+			List<ScaleError> errors = new ArrayList<>();
+			AllScales scales = read(scalesFile, onChunk, errors);
+			onFinished.accept(scales, errors);
+		}, "scale-reader");
+		readThread.setDaemon(true);
+		readThread.start();
+	}
+	
+	/**
+	 * Reads the list of scales. A CSV file is read from its catalogue if the
+	 * catalogue is up to date, otherwise the CSV file is parsed and, if it
+	 * has no errors, the catalogue is saved.
+	 * @param scalesFile
+	 * 			The CSV file of scales, or a scale catalogue.
+	 * @param onChunk
+	 * 			Given the scales as they are read. May be null.
+	 * @param errors
+	 * 			The rows that could not be read are added to this.
+	 * @return
+	 * 			The scales read.
+	 */
+	private static AllScales read(File scalesFile, Consumer<AllScales> onChunk,
+							List<ScaleError> errors) {
+		FlightEvents.ScaleLoad flightEvent = new FlightEvents.ScaleLoad();
+		flightEvent.begin();
+		AllScales scales;
 		try {
-			reader = new CSVReader(new FileReader(scale));
-			String [] nextLine;
-			while ((nextLine = reader.readNext()) != null) {
-				Scale scale = new Scale();
-				scale.setMode(nextLine[0]);
-				scale.setRoot(nextLine[1]);
-				// A temporary list to hold the notes in the scale
-				List<String> notes = new ArrayList<String>();
-				for (int i = 1; i < nextLine.length; i++) {
-					if (!nextLine[i].equals(""))
-						notes.add(nextLine[i]);
-				}
-				// The notes are added to the scale
-				scale.setNotesString(notes);
-				// The scale is added to the list of all the scales
-				allScales.addScale(scale);
-				
-			}
-		} catch (Exception e) {
-			e.printStackTrace();;
+			if (scalesFile.getName().endsWith(ScaleCatalogue.EXTENSION))
+				scales = ScaleCatalogue.load(scalesFile);
+			else
+				scales = ScaleCatalogue.loadFor(scalesFile);
+		} catch (IOException e) {
+			errors.add(new ScaleError(0, e.getMessage()));
+			return new AllScales();
+		}
+		if (scales != null) {
+			if (onChunk != null)
+				onChunk.accept(scales);
+			commit(flightEvent, scalesFile, scales, errors, true);
+			return scales;
 		}
-		finally {
+		long length = scalesFile.length();
+		long modified = scalesFile.lastModified();
+		ScaleIngestion ingestion;
+		try {
+			ingestion = ScaleIngestion.read(scalesFile, onChunk);
+		} catch (IOException e) {
+			errors.add(new ScaleError(0, "Couldn't read " + scalesFile));
+			return new AllScales();
+		}
+		errors.addAll(ingestion.getErrors());
+		if (errors.isEmpty()) {
 			try {
-				reader.close();
-			}catch (IOException e) {
-				e.getMessage();
+				ScaleCatalogue.write(ingestion.getScales(),
+						ScaleCatalogue.catalogueFileFor(scalesFile),
+						length, modified);
+			} catch (IOException e) {
+				// the scales still load, they just are not cached
+				e.printStackTrace();
 			}
 		}
+		commit(flightEvent, scalesFile, ingestion.getScales(), errors, false);
+		return ingestion.getScales();
 	}
 	
-	public static void getFile() {
-		FileChooser fileChooser = new FileChooser();
-		scale = fileChooser.showOpenDialog(SynthUI.getStage());
+	/**
+	 * Ends the flight recorder event of loading a file, and commits it if it
+	 * is recorded.
+	 * @param flightEvent
+	 * 			The event begun when the file started loading.
+	 * @param scalesFile
+	 * 			The file loaded.
+	 * @param scales
+	 * 			The scales loaded.
+	 * @param errors
+	 * 			The rows that could not be read.
+	 * @param isFromCatalogue
+	 * 			True if the scales were read from a catalogue.
+	 */
+	private static void commit(FlightEvents.ScaleLoad flightEvent,
+			File scalesFile, AllScales scales, List<ScaleError> errors,
+			boolean isFromCatalogue) {
+		flightEvent.end();
+		if (flightEvent.shouldCommit()) {
+			flightEvent.file = scalesFile.getPath();
+			flightEvent.scales = scales.size();
+			flightEvent.errors = errors.size();
+			flightEvent.isFromCatalogue = isFromCatalogue;
+			flightEvent.commit();
+		}
 	}
 }
@@ -0,0 +1,128 @@
+package utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import keyboard.util.AllScales;
+
+/**
+ * Watches a CSV file of scales, and reads it again when it changes. The
+ * scales are read on the watcher's thread (which also rebuilds the file's
+ * catalogue) and handed to a callback, so whoever uses the scales can swap
+ * them in.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ScaleWatcher implements AutoCloseable {
+
+	// how long the file must be left alone before it is read again, so a
+	// file still being saved is not read half written
+	private static final long SETTLE_MILLIS = 200;
+
+	// the file watched
+	private final File scalesFile;
+	// given the scales each time the file is read again
+	private final Consumer<AllScales> onReload;
+	// the service telling the thread about changes to the file's folder
+	private final WatchService watchService;
+	// the thread waiting for changes
+	private final Thread watchThread;
+	// the length and modification time of the file when last read
+	private long fileLength;
+	private long fileModified;
+
+	/**
+	 * Starts watching the given file.
+	 * @param scalesFile
+	 * 			The CSV file of scales.
+	 * @param onReload
+	 * 			Given the scales, on the watcher's thread, each time the file
+	 * 			has changed and been read again.
+	 * @throws IOException
+	 * 			If the file's folder cannot be watched.
+	 */
+	public ScaleWatcher(File scalesFile, Consumer<AllScales> onReload)
+						throws IOException {
+		this.scalesFile = scalesFile.getAbsoluteFile();
+		this.onReload = onReload;
+		fileLength = this.scalesFile.length();
+		fileModified = this.scalesFile.lastModified();
+		Path folder = this.scalesFile.getParentFile().toPath();
+		watchService = FileSystems.getDefault().newWatchService();
+		folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+		watchThread = new Thread(this::run, "scale-watcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/**
+	 * Waits for changes to the file, and reads it again after each.
+	 */
+	private void run() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				boolean isChanged = isFileEvent(key);
+				key.reset();
+				if (!isChanged)
+					continue;
+				// waits for the file to be left alone
+				while ((key = watchService.poll(SETTLE_MILLIS,
+								TimeUnit.MILLISECONDS)) != null) {
+					key.pollEvents();
+					key.reset();
+				}
+				long length = scalesFile.length();
+				long modified = scalesFile.lastModified();
+				if (length == fileLength && modified == fileModified)
+					continue;
+				fileLength = length;
+				fileModified = modified;
+				onReload.accept(ScaleReader.readScales(scalesFile));
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	/**
+	 * Checks if the events of a key include the watched file.
+	 * @param key
+	 * 			The key of the file's folder.
+	 * @return
+	 * 			True if the file was created or changed.
+	 */
+	private boolean isFileEvent(WatchKey key) {
+		boolean isFile = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			Object context = event.context();
+			if (context instanceof Path && ((Path) context).toString()
+								.equals(scalesFile.getName()))
+				isFile = true;
+		}
+		return isFile;
+	}
+
+	/**
+	 * Stops watching the file.
+	 */
+	@Override
+	public void close() {
+		watchThread.interrupt();
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import keyboard.util.Scale;
+
+/**
+ * Tests that the notes of a chain of pitch shift and chordify blocks are
+ * all turned off once every key is released, when several keys end up on
+ * the same note.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class ChordifyBlockTest {
+
+	// the scale of the blocks, C major
+	private final ScaleModel scaleModel = new ScaleModel();
+	// the blocks under test
+	private PitchShiftBlock pitchShift;
+	private ChordifyBlock chordify;
+	// the voice table at the end of the chain
+	private final VoiceAllocator voices =
+			new VoiceAllocator(VoiceAllocator.Mode.POLY);
+	// the events leaving the voice table, +note for an on, -note for an off
+	private final List<String> sent = new ArrayList<>();
+	// where the voice table sends its notes
+	private final Emitter sink = event -> sent.add(
+			(event.isNoteOn() ? "+" : "-") + event.getNote());
+
+	@Before
+	public void setUp() {
+		Scale scale = new Scale();
+		scale.setRoot("C");
+		scale.setNotesString(
+				Arrays.asList("C", "D", "E", "F", "G", "A", "B", "C"));
+		scaleModel.setScale(scale);
+		pitchShift = new PitchShiftBlock(scaleModel);
+		chordify = new ChordifyBlock(scaleModel);
+	}
+
+	/**
+	 * Plays an event through the pitch shift, the chordify and the voice
+	 * table.
+	 * @param event
+	 * 			The event of the key.
+	 */
+	private void play(NoteEvent event) {
+		pitchShift.process(event, shifted -> chordify.process(shifted,
+				chordNote -> voices.process(0, chordNote, sink)));
+	}
+
+	@Test
+	public void twoKeysShiftedToOneNoteLeaveNothingSounding() {
+		// F# is not in C major, so it is shifted to F like F itself
+		assertEquals(65, pitchShift.getPitchShiftedNote(66));
+		play(NoteEvent.noteOn(65, 100));
+		play(NoteEvent.noteOn(66, 100));
+		assertEquals(Arrays.asList("+65", "+69", "+72"), sent);
+
+		play(NoteEvent.noteOff(65));
+		assertEquals(3, voices.getSoundingCount());
+		play(NoteEvent.noteOff(66));
+		assertEquals(0, voices.getSoundingCount());
+		assertEquals(Arrays.asList("+65", "+69", "+72", "-65", "-69", "-72"),
+				sent);
+	}
+
+	@Test
+	public void releasingInTheOtherOrderLeavesNothingSounding() {
+		play(NoteEvent.noteOn(65, 100));
+		play(NoteEvent.noteOn(66, 100));
+		play(NoteEvent.noteOff(66));
+		play(NoteEvent.noteOff(65));
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void chordIsKeptWhileItsNoteIsHeld() {
+		play(NoteEvent.noteOn(65, 100));
+		play(NoteEvent.noteOn(66, 100));
+		// the shift changes while the note is held; its offs still match
+		pitchShift.setShift(2);
+		play(NoteEvent.noteOff(65));
+		play(NoteEvent.noteOff(66));
+		assertEquals(0, voices.getSoundingCount());
+		play(NoteEvent.noteOn(65, 100));
+		assertEquals(true, voices.isSounding(0, 67));
+	}
+
+	@Test
+	public void offWithNoOnIsIgnored() {
+		play(NoteEvent.noteOff(65));
+		play(NoteEvent.noteOn(60, 100));
+		play(NoteEvent.noteOff(60));
+		play(NoteEvent.noteOff(60));
+		assertEquals(0, voices.getSoundingCount());
+		assertEquals(Arrays.asList("+60", "+64", "+67", "-60", "-64", "-67"),
+				sent);
+	}
+
+	@Test
+	public void resetForgetsTheNotesHeld() {
+		play(NoteEvent.noteOn(65, 100));
+		pitchShift.reset();
+		chordify.reset();
+		voices.allNotesOff(0, sink);
+		play(NoteEvent.noteOff(65));
+		assertEquals(0, voices.getSoundingCount());
+		assertEquals(Arrays.asList("+65", "+69", "+72", "-65", "-69", "-72"),
+				sent);
+	}
+}
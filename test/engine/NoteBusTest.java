@@ -0,0 +1,271 @@
+package engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the NoteBus: ordering across publishers, dropping events when a
+ * subscriber stalls (or waiting for room, for the events that must not be
+ * lost), and delivering every event on drain and close.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class NoteBusTest {
+
+	// how long a test waits for another thread before failing
+	private static final long TIMEOUT_SECONDS = 10;
+
+	// the bus under test
+	private NoteBus bus;
+
+	@After
+	public void tearDown() {
+		if (bus != null)
+			bus.close();
+	}
+
+	/**
+	 * Records the events handled by a subscriber, in the order it handles
+	 * them. Only the subscriber's thread writes to it.
+	 */
+	private static final class Recorder implements NoteHandler {
+
+		// the events and time stamps handled
+		final long[] events;
+		final long[] times;
+		// the number of events handled
+		volatile int count = 0;
+
+		Recorder(int capacity) {
+			events = new long[capacity];
+			times = new long[capacity];
+		}
+
+		@Override
+		public void onEvent(long event, long timeNanos) {
+			events[count] = event;
+			times[count] = timeNanos;
+			count++;
+		}
+	}
+
+	@Test
+	public void packsAndUnpacksEveryField() {
+		long event = NoteBus.pack(NoteBus.NOTE_ON, 200, 127, 99, 15);
+		assertEquals(NoteBus.NOTE_ON, NoteBus.getType(event));
+		assertEquals(200, NoteBus.getKey(event));
+		assertEquals(127, NoteBus.getNote(event));
+		assertEquals(99, NoteBus.getVelocity(event));
+		assertEquals(15, NoteBus.getChannel(event));
+	}
+
+	@Test
+	public void keepsEachPublishersOrderAndGivesSubscribersOneOrder()
+					throws InterruptedException {
+		int publishers = 4;
+		int perPublisher = 10_000;
+		int total = publishers * perPublisher;
+		// large enough that nothing is dropped
+		bus = new NoteBus(total);
+		Recorder first = new Recorder(total);
+		Recorder second = new Recorder(total);
+		NoteBus.Subscription firstSubscription =
+				bus.subscribe(first, "test-first");
+		NoteBus.Subscription secondSubscription =
+				bus.subscribe(second, "test-second");
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[publishers];
+		for (int p = 0; p < publishers; p++) {
+			int publisher = p;
+			threads[p] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				// the time stamp carries the publisher's own sequence number
+				for (int i = 0; i < perPublisher; i++)
+					bus.publish(NoteBus.pack(NoteBus.NOTE_ON, publisher, 60,
+									100, 0), i);
+			});
+			threads[p].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+		firstSubscription.drain();
+		secondSubscription.drain();
+
+		assertEquals(0, bus.getDroppedEvents());
+		assertEquals(total, first.count);
+		assertEquals(total, second.count);
+		long[] expected = new long[publishers];
+		for (int i = 0; i < total; i++) {
+			int publisher = NoteBus.getKey(first.events[i]);
+			assertEquals("publisher " + publisher + " out of order",
+					expected[publisher]++, first.times[i]);
+			assertEquals(first.events[i], second.events[i]);
+			assertEquals(first.times[i], second.times[i]);
+		}
+		for (int p = 0; p < publishers; p++)
+			assertEquals(perPublisher, expected[p]);
+	}
+
+	@Test
+	public void dropsAndCountsEventsWhenASubscriberStalls()
+					throws InterruptedException {
+		bus = new NoteBus(8);
+		CountDownLatch stalled = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger handled = new AtomicInteger();
+		NoteBus.Subscription subscription = bus.subscribe((event, time) -> {
+			if (handled.getAndIncrement() == 0) {
+				stalled.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "test-stalled");
+
+		// the subscriber is held in the first event, so the ring fills
+		int accepted = 0;
+		for (int i = 0; i < 20; i++)
+			if (bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, i, 100, 0), i))
+				accepted++;
+		assertTrue(stalled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(8, accepted);
+		assertEquals(12, bus.getDroppedEvents());
+
+		release.countDown();
+		subscription.drain();
+		assertEquals(8, handled.get());
+		// the ring takes events again once the subscriber catches up
+		assertTrue(bus.publish(NoteBus.pack(NoteBus.NOTE_OFF, 0, 0, 0, 0)));
+		subscription.drain();
+		assertEquals(9, handled.get());
+		assertEquals(12, bus.getDroppedEvents());
+	}
+
+	@Test
+	public void publishOrWaitWaitsForRoomInsteadOfDropping()
+					throws InterruptedException {
+		bus = new NoteBus(8);
+		CountDownLatch stalled = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Recorder recorder = new Recorder(16);
+		NoteBus.Subscription subscription = bus.subscribe((event, time) -> {
+			if (recorder.count == 0) {
+				stalled.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			recorder.onEvent(event, time);
+		}, "test-wait");
+
+		for (int i = 0; i < 8; i++)
+			assertTrue(bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, i, 100, 0),
+								i));
+		assertTrue(stalled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		CountDownLatch published = new CountDownLatch(1);
+		Thread publisher = new Thread(() -> {
+			bus.publishOrWait(NoteBus.pack(NoteBus.NOTE_OFF, 0, 7, 0, 0), 8);
+			published.countDown();
+		});
+		publisher.start();
+		// the ring is full, so the note off waits rather than being dropped
+		assertFalse(published.await(100, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		assertTrue(published.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		subscription.drain();
+		assertEquals(9, recorder.count);
+		assertEquals(NoteBus.NOTE_OFF, NoteBus.getType(recorder.events[8]));
+		assertEquals(8, recorder.times[8]);
+		assertEquals(0, bus.getDroppedEvents());
+		assertEquals(1, bus.getDelayedEvents());
+	}
+
+	@Test
+	public void drainWaitsForEveryEventPublished() {
+		bus = new NoteBus(1024);
+		Recorder recorder = new Recorder(1000);
+		NoteBus.Subscription subscription =
+				bus.subscribe(slow(recorder), "test-drain");
+		for (int i = 0; i < 1000; i++)
+			assertTrue(bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, 60,
+									100, 0), i));
+		subscription.drain();
+		assertEquals(1000, recorder.count);
+		for (int i = 0; i < 1000; i++)
+			assertEquals(i, recorder.times[i]);
+	}
+
+	@Test
+	public void closeDeliversEverythingPublishedAndStops() {
+		bus = new NoteBus(1024);
+		Recorder first = new Recorder(500);
+		Recorder second = new Recorder(500);
+		bus.subscribe(slow(first), "test-close-first");
+		NoteBus.Subscription subscription =
+				bus.subscribe(slow(second), "test-close-second");
+		for (int i = 0; i < 500; i++)
+			bus.publish(NoteBus.pack(NoteBus.NOTE_OFF, 0, 60, 0, 0), i);
+		subscription.close();
+		assertEquals(500, second.count);
+		bus.close();
+		assertEquals(500, first.count);
+
+		// with no subscribers left nothing is delivered or dropped
+		assertTrue(bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, 60, 100, 0)));
+		assertEquals(500, first.count);
+		assertEquals(500, second.count);
+		assertEquals(0, bus.getDroppedEvents());
+	}
+
+	@Test
+	public void subscriberStartsFromTheNextEvent() {
+		bus = new NoteBus(16);
+		assertTrue(bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, 1, 100, 0)));
+		Recorder recorder = new Recorder(4);
+		NoteBus.Subscription subscription =
+				bus.subscribe(recorder, "test-late");
+		assertTrue(bus.publish(NoteBus.pack(NoteBus.NOTE_ON, 0, 2, 100, 0)));
+		subscription.drain();
+		assertEquals(1, recorder.count);
+		assertEquals(2, NoteBus.getNote(recorder.events[0]));
+	}
+
+	/**
+	 * Wraps a handler so every tenth event is handled slowly, leaving
+	 * events queued behind it.
+	 * @param handler
+	 * 			The handler.
+	 * @return
+	 * 			The slow handler.
+	 */
+	private static NoteHandler slow(NoteHandler handler) {
+		return (event, time) -> {
+			if (time % 10 == 0) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			handler.onEvent(event, time);
+		};
+	}
+}
@@ -0,0 +1,128 @@
+package engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import output.SinkRegistry;
+
+/**
+ * Tests the panic of the SynthEngine: it is never dropped, even when the
+ * keys fill the bus, and the keys pressed before it cannot turn a note on
+ * again afterwards.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SynthEngineTest {
+
+	// how long a test waits for another thread before failing
+	private static final long TIMEOUT_SECONDS = 10;
+
+	// the engine under test
+	private SynthEngine engine;
+	// holds up the chain's thread in the first note on
+	private GateBlock gate;
+
+	/**
+	 * Passes the notes on, but holds the chain's thread in the first note on
+	 * until it is opened, so the keys played meanwhile queue up on the bus.
+	 * Counts the note ons it is given.
+	 */
+	private static final class GateBlock extends Block {
+
+		// counted down when the first note on comes in
+		final CountDownLatch entered = new CountDownLatch(1);
+		// counted down to let the notes through
+		final CountDownLatch opened = new CountDownLatch(1);
+		// the number of note ons given
+		final AtomicInteger notesOn = new AtomicInteger();
+
+		GateBlock() {
+			super("Gate");
+		}
+
+		@Override
+		public void process(NoteEvent event, Emitter out) {
+			if (event.isNoteOn() && notesOn.getAndIncrement() == 0) {
+				entered.countDown();
+				try {
+					opened.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			out.emit(event);
+		}
+	}
+
+	@Before
+	public void setUp() throws InterruptedException {
+		engine = new SynthEngine(SinkRegistry.getInstance());
+		gate = new GateBlock();
+		engine.setBlocks(Collections.<Block>singletonList(gate));
+		engine.keyPressed(0, 60);
+		assertTrue(gate.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	@After
+	public void tearDown() {
+		gate.opened.countDown();
+		engine.drain();
+		engine.setBlocks(Collections.<Block>emptyList());
+	}
+
+	@Test
+	public void keysPressedBeforeAPanicDoNotSoundAfterIt() {
+		for (int key = 1; key < 10; key++)
+			engine.keyPressed(key, 60 + key);
+		engine.panic();
+		gate.opened.countDown();
+		engine.drain();
+
+		// only the key that was already in the chain got there
+		assertEquals(1, gate.notesOn.get());
+		assertEquals(0, engine.getVoices().getSoundingCount());
+
+		// keys pressed after the panic play as usual
+		engine.keyPressed(1, 61);
+		engine.drain();
+		assertEquals(2, gate.notesOn.get());
+		assertEquals(1, engine.getVoices().getSoundingCount());
+		engine.keyReleased(1);
+		engine.drain();
+		assertEquals(0, engine.getVoices().getSoundingCount());
+	}
+
+	@Test
+	public void panicWaitsForRoomOnAFullBus() throws InterruptedException {
+		// fill the bus behind the held note on, ending on a key pressed, so
+		// nothing here waits
+		int pairs = (NoteBus.DEFAULT_CAPACITY - 2) / 2;
+		for (int i = 0; i < pairs; i++) {
+			engine.keyPressed(1, 61);
+			engine.keyReleased(1);
+		}
+		engine.keyPressed(2, 62);
+		CountDownLatch panicked = new CountDownLatch(1);
+		Thread panic = new Thread(() -> {
+			engine.panic();
+			panicked.countDown();
+		});
+		panic.start();
+		assertFalse(panicked.await(100, TimeUnit.MILLISECONDS));
+
+		gate.opened.countDown();
+		assertTrue(panicked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		engine.drain();
+		assertEquals(0, engine.getVoices().getSoundingCount());
+	}
+}
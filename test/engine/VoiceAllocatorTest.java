@@ -0,0 +1,218 @@
+package engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import engine.VoiceAllocator.Mode;
+import engine.VoiceAllocator.Priority;
+
+/**
+ * Tests the VoiceAllocator: reference counted poly notes, the mono and
+ * legato note priorities, changing the mode while notes are held, and
+ * turning every note off.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class VoiceAllocatorTest {
+
+	// the events sent, +note for an on, -note for an off
+	private final List<String> sent = new ArrayList<>();
+	// where the allocator sends its notes
+	private final Emitter out = event -> sent.add(
+			(event.isNoteOn() ? "+" : "-") + event.getNote());
+
+	/**
+	 * Plays notes on channel 0: a positive number is the on of that note,
+	 * a negative one the off.
+	 * @param voices
+	 * 			The allocator.
+	 * @param notes
+	 * 			The notes.
+	 */
+	private void play(VoiceAllocator voices, int... notes) {
+		for (int note : notes) {
+			voices.process(0, note > 0 ? NoteEvent.noteOn(note, 100)
+								: NoteEvent.noteOff(-note), out);
+		}
+	}
+
+	/**
+	 * Checks the events sent, and forgets them.
+	 * @param expected
+	 * 			The events, +note for an on, -note for an off.
+	 */
+	private void assertSent(String... expected) {
+		assertEquals(Arrays.asList(expected), sent);
+		sent.clear();
+	}
+
+	@Test
+	public void polySendsEachNoteOnceUntilItsLastHolderLetsGo() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.POLY);
+		play(voices, 60, 60, 64);
+		assertSent("+60", "+64");
+		play(voices, -60);
+		assertSent();
+		play(voices, -60, -60, -64);
+		assertSent("-60", "-64");
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void channelsAreCountedApart() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.POLY);
+		voices.process(0, NoteEvent.noteOn(60, 100), out);
+		voices.process(1, NoteEvent.noteOn(60, 100), out);
+		assertTrue(voices.isSounding(0, 60));
+		assertTrue(voices.isSounding(1, 60));
+		voices.process(1, NoteEvent.noteOff(60), out);
+		assertTrue(voices.isSounding(0, 60));
+		assertFalse(voices.isSounding(1, 60));
+		assertEquals(1, voices.getSoundingCount());
+	}
+
+	@Test
+	public void noteOnTwoChannelsIsSentOnceAndOffWithTheLast() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.POLY);
+		voices.process(0, NoteEvent.noteOn(60, 100), out);
+		voices.process(1, NoteEvent.noteOn(60, 100), out);
+		assertSent("+60");
+		// the other channel letting go does not cut the note short
+		voices.process(1, NoteEvent.noteOff(60), out);
+		assertSent();
+		voices.process(0, NoteEvent.noteOff(60), out);
+		assertSent("-60");
+
+		voices.process(0, NoteEvent.noteOn(60, 100), out);
+		voices.process(1, NoteEvent.noteOn(60, 100), out);
+		voices.process(1, NoteEvent.noteOn(64, 100), out);
+		assertSent("+60", "+64");
+		voices.allNotesOff(0, out);
+		assertSent("-60", "-64");
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void monoLastPriorityFallsBackToTheNoteBefore() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.MONO);
+		play(voices, 60, 64, 67);
+		assertSent("+60", "-60", "+64", "-64", "+67");
+		play(voices, -67);
+		assertSent("-67", "+64");
+		play(voices, -60);
+		assertSent();
+		play(voices, -64);
+		assertSent("-64");
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void monoLowPriorityKeepsTheLowestNote() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.MONO);
+		voices.setPriority(Priority.LOW);
+		play(voices, 64, 60, 67);
+		assertSent("+64", "-64", "+60");
+		play(voices, -60);
+		assertSent("-60", "+64");
+		play(voices, -64, -67);
+		assertSent("-64", "+67", "-67");
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void monoHighPriorityKeepsTheHighestNote() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.MONO);
+		voices.setPriority(Priority.HIGH);
+		play(voices, 64, 100, 60);
+		assertSent("+64", "-64", "+100");
+		play(voices, -100);
+		assertSent("-100", "+64");
+		play(voices, -64, -60);
+		assertSent("-64", "+60", "-60");
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void legatoStartsTheNewNoteBeforeEndingTheOld() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.LEGATO);
+		play(voices, 60, 64);
+		assertSent("+60", "+64", "-60");
+		play(voices, -64);
+		assertSent("+60", "-64");
+		play(voices, -60);
+		assertSent("-60");
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void switchingFromPolyToMonoKeepsTheOffsMatched() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.POLY);
+		play(voices, 60, 64);
+		assertSent("+60", "+64");
+		// the notes sounding carry on until they are released
+		voices.setMode(Mode.MONO);
+		play(voices, 67);
+		assertSent("+67");
+		assertEquals(3, voices.getSoundingCount());
+		play(voices, -60, -64);
+		assertSent("-60", "-64");
+		play(voices, 72, -67, -72);
+		assertSent("-67", "+72", "-72");
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void switchingFromMonoToPolyKeepsTheOffsMatched() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.MONO);
+		play(voices, 60, 64);
+		voices.setMode(Mode.POLY);
+		play(voices, 67, -64, -60, -67);
+		assertEquals(0, voices.getSoundingCount());
+	}
+
+	@Test
+	public void allNotesOffTurnsOffOnlyTheNotesSounding() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.POLY);
+		play(voices, 1, 70, 127);
+		voices.process(5, NoteEvent.noteOn(10, 100), out);
+		sent.clear();
+		voices.allNotesOff(0, out);
+		assertEquals(4, sent.size());
+		assertTrue(sent.containsAll(Arrays.asList("-1", "-70", "-127", "-10")));
+		assertEquals(0, voices.getSoundingCount());
+		sent.clear();
+		// the offs of the keys still held down are ignored
+		play(voices, -1, -70, 70, -70);
+		assertSent("+70", "-70");
+	}
+
+	@Test
+	public void resetSendsNothing() {
+		VoiceAllocator voices = new VoiceAllocator(Mode.MONO);
+		play(voices, 60, 64);
+		sent.clear();
+		voices.reset();
+		assertSent();
+		assertEquals(0, voices.getSoundingCount());
+		play(voices, -64, -60);
+		assertSent();
+	}
+
+	@Test
+	public void namesAreReadInAnyCase() {
+		assertEquals(Mode.LEGATO, Mode.fromName("Legato"));
+		assertEquals(Priority.HIGH, Priority.fromName("HIGH"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownModeIsRejected() {
+		Mode.fromName("chords");
+	}
+}
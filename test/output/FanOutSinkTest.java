@@ -0,0 +1,122 @@
+package output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the FanOutSink: delivering every note to each sink, and not losing
+ * any while the sinks change.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class FanOutSinkTest {
+
+	// how long a test waits for another thread before failing
+	private static final long TIMEOUT_SECONDS = 10;
+
+	// the fan out under test
+	private FanOutSink fanOut;
+
+	@After
+	public void tearDown() {
+		if (fanOut != null)
+			fanOut.stop();
+	}
+
+	/**
+	 * Counts the notes it is given.
+	 */
+	private static final class CountingSink implements OutputSink {
+
+		// the name of the sink
+		private final String name;
+		// the number of note ons and note offs given
+		final AtomicInteger notesOn = new AtomicInteger();
+		final AtomicInteger notesOff = new AtomicInteger();
+
+		CountingSink(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void noteOn(int note, int velocity) {
+			notesOn.incrementAndGet();
+		}
+
+		@Override
+		public void noteOff(int note) {
+			notesOff.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void deliversEveryNoteToEachSink() {
+		CountingSink first = new CountingSink("first");
+		CountingSink second = new CountingSink("second");
+		fanOut = new FanOutSink(Arrays.<OutputSink>asList(first, second));
+		for (int i = 0; i < 1000; i++) {
+			fanOut.noteOn(60, 100);
+			fanOut.noteOff(60);
+		}
+		fanOut.stop();
+		assertEquals(1000, first.notesOn.get());
+		assertEquals(1000, first.notesOff.get());
+		assertEquals(1000, second.notesOn.get());
+		assertEquals(1000, second.notesOff.get());
+	}
+
+	@Test
+	public void sinkRemovedIsGivenTheNotesSentBeforeAndNoneAfter() {
+		CountingSink kept = new CountingSink("kept");
+		CountingSink removed = new CountingSink("removed");
+		fanOut = new FanOutSink(Arrays.<OutputSink>asList(kept, removed));
+		for (int i = 0; i < 100; i++)
+			fanOut.noteOff(60);
+		fanOut.setSinks(Collections.<OutputSink>singletonList(kept));
+		assertEquals(100, removed.notesOff.get());
+		for (int i = 0; i < 100; i++)
+			fanOut.noteOff(60);
+		fanOut.stop();
+		assertEquals(100, removed.notesOff.get());
+		assertEquals(200, kept.notesOff.get());
+	}
+
+	@Test
+	public void noNoteIsLostWhileTheSinksChange()
+					throws InterruptedException {
+		int notes = 50_000;
+		CountingSink kept = new CountingSink("kept");
+		CountingSink toggled = new CountingSink("toggled");
+		fanOut = new FanOutSink(Collections.<OutputSink>singletonList(kept));
+		Thread player = new Thread(() -> {
+			// note offs are never dropped, so every one must arrive
+			for (int i = 0; i < notes; i++)
+				fanOut.noteOff(i & 127);
+		});
+		player.start();
+		for (int i = 0; player.isAlive() && i < 200; i++) {
+			if (i % 2 == 0)
+				fanOut.setSinks(Arrays.<OutputSink>asList(kept, toggled));
+			else
+				fanOut.setSinks(Collections.<OutputSink>singletonList(kept));
+		}
+		player.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+		assertTrue(!player.isAlive());
+		fanOut.stop();
+		assertEquals(notes, kept.notesOff.get());
+		assertTrue(toggled.notesOff.get() <= notes);
+	}
+}
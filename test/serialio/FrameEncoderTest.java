@@ -0,0 +1,121 @@
+package serialio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Pins the bytes of the MIDI messages made by the FrameEncoder, and when a
+ * change to the button configuration is sent as a change or in full.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class FrameEncoderTest {
+
+	// the button configuration the synthesizer has in the tests
+	private static final int[] SENT = {60, 62, 64, 65, 67, 69, 71, 72};
+
+	@Test
+	public void encodesNotesWithTheChannelInTheStatus() {
+		byte[] frame = new byte[3];
+		assertEquals(3, FrameEncoder.encodeNoteOn(frame, 0, 5, 60, 100));
+		assertArrayEquals(bytes(0x95, 0x3C, 0x64), frame);
+		assertEquals(3, FrameEncoder.encodeNoteOff(frame, 0, 15, 127));
+		assertArrayEquals(bytes(0x8F, 0x7F, 0x00), frame);
+	}
+
+	@Test
+	public void encodesTheFullConfiguration() {
+		byte[] frame = new byte[FrameEncoder.CONFIG_LENGTH];
+		assertEquals(FrameEncoder.CONFIG_LENGTH,
+						FrameEncoder.encodeConfig(frame, 0, new int[] {60, 62}));
+		// the buttons with no note are sent as 0
+		assertArrayEquals(bytes(0xF0, 0x7D, 0x3C, 0x3E, 0, 0, 0, 0, 0, 0,
+						0xF7), frame);
+	}
+
+	@Test
+	public void sendsTheFullConfigurationWhenThereWasNone() {
+		assertArrayEquals(bytes(0xF0, 0x7D, 0x3C, 0x3E, 0x40, 0x41, 0x43,
+						0x45, 0x47, 0x48, 0xF7),
+						update(null, SENT, FrameEncoder.MAX_DELTA_BUTTONS));
+	}
+
+	@Test
+	public void sendsNothingWhenNothingChanged() {
+		assertArrayEquals(new byte[0], update(SENT, SENT.clone(),
+						FrameEncoder.MAX_DELTA_BUTTONS));
+	}
+
+	@Test
+	public void sendsTheButtonsChangedAsAChange() {
+		int[] changed = SENT.clone();
+		changed[2] = 40;
+		assertArrayEquals(bytes(0xF0, 0x7D, 0x7F, 0x02, 0x28, 0xF7),
+						update(SENT, changed, FrameEncoder.MAX_DELTA_BUTTONS));
+
+		changed[0] = 48;
+		changed[7] = 84;
+		assertArrayEquals(bytes(0xF0, 0x7D, 0x7F, 0x00, 0x30, 0x02, 0x28,
+						0x07, 0x54, 0xF7),
+						update(SENT, changed, FrameEncoder.MAX_DELTA_BUTTONS));
+	}
+
+	@Test
+	public void sendsTheFullConfigurationOnceMoreThanMaxButtonsChange() {
+		int[] changed = SENT.clone();
+		for (int i = 0; i <= FrameEncoder.MAX_DELTA_BUTTONS; i++)
+			changed[i] += 12;
+		assertArrayEquals(bytes(0xF0, 0x7D, 0x48, 0x4A, 0x4C, 0x4D, 0x43,
+						0x45, 0x47, 0x48, 0xF7),
+						update(SENT, changed, FrameEncoder.MAX_DELTA_BUTTONS));
+	}
+
+	@Test
+	public void sendsAnyChangeInFullWithNoChangeMessage() {
+		int[] changed = SENT.clone();
+		changed[1] = 50;
+		assertEquals(FrameEncoder.CONFIG_LENGTH,
+						update(SENT, changed, 0).length);
+		// fewer changes allowed than the most sent as a change
+		changed[3] = 53;
+		assertEquals(FrameEncoder.CONFIG_LENGTH,
+						update(SENT, changed, 1).length);
+	}
+
+	/**
+	 * Encodes a change of the button configuration.
+	 * @param sentNotes
+	 * 			The notes the synthesizer has, null if none.
+	 * @param buttonNotes
+	 * 			The notes to send.
+	 * @param maxChanges
+	 * 			The most buttons sent as a change.
+	 * @return
+	 * 			The bytes of the frame.
+	 */
+	private static byte[] update(int[] sentNotes, int[] buttonNotes,
+					int maxChanges) {
+		byte[] frame = new byte[FrameEncoder.CONFIG_LENGTH];
+		int length = FrameEncoder.encodeConfigUpdate(frame, 0, sentNotes,
+						buttonNotes, maxChanges);
+		return Arrays.copyOf(frame, length);
+	}
+
+	/**
+	 * Makes a byte array.
+	 * @param values
+	 * 			The unsigned values of the bytes.
+	 * @return
+	 * 			The bytes.
+	 */
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+			bytes[i] = (byte) values[i];
+		return bytes;
+	}
+}
@@ -0,0 +1,315 @@
+package serialio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+/**
+ * Tests the SerialWriter against a stand in for the port: carrying on after
+ * a short write, making room for a note off in a full ring, keeping or
+ * dropping the frames while the port is gone, and sending the button
+ * configuration once it settles.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class SerialWriterTest {
+
+	// how long a test waits for the writer before failing
+	private static final long TIMEOUT_MILLIS = 5000;
+
+	// the port the writer is given; it is never opened, the writes go to
+	// the fake output
+	private SerialPort port;
+	// the output standing in for the port
+	private FakeOutput output;
+	// the writer under test
+	private SerialWriter writer;
+
+	/**
+	 * Stands in for the port: keeps the bytes written, and can take only a
+	 * few bytes per write or fail every write.
+	 */
+	private static final class FakeOutput
+					implements SerialWriter.PortOutput {
+
+		// the bytes the port took
+		private final ByteArrayOutputStream written =
+						new ByteArrayOutputStream();
+		// the most bytes taken by one write
+		private int maxBytes = Integer.MAX_VALUE;
+		// checks if the writes fail
+		private boolean isFailing = false;
+		// the number of writes
+		private int writes = 0;
+
+		@Override
+		public synchronized int writeBytes(SerialPort port, byte[] buffer,
+						long length) {
+			writes++;
+			if (isFailing)
+				return -1;
+			int n = (int) Math.min(length, maxBytes);
+			written.write(buffer, 0, n);
+			return n;
+		}
+
+		synchronized byte[] getWritten() {
+			return written.toByteArray();
+		}
+
+		synchronized int getWrites() {
+			return writes;
+		}
+
+		synchronized void setMaxBytes(int maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized void setFailing(boolean isFailing) {
+			this.isFailing = isFailing;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		port = SerialPort.getCommPort("/dev/null");
+		output = new FakeOutput();
+	}
+
+	@After
+	public void tearDown() {
+		if (writer != null)
+			writer.stop(TIMEOUT_MILLIS);
+	}
+
+	@Test
+	public void carriesOnWithTheRestOfAShortWrite() {
+		output.setMaxBytes(3);
+		writer = start(null, SerialWriter.DEFAULT_CAPACITY);
+		for (int note = 60; note < 64; note++)
+			assertTrue(noteOn(note));
+		// the four frames go out as one batch, three bytes at a time
+		writer.setPort(port);
+		waitFor(() -> output.getWritten().length == 8);
+		assertArrayEquals(bytes(0x7F, 60, 0x7F, 61, 0x7F, 62, 0x7F, 63),
+						output.getWritten());
+		waitFor(() -> writer.getQueuedFrames() == 0);
+		assertTrue(writer.getMetrics().getShortWrites() > 0);
+		assertEquals(0, writer.getMetrics().getFailedWrites());
+		assertEquals(port, writer.getPort());
+	}
+
+	@Test
+	public void noteOffDropsItsOwnOnFromAFullRing() {
+		writer = start(null, 4);
+		for (int note = 60; note < 64; note++)
+			assertTrue(noteOn(note));
+		// the latest frame of note 62 is its on: the note never sounded
+		assertFalse(noteOff(62));
+		assertEquals(3, writer.getQueuedFrames());
+		assertEquals(2, writer.getDroppedFrames());
+
+		writer.setPort(port);
+		waitFor(() -> output.getWritten().length == 6);
+		assertArrayEquals(bytes(0x7F, 60, 0x7F, 61, 0x7F, 63),
+						output.getWritten());
+	}
+
+	@Test
+	public void noteOffDropsTheOldestOnFromAFullRing() {
+		writer = start(null, 4);
+		for (int note = 60; note < 64; note++)
+			assertTrue(noteOn(note));
+		// nothing else gets into the full ring
+		assertFalse(noteOn(64));
+		assertTrue(noteOff(70));
+		assertEquals(4, writer.getQueuedFrames());
+		assertEquals(2, writer.getDroppedFrames());
+
+		writer.setPort(port);
+		waitFor(() -> output.getWritten().length == 8);
+		assertArrayEquals(bytes(0x7F, 61, 0x7F, 62, 0x7F, 63, 0x7E, 70),
+						output.getWritten());
+	}
+
+	@Test
+	public void bufferKeepsTheFramesUntilThePortIsBack() {
+		writer = start(null, SerialWriter.DEFAULT_CAPACITY);
+		writer.setLinkDownPolicy(LinkDownPolicy.BUFFER);
+		assertTrue(noteOn(60));
+		assertTrue(noteOff(60));
+		assertEquals(2, writer.getQueuedFrames());
+
+		writer.setPort(port);
+		waitFor(() -> output.getWritten().length == 4);
+		assertArrayEquals(bytes(0x7F, 60, 0x7E, 60), output.getWritten());
+		assertEquals(0, writer.getDroppedFrames());
+	}
+
+	@Test
+	public void dropDropsTheFramesWhileThePortIsGone() {
+		writer = start(null, SerialWriter.DEFAULT_CAPACITY);
+		writer.setLinkDownPolicy(LinkDownPolicy.DROP);
+		assertFalse(noteOn(60));
+		assertEquals(0, writer.getQueuedFrames());
+		assertEquals(1, writer.getDroppedFrames());
+
+		writer.setPort(port);
+		assertTrue(noteOn(62));
+		waitFor(() -> output.getWritten().length == 2);
+		assertArrayEquals(bytes(0x7F, 62), output.getWritten());
+	}
+
+	@Test
+	public void bufferKeepsTheFramesOfAFailedWrite() {
+		output.setFailing(true);
+		writer = start(port, SerialWriter.DEFAULT_CAPACITY);
+		writer.setLinkDownPolicy(LinkDownPolicy.BUFFER);
+		assertTrue(noteOn(60));
+		waitFor(() -> writer.getPort() == null);
+		assertTrue(noteOff(60));
+		assertEquals(2, writer.getQueuedFrames());
+		assertEquals(1, writer.getMetrics().getFailedWrites());
+
+		output.setFailing(false);
+		writer.setPort(port);
+		waitFor(() -> output.getWritten().length == 4);
+		assertArrayEquals(bytes(0x7F, 60, 0x7E, 60), output.getWritten());
+		assertEquals(0, writer.getDroppedFrames());
+	}
+
+	@Test
+	public void dropDropsTheFramesOfAFailedWrite() {
+		output.setFailing(true);
+		writer = start(port, SerialWriter.DEFAULT_CAPACITY);
+		writer.setLinkDownPolicy(LinkDownPolicy.DROP);
+		assertTrue(noteOn(60));
+		waitFor(() -> writer.getPort() == null);
+		assertNull(writer.getPort());
+		assertEquals(0, writer.getQueuedFrames());
+		assertEquals(1, writer.getDroppedFrames());
+	}
+
+	@Test
+	public void sendsTheButtonConfigurationOnceItSettles()
+					throws InterruptedException {
+		writer = start(port, SerialWriter.DEFAULT_CAPACITY);
+		writer.setProtocol(Protocol.COMPACT);
+		int[] notes = {60, 62, 64, 65, 67, 69, 71, 72};
+		// the buttons shifted a few times in quick succession
+		for (int shift = 5; shift >= 0; shift--) {
+			int[] shifted = notes.clone();
+			for (int i = 0; i < shifted.length; i++)
+				shifted[i] += shift;
+			writer.setButtonNotes(shifted);
+		}
+		waitFor(() -> output.getWrites() == 1);
+		Thread.sleep(2 * SerialWriter.CONFIG_SETTLE_NANOS / 1_000_000L);
+		assertEquals(1, output.getWrites());
+		assertArrayEquals(bytes(0x7D, 60, 62, 64, 65, 67, 69, 71, 72),
+						output.getWritten());
+
+		// only the button that changed goes out, once it has settled
+		int[] changed = notes.clone();
+		for (int note = 40; note <= 44; note++) {
+			changed[2] = note;
+			writer.setButtonNotes(changed);
+		}
+		waitFor(() -> output.getWrites() == 2);
+		Thread.sleep(2 * SerialWriter.CONFIG_SETTLE_NANOS / 1_000_000L);
+		assertEquals(2, output.getWrites());
+		byte[] written = output.getWritten();
+		assertEquals(12, written.length);
+		assertArrayEquals(bytes(0x7C, 0x04, 44),
+						Arrays.copyOfRange(written, 9, 12));
+	}
+
+	/**
+	 * Starts a writer writing to the fake output, with no gap between
+	 * writes.
+	 * @param startPort
+	 * 			The port, null to start with the port gone.
+	 * @param capacity
+	 * 			The number of frames the ring holds.
+	 * @return
+	 * 			The writer.
+	 */
+	private SerialWriter start(SerialPort startPort, int capacity) {
+		SerialWriter started = new SerialWriter(startPort, capacity);
+		started.setOutput(output);
+		started.setFrameGapNanos(0);
+		started.start();
+		return started;
+	}
+
+	/**
+	 * Queues a note on.
+	 * @param note
+	 * 			The note.
+	 * @return
+	 * 			True if it was queued.
+	 */
+	private boolean noteOn(int note) {
+		byte[] frame = new byte[3];
+		FrameEncoder.encodeNoteOn(frame, 0, 0, note, 100);
+		return writer.enqueue(frame, 0, 3);
+	}
+
+	/**
+	 * Queues a note off.
+	 * @param note
+	 * 			The note.
+	 * @return
+	 * 			True if it was queued.
+	 */
+	private boolean noteOff(int note) {
+		byte[] frame = new byte[3];
+		FrameEncoder.encodeNoteOff(frame, 0, 0, note);
+		return writer.enqueue(frame, 0, 3);
+	}
+
+	/**
+	 * Waits until the condition holds, failing the test after
+	 * TIMEOUT_MILLIS.
+	 * @param condition
+	 * 			The condition.
+	 */
+	private static void waitFor(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			assertTrue("timed out", System.currentTimeMillis() < deadline);
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Makes a byte array.
+	 * @param values
+	 * 			The unsigned values of the bytes.
+	 * @return
+	 * 			The bytes.
+	 */
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+			bytes[i] = (byte) values[i];
+		return bytes;
+	}
+}
@@ -0,0 +1,187 @@
+package serialio;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Pins the bytes each protocol writes to the port: the running status of
+ * the MIDI protocol, the one byte notes of the compact protocol and the
+ * messages they fall back to, and the button configurations.
+ * @author Kaamraan Kamaal
+ *
+ */
+public class WireEncoderTest {
+
+	// the button configuration sent in the tests
+	private static final int[] BUTTONS = {60, 62, 64, 65, 67, 69, 71, 72};
+
+	@Test
+	public void legacySendsAHeaderAndTheNote() {
+		WireEncoder encoder = new WireEncoder(Protocol.LEGACY);
+		assertArrayEquals(bytes(0x7F, 0x3C), noteOn(encoder, 3, 60, 100));
+		assertArrayEquals(bytes(0x7F, 0x3C), noteOn(encoder, 3, 60, 100));
+		assertArrayEquals(bytes(0x7E, 0x3C), noteOff(encoder, 3, 60));
+		assertArrayEquals(bytes(0x7D, 0x3C, 0x3E, 0x40, 0x41, 0x43, 0x45,
+						0x47, 0x48), config(encoder, BUTTONS));
+		// the legacy protocol has no change to the configuration
+		assertArrayEquals(new byte[0], configChange(encoder, 2, 40));
+	}
+
+	@Test
+	public void midiKeepsTheRunningStatusAndSendsOffsAsOns() {
+		WireEncoder encoder = new WireEncoder(Protocol.MIDI);
+		assertArrayEquals(bytes(0x90, 0x3C, 0x64), noteOn(encoder, 0, 60, 100));
+		assertArrayEquals(bytes(0x3E, 0x64), noteOn(encoder, 0, 62, 100));
+		// a note off is a note on with velocity 0, so the status is kept
+		assertArrayEquals(bytes(0x3C, 0x00), noteOff(encoder, 0, 60));
+		assertArrayEquals(bytes(0x3E, 0x00), noteOff(encoder, 0, 62));
+		// another channel is another status
+		assertArrayEquals(bytes(0x91, 0x3C, 0x64), noteOn(encoder, 1, 60, 100));
+		assertArrayEquals(bytes(0x3C, 0x00), noteOff(encoder, 1, 60));
+	}
+
+	@Test
+	public void midiSendsTheStatusAgainAfterSysex() {
+		WireEncoder encoder = new WireEncoder(Protocol.MIDI);
+		assertArrayEquals(bytes(0x90, 0x3C, 0x64), noteOn(encoder, 0, 60, 100));
+		assertArrayEquals(bytes(0xF0, 0x7D, 0x3C, 0x3E, 0x40, 0x41, 0x43,
+						0x45, 0x47, 0x48, 0xF7), config(encoder, BUTTONS));
+		assertArrayEquals(bytes(0x90, 0x3E, 0x64), noteOn(encoder, 0, 62, 100));
+		assertArrayEquals(bytes(0xF0, 0x7D, 0x7F, 0x02, 0x28, 0xF7),
+						configChange(encoder, 2, 40));
+		assertArrayEquals(bytes(0x90, 0x3E, 0x00), noteOff(encoder, 0, 62));
+	}
+
+	@Test
+	public void compactSendsSmallStepsAsOneByte() {
+		WireEncoder encoder = new WireEncoder(Protocol.COMPACT);
+		// the first note is sent in full
+		assertArrayEquals(bytes(0x10, 0x3C, 0x64), noteOn(encoder, 0, 60, 100));
+		// 0x80 | 0x40 for an on | the step plus 32
+		assertArrayEquals(bytes(0xC0 | 1 + 32), noteOn(encoder, 0, 61, 100));
+		assertArrayEquals(bytes(0x80 | 32), noteOff(encoder, 0, 61));
+		// the largest steps up and down
+		assertArrayEquals(bytes(0xFF), noteOn(encoder, 0, 92, 100));
+		assertArrayEquals(bytes(0xC0), noteOn(encoder, 0, 60, 100));
+		assertArrayEquals(bytes(0xBF), noteOff(encoder, 0, 91));
+		assertArrayEquals(bytes(0x80), noteOff(encoder, 0, 59));
+	}
+
+	@Test
+	public void compactSendsStepsOutOfRangeInFull() {
+		WireEncoder encoder = new WireEncoder(Protocol.COMPACT);
+		assertArrayEquals(bytes(0x10, 0x3C, 0x64), noteOn(encoder, 0, 60, 100));
+		// one past the largest step up, and one past the largest step down
+		assertArrayEquals(bytes(0x10, 0x5C, 0x64), noteOn(encoder, 0, 92, 100));
+		assertArrayEquals(bytes(0x10, 0x3B, 0x64), noteOn(encoder, 0, 59, 100));
+		assertArrayEquals(bytes(0x00, 0x7B, 0x00), noteOff(encoder, 0, 123));
+	}
+
+	@Test
+	public void compactSendsANewChannelOrVelocityInFull() {
+		WireEncoder encoder = new WireEncoder(Protocol.COMPACT);
+		assertArrayEquals(bytes(0x10, 0x3C, 0x64), noteOn(encoder, 0, 60, 100));
+		assertArrayEquals(bytes(0x10, 0x3D, 0x5A), noteOn(encoder, 0, 61, 90));
+		assertArrayEquals(bytes(0x12, 0x3E, 0x5A), noteOn(encoder, 2, 62, 90));
+		// an off has no velocity, so only the channel matters
+		assertArrayEquals(bytes(0xA0), noteOff(encoder, 2, 62));
+		assertArrayEquals(bytes(0x00, 0x3E, 0x00), noteOff(encoder, 0, 62));
+		assertArrayEquals(bytes(0x80 | 33), noteOff(encoder, 0, 63));
+	}
+
+	@Test
+	public void compactSendsTheConfigurationAndItsChanges() {
+		WireEncoder encoder = new WireEncoder(Protocol.COMPACT);
+		assertArrayEquals(bytes(0x7D, 0x3C, 0x3E, 0x40, 0x41, 0x43, 0x45,
+						0x47, 0x48), config(encoder, BUTTONS));
+		// a bit for each button changed, then their notes
+		assertArrayEquals(bytes(0x7C, 0x04, 0x28),
+						configChange(encoder, 2, 40));
+	}
+
+	@Test
+	public void resetSendsTheNextNoteInFull() {
+		WireEncoder midi = new WireEncoder(Protocol.MIDI);
+		noteOn(midi, 0, 60, 100);
+		midi.reset();
+		assertArrayEquals(bytes(0x90, 0x3E, 0x64), noteOn(midi, 0, 62, 100));
+
+		WireEncoder compact = new WireEncoder(Protocol.COMPACT);
+		noteOn(compact, 0, 60, 100);
+		compact.reset();
+		assertArrayEquals(bytes(0x10, 0x3D, 0x64), noteOn(compact, 0, 61, 100));
+	}
+
+	/**
+	 * Encodes a note on.
+	 */
+	private static byte[] noteOn(WireEncoder encoder, int channel, int note,
+					int velocity) {
+		byte[] message = new byte[3];
+		FrameEncoder.encodeNoteOn(message, 0, channel, note, velocity);
+		return encode(encoder, message);
+	}
+
+	/**
+	 * Encodes a note off.
+	 */
+	private static byte[] noteOff(WireEncoder encoder, int channel, int note) {
+		byte[] message = new byte[3];
+		FrameEncoder.encodeNoteOff(message, 0, channel, note);
+		return encode(encoder, message);
+	}
+
+	/**
+	 * Encodes the full button configuration.
+	 */
+	private static byte[] config(WireEncoder encoder, int[] buttonNotes) {
+		byte[] message = new byte[FrameEncoder.CONFIG_LENGTH];
+		FrameEncoder.encodeConfig(message, 0, buttonNotes);
+		return encode(encoder, message);
+	}
+
+	/**
+	 * Encodes a change of one button of BUTTONS.
+	 */
+	private static byte[] configChange(WireEncoder encoder, int button,
+					int note) {
+		int[] changed = BUTTONS.clone();
+		changed[button] = note;
+		byte[] message = new byte[FrameEncoder.CONFIG_LENGTH];
+		int length = FrameEncoder.encodeConfigUpdate(message, 0, BUTTONS,
+						changed, FrameEncoder.MAX_DELTA_BUTTONS);
+		return encode(encoder, Arrays.copyOf(message, length));
+	}
+
+	/**
+	 * Encodes a message made by the FrameEncoder.
+	 * @param encoder
+	 * 			The encoder.
+	 * @param message
+	 * 			The message.
+	 * @return
+	 * 			The bytes written to the port.
+	 */
+	private static byte[] encode(WireEncoder encoder, byte[] message) {
+		byte[] out = new byte[message.length];
+		int length = encoder.encode(message, 0, message.length, out, 0);
+		return Arrays.copyOf(out, length);
+	}
+
+	/**
+	 * Makes a byte array.
+	 * @param values
+	 * 			The unsigned values of the bytes.
+	 * @return
+	 * 			The bytes.
+	 */
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+			bytes[i] = (byte) values[i];
+		return bytes;
+	}
+}